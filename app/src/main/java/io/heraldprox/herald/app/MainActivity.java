@@ -108,7 +108,7 @@ public class MainActivity extends AppCompatActivity implements SensorDelegate, A
 //    private final SelfCalibratedModel<RSSI> smoothedLinearModel = new SelfCalibratedModel<>(
 //            new Distance(0), new Distance(3.7),
 //            TimeInterval.minutes(5), TimeInterval.hours(8),
-//            new TextFile(AppDelegate.getAppDelegate(), "rssi_histogram.csv"));
+//            AppDelegate.getAppDelegate(), "rssi_histogram.csv");
 //    private final SmoothedLinearModelAnalyser smoothedLinearModelAnalyser = new SmoothedLinearModelAnalyser(new TimeInterval(1), new TimeInterval(60), smoothedLinearModel);
     private final AnalysisProviderManager analysisProviderManager = new AnalysisProviderManager(/*smoothedLinearModelAnalyser*/);
     private final ConcreteAnalysisDelegate<Distance> analysisDelegate = new ConcreteAnalysisDelegate<>(Distance.class, 5);
@@ -8,9 +8,14 @@ import android.content.Context;
 
 import androidx.annotation.NonNull;
 
+import io.heraldprox.herald.sensor.data.BinaryEncounterCodec;
+import io.heraldprox.herald.sensor.data.CSVEncounterCodec;
 import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
+import io.heraldprox.herald.sensor.data.EncounterCodec;
+import io.heraldprox.herald.sensor.data.EncounterStore;
 import io.heraldprox.herald.sensor.data.SensorDelegateLogger;
 import io.heraldprox.herald.sensor.data.SensorLogger;
+import io.heraldprox.herald.sensor.data.TextFile;
 import io.heraldprox.herald.sensor.datatype.Distribution;
 import io.heraldprox.herald.sensor.datatype.Encounter;
 import io.heraldprox.herald.sensor.datatype.PayloadData;
@@ -20,6 +25,7 @@ import io.heraldprox.herald.sensor.datatype.SensorType;
 import io.heraldprox.herald.sensor.datatype.TargetIdentifier;
 import io.heraldprox.herald.sensor.datatype.TimeInterval;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
@@ -35,39 +41,111 @@ public class Interactions extends SensorDelegateLogger {
     @SuppressWarnings("FieldCanBeLocal")
     private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "Analysis.EncounterLog");
     @NonNull
-    private List<Encounter> encounters = new ArrayList<>();
+    private final EncounterStore store;
 
     public Interactions() {
         super();
+        this.store = new EncounterStore();
     }
 
+    /**
+     * Interactions backed by encounter store.
+     * @param store Time partitioned encounter store.
+     */
+    public Interactions(@NonNull final EncounterStore store) {
+        super();
+        this.store = store;
+    }
+
+    /**
+     * Interactions persisted as daily CSV segment files "prefix-key.csv" in the "Sensor" folder,
+     * where prefix is the filename without extension. An existing log file with the given
+     * filename is migrated into segment files on first use.
+     * @param context Application context.
+     * @param filename File name of log file.
+     */
     public Interactions(@NonNull final Context context, @NonNull final String filename) {
-        super(context, filename);
-        for (String line : contentsOf().split("\n")) {
-            final Encounter encounter = new Encounter(line);
-            if (encounter.isValid()) {
-                encounters.add(encounter);
+        this(context, filename, new CSVEncounterCodec());
+    }
+
+    /**
+     * Interactions persisted as daily segment files "prefix-key.extension" in the "Sensor" folder,
+     * where prefix is the filename without extension and the file format is determined by the
+     * codec, e.g. {@link BinaryEncounterCodec} for compact storage. An existing CSV log file
+     * with the given filename and existing CSV segment files are converted on first use.
+     * @param context Application context.
+     * @param filename File name of log file.
+     * @param codec File format for segment files.
+     */
+    public Interactions(@NonNull final Context context, @NonNull final String filename, @NonNull final EncounterCodec codec) {
+        // Segment files replace the single log file, thus the superclass does not write to file
+        super();
+        final File file = TextFile.file(context, filename);
+        final int extension = filename.lastIndexOf('.');
+        final String prefix = (extension > 0 ? filename.substring(0, extension) : filename);
+        this.store = new EncounterStore(file.getParentFile(), prefix, TimeInterval.day, codec);
+        store.convert(new CSVEncounterCodec());
+        migrate(file);
+    }
+
+    /**
+     * Migrate single file log into segment files. Migration is repeated on next start if it
+     * is interrupted or the log file cannot be deleted, thus encounters that are already held
+     * by the store are skipped to avoid duplicates.
+     * @param file Log file containing all encounters.
+     */
+    private void migrate(@NonNull final File file) {
+        if (!file.exists()) {
+            return;
+        }
+        final List<Encounter> encounters = new CSVEncounterCodec().read(file);
+        if (null == encounters) {
+            logger.fault("Migrate historic encounters failed (file={})", file);
+            return;
+        }
+        // Count encounters already held by the store within time range of log file
+        long start = Long.MAX_VALUE, end = Long.MIN_VALUE;
+        for (final Encounter encounter : encounters) {
+            if (null != encounter.timestamp) {
+                start = Math.min(start, encounter.timestamp.getTime());
+                end = Math.max(end, encounter.timestamp.getTime());
+            }
+        }
+        final Map<String, Integer> existing = new HashMap<>();
+        if (start <= end) {
+            for (final Encounter encounter : store.subdata(start, end + 1)) {
+                final String key = encounter.csvString();
+                final Integer count = existing.get(key);
+                existing.put(key, (null == count ? 1 : count + 1));
             }
         }
-        logger.debug("Loaded historic encounters (count={})", encounters.size());
+        int migrated = 0;
+        for (final Encounter encounter : encounters) {
+            final String key = encounter.csvString();
+            final Integer count = existing.get(key);
+            if (null != count && count > 0) {
+                existing.put(key, count - 1);
+                continue;
+            }
+            store.append(encounter);
+            migrated++;
+        }
+        store.flush();
+        if (!file.delete()) {
+            logger.fault("Migrate historic encounters failed, cannot delete file (file={})", file);
+            return;
+        }
+        logger.debug("Migrated historic encounters (count={},skipped={})", migrated, encounters.size() - migrated);
     }
 
     @Override
     public synchronized void reset() {
         super.reset();
-        encounters.clear();
-    }
-
-    private void writeHeader() {
-        if (empty()) {
-            write("time,proximity,unit,payload");
-        }
+        store.reset();
     }
 
     public synchronized void append(@NonNull final Encounter encounter) {
-        writeHeader();
-        write(encounter.csvString());
-        encounters.add(encounter);
+        store.append(encounter);
     }
 
     /**
@@ -78,19 +156,7 @@ public class Interactions extends SensorDelegateLogger {
      */
     @NonNull
     public synchronized List<Encounter> subdata(@NonNull final Date start, @NonNull final Date end) {
-        final long startTime = start.getTime();
-        final long endTime = end.getTime();
-        final List<Encounter> subdata = new ArrayList<>();
-        for (Encounter encounter : encounters) {
-            if (null == encounter.timestamp) {
-                continue;
-            }
-            final long time = encounter.timestamp.getTime();
-            if (time >= startTime && time < endTime) {
-                subdata.add(encounter);
-            }
-        }
-        return subdata;
+        return store.subdata(start.getTime(), end.getTime());
     }
 
     /**
@@ -100,35 +166,16 @@ public class Interactions extends SensorDelegateLogger {
      */
     @NonNull
     public synchronized List<Encounter> subdata(@NonNull final Date start) {
-        final long startTime = start.getTime();
-        final List<Encounter> subdata = new ArrayList<>();
-        for (final Encounter encounter : encounters) {
-            if (null == encounter.timestamp) {
-                continue;
-            }
-            final long time = encounter.timestamp.getTime();
-            if (time >= startTime) {
-                subdata.add(encounter);
-            }
-        }
-        return subdata;
+        return store.subdata(start.getTime());
     }
 
     /**
      * Remove all log records before date (exclusive). Use this function to implement
-     * data retention policy.
+     * data retention policy. Segments before the cut off date are deleted as a whole.
      * @param before Cut off date (exclusive)
      */
     public synchronized void remove(@NonNull final Date before) {
-        final StringBuilder content = new StringBuilder();
-        content.append("time,proximity,unit,payload\n");
-        final List<Encounter> subdata = subdata(before);
-        for (final Encounter encounter : subdata) {
-            content.append(encounter.csvString());
-            content.append("\n");
-        }
-        overwrite(content.toString());
-        encounters = subdata;
+        store.remove(before.getTime());
     }
 
     // MARK:- SensorDelegate
@@ -8,8 +8,9 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import io.heraldprox.herald.sensor.datatype.Distribution;
-import io.heraldprox.herald.sensor.analysis.sampling.Aggregate;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
+import io.heraldprox.herald.sensor.analysis.sampling.Statistics;
+import io.heraldprox.herald.sensor.analysis.sampling.StatisticsAggregate;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
 /**
@@ -17,7 +18,7 @@ import io.heraldprox.herald.sensor.datatype.DoubleValue;
  * mean, variance, standard deviation, min and max for sample values.
  * @param <T>
  */
-public class Gaussian<T extends DoubleValue> implements Aggregate<T> {
+public class Gaussian<T extends DoubleValue> implements StatisticsAggregate<T> {
     private int run = 1;
     @NonNull
     private Distribution model = new Distribution();
@@ -34,8 +35,33 @@ public class Gaussian<T extends DoubleValue> implements Aggregate<T> {
 
     @Override
     public void map(@NonNull final Sample<T> value) {
+        map(value.taken().getTime(), value.value().doubleValue());
+    }
+
+    @Override
+    public void map(final long taken, final double value) {
         if (run > 1) return;
-        model.add(value.value().doubleValue());
+        model.add(value);
+    }
+
+    @Override
+    public int statistics() {
+        return Statistics.count | Statistics.sum | Statistics.sumOfSquares | Statistics.minMax;
+    }
+
+    @Override
+    public boolean reduce(@NonNull final Statistics statistics) {
+        if (0 != model.count()) {
+            return false;
+        }
+        final Double mean = statistics.mean();
+        final Double min = statistics.min();
+        final Double max = statistics.max();
+        if (null == mean || null == min || null == max) {
+            return true;
+        }
+        model = new Distribution(statistics.count(), mean, statistics.sumOfSquaredDeviations(), min, max);
+        return true;
     }
 
     /**
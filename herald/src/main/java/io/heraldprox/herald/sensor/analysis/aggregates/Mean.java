@@ -7,11 +7,12 @@ package io.heraldprox.herald.sensor.analysis.aggregates;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import io.heraldprox.herald.sensor.analysis.sampling.Aggregate;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
+import io.heraldprox.herald.sensor.analysis.sampling.Statistics;
+import io.heraldprox.herald.sensor.analysis.sampling.StatisticsAggregate;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
-public class Mean<T extends DoubleValue> implements Aggregate<T> {
+public class Mean<T extends DoubleValue> implements StatisticsAggregate<T> {
     private int run = 1;
     private long count = 0;
     private double sum = 0;
@@ -28,11 +29,31 @@ public class Mean<T extends DoubleValue> implements Aggregate<T> {
 
     @Override
     public void map(@NonNull final Sample<T> value) {
+        map(value.taken().getTime(), value.value().doubleValue());
+    }
+
+    @Override
+    public void map(final long taken, final double value) {
         if (run > 1) return;
-        sum += value.value().doubleValue();
+        sum += value;
         count++;
     }
 
+    @Override
+    public int statistics() {
+        return Statistics.count | Statistics.sum;
+    }
+
+    @Override
+    public boolean reduce(@NonNull final Statistics statistics) {
+        if (0 != count) {
+            return false;
+        }
+        count = statistics.count();
+        sum = statistics.sum();
+        return true;
+    }
+
     @Nullable
     @Override
     public Double reduce() {
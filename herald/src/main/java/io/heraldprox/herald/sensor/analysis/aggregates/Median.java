@@ -7,18 +7,25 @@ package io.heraldprox.herald.sensor.analysis.aggregates;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import io.heraldprox.herald.sensor.analysis.sampling.Aggregate;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
+import io.heraldprox.herald.sensor.analysis.sampling.Statistics;
+import io.heraldprox.herald.sensor.analysis.sampling.StatisticsAggregate;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
 import java.util.Collections;
 import java.util.PriorityQueue;
 import java.util.Queue;
 
-public class Median<T extends DoubleValue> implements Aggregate<T> {
+public class Median<T extends DoubleValue> implements StatisticsAggregate<T> {
     private int run = 1;
     private final Queue<Double> minHeap = new PriorityQueue<>(10);
     private final Queue<Double> maxHeap = new PriorityQueue<>(10, Collections.reverseOrder());
+    // Median and histogram counts reduced from statistics, added to heaps when samples are mapped
+    @Nullable
+    private Double median = null;
+    private boolean reduced = false;
+    @Nullable
+    private int[] reducedCounts = null;
 
     @Override
     public int runs() {
@@ -32,20 +39,71 @@ public class Median<T extends DoubleValue> implements Aggregate<T> {
 
     @Override
     public void map(@NonNull final Sample<T> value) {
+        map(value.taken().getTime(), value.value().doubleValue());
+    }
+
+    @Override
+    public void map(final long taken, final double value) {
         if (run > 1) return;
-        add(value.value().doubleValue());
+        if (reduced) {
+            addReduced();
+        }
+        add(value);
+    }
+
+    @Override
+    public int statistics() {
+        return Statistics.histogram;
+    }
+
+    @Override
+    public boolean reduce(@NonNull final Statistics statistics) {
+        if (reduced || !minHeap.isEmpty() || !statistics.histogramAvailable()) {
+            return false;
+        }
+        median = statistics.median();
+        if (null == reducedCounts) {
+            reducedCounts = new int[Statistics.histogramMax - Statistics.histogramMin + 1];
+        }
+        for (int i=reducedCounts.length; i-->0;) {
+            reducedCounts[i] = statistics.count(i + Statistics.histogramMin);
+        }
+        reduced = true;
+        return true;
     }
 
     @Nullable
     @Override
     public Double reduce() {
+        if (reduced) {
+            return median;
+        }
         return median();
     }
 
+    /**
+     * Add samples reduced from statistics to heaps, such that samples mapped after a reduction
+     * are accumulated, as in other aggregates.
+     */
+    private void addReduced() {
+        median = null;
+        reduced = false;
+        if (null == reducedCounts) {
+            return;
+        }
+        for (int i=0; i<reducedCounts.length; i++) {
+            for (int j=reducedCounts[i]; j-->0;) {
+                add(i + Statistics.histogramMin);
+            }
+        }
+    }
+
     @Override
     public void reset() {
         minHeap.clear();
         maxHeap.clear();
+        median = null;
+        reduced = false;
     }
 
     private void add(final double value) {
@@ -7,14 +7,15 @@ package io.heraldprox.herald.sensor.analysis.aggregates;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import io.heraldprox.herald.sensor.analysis.sampling.Aggregate;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
+import io.heraldprox.herald.sensor.analysis.sampling.Statistics;
+import io.heraldprox.herald.sensor.analysis.sampling.StatisticsAggregate;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
 import java.util.HashMap;
 import java.util.Map;
 
-public class Mode<T extends DoubleValue> implements Aggregate<T> {
+public class Mode<T extends DoubleValue> implements StatisticsAggregate<T> {
     private int run = 1;
     private final Map<Double,Counter> counts = new HashMap<>();
     private final static class Counter {
@@ -33,15 +34,42 @@ public class Mode<T extends DoubleValue> implements Aggregate<T> {
 
     @Override
     public void map(@NonNull final Sample<T> value) {
+        map(value.taken().getTime(), value.value().doubleValue());
+    }
+
+    @Override
+    public void map(final long taken, final double value) {
         if (run > 1) return;
-        final Counter counter = counts.get(value.value().doubleValue());
+        final Counter counter = counts.get(value);
         if (null == counter) {
-            counts.put(value.value().doubleValue(), new Counter());
+            counts.put(value, new Counter());
         } else {
             counter.value++;
         }
     }
 
+    @Override
+    public int statistics() {
+        return Statistics.histogram;
+    }
+
+    @Override
+    public boolean reduce(@NonNull final Statistics statistics) {
+        if (!counts.isEmpty() || !statistics.histogramAvailable()) {
+            return false;
+        }
+        // Counts are taken from the histogram, such that samples mapped later are accumulated
+        for (int value=Statistics.histogramMin; value<=Statistics.histogramMax; value++) {
+            final int count = statistics.count(value);
+            if (count > 0) {
+                final Counter counter = new Counter();
+                counter.value = count;
+                counts.put((double) value, counter);
+            }
+        }
+        return true;
+    }
+
     @Nullable
     @Override
     public Double reduce() {
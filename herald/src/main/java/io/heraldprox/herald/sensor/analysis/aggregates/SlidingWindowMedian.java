@@ -0,0 +1,173 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.aggregates;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import io.heraldprox.herald.sensor.analysis.sampling.DoubleSampleRing;
+
+/**
+ * Incremental median of integer values within a sliding time window, e.g. median RSSI of the
+ * last 60 seconds. Samples are added as they arrive and removed as they expire, rather than
+ * recomputing the median from all samples in the window.
+ * <br>
+ * Values are counted in a histogram of integer bins between min and max, with a pointer to the
+ * bin containing the median that is moved on every add and remove. Add, remove and median are
+ * therefore constant time for values that change gradually, like RSSI, and do not allocate
+ * objects, except when the window grows beyond its current capacity.
+ * <br>
+ * Values are rounded to the nearest integer, and values outside of min and max are ignored.
+ * The median of an even number of samples is the mean of the two middle values, as
+ * {@link Median}.
+ */
+public class SlidingWindowMedian {
+    private final int min;
+    @NonNull
+    private final int[] counts;
+    // Samples in window, in time order, for removing expired values from histogram
+    @NonNull
+    private DoubleSampleRing window;
+    private int count = 0;
+    // Bin containing lower median, and number of values in bins below it
+    private int bin = 0;
+    private int below = 0;
+
+    public SlidingWindowMedian(final int min, final int max) {
+        this(min, max, 64);
+    }
+
+    /**
+     * Sliding window median of integer values.
+     * @param min Minimum value.
+     * @param max Maximum value.
+     * @param capacity Initial window capacity, which is doubled when the window is full.
+     */
+    public SlidingWindowMedian(final int min, final int max, final int capacity) {
+        this.min = min;
+        this.counts = new int[max - min + 1];
+        this.window = new DoubleSampleRing(Math.max(1, capacity));
+    }
+
+    /**
+     * Add sample to window. Samples should be added in time order.
+     * @param taken Time of sample in milliseconds since epoch.
+     * @param value Sample value.
+     * @return True if sample was added, false if value is out of range.
+     */
+    public boolean add(final long taken, final double value) {
+        final int index = (int) Math.round(value) - min;
+        if (index < 0 || index >= counts.length) {
+            return false;
+        }
+        if (window.size() == window.capacity()) {
+            final DoubleSampleRing grown = new DoubleSampleRing(window.capacity() * 2);
+            final DoubleSampleRing.Cursor cursor = window.cursor();
+            while (cursor.next()) {
+                grown.push(cursor.taken(), cursor.value());
+            }
+            window = grown;
+        }
+        window.push(taken, index);
+        update(index, 1);
+        return true;
+    }
+
+    /**
+     * Remove samples from oldest onwards that were taken before the given time.
+     * @param before Time in milliseconds since epoch.
+     */
+    public void clearBefore(final long before) {
+        final int size = window.size();
+        int removed = 0;
+        while (removed < size && window.taken(removed) < before) {
+            update((int) window.value(removed), -1);
+            removed++;
+        }
+        window.clearBefore(before);
+    }
+
+    public void clear() {
+        window.clear();
+        for (int i=0; i<counts.length; i++) {
+            counts[i] = 0;
+        }
+        count = 0;
+        bin = 0;
+        below = 0;
+    }
+
+    /**
+     * Number of samples in window.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Time of oldest sample in window.
+     * @return Time in milliseconds since epoch, or Long.MIN_VALUE if window is empty.
+     */
+    public long oldest() {
+        return (0 == count ? Long.MIN_VALUE : window.taken(0));
+    }
+
+    /**
+     * Time of newest sample in window.
+     * @return Time in milliseconds since epoch, or Long.MIN_VALUE if window is empty.
+     */
+    public long newest() {
+        return (0 == count ? Long.MIN_VALUE : window.taken(count - 1));
+    }
+
+    /**
+     * Median of values in window.
+     * @return Median value, or null if window is empty.
+     */
+    @Nullable
+    public Double median() {
+        if (0 == count) {
+            return null;
+        }
+        final int lower = min + bin;
+        // Upper median is in the same bin as lower median, or the next non-empty bin
+        if (1 == count % 2 || count / 2 < below + counts[bin]) {
+            return (double) lower;
+        }
+        int upperBin = bin + 1;
+        while (0 == counts[upperBin]) {
+            upperBin++;
+        }
+        return (lower + min + upperBin) / 2d;
+    }
+
+    /**
+     * Update histogram bin and move median pointer such that the lower median, at position
+     * (count - 1) / 2 in sorted order, is in the pointed bin.
+     * @param index Histogram bin.
+     * @param delta Change in count.
+     */
+    private void update(final int index, final int delta) {
+        counts[index] += delta;
+        count += delta;
+        if (0 == count) {
+            bin = 0;
+            below = 0;
+            return;
+        }
+        if (index < bin) {
+            below += delta;
+        }
+        final int position = (count - 1) / 2;
+        while (position < below) {
+            bin--;
+            below -= counts[bin];
+        }
+        while (position >= below + counts[bin]) {
+            below += counts[bin];
+            bin++;
+        }
+    }
+}
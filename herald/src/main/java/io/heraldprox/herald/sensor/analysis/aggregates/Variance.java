@@ -7,11 +7,12 @@ package io.heraldprox.herald.sensor.analysis.aggregates;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import io.heraldprox.herald.sensor.analysis.sampling.Aggregate;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
+import io.heraldprox.herald.sensor.analysis.sampling.Statistics;
+import io.heraldprox.herald.sensor.analysis.sampling.StatisticsAggregate;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
-public class Variance<T extends DoubleValue> implements Aggregate<T> {
+public class Variance<T extends DoubleValue> implements StatisticsAggregate<T> {
     private int run = 1;
     private long count = 0;
     private double sum = 0;
@@ -36,16 +37,37 @@ public class Variance<T extends DoubleValue> implements Aggregate<T> {
 
     @Override
     public void map(@NonNull final Sample<T> value) {
+        map(value.taken().getTime(), value.value().doubleValue());
+    }
+
+    @Override
+    public void map(final long taken, final double value) {
         if (1 == run) {
-            sum += value.value().doubleValue();
+            sum += value;
         } else {
             // 2 == run
-            final double dv = value.value().doubleValue();
-            sum += (dv - mean) * (dv - mean);
+            sum += (value - mean) * (value - mean);
         }
         count++;
     }
 
+    @Override
+    public int statistics() {
+        return Statistics.count | Statistics.sum | Statistics.sumOfSquares;
+    }
+
+    @Override
+    public boolean reduce(@NonNull final Statistics statistics) {
+        if (1 != run || 0 != count) {
+            return false;
+        }
+        run = 2;
+        count = statistics.count();
+        mean = (0 == count ? 0 : statistics.sum() / count);
+        sum = statistics.sumOfSquaredDeviations();
+        return true;
+    }
+
     @Nullable
     @Override
     public Double reduce() {
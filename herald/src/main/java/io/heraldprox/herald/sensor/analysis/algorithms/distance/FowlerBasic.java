@@ -8,11 +8,11 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import io.heraldprox.herald.sensor.analysis.aggregates.Mode;
-import io.heraldprox.herald.sensor.analysis.sampling.Aggregate;
+import io.heraldprox.herald.sensor.analysis.sampling.DoubleAggregate;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
-public class FowlerBasic<T extends DoubleValue> implements Aggregate<T> {
+public class FowlerBasic<T extends DoubleValue> implements DoubleAggregate<T> {
     private final Mode<T> mode = new Mode<>();
     private final double intercept;
     private final double coefficient;
@@ -34,8 +34,13 @@ public class FowlerBasic<T extends DoubleValue> implements Aggregate<T> {
 
     @Override
     public void map(@NonNull final Sample<T> value) {
-        mode.map(value);
-   }
+        map(value.taken().getTime(), value.value().doubleValue());
+    }
+
+    @Override
+    public void map(final long taken, final double value) {
+        mode.map(taken, value);
+    }
 
     @Nullable
     @Override
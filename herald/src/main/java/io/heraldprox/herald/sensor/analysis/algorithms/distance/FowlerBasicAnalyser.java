@@ -13,6 +13,7 @@ import io.heraldprox.herald.sensor.analysis.sampling.CallableForNewSample;
 import io.heraldprox.herald.sensor.analysis.sampling.Filter;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
 import io.heraldprox.herald.sensor.analysis.sampling.SampleList;
+import io.heraldprox.herald.sensor.analysis.sampling.SampleView;
 import io.heraldprox.herald.sensor.analysis.sampling.SampledID;
 import io.heraldprox.herald.sensor.analysis.sampling.Summary;
 import io.heraldprox.herald.sensor.analysis.views.InRange;
@@ -25,16 +26,17 @@ import io.heraldprox.herald.sensor.datatype.TimeInterval;
 public class FowlerBasicAnalyser implements AnalysisProvider<RSSI, Distance> {
     @NonNull
     private final TimeInterval interval;
+    private final double intercept;
+    private final double coefficient;
     @NonNull
-    private final FowlerBasic basic;
-    @NonNull
-    private Date lastRan = new Date(0);
+    private volatile Date lastRan = new Date(0);
 
     private final Filter<RSSI> valid = new InRange<>(-99, -10);
 
     public FowlerBasicAnalyser(final long interval, final double intercept, final double coefficient) {
         this.interval = new TimeInterval(interval);
-        this.basic = new FowlerBasic(intercept, coefficient);
+        this.intercept = intercept;
+        this.coefficient = coefficient;
     }
 
     public FowlerBasicAnalyser() {
@@ -59,8 +61,9 @@ public class FowlerBasicAnalyser implements AnalysisProvider<RSSI, Distance> {
         if (lastRan.secondsSinceUnixEpoch() + interval.value >= timeNow.secondsSinceUnixEpoch()) {
             return false;
         }
-        basic.reset();
-        final SampleList<RSSI> values = src.filter(valid).toView();
+        // Aggregate per call to enable concurrent analysis of different targets
+        final FowlerBasic<RSSI> basic = new FowlerBasic<>(intercept, coefficient);
+        final SampleView<RSSI> values = src.filter(valid);
         final Summary<RSSI> summary = values.aggregate(new Mode<RSSI>(), new Variance<RSSI>());
         final Double mode = summary.get(Mode.class);
         if (null == mode) {
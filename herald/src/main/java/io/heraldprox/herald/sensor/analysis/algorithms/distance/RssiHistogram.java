@@ -8,6 +8,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import io.heraldprox.herald.sensor.DefaultSensorDelegate;
+import io.heraldprox.herald.sensor.data.HistogramFile;
 import io.heraldprox.herald.sensor.data.TextFile;
 import io.heraldprox.herald.sensor.datatype.Date;
 import io.heraldprox.herald.sensor.datatype.Proximity;
@@ -29,6 +30,8 @@ public class RssiHistogram extends DefaultSensorDelegate {
     private final double[] transform;
     @Nullable
     private final TextFile textFile;
+    @Nullable
+    private final HistogramFile histogramFile;
     @NonNull
     private final TimeInterval updatePeriod;
     @NonNull
@@ -43,18 +46,39 @@ public class RssiHistogram extends DefaultSensorDelegate {
      * @param textFile Optionally write histogram to storage at regular intervals
      */
     public RssiHistogram(final int min, final int max, @NonNull final TimeInterval updatePeriod, @Nullable final TextFile textFile) {
+        this(min, max, updatePeriod, textFile, null);
+    }
+
+    /**
+     * Accumulate histogram of RSSI for value range of binary histogram file. Counts are updated
+     * in place within the memory mapped file and synced to storage at regular intervals.
+     * @param histogramFile Binary histogram file for RSSI value range [min, max]
+     * @param updatePeriod Update histogram normalisation parameters and sync file at regular intervals
+     */
+    public RssiHistogram(@NonNull final HistogramFile histogramFile, @NonNull final TimeInterval updatePeriod) {
+        this(histogramFile.min, histogramFile.max, updatePeriod, null, histogramFile);
+    }
+
+    private RssiHistogram(final int min, final int max, @NonNull final TimeInterval updatePeriod, @Nullable final TextFile textFile, @Nullable final HistogramFile histogramFile) {
         this.min = min;
         this.max = max;
         this.histogram = new long[max - min + 1];
         this.cdf = new long[histogram.length];
         this.transform = new double[histogram.length];
         this.textFile = textFile;
+        this.histogramFile = histogramFile;
         this.updatePeriod = updatePeriod;
-        clear();
+        for (int i=transform.length; i-->0;) {
+            transform[i] = i;
+        }
         if (textFile != null) {
             read(textFile);
             update();
         }
+        if (histogramFile != null) {
+            samples = histogramFile.read(histogram);
+            update();
+        }
     }
 
     /**
@@ -95,12 +119,18 @@ public class RssiHistogram extends DefaultSensorDelegate {
         final int index = rssi - min;
         histogram[index]++;
         samples++;
+        if (histogramFile != null) {
+            histogramFile.add(rssi, 1);
+        }
         // Update at regular intervals
         final Date time = new Date();
         if (lastUpdateTime.secondsSinceUnixEpoch() + updatePeriod.value < time.secondsSinceUnixEpoch()) {
             if (textFile != null) {
                 write(textFile);
             }
+            if (histogramFile != null) {
+                histogramFile.sync();
+            }
             update();
             lastUpdateTime = time;
         }
@@ -115,6 +145,9 @@ public class RssiHistogram extends DefaultSensorDelegate {
             transform[i] = i;
         }
         samples = 0;
+        if (histogramFile != null) {
+            histogramFile.clear();
+        }
     }
 
     public int samplePercentile(final double percentile) {
@@ -155,6 +188,9 @@ public class RssiHistogram extends DefaultSensorDelegate {
             histogram[index] = count;
             samples += count;
         }
+        if (histogramFile != null) {
+            histogramFile.write(histogram);
+        }
     }
 
     /**
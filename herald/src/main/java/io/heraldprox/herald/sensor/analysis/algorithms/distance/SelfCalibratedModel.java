@@ -4,18 +4,21 @@
 
 package io.heraldprox.herald.sensor.analysis.algorithms.distance;
 
+import android.content.Context;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import io.heraldprox.herald.sensor.analysis.sampling.Sample;
 import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
+import io.heraldprox.herald.sensor.data.HistogramFile;
 import io.heraldprox.herald.sensor.data.SensorLogger;
 import io.heraldprox.herald.sensor.data.TextFile;
-import io.heraldprox.herald.sensor.datatype.Date;
 import io.heraldprox.herald.sensor.datatype.Distance;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 import io.heraldprox.herald.sensor.datatype.TimeInterval;
 
+import java.io.File;
+
 /**
  * Extension of SmoothedLinearModel to include self-calibration
  * <br>- Assume minimum and average distance between people for entire population is
@@ -41,23 +44,77 @@ public class SelfCalibratedModel<T extends DoubleValue> extends SmoothedLinearMo
     public final RssiHistogram histogram;
     @Nullable
     private final TextFile textFile;
+    @Nullable
+    private final HistogramFile histogramFile;
+    @Nullable
+    private final File csvFile;
     private double maxRssi = -10;
-    @NonNull
-    private Date lastSampleTime = new Date(0);
+    private long lastSampleTime = 0;
 
     public SelfCalibratedModel(@NonNull final Distance min, @NonNull final Distance mean, @NonNull final TimeInterval withinMin, @NonNull final TimeInterval withinMean, @Nullable final TextFile textFile) {
+        this(min, mean, withinMin, withinMean, new RssiHistogram(-99, -10, TimeInterval.minutes(10), textFile), textFile, null, null);
+    }
+
+    /**
+     * Self-calibrated model with RSSI histogram stored in a memory mapped binary file, which is
+     * updated in place on every sample, rather than rewriting a CSV file.
+     * @param context Application context.
+     * @param filename File name of CSV histogram file, e.g. "rssi_histogram.csv". The histogram is
+     *                 stored in binary file of the same name with extension ".bin" instead, and
+     *                 existing data in the CSV file is imported on first use.
+     */
+    public SelfCalibratedModel(@NonNull final Distance min, @NonNull final Distance mean, @NonNull final TimeInterval withinMin, @NonNull final TimeInterval withinMean, @NonNull final Context context, @NonNull final String filename) {
+        this(min, mean, withinMin, withinMean, histogramFile(context, filename), TextFile.file(context, filename));
+    }
+
+    private SelfCalibratedModel(@NonNull final Distance min, @NonNull final Distance mean, @NonNull final TimeInterval withinMin, @NonNull final TimeInterval withinMean, @NonNull final HistogramFile histogramFile, @NonNull final File csvFile) {
+        this(min, mean, withinMin, withinMean, new RssiHistogram(histogramFile, TimeInterval.minutes(10)), null, histogramFile, csvFile);
+    }
+
+    private SelfCalibratedModel(@NonNull final Distance min, @NonNull final Distance mean, @NonNull final TimeInterval withinMin, @NonNull final TimeInterval withinMean, @NonNull final RssiHistogram histogram, @Nullable final TextFile textFile, @Nullable final HistogramFile histogramFile, @Nullable final File csvFile) {
         super();
         this.min = min;
         this.mean = mean;
         this.maxRssiPercentile = (TimeInterval.day.value - withinMin.value) / (double) TimeInterval.day.value;
         this.anchorRssiPercentile = (TimeInterval.day.value - withinMean.value) / (double) TimeInterval.day.value;
-        this.histogram = new RssiHistogram(-99, -10, TimeInterval.minutes(10), textFile);
+        this.histogram = histogram;
         this.textFile = textFile;
+        this.histogramFile = histogramFile;
+        this.csvFile = csvFile;
+    }
+
+    /**
+     * Open binary histogram file and import existing CSV histogram data on first use.
+     * @param context Application context.
+     * @param filename File name of CSV histogram file.
+     * @return Binary histogram file.
+     */
+    @NonNull
+    private static HistogramFile histogramFile(@NonNull final Context context, @NonNull final String filename) {
+        final String basename = (filename.endsWith(".csv") ? filename.substring(0, filename.length() - 4) : filename);
+        final HistogramFile histogramFile = new HistogramFile(TextFile.file(context, basename + ".bin"), -99, -10);
+        if (0 == histogramFile.total() && TextFile.file(context, filename).exists()) {
+            if (histogramFile.importCsv(new TextFile(context, filename))) {
+                histogramFile.sync();
+            }
+        }
+        return histogramFile;
     }
 
+    /**
+     * Reset model, including the RSSI histogram if it is stored in a binary histogram file.
+     * The legacy CSV histogram file is deleted to prevent its data being imported again.
+     */
     @Override
     public void reset() {
         super.reset();
+        if (null != histogramFile) {
+            histogram.clear();
+            histogramFile.sync();
+            if (null != csvFile && csvFile.exists() && !csvFile.delete()) {
+                logger.fault("reset, failed to delete CSV histogram file (file={})", csvFile);
+            }
+        }
         if (null == textFile) {
             return;
         }
@@ -80,20 +137,26 @@ public class SelfCalibratedModel<T extends DoubleValue> extends SmoothedLinearMo
     }
 
     @Override
-    public void map(@NonNull final Sample<T> value) {
-        super.map(value);
-        if (value.taken().secondsSinceUnixEpoch() > lastSampleTime.secondsSinceUnixEpoch()) {
-            histogram.add(value.value().doubleValue());
-            lastSampleTime = value.taken();
+    public void map(final long taken, final double value) {
+        super.map(taken, value);
+        observe(taken, value);
+    }
+
+    @Override
+    public void observe(final long taken, final double value) {
+        // Add at most one sample per second to histogram
+        final long secondsSinceUnixEpoch = taken / 1000;
+        if (secondsSinceUnixEpoch > lastSampleTime) {
+            histogram.add(value);
+            lastSampleTime = secondsSinceUnixEpoch;
         }
     }
 
     @Nullable
     @Override
-    public Double reduce() {
+    public Double reduce(@Nullable final Double sampleMedian) {
         // Update model
         update();
-        final Double sampleMedian = medianOfRssi();
         if (null == sampleMedian) {
             logger.debug("reduce, sample median is null");
             return null;
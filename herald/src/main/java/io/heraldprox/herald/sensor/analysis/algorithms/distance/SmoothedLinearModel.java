@@ -8,7 +8,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import io.heraldprox.herald.sensor.analysis.aggregates.Median;
-import io.heraldprox.herald.sensor.analysis.sampling.Aggregate;
+import io.heraldprox.herald.sensor.analysis.sampling.DoubleAggregate;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
 import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
 import io.heraldprox.herald.sensor.data.SensorLogger;
@@ -51,7 +51,7 @@ import io.heraldprox.herald.sensor.datatype.DoubleValue;
  *   range of interest (1 - 8m).
  * @param <T>
  */
-public class SmoothedLinearModel<T extends DoubleValue> implements Aggregate<T> {
+public class SmoothedLinearModel<T extends DoubleValue> implements DoubleAggregate<T> {
     private final SensorLogger logger = new ConcreteSensorLogger("Analysis", "SmoothedLinearModel");
     private final Median<T> median = new Median<>();
     protected double intercept;
@@ -90,13 +90,37 @@ public class SmoothedLinearModel<T extends DoubleValue> implements Aggregate<T>
 
     @Override
     public void map(@NonNull final Sample<T> value) {
-        median.map(value);
+        map(value.taken().getTime(), value.value().doubleValue());
+    }
+
+    @Override
+    public void map(final long taken, final double value) {
+        median.map(taken, value);
+    }
+
+    /**
+     * Observe new sample in incremental analysis, where the median of RSSI is maintained outside
+     * of the model (e.g. by {@link io.heraldprox.herald.sensor.analysis.aggregates.SlidingWindowMedian})
+     * and samples are not mapped. Override to update model state from new samples.
+     * @param taken Time of sample in milliseconds since epoch.
+     * @param value Sample value.
+     */
+    public void observe(final long taken, final double value) {
     }
 
     @Nullable
     @Override
     public Double reduce() {
-        final Double medianOfRssi = medianOfRssi();
+        return reduce(medianOfRssi());
+    }
+
+    /**
+     * Estimate distance from median of RSSI.
+     * @param medianOfRssi Median of RSSI, e.g. from mapped samples or a sliding window median.
+     * @return Distance in metres, or null if median is null or out of model range.
+     */
+    @Nullable
+    public Double reduce(@Nullable final Double medianOfRssi) {
         if (null == medianOfRssi) {
             logger.debug("reduce, medianOfRssi is null");
             return null;
@@ -6,14 +6,16 @@ package io.heraldprox.herald.sensor.analysis.algorithms.distance;
 
 import androidx.annotation.NonNull;
 
+import io.heraldprox.herald.sensor.analysis.aggregates.SlidingWindowMedian;
 import io.heraldprox.herald.sensor.analysis.sampling.AnalysisProvider;
 import io.heraldprox.herald.sensor.analysis.sampling.CallableForNewSample;
-import io.heraldprox.herald.sensor.analysis.sampling.Filter;
+import io.heraldprox.herald.sensor.analysis.sampling.DoubleFilter;
+import io.heraldprox.herald.sensor.analysis.sampling.DoubleSampleRing;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
 import io.heraldprox.herald.sensor.analysis.sampling.SampleList;
+import io.heraldprox.herald.sensor.analysis.sampling.SampleView;
 import io.heraldprox.herald.sensor.analysis.sampling.SampledID;
 import io.heraldprox.herald.sensor.analysis.views.InRange;
-import io.heraldprox.herald.sensor.analysis.views.Since;
 import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
 import io.heraldprox.herald.sensor.data.SensorLogger;
 import io.heraldprox.herald.sensor.datatype.Date;
@@ -21,6 +23,10 @@ import io.heraldprox.herald.sensor.datatype.Distance;
 import io.heraldprox.herald.sensor.datatype.RSSI;
 import io.heraldprox.herald.sensor.datatype.TimeInterval;
 
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class SmoothedLinearModelAnalyser implements AnalysisProvider<RSSI, Distance> {
     private final SensorLogger logger = new ConcreteSensorLogger("Analysis", "SmoothedLinearModelAnalyser");
     @NonNull
@@ -30,8 +36,21 @@ public class SmoothedLinearModelAnalyser implements AnalysisProvider<RSSI, Dista
     @NonNull
     private final SmoothedLinearModel model;
     @NonNull
-    private Date lastRan = new Date(0);
-    private final Filter<RSSI> valid = new InRange<>(-99, -10);
+    private volatile Date lastRan = new Date(0);
+    private final DoubleFilter<RSSI> valid = new InRange<>(-99, -10);
+    // Sliding window median of valid samples in smoothing window for each target
+    private final Map<SampledID, Window> windows = new ConcurrentHashMap<>();
+    // Start of smoothing window when expired windows were last evicted, in milliseconds since epoch
+    private volatile long lastEvicted = Long.MIN_VALUE;
+
+    /**
+     * Smoothing window state of a target, updated incrementally on every run.
+     */
+    private final static class Window {
+        private final SlidingWindowMedian median = new SlidingWindowMedian(-99, -10);
+        // Time of newest input sample added to window
+        private volatile long latest = Long.MIN_VALUE;
+    }
 
     public SmoothedLinearModelAnalyser() {
         this(new TimeInterval(4), new TimeInterval(60), new SmoothedLinearModel<RSSI>());
@@ -63,10 +82,15 @@ public class SmoothedLinearModelAnalyser implements AnalysisProvider<RSSI, Dista
             logger.debug("analyse, skipped (reason=elapsedSinceLastRanBelowInterval,interval={}s,timeSinceLastRan={}s,lastRan={})", interval, secondsSinceLastRan, lastRan);
             return false;
         }
+        // Drop smoothing windows of targets that have not been observed within the window,
+        // e.g. rotated pseudo device addresses
+        final long windowStart = new Date(timeNow.secondsSinceUnixEpoch() - smoothingWindow.value).getTime();
+        evict(windowStart);
         // Input guard : Must have valid data to analyse
-        final SampleList<RSSI> validInput = input.filter(valid).toView();
+        final SampleView<RSSI> validInput = input.filter(valid);
         if (0 == validInput.size()) {
             logger.debug("analyse, skipped (reason=noValidData,inputSamples={},validInputSamples={})", input.size(), validInput.size());
+            windows.remove(sampled);
             return false;
         }
         // Input guard : Must cover entire smoothing window
@@ -80,37 +104,100 @@ public class SmoothedLinearModelAnalyser implements AnalysisProvider<RSSI, Dista
             logger.debug("analyse, skipped (reason=insufficientHistoricDataForSmoothing,required={}s,observed={}s)", smoothingWindow, observed);
             return false;
         }
+        // Update smoothing window with new samples and remove expired samples
+        final Window window = window(sampled, input, windowStart);
         // Input guard : Must have sufficient data in smoothing window
-        final SampleList<RSSI> window = validInput.filter(new Since<>(timeNow.secondsSinceUnixEpoch() - smoothingWindow.value)).toView();
-        if (window.size() < 5) {
-            logger.debug("analyse, skipped (reason=insufficientDataInSmoothingWindow,minimum=5,samplesInWindow={})", window.size());
+        if (window.median.size() < 5) {
+            logger.debug("analyse, skipped (reason=insufficientDataInSmoothingWindow,minimum=5,samplesInWindow={})", window.median.size());
             return false;
         }
-        // Estimate distance based on smoothed linear model
-        model.reset();
-        final Double distance = window.aggregate(model).get(SmoothedLinearModel.class);
+        // Estimate distance based on smoothed linear model, which is shared by all targets.
+        // The model is not reset, as it does not hold per-run state for this estimate and
+        // resetting a self-calibrated model clears its RSSI histogram.
+        final Double medianOfRssi = window.median.median();
+        final Double distance;
+        synchronized (model) {
+            distance = model.reduce(medianOfRssi);
+        }
         if (null == distance) {
-            logger.debug("analyse, skipped (reason=outOfModelRange,mediaOfRssi={})", model.medianOfRssi());
+            logger.debug("analyse, skipped (reason=outOfModelRange,mediaOfRssi={})", medianOfRssi);
             return false;
         }
         // Publish distance data
-        final Sample<RSSI> sampleStart = window.get(0);
-        if (null == sampleStart) {
-            logger.debug("analyse, skipped (reason=emptyWindow)");
-            return false;
-        }
-        final Date timeStart = sampleStart.taken();
-        final Date timeEnd = window.latest();
-        if (null == timeEnd) {
-            logger.debug("analyse, skipped (reason=missingTimeEnd)");
-            return false;
-        }
+        final Date timeStart = new Date(window.median.oldest() / 1000);
+        final Date timeEnd = new Date(window.median.newest() / 1000);
         final Date timeMiddle = new Date(timeEnd.secondsSinceUnixEpoch() - ((timeEnd.secondsSinceUnixEpoch() - timeStart.secondsSinceUnixEpoch()) / 2));
-        logger.debug("analyse (timeStart={},timeEnd={},timeMiddle={},samples={},medianOfRssi={},distance={})", timeStart, timeEnd, timeMiddle, window.size(), model.medianOfRssi(), distance);
+        logger.debug("analyse (timeStart={},timeEnd={},timeMiddle={},samples={},medianOfRssi={},distance={})", timeStart, timeEnd, timeMiddle, window.median.size(), medianOfRssi, distance);
         final Sample<Distance> newSample = new Sample<>(timeMiddle, new Distance(distance));
         output.push(newSample);
         callable.newSample(sampled, newSample);
         lastRan = new Date();
         return true;
     }
+
+    /**
+     * Number of targets with smoothing window state.
+     * @return Window count.
+     */
+    public int windows() {
+        return windows.size();
+    }
+
+    /**
+     * Remove smoothing windows where the newest sample was taken before the start of the
+     * window, at most once per smoothing window. A target that reappears afterwards has
+     * its window rebuilt from its input samples, with the same result.
+     * @param windowStart Start of smoothing window in milliseconds since epoch.
+     */
+    private void evict(final long windowStart) {
+        if (Long.MIN_VALUE != lastEvicted && windowStart - lastEvicted < smoothingWindow.value * 1000) {
+            return;
+        }
+        lastEvicted = windowStart;
+        for (final Iterator<Window> iterator = windows.values().iterator(); iterator.hasNext();) {
+            if (iterator.next().latest < windowStart) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Update smoothing window of target with valid input samples taken since the last update,
+     * and remove samples taken before the start of the window. The window is rebuilt from all
+     * input samples if the input is not in time order.
+     * @param sampled Target.
+     * @param input Input samples of target.
+     * @param windowStart Start of smoothing window in milliseconds since epoch.
+     * @return Updated smoothing window.
+     */
+    @NonNull
+    private Window window(@NonNull final SampledID sampled, @NonNull final SampleList<RSSI> input, final long windowStart) {
+        Window window = windows.get(sampled);
+        if (null == window) {
+            window = new Window();
+            windows.put(sampled, window);
+        }
+        final DoubleSampleRing ring = input.ring();
+        final int size = ring.size();
+        if (!ring.ordered()) {
+            window.median.clear();
+            window.latest = Long.MIN_VALUE;
+        }
+        final int from = (Long.MIN_VALUE == window.latest ? 0 : ring.indexAfter(window.latest, 0, size));
+        for (int i=from; i<size; i++) {
+            final long taken = ring.taken(i);
+            final double value = ring.value(i);
+            if (taken >= windowStart && valid.test(taken, value)) {
+                window.median.add(taken, value);
+                synchronized (model) {
+                    model.observe(taken, value);
+                }
+            }
+            if (taken > window.latest) {
+                window.latest = taken;
+            }
+        }
+        window.median.clearBefore(windowStart);
+        return window;
+    }
 }
@@ -6,7 +6,7 @@ package io.heraldprox.herald.sensor.analysis.algorithms.risk;
 
 import androidx.annotation.NonNull;
 
-import io.heraldprox.herald.sensor.analysis.sampling.Aggregate;
+import io.heraldprox.herald.sensor.analysis.sampling.DoubleAggregate;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
@@ -17,7 +17,7 @@ import io.heraldprox.herald.sensor.datatype.DoubleValue;
  * NOT FOR PRODUCTION EPIDEMIOLOGICAL USE - SAMPLE ONLY!!!
  * @param <T>
  */
-public class RiskAggregationBasic<T extends DoubleValue> implements Aggregate<T> {
+public class RiskAggregationBasic<T extends DoubleValue> implements DoubleAggregate<T> {
     private int run = 1;
     private final double timeScale;
     private final double distanceScale;
@@ -66,11 +66,16 @@ public class RiskAggregationBasic<T extends DoubleValue> implements Aggregate<T>
 
     @Override
     public void map(@NonNull Sample<T> value) {
+        map(value.taken().getTime(), value.value().doubleValue());
+    }
+
+    @Override
+    public void map(final long taken, final double value) {
         nMinusOne = n;
         timeMinusOne = time;
-        n = value.value().doubleValue();
-        time = value.taken().secondsSinceUnixEpoch();
-   }
+        n = value;
+        time = taken / 1000;
+    }
 
     @Override
     public Double reduce() {
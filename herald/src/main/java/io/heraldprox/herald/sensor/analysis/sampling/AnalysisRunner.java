@@ -5,12 +5,37 @@
 package io.heraldprox.herald.sensor.analysis.sampling;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
 import io.heraldprox.herald.sensor.data.SensorLogger;
 import io.heraldprox.herald.sensor.datatype.Date;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs analysis providers for all targets, either serially on the calling thread, or in
+ * parallel on a bounded pool of worker threads.
+ * <br>
+ * In parallel mode, targets are partitioned into shards by {@link ListManager#shard(SampledID, int)}
+ * and each shard is analysed by one task, such that the targets of a shard are analysed
+ * serially. Each target is analysed while holding its shard lock, in both modes. The call to run returns immediately, and
+ * <br>- targets that are still being analysed from a previous run are skipped;
+ * <br>- shards that cannot be queued because all workers are busy and the queue is full are
+ *   rejected, and their targets are analysed in a later run.
+ * <br>
+ * Analysis providers must be safe for concurrent analysis of different targets in parallel mode.
+ */
 public class AnalysisRunner {
     private final SensorLogger logger = new ConcreteSensorLogger("Analysis", "AnalysisRunner");
     @NonNull
@@ -19,11 +44,54 @@ public class AnalysisRunner {
     private final AnalysisDelegateManager analysisDelegateManager;
     @NonNull
     private final VariantSet variantSet;
+    @Nullable
+    private final ThreadPoolExecutor executor;
+    private final int shards;
+    // Targets being analysed, for skipping targets that are still running
+    @NonNull
+    private final Map<SampledID, Boolean> running = new ConcurrentHashMap<>();
+    // Metrics
+    private long runs = 0;
+    private long analysed = 0;
+    private long skipped = 0;
+    private long rejected = 0;
+    private long lastRunLatency = 0;
+    private long maxRunLatency = 0;
+    private long totalRunLatency = 0;
 
+    /**
+     * Analysis runner that analyses all targets serially on the calling thread.
+     */
     public AnalysisRunner(@NonNull final AnalysisProviderManager analysisProviderManager, @NonNull final AnalysisDelegateManager analysisDelegateManager, final int defaultListSize) {
         this.analysisDelegateManager = analysisDelegateManager;
         this.analysisProviderManager = analysisProviderManager;
         this.variantSet = new VariantSet(defaultListSize);
+        this.executor = null;
+        this.shards = 1;
+    }
+
+    /**
+     * Analysis runner that analyses targets in parallel.
+     * @param threads Number of worker threads.
+     * @param shards Number of shards to partition targets into, which is also the maximum
+     *               number of shard tasks that can be queued.
+     */
+    public AnalysisRunner(@NonNull final AnalysisProviderManager analysisProviderManager, @NonNull final AnalysisDelegateManager analysisDelegateManager, final int defaultListSize, final int threads, final int shards) {
+        this.analysisDelegateManager = analysisDelegateManager;
+        this.analysisProviderManager = analysisProviderManager;
+        this.variantSet = new VariantSet(defaultListSize, shards);
+        this.shards = Math.max(1, shards);
+        final AtomicInteger threadNumber = new AtomicInteger(0);
+        this.executor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(this.shards), new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "AnalysisRunner-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.executor.allowCoreThreadTimeOut(true);
     }
 
     @NonNull
@@ -40,8 +108,180 @@ public class AnalysisRunner {
     }
 
     public void run(@NonNull final Date timeNow) {
+        final long start = System.nanoTime();
+        if (null == executor) {
+            int count = 0;
+            for (final SampledID sampled : variantSet.sampledIDs()) {
+                analyse(timeNow, sampled);
+                count++;
+            }
+            completed(start, count, 0, 0);
+            return;
+        }
+        // Partition targets into shards, skipping targets that are still running
+        final List<List<SampledID>> partitions = new ArrayList<>(shards);
+        for (int i=0; i<shards; i++) {
+            partitions.add(new ArrayList<SampledID>());
+        }
+        int skippedTargets = 0;
         for (final SampledID sampled : variantSet.sampledIDs()) {
-            analysisProviderManager.analyse(timeNow, sampled, variantSet, analysisDelegateManager);
+            if (null != running.put(sampled, Boolean.TRUE)) {
+                skippedTargets++;
+                continue;
+            }
+            partitions.get(ListManager.shard(sampled, shards)).add(sampled);
+        }
+        // Submit one task per shard, and wait for the last task to complete to record latency
+        final AtomicInteger pending = new AtomicInteger(1);
+        final AtomicInteger analysedTargets = new AtomicInteger(0);
+        final AtomicInteger rejectedTargets = new AtomicInteger(0);
+        final int skippedTargetsFinal = skippedTargets;
+        for (int i=0; i<shards; i++) {
+            final List<SampledID> partition = partitions.get(i);
+            if (partition.isEmpty()) {
+                continue;
+            }
+            pending.incrementAndGet();
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (final SampledID sampled : partition) {
+                            try {
+                                analyse(timeNow, sampled);
+                                analysedTargets.incrementAndGet();
+                            } finally {
+                                running.remove(sampled);
+                            }
+                        }
+                        if (0 == pending.decrementAndGet()) {
+                            completed(start, analysedTargets.get(), skippedTargetsFinal, rejectedTargets.get());
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Back-pressure : analyse targets in shard in a later run
+                for (final SampledID sampled : partition) {
+                    running.remove(sampled);
+                }
+                rejectedTargets.addAndGet(partition.size());
+                pending.decrementAndGet();
+            }
+        }
+        if (0 == pending.decrementAndGet()) {
+            completed(start, analysedTargets.get(), skippedTargets, rejectedTargets.get());
+        }
+    }
+
+    /**
+     * Stop worker threads after pending tasks have completed. The runner cannot run in parallel
+     * mode after shutdown.
+     */
+    public void shutdown() {
+        if (null != executor) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Analyse target while holding its shard lock, such that samples cannot be pushed to its
+     * lists during analysis.
+     */
+    private void analyse(@NonNull final Date timeNow, @NonNull final SampledID sampled) {
+        try {
+            synchronized (variantSet.lock(sampled)) {
+                analysisProviderManager.analyse(timeNow, sampled, variantSet, analysisDelegateManager);
+            }
+        } catch (Throwable e) {
+            logger.fault("analyse failed (sampled={})", sampled, e);
+        }
+    }
+
+    private void completed(final long start, final int analysedTargets, final int skippedTargets, final int rejectedTargets) {
+        final long latency = (System.nanoTime() - start) / 1000000;
+        synchronized (this) {
+            runs++;
+            analysed += analysedTargets;
+            skipped += skippedTargets;
+            rejected += rejectedTargets;
+            lastRunLatency = latency;
+            maxRunLatency = Math.max(maxRunLatency, latency);
+            totalRunLatency += latency;
         }
+        logger.debug("run (analysed={},skipped={},rejected={},latency={}ms)", analysedTargets, skippedTargets, rejectedTargets, latency);
+    }
+
+    // MARK: - Metrics
+
+    /**
+     * Number of completed runs.
+     * @return Run count.
+     */
+    public synchronized long runs() {
+        return runs;
+    }
+
+    /**
+     * Number of targets analysed in all runs.
+     * @return Target count.
+     */
+    public synchronized long analysed() {
+        return analysed;
+    }
+
+    /**
+     * Number of targets skipped because they were still being analysed from a previous run.
+     * @return Target count.
+     */
+    public synchronized long skipped() {
+        return skipped;
+    }
+
+    /**
+     * Number of targets rejected because all workers were busy and the queue was full.
+     * @return Target count.
+     */
+    public synchronized long rejected() {
+        return rejected;
+    }
+
+    /**
+     * Time taken from start of the most recent completed run until all its targets were analysed.
+     * @return Latency in milliseconds.
+     */
+    public synchronized long lastRunLatency() {
+        return lastRunLatency;
+    }
+
+    /**
+     * Maximum time taken to complete one run.
+     * @return Latency in milliseconds.
+     */
+    public synchronized long maxRunLatency() {
+        return maxRunLatency;
+    }
+
+    /**
+     * Mean time taken to complete one run.
+     * @return Latency in milliseconds.
+     */
+    public synchronized long meanRunLatency() {
+        return (0 == runs ? 0 : totalRunLatency / runs);
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        return "AnalysisRunner{" +
+                "threads=" + (null == executor ? 0 : executor.getPoolSize()) +
+                ", shards=" + shards +
+                ", runs=" + runs +
+                ", analysed=" + analysed +
+                ", skipped=" + skipped +
+                ", rejected=" + rejected +
+                ", lastRunLatency=" + lastRunLatency +
+                ", maxRunLatency=" + maxRunLatency +
+                ", meanRunLatency=" + meanRunLatency() +
+                '}';
     }
 }
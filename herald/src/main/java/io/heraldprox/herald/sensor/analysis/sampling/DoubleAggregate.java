@@ -0,0 +1,24 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.sampling;
+
+import io.heraldprox.herald.sensor.datatype.DoubleValue;
+
+/**
+ * Aggregate that accepts primitive samples, enabling {@link SampleList#aggregate(Aggregate[])}
+ * to map samples from the underlying {@link DoubleSampleRing} without creating {@link Sample}
+ * objects. Implementations should give the same result for map(Sample) and map(taken, value),
+ * and subclasses overriding one should override both.
+ * @param <T>
+ */
+public interface DoubleAggregate<T extends DoubleValue> extends Aggregate<T> {
+
+    /**
+     * Map primitive sample.
+     * @param taken Time of sample in milliseconds since epoch.
+     * @param value Sample value.
+     */
+    void map(final long taken, final double value);
+}
@@ -0,0 +1,22 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.sampling;
+
+/**
+ * Filter that tests primitive samples, enabling {@link SampleView} to filter samples in the
+ * underlying {@link DoubleSampleRing} without creating {@link Sample} objects. Implementations
+ * should give the same result for test(Sample) and test(taken, value).
+ * @param <T>
+ */
+public interface DoubleFilter<T> extends Filter<T> {
+
+    /**
+     * Test primitive sample.
+     * @param taken Time of sample in milliseconds since epoch.
+     * @param value Sample value.
+     * @return True if sample is accepted by filter.
+     */
+    boolean test(final long taken, final double value);
+}
@@ -0,0 +1,235 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.sampling;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Fixed capacity ring of primitive samples, held in parallel arrays of sample time and value,
+ * where pushing a sample onto a full ring replaces the oldest sample. Samples are expected to
+ * be pushed in time order, which enables binary search by time. Push, random access and cursor iteration do not allocate objects.
+ * <br>
+ * Sample time is stored in milliseconds since epoch, as given by {@link java.util.Date#getTime()},
+ * such that samples can be converted to and from {@link Sample} without loss of precision.
+ */
+public class DoubleSampleRing {
+    @NonNull
+    private final long[] taken;
+    @NonNull
+    private final double[] values;
+    // Slot of oldest sample and number of samples in ring
+    private int oldest = 0;
+    private int count = 0;
+    // Samples are in time order, enabling binary search by time
+    private boolean ordered = true;
+
+    /**
+     * Cursor for iterating over samples from oldest to newest without allocation.
+     * Call {@link #next()} to move to the first and subsequent samples.
+     */
+    public final static class Cursor {
+        @NonNull
+        private final DoubleSampleRing ring;
+        private int index = -1;
+        private int slot = -1;
+
+        private Cursor(@NonNull final DoubleSampleRing ring) {
+            this.ring = ring;
+        }
+
+        /**
+         * Move to next sample.
+         * @return True if cursor is on a sample, false if there are no more samples.
+         */
+        public boolean next() {
+            if (index + 1 >= ring.count) {
+                return false;
+            }
+            index++;
+            slot = (-1 == slot ? ring.oldest : slot + 1);
+            if (slot == ring.taken.length) {
+                slot = 0;
+            }
+            return true;
+        }
+
+        /**
+         * Move cursor before the first sample, such that the ring can be iterated again.
+         */
+        public void reset() {
+            index = -1;
+            slot = -1;
+        }
+
+        /**
+         * Index of current sample, where 0 is the oldest sample.
+         */
+        public int index() {
+            return index;
+        }
+
+        /**
+         * Time of current sample in milliseconds since epoch.
+         */
+        public long taken() {
+            return ring.taken[slot];
+        }
+
+        /**
+         * Value of current sample.
+         */
+        public double value() {
+            return ring.values[slot];
+        }
+    }
+
+    /**
+     * Ring of samples.
+     * @param capacity Maximum number of samples.
+     */
+    public DoubleSampleRing(final int capacity) {
+        this.taken = new long[capacity];
+        this.values = new double[capacity];
+    }
+
+    public int capacity() {
+        return taken.length;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Push sample onto ring, replacing the oldest sample if the ring is full.
+     * @param taken Time of sample in milliseconds since epoch.
+     * @param value Sample value.
+     * @return Slot of new sample, or -1 if ring has zero capacity.
+     */
+    public int push(final long taken, final double value) {
+        if (0 == this.taken.length) {
+            return -1;
+        }
+        if (count > 0 && taken < this.taken[slot(count - 1)]) {
+            ordered = false;
+        }
+        final int slot;
+        if (count < this.taken.length) {
+            slot = slot(count);
+            count++;
+        } else {
+            slot = oldest;
+            oldest = (oldest + 1 == this.taken.length ? 0 : oldest + 1);
+        }
+        this.taken[slot] = taken;
+        this.values[slot] = value;
+        return slot;
+    }
+
+    /**
+     * Time of sample in milliseconds since epoch.
+     * @param index Sample index, where 0 is the oldest sample.
+     */
+    public long taken(final int index) {
+        return taken[slot(index)];
+    }
+
+    /**
+     * Value of sample.
+     * @param index Sample index, where 0 is the oldest sample.
+     */
+    public double value(final int index) {
+        return values[slot(index)];
+    }
+
+    /**
+     * Remove samples from oldest onwards that were taken before the given time.
+     * @param before Time in milliseconds since epoch.
+     */
+    public void clearBefore(final long before) {
+        while (count > 0 && taken[oldest] < before) {
+            oldest = (oldest + 1 == taken.length ? 0 : oldest + 1);
+            count--;
+        }
+        if (0 == count) {
+            oldest = 0;
+            ordered = true;
+        }
+    }
+
+    public void clear() {
+        oldest = 0;
+        count = 0;
+        ordered = true;
+    }
+
+    /**
+     * Test if samples have been pushed in time order since the ring was last empty. Binary search
+     * by time is only valid for ordered rings.
+     * @return True if samples are in time order.
+     */
+    public boolean ordered() {
+        return ordered;
+    }
+
+    /**
+     * Binary search for the first sample taken at or after the given time in an ordered ring.
+     * @param time Time in milliseconds since epoch.
+     * @param from Index of first sample to search, inclusive.
+     * @param to Index of last sample to search, exclusive.
+     * @return Index of first sample in range taken at or after time, or {@code to} if none.
+     */
+    public int indexNotBefore(final long time, final int from, final int to) {
+        int low = from, high = to;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (taken[slot(mid)] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Binary search for the first sample taken after the given time in an ordered ring.
+     * @param time Time in milliseconds since epoch.
+     * @param from Index of first sample to search, inclusive.
+     * @param to Index of last sample to search, exclusive.
+     * @return Index of first sample in range taken after time, or {@code to} if none.
+     */
+    public int indexAfter(final long time, final int from, final int to) {
+        int low = from, high = to;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (taken[slot(mid)] <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Create cursor for iterating over samples from oldest to newest.
+     * @return New cursor positioned before the oldest sample.
+     */
+    @NonNull
+    public Cursor cursor() {
+        return new Cursor(this);
+    }
+
+    /**
+     * Array slot of sample.
+     * @param index Sample index, where 0 is the oldest sample.
+     * @return Array slot.
+     */
+    protected int slot(final int index) {
+        final int slot = oldest + index;
+        return (slot >= taken.length ? slot - taken.length : slot);
+    }
+}
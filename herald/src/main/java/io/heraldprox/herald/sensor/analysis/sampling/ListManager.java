@@ -8,47 +8,129 @@ import androidx.annotation.NonNull;
 
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Sample list for each target. Targets are partitioned into shards by {@link #shard(SampledID, int)},
+ * and updates to the lists of a shard are guarded by a lock per shard, such that lists of
+ * different shards can be updated concurrently.
+ * @param <T>
+ */
 public class ListManager<T extends DoubleValue> {
+    public final static int defaultShards = 16;
     private final int listSize;
-    private final Map<SampledID, SampleList<T>> map = new ConcurrentHashMap<>();
+    private final ConcurrentMap<SampledID, SampleList<T>> map = new ConcurrentHashMap<>();
+    @NonNull
+    private final Object[] locks;
 
     public ListManager(final int listSize) {
+        this(listSize, defaultShards);
+    }
+
+    /**
+     * List manager with lock per shard.
+     * @param listSize Sample list size for each target.
+     * @param shards Number of shards.
+     */
+    public ListManager(final int listSize, final int shards) {
+        this(listSize, locks(shards));
+    }
+
+    /**
+     * List manager sharing shard locks with other list managers, such that the lists of a
+     * target in all list managers are guarded by the same lock.
+     * @param listSize Sample list size for each target.
+     * @param locks Lock for each shard.
+     */
+    ListManager(final int listSize, @NonNull final Object[] locks) {
         this.listSize = listSize;
+        this.locks = locks;
     }
 
+    /**
+     * Create shard locks.
+     * @param shards Number of shards.
+     * @return Lock for each shard.
+     */
     @NonNull
-    public synchronized SampleList<T> list(final SampledID listFor) {
-        SampleList<T> list = map.get(listFor);
-        if (null == list) {
-            list = new SampleList<>(listSize);
-            map.put(listFor, list);
+    static Object[] locks(final int shards) {
+        final Object[] locks = new Object[Math.max(1, shards)];
+        for (int i=0; i<locks.length; i++) {
+            locks[i] = new Object();
         }
-        return list;
+        return locks;
     }
 
+    /**
+     * Shard of target.
+     * @param sampledID Target.
+     * @param shards Number of shards.
+     * @return Shard index in [0, shards).
+     */
+    public static int shard(@NonNull final SampledID sampledID, final int shards) {
+        final int shard = sampledID.hashCode() % shards;
+        return (shard < 0 ? shard + shards : shard);
+    }
+
+    /**
+     * Lock guarding the sample list of a target, for reading the list consistently while
+     * samples are being pushed from another thread.
+     * @param sampledID Target.
+     * @return Lock of shard containing target.
+     */
     @NonNull
-    public synchronized Set<SampledID> sampledIDs() {
-        return map.keySet();
+    public Object lock(@NonNull final SampledID sampledID) {
+        return locks[shard(sampledID, locks.length)];
+    }
+
+    @NonNull
+    public SampleList<T> list(final SampledID listFor) {
+        final SampleList<T> list = map.get(listFor);
+        if (null != list) {
+            return list;
+        }
+        synchronized (lock(listFor)) {
+            final SampleList<T> newList = new SampleList<>(listSize);
+            final SampleList<T> existingList = map.putIfAbsent(listFor, newList);
+            return (null == existingList ? newList : existingList);
+        }
     }
 
-    public synchronized void remove(@NonNull final SampledID listFor) {
-        map.remove(listFor);
+    @NonNull
+    public Set<SampledID> sampledIDs() {
+        return map.keySet();
+    }
 
+    public void remove(@NonNull final SampledID listFor) {
+        synchronized (lock(listFor)) {
+            map.remove(listFor);
+        }
     }
 
-    public synchronized int size() {
+    public int size() {
         return map.size();
     }
 
-    public synchronized void clear() {
+    public void clear() {
         map.clear();
     }
 
-    public synchronized void push(@NonNull final SampledID sampledID, @NonNull final Sample<T> sample) {
-        list(sampledID).push(sample);
+    /**
+     * Push sample to list of target. The list is looked up or created and updated while holding
+     * the shard lock, such that a concurrent {@link #remove(SampledID)} cannot orphan the list.
+     * @param sampledID Target.
+     * @param sample Sample.
+     */
+    public void push(@NonNull final SampledID sampledID, @NonNull final Sample<T> sample) {
+        synchronized (lock(sampledID)) {
+            SampleList<T> list = map.get(sampledID);
+            if (null == list) {
+                list = new SampleList<>(listSize);
+                map.put(sampledID, list);
+            }
+            list.push(sample);
+        }
     }
 }
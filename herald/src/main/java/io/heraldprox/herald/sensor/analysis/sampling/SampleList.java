@@ -14,34 +14,44 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+/**
+ * Fixed capacity list of samples, where pushing a sample onto a full list replaces the oldest
+ * sample. Sample time and value are held in a {@link DoubleSampleRing} for allocation-free push,
+ * cursor iteration and aggregation by {@link DoubleAggregate}, and {@link Sample} objects are
+ * only created on demand for {@link #get(int)} and iteration. Filtering returns a
+ * {@link SampleView} that refers to samples in this list rather than copying them, and
+ * aggregation collects the statistics required by all {@link StatisticsAggregate} in a single
+ * fused pass.
+ * @param <T>
+ */
 @SuppressWarnings("unchecked")
 public class SampleList<T extends DoubleValue> implements Iterable<Sample<T>>, Filterable<T> {
     @NonNull
-    private final Sample[] data;
-    private int oldestPosition, newestPosition;
+    private final DoubleSampleRing ring;
+    // Value and sample objects for each ring slot, where samples are created on demand
+    @NonNull
+    private final Object[] values;
+    @NonNull
+    private final Sample[] samples;
+    // Statistics for fused aggregation, reused to avoid allocation
+    @NonNull
+    private final Statistics statistics = new Statistics();
 
     public SampleList(final int size) {
-        this.data = new Sample[size];
-        this.oldestPosition = size;
-        this.newestPosition = size;
+        this.ring = new DoubleSampleRing(size);
+        this.values = new Object[size];
+        this.samples = new Sample[size];
     }
 
     public SampleList(final int size, @NonNull final Sample<T> ... samples) {
-        this.data = new Sample[size];
-        this.oldestPosition = size;
-        this.newestPosition = size;
+        this(size);
         for (final Sample<T> sample : samples) {
             push(sample);
         }
     }
 
     public SampleList(@NonNull final Sample<T> ... samples) {
-        this.data = new Sample[samples.length];
-        this.oldestPosition = data.length;
-        this.newestPosition = data.length;
-        for (final Sample<T> sample : samples) {
-            push(sample);
-        }
+        this(samples.length, samples);
     }
 
     public SampleList(@NonNull final Iterator<Sample<T>> iterator) {
@@ -59,8 +69,12 @@ public class SampleList<T extends DoubleValue> implements Iterable<Sample<T>>, F
     }
 
     public void push(@NonNull final Sample<T> sample) {
-        incrementNewest();
-        data[newestPosition] = sample;
+        final int slot = ring.push(sample.taken().getTime(), sample.value().doubleValue());
+        if (slot < 0) {
+            return;
+        }
+        values[slot] = sample.value();
+        samples[slot] = sample;
     }
 
     public void push(@NonNull final Date taken, @NonNull final T value) {
@@ -68,98 +82,76 @@ public class SampleList<T extends DoubleValue> implements Iterable<Sample<T>>, F
     }
 
     public void push(final long secondsSinceUnixEpoch, @NonNull final T value) {
-        push(new Sample<>(new Date(secondsSinceUnixEpoch), value));
+        final int slot = ring.push(secondsSinceUnixEpoch * 1000, value.doubleValue());
+        if (slot < 0) {
+            return;
+        }
+        values[slot] = value;
+        samples[slot] = null;
     }
 
     public int size() {
-        if (newestPosition == data.length) return 0;
-        if (newestPosition >= oldestPosition) {
-            // not overlapping the end
-            return newestPosition - oldestPosition + 1;
-        }
-        // we've overlapped
-        return (1 + newestPosition) + (data.length - oldestPosition);
+        return ring.size();
     }
 
     @Nullable
     public Sample<T> get(final int index) {
-        if (newestPosition >= oldestPosition) {
-            return data[index + oldestPosition];
+        if (index < 0 || index >= ring.size()) {
+            return null;
         }
-        if (index + oldestPosition >= data.length) {
-            // TODO handle the situation where this pos > newestPosition (i.e. gap in the middle)
-            return data[index + oldestPosition - data.length];
+        final int slot = ring.slot(index);
+        Sample<T> sample = samples[slot];
+        if (null == sample) {
+            final long taken = ring.taken(index);
+            final Date date = (0 == taken % 1000 ? new Date(taken / 1000) : new Date(new java.util.Date(taken)));
+            sample = new Sample<>(date, (T) values[slot]);
+            samples[slot] = sample;
         }
-        return data[index + oldestPosition];
+        return sample;
+    }
+
+    /**
+     * Get primitive sample ring backing this list.
+     * @return Sample ring for allocation-free access to sample time and value.
+     */
+    @NonNull
+    public DoubleSampleRing ring() {
+        return ring;
+    }
+
+    /**
+     * Create cursor for iterating over sample time and value from oldest to newest
+     * without creating {@link Sample} objects.
+     * @return New cursor positioned before the oldest sample.
+     */
+    @NonNull
+    public DoubleSampleRing.Cursor cursor() {
+        return ring.cursor();
     }
 
     public void clearBeforeDate(@NonNull final Date before) {
-        if (oldestPosition == data.length) return;
-        while (oldestPosition != newestPosition) {
-            if (data[oldestPosition].taken().getTime() < before.getTime()) {
-                ++oldestPosition;
-                if (data.length == oldestPosition) {
-                    // overflowed
-                    oldestPosition = 0;
-                }
-            } else {
-                return;
-            }
-        }
-        // now we're on the last element
-        if (data[oldestPosition].taken().getTime() < before.getTime()) {
-            oldestPosition = data.length;
-            newestPosition = data.length;
-        }
+        ring.clearBefore(before.getTime());
     }
 
     public void clear() {
-        oldestPosition = data.length;
-        newestPosition = data.length;
+        ring.clear();
     }
 
     @Nullable
     public Date latest() {
-        if (newestPosition == data.length) {
-            return null;
-        }
-        if (null == data[newestPosition]) {
+        final Sample<T> sample = get(ring.size() - 1);
+        if (null == sample) {
             return null;
         }
-        return data[newestPosition].taken();
+        return sample.taken();
     }
 
     @Nullable
     public T latestValue() {
-        if (newestPosition == data.length) {
-            return null;
-        }
-        if (null == data[newestPosition]) {
+        if (0 == ring.size()) {
             return null;
         }
-        return (T) data[newestPosition].value();
-    }
-
-    private void incrementNewest() {
-        if (newestPosition == data.length) {
-            newestPosition = 0;
-            oldestPosition = 0;
-        } else {
-            if (newestPosition == (oldestPosition - 1)) {
-                ++oldestPosition;
-                if (oldestPosition == data.length) {
-                    oldestPosition = 0;
-                }
-            }
-            ++newestPosition;
-        }
-        if (newestPosition == data.length) {
-            // just gone past the end of the container
-            newestPosition = 0;
-            if (0 == oldestPosition) {
-                ++oldestPosition; // erases oldest if not already removed
-            }
-        }
+        return (T) values[ring.slot(ring.size() - 1)];
     }
 
     @NonNull
@@ -169,19 +161,13 @@ public class SampleList<T extends DoubleValue> implements Iterable<Sample<T>>, F
             private int index = 0;
             @Override
             public boolean hasNext() {
-                return index < size();
+                return index < ring.size();
             }
 
             @Nullable
             @Override
             public Sample<T> next() {
-                try {
-                    //noinspection UnnecessaryLocalVariable
-                    final Sample<T> value = get(index++);
-                    return value;
-                } catch (Throwable e) {
-                    return null;
-                }
+                return get(index++);
             }
 
             @Override
@@ -191,10 +177,15 @@ public class SampleList<T extends DoubleValue> implements Iterable<Sample<T>>, F
         };
     }
 
+    /**
+     * Filter samples without copying.
+     * @param filter Filter for selecting samples.
+     * @return View of samples in this list accepted by filter.
+     */
     @NonNull
     @Override
-    public IteratorProxy<T> filter(@NonNull final Filter filter) {
-        return new IteratorProxy<>(iterator(), filter);
+    public SampleView<T> filter(@NonNull final Filter filter) {
+        return new SampleView<>(this, 0, ring.size(), null).filter(filter);
     }
 
     @NonNull
@@ -216,24 +207,90 @@ public class SampleList<T extends DoubleValue> implements Iterable<Sample<T>>, F
 
     @NonNull
     public Summary<T> aggregate(@NonNull final Aggregate<T> ... aggregates) {
-        int maxRuns = 1;
-        for (final Aggregate<T> aggregate : aggregates) {
-            if (aggregate.runs() > maxRuns) {
-                maxRuns = aggregate.runs();
+        return aggregate(0, ring.size(), null, aggregates);
+    }
+
+    /**
+     * Aggregate samples in index range that are accepted by condition.
+     * @param from Index of first sample, inclusive.
+     * @param to Index of last sample, exclusive.
+     * @param condition Condition for selecting samples, or null to select all samples.
+     * @param aggregates Aggregates to apply.
+     * @return Summary of aggregates.
+     */
+    @NonNull
+    Summary<T> aggregate(final int from, final int to, @Nullable final SampleView.Condition<T> condition, @NonNull final Aggregate<T> ... aggregates) {
+        // Reduce StatisticsAggregate from statistics collected in a single fused pass
+        final boolean[] reduced = reduce(from, to, condition, aggregates);
+        int maxRuns = 0;
+        for (int j=0; j<aggregates.length; j++) {
+            if (null == reduced || !reduced[j]) {
+                maxRuns = Math.max(maxRuns, Math.max(1, aggregates[j].runs()));
             }
         }
 
+        // Map samples to remaining aggregates
         for (int run=1; run<=maxRuns; run++) {
-            for (final Aggregate<T> aggregate : aggregates) {
-                aggregate.beginRun(run);
+            for (int j=0; j<aggregates.length; j++) {
+                if (null == reduced || !reduced[j]) {
+                    aggregates[j].beginRun(run);
+                }
             }
 
-            for (final Sample<T> sample : this) {
-                for (final Aggregate<T> aggregate : aggregates) {
-                    aggregate.map(sample);
+            // Map primitive samples to DoubleAggregate, and only create Sample objects for other aggregates
+            for (int i=from; i<to; i++) {
+                final long taken = ring.taken(i);
+                final double value = ring.value(i);
+                if (null != condition && !condition.test(i, taken, value)) {
+                    continue;
+                }
+                for (int j=0; j<aggregates.length; j++) {
+                    final Aggregate<T> aggregate = aggregates[j];
+                    if (null != reduced && reduced[j]) {
+                        continue;
+                    }
+                    if (aggregate instanceof DoubleAggregate) {
+                        ((DoubleAggregate<T>) aggregate).map(taken, value);
+                    } else {
+                        //noinspection ConstantConditions
+                        aggregate.map(get(i));
+                    }
                 }
             }
         }
         return new Summary<>(aggregates);
     }
+
+    /**
+     * Collect statistics required by all {@link StatisticsAggregate} in a single pass over
+     * samples in index range that are accepted by condition, then reduce the aggregates from
+     * the statistics.
+     * @return Flags indicating which aggregates have been reduced, or null if there are no
+     * statistics aggregates.
+     */
+    @Nullable
+    private boolean[] reduce(final int from, final int to, @Nullable final SampleView.Condition<T> condition, @NonNull final Aggregate<T> ... aggregates) {
+        int selected = 0;
+        for (final Aggregate<T> aggregate : aggregates) {
+            if (aggregate instanceof StatisticsAggregate) {
+                selected |= ((StatisticsAggregate<T>) aggregate).statistics();
+            }
+        }
+        if (0 == selected) {
+            return null;
+        }
+        statistics.reset(selected);
+        for (int i=from; i<to; i++) {
+            final double value = ring.value(i);
+            if (null != condition && !condition.test(i, ring.taken(i), value)) {
+                continue;
+            }
+            statistics.add(value);
+        }
+        final boolean[] reduced = new boolean[aggregates.length];
+        for (int j=0; j<aggregates.length; j++) {
+            reduced[j] = (aggregates[j] instanceof StatisticsAggregate && ((StatisticsAggregate<T>) aggregates[j]).reduce(statistics));
+        }
+        return reduced;
+    }
 }
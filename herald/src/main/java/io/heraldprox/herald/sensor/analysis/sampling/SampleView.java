@@ -0,0 +1,230 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.sampling;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import io.heraldprox.herald.sensor.datatype.Date;
+import io.heraldprox.herald.sensor.datatype.DoubleValue;
+
+import java.util.Iterator;
+
+/**
+ * Filtered view of a {@link SampleList} that refers to samples in the list rather than copying
+ * them. A view is an index range of the list plus a chain of filter conditions. Time filters
+ * ({@link TimeFilter}) on a time ordered list narrow the index range by binary search, and
+ * other filters are tested on demand, using primitive sample time and value for
+ * {@link DoubleFilter} to avoid creating {@link Sample} objects.
+ * <br>
+ * A view reflects the list at the time it was created, and should be used immediately rather
+ * than held while the list is being updated. Use {@link #toView()} to take a copy.
+ * @param <T>
+ */
+@SuppressWarnings("unchecked")
+public class SampleView<T extends DoubleValue> extends IteratorProxy<T> {
+    @NonNull
+    private final SampleList<T> list;
+    // Index range of samples in list, from inclusive, to exclusive
+    private final int from;
+    private final int to;
+    @Nullable
+    private final Condition<T> condition;
+
+    /**
+     * Chain of filters that must all accept a sample for it to be in the view.
+     * @param <T>
+     */
+    final static class Condition<T extends DoubleValue> implements Filter<T> {
+        @NonNull
+        private final SampleList<T> list;
+        @Nullable
+        private final Condition<T> parent;
+        @NonNull
+        private final Filter<T> filter;
+
+        private Condition(@NonNull final SampleList<T> list, @Nullable final Condition<T> parent, @NonNull final Filter<T> filter) {
+            this.list = list;
+            this.parent = parent;
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean test(@NonNull final Sample<T> item) {
+            return (null == parent || parent.test(item)) && filter.test(item);
+        }
+
+        /**
+         * Test sample in list, only creating a {@link Sample} object for filters that are
+         * not a {@link DoubleFilter}.
+         * @param index Sample index in list.
+         * @param taken Time of sample in milliseconds since epoch.
+         * @param value Sample value.
+         * @return True if sample is accepted by all filters.
+         */
+        boolean test(final int index, final long taken, final double value) {
+            if (null != parent && !parent.test(index, taken, value)) {
+                return false;
+            }
+            if (filter instanceof DoubleFilter) {
+                return ((DoubleFilter<T>) filter).test(taken, value);
+            }
+            final Sample<T> sample = list.get(index);
+            return null != sample && filter.test(sample);
+        }
+    }
+
+    /**
+     * Iterator over index range of list.
+     * @param <T>
+     */
+    private final static class RangeIterator<T extends DoubleValue> implements Iterator<Sample<T>> {
+        @NonNull
+        private final SampleList<T> list;
+        private final int to;
+        private int index;
+
+        private RangeIterator(@NonNull final SampleList<T> list, final int from, final int to) {
+            this.list = list;
+            this.index = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < to;
+        }
+
+        @Nullable
+        @Override
+        public Sample<T> next() {
+            return list.get(index++);
+        }
+
+        @Override
+        public void remove() {
+            // Unsupported operation
+        }
+    }
+
+    private final static Filter<Object> acceptAll = new Filter<Object>() {
+        @Override
+        public boolean test(@NonNull final Sample<Object> item) {
+            return true;
+        }
+    };
+
+    /**
+     * Filter accepting all samples, shared by all views without condition.
+     */
+    @SuppressWarnings("unchecked")
+    @NonNull
+    private static <T extends DoubleValue> Filter<T> acceptAll() {
+        return (Filter<T>) (Filter<?>) acceptAll;
+    }
+
+    SampleView(@NonNull final SampleList<T> list, final int from, final int to, @Nullable final Condition<T> condition) {
+        super(new RangeIterator<>(list, from, to), (null == condition ? SampleView.<T>acceptAll() : condition));
+        this.list = list;
+        this.from = from;
+        this.to = to;
+        this.condition = condition;
+    }
+
+    @NonNull
+    @Override
+    public SampleView<T> filter(@NonNull final Filter<T> filter) {
+        final DoubleSampleRing ring = list.ring();
+        if (filter instanceof TimeFilter && ring.ordered()) {
+            final TimeFilter<T> timeFilter = (TimeFilter<T>) filter;
+            final int narrowFrom = (Long.MIN_VALUE == timeFilter.notBefore() ? from : ring.indexNotBefore(timeFilter.notBefore(), from, to));
+            final int narrowTo = (Long.MAX_VALUE == timeFilter.notAfter() ? to : ring.indexAfter(timeFilter.notAfter(), narrowFrom, to));
+            return new SampleView<>(list, narrowFrom, narrowTo, condition);
+        }
+        return new SampleView<>(list, from, to, new Condition<>(list, condition, filter));
+    }
+
+    /**
+     * Number of samples in view.
+     * @return Sample count, which requires testing all samples in range if the view has conditions.
+     */
+    public int size() {
+        if (null == condition) {
+            return to - from;
+        }
+        final DoubleSampleRing ring = list.ring();
+        int count = 0;
+        for (int i=from; i<to; i++) {
+            if (condition.test(i, ring.taken(i), ring.value(i))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get sample in view.
+     * @param index Sample index in view, where 0 is the oldest sample.
+     * @return Sample, or null if index is out of range.
+     */
+    @Nullable
+    public Sample<T> get(final int index) {
+        if (index < 0) {
+            return null;
+        }
+        if (null == condition) {
+            return (index < to - from ? list.get(from + index) : null);
+        }
+        final DoubleSampleRing ring = list.ring();
+        int count = 0;
+        for (int i=from; i<to; i++) {
+            if (condition.test(i, ring.taken(i), ring.value(i))) {
+                if (count == index) {
+                    return list.get(i);
+                }
+                count++;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Time of newest sample in view.
+     * @return Sample time, or null if view is empty.
+     */
+    @Nullable
+    public Date latest() {
+        final DoubleSampleRing ring = list.ring();
+        for (int i=to-1; i>=from; i--) {
+            if (null == condition || condition.test(i, ring.taken(i), ring.value(i))) {
+                final Sample<T> sample = list.get(i);
+                return (null == sample ? null : sample.taken());
+            }
+        }
+        return null;
+    }
+
+    @NonNull
+    @Override
+    public Summary<T> aggregate(@NonNull final Aggregate<T> ... aggregates) {
+        return list.aggregate(from, to, condition, aggregates);
+    }
+
+    @NonNull
+    @Override
+    public SampleList<T> toView() {
+        final SampleList<T> copy = new SampleList<>(size());
+        final DoubleSampleRing ring = list.ring();
+        for (int i=from; i<to; i++) {
+            if (null == condition || condition.test(i, ring.taken(i), ring.value(i))) {
+                final Sample<T> sample = list.get(i);
+                if (null != sample) {
+                    copy.push(sample);
+                }
+            }
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,243 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.sampling;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Primitive accumulator of sample statistics for fused aggregation, where the statistics
+ * required by a set of {@link StatisticsAggregate} are collected in a single pass over the
+ * samples, and each aggregate is then reduced from the statistics.
+ * <br>
+ * Statistics are selected by bit flags, and only the selected statistics are collected.
+ * The histogram counts integer values within [-128,127], which covers RSSI and other small
+ * integer values, and is unavailable if any sample value is outside of this range or is not
+ * an integer. Accumulating samples does not allocate objects.
+ */
+public class Statistics {
+    public final static int count = 1;
+    public final static int sum = 1 << 1;
+    public final static int sumOfSquares = 1 << 2;
+    public final static int minMax = 1 << 3;
+    public final static int histogram = 1 << 4;
+    public final static int histogramMin = -128;
+    public final static int histogramMax = 127;
+
+    private int selected = 0;
+    private long n = 0;
+    private double s1 = 0;
+    // Sums of value and value squared, shifted by the first value to minimise loss of precision
+    private double shift = 0;
+    private double shifted1 = 0;
+    private double shifted2 = 0;
+    private double min = Double.MAX_VALUE;
+    private double max = -Double.MAX_VALUE;
+    @NonNull
+    private final int[] counts = new int[histogramMax - histogramMin + 1];
+    // Range of histogram bins in use, for clearing only the bins in use on reset
+    private int minBin = counts.length;
+    private int maxBin = -1;
+    private boolean histogramAvailable = true;
+
+    /**
+     * Clear statistics and select the statistics to collect.
+     * @param selected Bit flags of statistics to collect, e.g. {@code sum | histogram}.
+     */
+    public void reset(final int selected) {
+        this.selected = selected;
+        n = 0;
+        s1 = 0;
+        shift = 0;
+        shifted1 = 0;
+        shifted2 = 0;
+        min = Double.MAX_VALUE;
+        max = -Double.MAX_VALUE;
+        for (int i=minBin; i<=maxBin; i++) {
+            counts[i] = 0;
+        }
+        minBin = counts.length;
+        maxBin = -1;
+        histogramAvailable = true;
+    }
+
+    /**
+     * Add sample value to statistics.
+     * @param value Sample value.
+     */
+    public void add(final double value) {
+        n++;
+        if (0 != (selected & sum)) {
+            s1 += value;
+        }
+        if (0 != (selected & sumOfSquares)) {
+            if (1 == n) {
+                shift = value;
+            }
+            final double delta = value - shift;
+            shifted1 += delta;
+            shifted2 += delta * delta;
+        }
+        if (0 != (selected & minMax)) {
+            if (value < min) {
+                min = value;
+            }
+            if (value > max) {
+                max = value;
+            }
+        }
+        if (0 != (selected & histogram) && histogramAvailable) {
+            final int integer = (int) value;
+            if (integer != value || integer < histogramMin || integer > histogramMax) {
+                histogramAvailable = false;
+                return;
+            }
+            final int bin = integer - histogramMin;
+            counts[bin]++;
+            if (bin < minBin) {
+                minBin = bin;
+            }
+            if (bin > maxBin) {
+                maxBin = bin;
+            }
+        }
+    }
+
+    /**
+     * Test if statistics were selected for collection.
+     * @param statistics Bit flags of statistics.
+     * @return True if all statistics were selected.
+     */
+    public boolean selected(final int statistics) {
+        return statistics == (selected & statistics);
+    }
+
+    /**
+     * Number of samples.
+     */
+    public long count() {
+        return n;
+    }
+
+    /**
+     * Sum of sample values, in sample order.
+     */
+    public double sum() {
+        return s1;
+    }
+
+    /**
+     * Mean of sample values.
+     * @return Mean, or null if there are no samples.
+     */
+    @Nullable
+    public Double mean() {
+        return (0 == n ? null : s1 / n);
+    }
+
+    /**
+     * Sum of squared deviations from the mean, which is computed from the histogram when it is
+     * available, and from shifted sum of squares otherwise.
+     * @return Sum of squared deviations, or 0 if there are no samples.
+     */
+    public double sumOfSquaredDeviations() {
+        if (0 == n) {
+            return 0;
+        }
+        if (histogramAvailable()) {
+            final double mean = s1 / n;
+            double deviations = 0;
+            for (int i=minBin; i<=maxBin; i++) {
+                if (0 != counts[i]) {
+                    final double delta = (i + histogramMin) - mean;
+                    deviations += counts[i] * delta * delta;
+                }
+            }
+            return deviations;
+        }
+        return Math.max(0, shifted2 - shifted1 * shifted1 / n);
+    }
+
+    /**
+     * Minimum sample value.
+     * @return Minimum, or null if there are no samples.
+     */
+    @Nullable
+    public Double min() {
+        return (0 == n ? null : min);
+    }
+
+    /**
+     * Maximum sample value.
+     * @return Maximum, or null if there are no samples.
+     */
+    @Nullable
+    public Double max() {
+        return (0 == n ? null : max);
+    }
+
+    /**
+     * Test if histogram was selected and all sample values were integers within range.
+     * @return True if histogram can be used for mode and median.
+     */
+    public boolean histogramAvailable() {
+        return 0 != (selected & histogram) && histogramAvailable;
+    }
+
+    /**
+     * Number of samples with value in histogram.
+     * @param value Sample value within [{@link #histogramMin}, {@link #histogramMax}].
+     * @return Count, or 0 if value is outside the histogram bins in use.
+     */
+    public int count(final int value) {
+        final int bin = value - histogramMin;
+        return (bin < minBin || bin > maxBin ? 0 : counts[bin]);
+    }
+
+    /**
+     * Most frequent sample value, where the largest value is selected if several values
+     * are equally frequent.
+     * @return Mode, or null if there are no samples or histogram is unavailable.
+     */
+    @Nullable
+    public Double mode() {
+        if (0 == n || !histogramAvailable()) {
+            return null;
+        }
+        int mode = maxBin;
+        for (int i=maxBin; i>=minBin; i--) {
+            if (counts[i] > counts[mode]) {
+                mode = i;
+            }
+        }
+        return (double) (mode + histogramMin);
+    }
+
+    /**
+     * Median of sample values, where the median of an even number of samples is the mean of
+     * the two middle values.
+     * @return Median, or null if there are no samples or histogram is unavailable.
+     */
+    @Nullable
+    public Double median() {
+        if (0 == n || !histogramAvailable()) {
+            return null;
+        }
+        final long lowerPosition = (n - 1) / 2;
+        final long upperPosition = n / 2;
+        long below = 0;
+        int lower = -1;
+        for (int i=minBin; i<=maxBin; i++) {
+            below += counts[i];
+            if (-1 == lower && lowerPosition < below) {
+                lower = i;
+            }
+            if (upperPosition < below) {
+                return ((lower + histogramMin) + (i + histogramMin)) / 2d;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,37 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.sampling;
+
+import androidx.annotation.NonNull;
+
+import io.heraldprox.herald.sensor.datatype.DoubleValue;
+
+/**
+ * Aggregate that can be reduced from {@link Statistics}, enabling
+ * {@link SampleList#aggregate(Aggregate[])} to collect the statistics required by all such
+ * aggregates in a single fused pass over the samples, rather than mapping every sample to
+ * every aggregate. Aggregates that cannot be reduced from the statistics are mapped as usual.
+ * <br>
+ * After reduction from statistics, the aggregate holds the result until {@link #reset()},
+ * or until a new run begins or samples are mapped, thus a reused aggregate never returns
+ * a stale result.
+ * @param <T>
+ */
+public interface StatisticsAggregate<T extends DoubleValue> extends DoubleAggregate<T> {
+
+    /**
+     * Statistics required by this aggregate.
+     * @return Bit flags of statistics, e.g. {@code Statistics.count | Statistics.sum}.
+     */
+    int statistics();
+
+    /**
+     * Reduce aggregate from statistics of all samples.
+     * @param statistics Statistics collected in a single pass over all samples.
+     * @return True if aggregate was reduced, or false if aggregate has already mapped samples
+     * or required statistics are unavailable, in which case samples should be mapped instead.
+     */
+    boolean reduce(@NonNull final Statistics statistics);
+}
@@ -0,0 +1,26 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.sampling;
+
+/**
+ * Filter that accepts samples taken within a time period, enabling {@link SampleView} to
+ * resolve the filter by binary search on a time ordered {@link DoubleSampleRing}, rather
+ * than testing every sample.
+ * @param <T>
+ */
+public interface TimeFilter<T> extends DoubleFilter<T> {
+
+    /**
+     * Start of time period.
+     * @return Time in milliseconds since epoch (inclusive).
+     */
+    long notBefore();
+
+    /**
+     * End of time period.
+     * @return Time in milliseconds since epoch (inclusive).
+     */
+    long notAfter();
+}
@@ -9,17 +9,41 @@ import androidx.annotation.NonNull;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 @SuppressWarnings("unchecked")
 public class VariantSet {
     private final int defaultListSize;
-    private final Map<Class<? extends DoubleValue>, ListManager<? extends DoubleValue>> map = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<? extends DoubleValue>, ListManager<? extends DoubleValue>> map = new ConcurrentHashMap<>();
+    // Shard locks shared by all list managers
+    @NonNull
+    private final Object[] locks;
 
     public VariantSet(final int defaultListSize) {
+        this(defaultListSize, ListManager.defaultShards);
+    }
+
+    /**
+     * Variant set where the lists of a target in all list managers are guarded by one lock
+     * per shard.
+     * @param defaultListSize Sample list size for each target.
+     * @param shards Number of shards.
+     */
+    public VariantSet(final int defaultListSize, final int shards) {
         this.defaultListSize = defaultListSize;
+        this.locks = ListManager.locks(shards);
+    }
+
+    /**
+     * Lock guarding the lists of a target in all list managers.
+     * @param sampledID Target.
+     * @return Lock of shard containing target.
+     */
+    @NonNull
+    public Object lock(@NonNull final SampledID sampledID) {
+        return locks[ListManager.shard(sampledID, locks.length)];
     }
 
     @NonNull
@@ -38,7 +62,7 @@ public class VariantSet {
 
     @NonNull
     public <T extends DoubleValue> ListManager<T> add(@NonNull final Class<T> variant, final int listSize) {
-        final ListManager<T> listManager = new ListManager<>(listSize);
+        final ListManager<T> listManager = new ListManager<>(listSize, locks);
         map.put(variant, listManager);
         return listManager;
     }
@@ -59,11 +83,13 @@ public class VariantSet {
 
     @NonNull
     public <T extends DoubleValue> ListManager<T> listManager(@NonNull final Class<T> variant) {
-        ListManager<T> listManager = (ListManager<T>) map.get(variant);
-        if (null == listManager) {
-            listManager = add(variant, defaultListSize);
+        final ListManager<T> listManager = (ListManager<T>) map.get(variant);
+        if (null != listManager) {
+            return listManager;
         }
-        return listManager;
+        final ListManager<T> newListManager = new ListManager<>(defaultListSize, locks);
+        final ListManager<T> existingListManager = (ListManager<T>) map.putIfAbsent(variant, newListManager);
+        return (null == existingListManager ? newListManager : existingListManager);
     }
 
     public <T extends DoubleValue> SampleList<T> listManager(@NonNull final Class<T> variant, @NonNull final SampledID listFor) {
@@ -6,12 +6,12 @@ package io.heraldprox.herald.sensor.analysis.views;
 
 import androidx.annotation.NonNull;
 
-import io.heraldprox.herald.sensor.analysis.sampling.Filter;
+import io.heraldprox.herald.sensor.analysis.sampling.TimeFilter;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
 import io.heraldprox.herald.sensor.datatype.Date;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
-public class InPeriod<T extends DoubleValue> implements Filter<T> {
+public class InPeriod<T extends DoubleValue> implements TimeFilter<T> {
     private final long afterTime;
     private final long beforeTime;
 
@@ -26,7 +26,21 @@ public class InPeriod<T extends DoubleValue> implements Filter<T> {
 
     @Override
     public boolean test(@NonNull final Sample<T> item) {
-        final long takenTime = item.taken().getTime();
-        return afterTime <= takenTime && takenTime <= beforeTime;
+        return test(item.taken().getTime(), item.value().doubleValue());
+    }
+
+    @Override
+    public boolean test(final long taken, final double value) {
+        return afterTime <= taken && taken <= beforeTime;
+    }
+
+    @Override
+    public long notBefore() {
+        return afterTime;
+    }
+
+    @Override
+    public long notAfter() {
+        return beforeTime;
     }
 }
@@ -6,11 +6,11 @@ package io.heraldprox.herald.sensor.analysis.views;
 
 import androidx.annotation.NonNull;
 
-import io.heraldprox.herald.sensor.analysis.sampling.Filter;
+import io.heraldprox.herald.sensor.analysis.sampling.DoubleFilter;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
-public class InRange<T extends DoubleValue> implements Filter<T> {
+public class InRange<T extends DoubleValue> implements DoubleFilter<T> {
     private final double min, max;
 
     public InRange(final double min, final double max) {
@@ -20,6 +20,11 @@ public class InRange<T extends DoubleValue> implements Filter<T> {
 
     @Override
     public boolean test(@NonNull final Sample<T> item) {
-        return item.value().doubleValue() >= min && item.value().doubleValue() <= max;
+        return test(item.taken().getTime(), item.value().doubleValue());
+    }
+
+    @Override
+    public boolean test(final long taken, final double value) {
+        return value >= min && value <= max;
     }
 }
@@ -6,13 +6,13 @@ package io.heraldprox.herald.sensor.analysis.views;
 
 import androidx.annotation.NonNull;
 
-import io.heraldprox.herald.sensor.analysis.sampling.Filter;
+import io.heraldprox.herald.sensor.analysis.sampling.TimeFilter;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
 import io.heraldprox.herald.sensor.datatype.Date;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
 @SuppressWarnings("unchecked")
-public class Since<T extends DoubleValue> implements Filter<T> {
+public class Since<T extends DoubleValue> implements TimeFilter<T> {
     private final long afterTime;
 
     public Since(final long secondsSinceUnixEpoch) {
@@ -32,4 +32,19 @@ public class Since<T extends DoubleValue> implements Filter<T> {
     public boolean test(@NonNull final Sample<T> item) {
         return item.taken().getTime() >= afterTime;
     }
+
+    @Override
+    public boolean test(final long taken, final double value) {
+        return taken >= afterTime;
+    }
+
+    @Override
+    public long notBefore() {
+        return afterTime;
+    }
+
+    @Override
+    public long notAfter() {
+        return Long.MAX_VALUE;
+    }
 }
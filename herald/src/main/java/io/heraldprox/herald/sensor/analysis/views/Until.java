@@ -6,12 +6,12 @@ package io.heraldprox.herald.sensor.analysis.views;
 
 import androidx.annotation.NonNull;
 
-import io.heraldprox.herald.sensor.analysis.sampling.Filter;
+import io.heraldprox.herald.sensor.analysis.sampling.TimeFilter;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
 import io.heraldprox.herald.sensor.datatype.Date;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
-public class Until<T extends DoubleValue> implements Filter<T> {
+public class Until<T extends DoubleValue> implements TimeFilter<T> {
     private final long beforeTime;
 
     public Until(final long secondsSinceUnixEpoch) {
@@ -26,4 +26,19 @@ public class Until<T extends DoubleValue> implements Filter<T> {
     public boolean test(@NonNull final Sample<T> item) {
         return item.taken().getTime() <= beforeTime;
     }
+
+    @Override
+    public boolean test(final long taken, final double value) {
+        return taken <= beforeTime;
+    }
+
+    @Override
+    public long notBefore() {
+        return Long.MIN_VALUE;
+    }
+
+    @Override
+    public long notAfter() {
+        return beforeTime;
+    }
 }
@@ -141,9 +141,11 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
     private final ScanCallback scanCallback = new ScanCallback() {
         @Override
         public void onScanResult(final int callbackType, @NonNull final ScanResult scanResult) {
-            final ScanRecord scanRecord = scanResult.getScanRecord();
-            final Data data = new Data(scanRecord != null ? scanRecord.getBytes() : new byte[0]);
-            logger.debug("onScanResult (result={}, data={})", scanResult, data.hexEncodedString());
+            if (logger.isDebugEnabled()) {
+                final ScanRecord scanRecord = scanResult.getScanRecord();
+                final Data data = new Data(scanRecord != null ? scanRecord.getBytes() : new byte[0]);
+                logger.debug("onScanResult (result={}, data={})", scanResult, data.hexEncodedString());
+            }
 
             scanResults.add(scanResult);
             // Create or update device in database
@@ -116,7 +116,9 @@ public class ConcreteBLESensor implements BLESensor, BLEDatabaseDelegate, Blueto
                     return;
                 }
                 final Proximity proximity = new Proximity(ProximityMeasurementUnit.RSSI, rssi.value, device.calibration());
-                logger.debug("didMeasure (device={},payloadData={},proximity={})", device, device.payloadData(), proximity.description());
+                if (logger.isDebugEnabled()) {
+                    logger.debug("didMeasure (device={},payloadData={},proximity={})", device, device.payloadData(), proximity.description());
+                }
                 operationQueue.execute(new Runnable() {
                     @Override
                     public void run() {
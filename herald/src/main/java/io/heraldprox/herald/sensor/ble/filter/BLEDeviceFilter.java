@@ -15,16 +15,13 @@ import io.heraldprox.herald.sensor.ble.BLESensorConfiguration;
 import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
 import io.heraldprox.herald.sensor.data.SensorLogger;
 import io.heraldprox.herald.sensor.data.TextFile;
+import io.heraldprox.herald.sensor.data.TimestampCodec;
 import io.heraldprox.herald.sensor.datatype.Data;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
-import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -32,10 +29,6 @@ import java.util.regex.Pattern;
  * Device filter for avoiding connection to devices that definitely cannot host sensor services.
  */
 public class BLEDeviceFilter {
-    private final static SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.UK);
-    static {
-        dateFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
-    }
     private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "BLE.BLEDeviceFilter");
     @Nullable
     private final List<FilterPattern> filterPatterns;
@@ -258,14 +251,16 @@ public class BLEDeviceFilter {
             } else {
                 shouldIgnore.no++;
             }
-            logger.debug("train (ignore={},feature={},scanRecord={},device={})", (ignore ? "Y" : "N"), featureData.hexEncodedString(), scanRecordData.hexEncodedString(), device.description());
+            if (logger.isDebugEnabled()) {
+                logger.debug("train (ignore={},feature={},scanRecord={},device={})", (ignore ? "Y" : "N"), featureData.hexEncodedString(), scanRecordData.hexEncodedString(), device.description());
+            }
             // Write sample to text file for analysis
             if (null == textFile) {
                 return;
             }
             final StringBuilder stringBuilder = new StringBuilder();
             stringBuilder.append('"');
-            stringBuilder.append(dateFormatter.format(new Date()));
+            TimestampCodec.appendSeconds(stringBuilder, System.currentTimeMillis());
             stringBuilder.append('"');
             stringBuilder.append(',');
             stringBuilder.append(ignore ? 'Y' : 'N');
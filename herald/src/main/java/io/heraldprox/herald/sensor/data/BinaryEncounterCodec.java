@@ -0,0 +1,602 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import io.heraldprox.herald.sensor.datatype.Calibration;
+import io.heraldprox.herald.sensor.datatype.CalibrationMeasurementUnit;
+import io.heraldprox.herald.sensor.datatype.Data;
+import io.heraldprox.herald.sensor.datatype.Encounter;
+import io.heraldprox.herald.sensor.datatype.PayloadData;
+import io.heraldprox.herald.sensor.datatype.Proximity;
+import io.heraldprox.herald.sensor.datatype.ProximityMeasurementUnit;
+
+/**
+ * Compact binary encounter file format with block compressed columns.
+ * <br>
+ * File comprises of a 4 byte header (magic "HEB" and version) followed by blocks. Each
+ * block holds up to blockSize encounters as columns, compressed with deflate :
+ * <ul>
+ * <li>Count and payload dictionary, holding each distinct payload in the block once.</li>
+ * <li>Timestamps as variable length, zig-zag encoded deltas in milliseconds.</li>
+ * <li>Proximity unit, quantised proximity value, calibration unit and quantised calibration
+ * value as one byte each. Values that are not integers within [-127,127], e.g. RTT, are
+ * flagged by -128 and stored losslessly as doubles at the end of the block.</li>
+ * <li>Payload as variable length index into the payload dictionary.</li>
+ * </ul>
+ * Columns of similar values compress well, e.g. constant units, small time deltas and
+ * repeating payloads from the same target. Files are read through a memory mapped buffer
+ * and decoded block by block. A truncated block at the end of the file, e.g. due to
+ * an interrupted write, is ignored.
+ * <br>
+ * Appended encounters are buffered in memory and written as a block when blockSize
+ * encounters have been buffered, on flush() and close(), or on the shared I/O thread
+ * after the write delay, thus a smaller block size trades compression ratio for less
+ * data being held in memory only. Opening an existing file for appending truncates an
+ * incomplete block at the end of the file, such that appended blocks remain readable.
+ */
+public class BinaryEncounterCodec implements EncounterCodec {
+    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "Data.BinaryEncounterCodec");
+    private final static byte[] magic = new byte[]{'H', 'E', 'B', 1};
+    private final static byte exact = -128;
+    private final static ProximityMeasurementUnit[] proximityUnits = ProximityMeasurementUnit.values();
+    private final static CalibrationMeasurementUnit[] calibrationUnits = CalibrationMeasurementUnit.values();
+    private final int blockSize;
+    private final long writeDelayMillis;
+
+    /**
+     * Binary encounter codec.
+     * @param blockSize Maximum number of encounters per block, minimum 1.
+     * @param writeDelay Time delay in seconds between appending an encounter and flushing it to storage.
+     */
+    public BinaryEncounterCodec(final int blockSize, final int writeDelay) {
+        this.blockSize = Math.max(1, blockSize);
+        this.writeDelayMillis = Math.max(0, writeDelay) * 1000L;
+    }
+
+    /**
+     * Binary encounter codec with 30 second write delay.
+     * @param blockSize Maximum number of encounters per block, minimum 1.
+     */
+    public BinaryEncounterCodec(final int blockSize) {
+        this(blockSize, 30);
+    }
+
+    /**
+     * Binary encounter codec with 64 encounters per block and 30 second write delay.
+     */
+    public BinaryEncounterCodec() {
+        this(64);
+    }
+
+    @NonNull
+    @Override
+    public String extension() {
+        return ".heb";
+    }
+
+    // MARK: - Read
+
+    @Nullable
+    @Override
+    public List<Encounter> read(@NonNull final File file) {
+        final List<Encounter> encounters = new ArrayList<>();
+        try {
+            final FileInputStream fileInputStream = new FileInputStream(file);
+            try {
+                final FileChannel fileChannel = fileInputStream.getChannel();
+                final MappedByteBuffer buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+                read(buffer, encounters, file);
+            } finally {
+                fileInputStream.close();
+            }
+        } catch (Throwable e) {
+            logger.fault("read failed (file={})", file, e);
+            return null;
+        }
+        return encounters;
+    }
+
+    /**
+     * Decode all complete blocks in buffer.
+     * @param buffer File content.
+     * @param encounters Decoded encounters are added to this list, or null to validate only.
+     * @param file File for logging.
+     * @return Length of valid content, i.e. end of last complete block, or -1 if format is unknown.
+     */
+    private int read(@NonNull final ByteBuffer buffer, @Nullable final List<Encounter> encounters, @NonNull final File file) throws Exception {
+        if (buffer.remaining() < magic.length) {
+            return 0;
+        }
+        final byte[] header = new byte[magic.length];
+        buffer.get(header);
+        if (!Arrays.equals(header, magic)) {
+            logger.fault("read failed, unknown format (file={})", file);
+            return -1;
+        }
+        final Inflater inflater = new Inflater();
+        try {
+            byte[] compressed = new byte[0];
+            byte[] raw = new byte[0];
+            int validLength = buffer.position();
+            while (buffer.remaining() >= 8) {
+                final int rawLength = buffer.getInt();
+                final int compressedLength = buffer.getInt();
+                if (rawLength < 0 || compressedLength < 0 || compressedLength > buffer.remaining()) {
+                    logger.fault("read, ignoring truncated block (file={},offset={})", file, validLength);
+                    return validLength;
+                }
+                if (compressed.length < compressedLength) {
+                    compressed = new byte[compressedLength];
+                }
+                if (raw.length < rawLength) {
+                    raw = new byte[rawLength];
+                }
+                buffer.get(compressed, 0, compressedLength);
+                inflater.reset();
+                inflater.setInput(compressed, 0, compressedLength);
+                int inflated = 0;
+                while (inflated < rawLength && !inflater.finished()) {
+                    final int count = inflater.inflate(raw, inflated, rawLength - inflated);
+                    if (0 == count && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    inflated += count;
+                }
+                if (inflated != rawLength) {
+                    logger.fault("read, ignoring corrupted block (file={},offset={})", file, validLength);
+                    return validLength;
+                }
+                try {
+                    decode(new Reader(raw, rawLength), encounters);
+                } catch (Throwable e) {
+                    logger.fault("read, ignoring corrupted block (file={},offset={})", file, validLength, e);
+                    return validLength;
+                }
+                validLength = buffer.position();
+            }
+            return validLength;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void decode(@NonNull final Reader reader, @Nullable final List<Encounter> encounters) {
+        final int count = (int) reader.varLong();
+        // Payload dictionary
+        final int dictionarySize = (int) reader.varLong();
+        final PayloadData[] dictionary = new PayloadData[dictionarySize];
+        for (int i=0; i<dictionarySize; i++) {
+            dictionary[i] = new PayloadData(reader.bytes((int) reader.varLong()));
+        }
+        // Columns
+        final long[] time = new long[count];
+        long previous = 0;
+        for (int i=0; i<count; i++) {
+            previous += reader.zigZag();
+            time[i] = previous;
+        }
+        final int proximityUnit = reader.skip(count);
+        final int proximityValue = reader.skip(count);
+        final int calibrationUnit = reader.skip(count);
+        final int calibrationValue = reader.skip(count);
+        final int[] payload = new int[count];
+        for (int i=0; i<count; i++) {
+            payload[i] = (int) reader.varLong();
+        }
+        // Exact values in order of appearance, proximity followed by calibration
+        final byte[] bytes = reader.bytes;
+        final Double[] proximity = new Double[count];
+        for (int i=0; i<count; i++) {
+            final byte value = bytes[proximityValue + i];
+            proximity[i] = (exact == value ? Double.longBitsToDouble(reader.int64()) : (double) value);
+        }
+        final Double[] calibration = new Double[count];
+        for (int i=0; i<count; i++) {
+            final byte value = bytes[calibrationValue + i];
+            calibration[i] = (exact == value ? Double.longBitsToDouble(reader.int64()) : (double) value);
+        }
+        for (int i=0; i<count; i++) {
+            final int unit = bytes[proximityUnit + i];
+            final int calibrationUnitIndex = bytes[calibrationUnit + i];
+            final Calibration calibrationData = (0 == calibrationUnitIndex || calibrationUnitIndex > calibrationUnits.length ? null :
+                    new Calibration(calibrationUnits[calibrationUnitIndex - 1], calibration[i]));
+            final Proximity proximityData = (0 == unit || unit > proximityUnits.length ? null :
+                    new Proximity(proximityUnits[unit - 1], proximity[i], calibrationData));
+            final PayloadData payloadData = (0 == payload[i] || payload[i] > dictionary.length ? null : dictionary[payload[i] - 1]);
+            final Encounter encounter = new Encounter(proximityData, payloadData, new Date(time[i]));
+            if (null != encounters && encounter.isValid()) {
+                encounters.add(encounter);
+            }
+        }
+    }
+
+    // MARK: - Write
+
+    @Override
+    public boolean write(@NonNull final File file, @NonNull final List<Encounter> encounters) {
+        try {
+            final FileOutputStream fileOutputStream = new FileOutputStream(file, false);
+            try {
+                fileOutputStream.write(magic);
+                write(fileOutputStream, encounters);
+                fileOutputStream.flush();
+            } finally {
+                fileOutputStream.close();
+            }
+            return true;
+        } catch (Throwable e) {
+            logger.fault("write failed (file={})", file, e);
+            return false;
+        }
+    }
+
+    private void write(@NonNull final OutputStream outputStream, @NonNull final List<Encounter> encounters) throws Exception {
+        final Deflater deflater = new Deflater();
+        try {
+            final Writer writer = new Writer();
+            byte[] compressed = new byte[0];
+            for (int from=0; from<encounters.size(); from+=blockSize) {
+                final int to = Math.min(encounters.size(), from + blockSize);
+                writer.reset();
+                encode(encounters, from, to, writer);
+                // Deflate output never exceeds input by more than a few bytes per 16KB
+                final int bound = writer.length + (writer.length >> 12) + 64;
+                if (compressed.length < bound + 8) {
+                    compressed = new byte[bound + 8];
+                }
+                deflater.reset();
+                deflater.setInput(writer.bytes, 0, writer.length);
+                deflater.finish();
+                int compressedLength = 0;
+                while (!deflater.finished()) {
+                    if (8 + compressedLength == compressed.length) {
+                        compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                    }
+                    compressedLength += deflater.deflate(compressed, 8 + compressedLength, compressed.length - 8 - compressedLength);
+                }
+                ByteBuffer.wrap(compressed, 0, 8).putInt(writer.length).putInt(compressedLength);
+                // Block header and content are written together to minimise truncation
+                outputStream.write(compressed, 0, 8 + compressedLength);
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void encode(@NonNull final List<Encounter> encounters, final int from, final int to, @NonNull final Writer writer) {
+        final int count = to - from;
+        writer.varLong(count);
+        // Payload dictionary
+        final Map<Data, Integer> dictionary = new HashMap<>();
+        final List<Data> entries = new ArrayList<>();
+        final int[] payload = new int[count];
+        for (int i=0; i<count; i++) {
+            final Data data = encounters.get(from + i).payload;
+            if (null == data) {
+                continue;
+            }
+            Integer index = dictionary.get(data);
+            if (null == index) {
+                entries.add(data);
+                index = entries.size();
+                dictionary.put(data, index);
+            }
+            payload[i] = index;
+        }
+        writer.varLong(entries.size());
+        for (final Data entry : entries) {
+            writer.varLong(entry.value.length);
+            writer.bytes(entry.value);
+        }
+        // Columns
+        long previous = 0;
+        for (int i=0; i<count; i++) {
+            final Date timestamp = encounters.get(from + i).timestamp;
+            final long time = (null == timestamp ? 0 : timestamp.getTime());
+            writer.zigZag(time - previous);
+            previous = time;
+        }
+        final List<Double> exactValues = new ArrayList<>();
+        for (int i=0; i<count; i++) {
+            final Proximity proximity = encounters.get(from + i).proximity;
+            writer.int8(null == proximity ? 0 : proximity.unit.ordinal() + 1);
+        }
+        for (int i=0; i<count; i++) {
+            final Proximity proximity = encounters.get(from + i).proximity;
+            writer.int8(quantise(null == proximity ? null : proximity.value, exactValues));
+        }
+        for (int i=0; i<count; i++) {
+            final Proximity proximity = encounters.get(from + i).proximity;
+            writer.int8(null == proximity || null == proximity.calibration ? 0 : proximity.calibration.unit.ordinal() + 1);
+        }
+        for (int i=0; i<count; i++) {
+            final Proximity proximity = encounters.get(from + i).proximity;
+            writer.int8(quantise(null == proximity || null == proximity.calibration ? null : proximity.calibration.value, exactValues));
+        }
+        for (int i=0; i<count; i++) {
+            writer.varLong(payload[i]);
+        }
+        for (final Double value : exactValues) {
+            writer.int64(Double.doubleToLongBits(value));
+        }
+    }
+
+    /**
+     * Quantise value as byte if it is an integer within [-127,127], otherwise add value
+     * to list of exact values and return exact value flag.
+     */
+    private static int quantise(@Nullable final Double value, @NonNull final List<Double> exactValues) {
+        if (null == value) {
+            return 0;
+        }
+        final double v = value;
+        if (v >= -127 && v <= 127 && v == Math.rint(v) && !(v == 0 && 1 / v < 0)) {
+            return (int) v;
+        }
+        exactValues.add(value);
+        return exact;
+    }
+
+    // MARK: - Append
+
+    @Nullable
+    @Override
+    public Appender appender(@NonNull final File file) {
+        try {
+            truncateIncompleteBlock(file);
+            final boolean exists = file.exists() && file.length() > 0;
+            final FileOutputStream outputStream = new FileOutputStream(file, true);
+            if (!exists) {
+                outputStream.write(magic);
+            }
+            return new BinaryAppender(file, outputStream);
+        } catch (Throwable e) {
+            logger.fault("appender failed (file={})", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Truncate incomplete or corrupted block at the end of an existing file, e.g. due to an
+     * interrupted write, as blocks appended after it would be unreadable. A file in an
+     * unknown format is moved to a backup file.
+     * @param file Existing file, or file to be created.
+     */
+    private void truncateIncompleteBlock(@NonNull final File file) throws Exception {
+        if (!file.exists() || 0 == file.length()) {
+            return;
+        }
+        final long length = file.length();
+        final int validLength;
+        final FileInputStream fileInputStream = new FileInputStream(file);
+        try {
+            final FileChannel fileChannel = fileInputStream.getChannel();
+            validLength = read(fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, length), null, file);
+        } finally {
+            fileInputStream.close();
+        }
+        if (validLength < 0) {
+            final File backup = new File(file.getParentFile(), file.getName() + ".invalid");
+            logger.fault("Invalid encounter file, moving to backup (file={},backup={})", file, backup);
+            if (!file.renameTo(backup) && !file.delete()) {
+                throw new IllegalStateException("Cannot replace invalid encounter file");
+            }
+            return;
+        }
+        if (validLength < length) {
+            logger.fault("Truncating incomplete block (file={},length={},valid={})", file, length, validLength);
+            final FileOutputStream truncate = new FileOutputStream(file, true);
+            try {
+                truncate.getChannel().truncate(validLength);
+            } finally {
+                truncate.close();
+            }
+        }
+    }
+
+    private final class BinaryAppender implements Appender {
+        @NonNull
+        private final File file;
+        @NonNull
+        private final FileOutputStream outputStream;
+        @NonNull
+        private final List<Encounter> pending = new ArrayList<>();
+        @NonNull
+        private final Runnable flushTask;
+        private boolean closed = false;
+
+        private BinaryAppender(@NonNull final File file, @NonNull final FileOutputStream outputStream) {
+            this.file = file;
+            this.outputStream = outputStream;
+            this.flushTask = new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            };
+        }
+
+        @Override
+        public synchronized boolean append(@NonNull final Encounter encounter) {
+            pending.add(encounter);
+            if (pending.size() >= blockSize) {
+                return flush();
+            }
+            // Flush partial block after write delay, thus limiting data held in memory only
+            if (1 == pending.size()) {
+                TextFileScheduler.shared().schedule(flushTask, writeDelayMillis);
+            }
+            return true;
+        }
+
+        @Override
+        public synchronized boolean flush() {
+            TextFileScheduler.shared().cancel(flushTask);
+            if (pending.isEmpty()) {
+                return true;
+            }
+            long validLength = -1;
+            try {
+                validLength = outputStream.getChannel().size();
+                write(outputStream, pending);
+                outputStream.flush();
+                pending.clear();
+                return true;
+            } catch (Throwable e) {
+                logger.fault("flush failed, retaining encounters (file={},encounters={})", file, pending.size(), e);
+                // Remove blocks written by this flush, as a partially written block would make
+                // blocks appended after it unreadable, and all pending encounters are retried
+                if (validLength >= 0) {
+                    try {
+                        outputStream.getChannel().truncate(validLength);
+                    } catch (Throwable t) {
+                        logger.fault("flush, truncate failed (file={},valid={})", file, validLength, t);
+                    }
+                }
+                if (!closed) {
+                    TextFileScheduler.shared().schedule(flushTask, writeDelayMillis);
+                }
+                return false;
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            flush();
+            closed = true;
+            TextFileScheduler.shared().cancel(flushTask);
+            try {
+                outputStream.close();
+            } catch (Throwable e) {
+                logger.fault("close failed (file={})", file, e);
+            }
+        }
+    }
+
+    // MARK: - Encoding primitives
+
+    private final static class Writer {
+        @NonNull
+        private byte[] bytes = new byte[1024];
+        private int length = 0;
+
+        private void reset() {
+            length = 0;
+        }
+
+        private void ensure(final int count) {
+            if (length + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+            }
+        }
+
+        private void int8(final int value) {
+            ensure(1);
+            bytes[length++] = (byte) value;
+        }
+
+        private void int64(final long value) {
+            ensure(8);
+            for (int shift=56; shift>=0; shift-=8) {
+                bytes[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void varLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        private void zigZag(final long value) {
+            varLong((value << 1) ^ (value >> 63));
+        }
+
+        private void bytes(@NonNull final byte[] value) {
+            ensure(value.length);
+            System.arraycopy(value, 0, bytes, length, value.length);
+            length += value.length;
+        }
+    }
+
+    private final static class Reader {
+        @NonNull
+        private final byte[] bytes;
+        private final int length;
+        private int position = 0;
+
+        private Reader(@NonNull final byte[] bytes, final int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+        /**
+         * Skip bytes.
+         * @return Position of first skipped byte.
+         */
+        private int skip(final int count) {
+            final int start = position;
+            position += count;
+            if (position > length) {
+                throw new IndexOutOfBoundsException();
+            }
+            return start;
+        }
+
+        private long int64() {
+            final int start = skip(8);
+            long value = 0;
+            for (int i=0; i<8; i++) {
+                value = (value << 8) | (bytes[start + i] & 0xFF);
+            }
+            return value;
+        }
+
+        private long varLong() {
+            long value = 0;
+            for (int shift=0; shift<64; shift+=7) {
+                final byte b = bytes[skip(1)];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            return value;
+        }
+
+        private long zigZag() {
+            final long value = varLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        @NonNull
+        private byte[] bytes(final int count) {
+            final int start = skip(count);
+            return Arrays.copyOfRange(bytes, start, start + count);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.heraldprox.herald.sensor.datatype.Encounter;
+
+/**
+ * Encounter file format with one CSV row per encounter, as produced by {@link Encounter#csvString()}.
+ * Timestamps are persisted at one second resolution. Every appended encounter is written
+ * to file immediately.
+ */
+public class CSVEncounterCodec implements EncounterCodec {
+    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "Data.CSVEncounterCodec");
+    private final static String header = "time,proximity,unit,calibration,calibrationUnit,payload";
+
+    @NonNull
+    @Override
+    public String extension() {
+        return ".csv";
+    }
+
+    @Nullable
+    @Override
+    public List<Encounter> read(@NonNull final File file) {
+        final List<Encounter> encounters = new ArrayList<>();
+        try {
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final Encounter encounter = new Encounter(line);
+                    if (encounter.isValid()) {
+                        encounters.add(encounter);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (Throwable e) {
+            logger.fault("read failed (file={})", file, e);
+            return null;
+        }
+        return encounters;
+    }
+
+    @Override
+    public boolean write(@NonNull final File file, @NonNull final List<Encounter> encounters) {
+        final StringBuilder content = new StringBuilder();
+        content.append(header).append('\n');
+        for (final Encounter encounter : encounters) {
+            content.append(encounter.csvString()).append('\n');
+        }
+        try {
+            final FileOutputStream fileOutputStream = new FileOutputStream(file, false);
+            try {
+                fileOutputStream.write(content.toString().getBytes());
+                fileOutputStream.flush();
+            } finally {
+                fileOutputStream.close();
+            }
+            return true;
+        } catch (Throwable e) {
+            logger.fault("write failed (file={})", file, e);
+            return false;
+        }
+    }
+
+    @Nullable
+    @Override
+    public Appender appender(@NonNull final File file) {
+        try {
+            final boolean exists = file.exists() && file.length() > 0;
+            final OutputStream outputStream = new FileOutputStream(file, true);
+            if (!exists) {
+                outputStream.write((header + "\n").getBytes());
+            }
+            return new CSVAppender(file, outputStream);
+        } catch (Throwable e) {
+            logger.fault("appender failed (file={})", file, e);
+            return null;
+        }
+    }
+
+    private final class CSVAppender implements Appender {
+        @NonNull
+        private final File file;
+        @NonNull
+        private final OutputStream outputStream;
+
+        private CSVAppender(@NonNull final File file, @NonNull final OutputStream outputStream) {
+            this.file = file;
+            this.outputStream = outputStream;
+        }
+
+        @Override
+        public boolean append(@NonNull final Encounter encounter) {
+            try {
+                outputStream.write((encounter.csvString() + "\n").getBytes());
+                outputStream.flush();
+                return true;
+            } catch (Throwable e) {
+                logger.fault("append failed (file={})", file, e);
+                return false;
+            }
+        }
+
+        @Override
+        public boolean flush() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+            try {
+                outputStream.close();
+            } catch (Throwable e) {
+                logger.fault("close failed (file={})", file, e);
+            }
+        }
+    }
+}
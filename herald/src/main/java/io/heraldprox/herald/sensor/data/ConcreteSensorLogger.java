@@ -9,22 +9,20 @@ import android.util.Log;
 
 import io.heraldprox.herald.sensor.ble.BLESensorConfiguration;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
-import java.util.TimeZone;
-
 import android.annotation.SuppressLint;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 public class ConcreteSensorLogger implements SensorLogger, Resettable {
-    private final String subsystem, category;
-    private final static SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.UK);
-    static {
-        dateFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
-    }
+    private final String subsystem, category, tag;
+    private final static int maxStringBuilderCapacity = 4096;
+    private final static ThreadLocal<StringBuilder> threadStringBuilder = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
     /** Will not leak. When Logger leaves memory, context reference will be removed. */
     @Nullable
     @SuppressLint("StaticFieldLeak")
@@ -35,6 +33,7 @@ public class ConcreteSensorLogger implements SensorLogger, Resettable {
     public ConcreteSensorLogger(@NonNull final String subsystem, @NonNull final String category) {
         this.subsystem = subsystem;
         this.category = category;
+        this.tag = tag(subsystem, category);
     }
 
     @Override
@@ -53,7 +52,7 @@ public class ConcreteSensorLogger implements SensorLogger, Resettable {
         ConcreteSensorLogger.logFile = logFile;
     }
 
-    private boolean suppress(@NonNull final SensorLoggerLevel level) {
+    private static boolean suppress(@NonNull final SensorLoggerLevel level) {
         if (BLESensorConfiguration.logLevel == SensorLoggerLevel.off) {
             return true;
         }
@@ -67,75 +66,220 @@ public class ConcreteSensorLogger implements SensorLogger, Resettable {
         }
     }
 
-    private void log(@NonNull final SensorLoggerLevel level, @NonNull final String message, final Object... values) {
-        if (!suppress(level)) {
-            // android.util.Log is unavailable during test, this will throw error.
-            try {
-                outputLog(level, tag(subsystem, category), message, values);
-            } catch (Throwable ignored) {
-            }
-            outputStream(level, subsystem, category, message, values);
+    private void log(@NonNull final SensorLoggerLevel level, @NonNull final String message, @NonNull final Object... values) {
+        final String rendered = render(message, values);
+        // android.util.Log is unavailable during test, this will throw error.
+        try {
+            outputLog(level, tag, rendered, getThrowable(values));
+        } catch (Throwable ignored) {
         }
+        outputStream(level, subsystem, category, message, rendered);
+    }
+
+    @NonNull
+    private static String tag(@NonNull final String subsystem, @NonNull final String category) {
+        return subsystem + "::" + category;
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+        return !suppress(SensorLoggerLevel.debug);
     }
 
+    @Override
+    public boolean isInfoEnabled() {
+        return !suppress(SensorLoggerLevel.info);
+    }
+
+    @Override
+    public boolean isFaultEnabled() {
+        return !suppress(SensorLoggerLevel.fault);
+    }
+
+    @Override
+    public void debug(@NonNull final String message) {
+        if (!suppress(SensorLoggerLevel.debug)) {
+            log(SensorLoggerLevel.debug, message);
+        }
+    }
+
+    @Override
+    public void debug(@NonNull final String message, @Nullable final Object value0) {
+        if (!suppress(SensorLoggerLevel.debug)) {
+            log(SensorLoggerLevel.debug, message, value0);
+        }
+    }
+
+    @Override
+    public void debug(@NonNull final String message, @Nullable final Object value0, @Nullable final Object value1) {
+        if (!suppress(SensorLoggerLevel.debug)) {
+            log(SensorLoggerLevel.debug, message, value0, value1);
+        }
+    }
+
+    @Override
+    public void debug(@NonNull final String message, @Nullable final Object value0, @Nullable final Object value1, @Nullable final Object value2) {
+        if (!suppress(SensorLoggerLevel.debug)) {
+            log(SensorLoggerLevel.debug, message, value0, value1, value2);
+        }
+    }
+
+    @Override
     public void debug(@NonNull final String message, final Object... values) {
-        log(SensorLoggerLevel.debug, message, values);
+        if (!suppress(SensorLoggerLevel.debug)) {
+            log(SensorLoggerLevel.debug, message, values);
+        }
+    }
+
+    @Override
+    public void info(@NonNull final String message) {
+        if (!suppress(SensorLoggerLevel.info)) {
+            log(SensorLoggerLevel.info, message);
+        }
+    }
+
+    @Override
+    public void info(@NonNull final String message, @Nullable final Object value0) {
+        if (!suppress(SensorLoggerLevel.info)) {
+            log(SensorLoggerLevel.info, message, value0);
+        }
+    }
+
+    @Override
+    public void info(@NonNull final String message, @Nullable final Object value0, @Nullable final Object value1) {
+        if (!suppress(SensorLoggerLevel.info)) {
+            log(SensorLoggerLevel.info, message, value0, value1);
+        }
+    }
+
+    @Override
+    public void info(@NonNull final String message, @Nullable final Object value0, @Nullable final Object value1, @Nullable final Object value2) {
+        if (!suppress(SensorLoggerLevel.info)) {
+            log(SensorLoggerLevel.info, message, value0, value1, value2);
+        }
     }
 
+    @Override
     public void info(@NonNull final String message, final Object... values) {
-        log(SensorLoggerLevel.info, message, values);
+        if (!suppress(SensorLoggerLevel.info)) {
+            log(SensorLoggerLevel.info, message, values);
+        }
     }
 
-    public void fault(@NonNull final String message, final Object... values) {
-        log(SensorLoggerLevel.fault, message, values);
+    @Override
+    public void fault(@NonNull final String message) {
+        if (!suppress(SensorLoggerLevel.fault)) {
+            log(SensorLoggerLevel.fault, message);
+        }
     }
 
-    @NonNull
-    private static String tag(@NonNull final String subsystem, @NonNull final String category) {
-        return subsystem + "::" + category;
+    @Override
+    public void fault(@NonNull final String message, @Nullable final Object value0) {
+        if (!suppress(SensorLoggerLevel.fault)) {
+            log(SensorLoggerLevel.fault, message, value0);
+        }
     }
 
-    private static void outputLog(@NonNull final SensorLoggerLevel level, @NonNull final String tag, @NonNull final String message, final Object... values) {
-        final Throwable throwable = getThrowable(values);
+    @Override
+    public void fault(@NonNull final String message, @Nullable final Object value0, @Nullable final Object value1) {
+        if (!suppress(SensorLoggerLevel.fault)) {
+            log(SensorLoggerLevel.fault, message, value0, value1);
+        }
+    }
+
+    @Override
+    public void fault(@NonNull final String message, @Nullable final Object value0, @Nullable final Object value1, @Nullable final Object value2) {
+        if (!suppress(SensorLoggerLevel.fault)) {
+            log(SensorLoggerLevel.fault, message, value0, value1, value2);
+        }
+    }
+
+    @Override
+    public void fault(@NonNull final String message, final Object... values) {
+        if (!suppress(SensorLoggerLevel.fault)) {
+            log(SensorLoggerLevel.fault, message, values);
+        }
+    }
+
+    private static void outputLog(@NonNull final SensorLoggerLevel level, @NonNull final String tag, @NonNull final String message, @Nullable final Throwable throwable) {
         switch (level) {
             case debug: {
                 if (null == throwable) {
-                    Log.d(tag, render(message, values));
+                    Log.d(tag, message);
                 } else {
-                    Log.d(tag, render(message, values), throwable);
+                    Log.d(tag, message, throwable);
                 }
                 break;
             }
             case info: {
                 if (null == throwable) {
-                    Log.i(tag, render(message, values));
+                    Log.i(tag, message);
                 } else {
-                    Log.i(tag, render(message, values), throwable);
+                    Log.i(tag, message, throwable);
                 }
                 break;
             }
             case fault: {
                 if (null == throwable) {
-                    Log.w(tag, render(message, values));
+                    Log.w(tag, message);
                 } else {
-                    Log.w(tag, render(message, values), throwable);
+                    Log.w(tag, message, throwable);
                 }
                 break;
             }
         }
     }
 
-    private static void outputStream(@NonNull final SensorLoggerLevel level, @NonNull final String subsystem, @NonNull final String category, @NonNull final String message, final Object... values) {
+    private static void outputStream(@NonNull final SensorLoggerLevel level, @NonNull final String subsystem, @NonNull final String category, @NonNull final String message, @NonNull final String rendered) {
+        final TextFile logFile = ConcreteSensorLogger.logFile;
         if (null == logFile) {
             return;
         }
-        final String timestamp = dateFormatter.format(new Date());
-        final String csvMessage = render(message, values).replace('\"', '\'');
-        final String quotedMessage = (message.contains(",") ? "\"" + csvMessage + "\"" : csvMessage);
-        final String entry = timestamp + "," + level + "," + subsystem + "," + category + "," + quotedMessage;
+        final boolean quoted = message.contains(",");
+        final StringBuilder stringBuilder = acquireStringBuilder();
+        TimestampCodec.appendSeconds(stringBuilder, System.currentTimeMillis());
+        stringBuilder.append(',').append(level.name()).append(',').append(subsystem).append(',').append(category).append(',');
+        if (quoted) {
+            stringBuilder.append('\"');
+        }
+        final int start = stringBuilder.length();
+        stringBuilder.append(rendered);
+        for (int i = stringBuilder.length(); i-- > start;) {
+            if ('\"' == stringBuilder.charAt(i)) {
+                stringBuilder.setCharAt(i, '\'');
+            }
+        }
+        if (quoted) {
+            stringBuilder.append('\"');
+        }
+        final String entry = stringBuilder.toString();
+        releaseStringBuilder(stringBuilder);
         logFile.write(entry);
     }
 
+    /**
+     * Get string builder of current thread for rendering. The builder is removed from
+     * the thread while in use, such that values that log from their toString method
+     * while being rendered are given a new builder.
+     * @return Empty string builder.
+     */
+    @NonNull
+    private static StringBuilder acquireStringBuilder() {
+        final StringBuilder stringBuilder = threadStringBuilder.get();
+        if (null == stringBuilder) {
+            return new StringBuilder(256);
+        }
+        threadStringBuilder.set(null);
+        stringBuilder.setLength(0);
+        return stringBuilder;
+    }
+
+    private static void releaseStringBuilder(@NonNull final StringBuilder stringBuilder) {
+        // Discard builders grown by exceptionally long messages
+        if (stringBuilder.capacity() <= maxStringBuilderCapacity) {
+            threadStringBuilder.set(stringBuilder);
+        }
+    }
 
     @Nullable
     private static Throwable getThrowable(@NonNull final Object... values) {
@@ -150,29 +294,32 @@ public class ConcreteSensorLogger implements SensorLogger, Resettable {
     private static String render(@NonNull final String message, @NonNull final Object... values) {
         if (0 == values.length) {
             return message;
-        } else {
-            final StringBuilder stringBuilder = new StringBuilder();
-
-            int valueIndex = 0;
-            int start = 0;
-            int end = message.indexOf("{}");
-            while (end > 0) {
-                stringBuilder.append(message.substring(start, end));
-                if (values.length > valueIndex) {
-                    if (null == values[valueIndex]) {
-                        stringBuilder.append("NULL");
-                    } else {
-                        stringBuilder.append(values[valueIndex].toString());
-                    }
+        }
+        final StringBuilder stringBuilder = acquireStringBuilder();
+        int valueIndex = 0;
+        int start = 0;
+        int end = message.indexOf("{}");
+        while (end > 0) {
+            stringBuilder.append(message, start, end);
+            if (values.length > valueIndex) {
+                Object value = values[valueIndex];
+                if (value instanceof Parameter) {
+                    value = ((Parameter) value).value();
+                }
+                if (null == value) {
+                    stringBuilder.append("NULL");
+                } else {
+                    stringBuilder.append(value.toString());
                 }
-                valueIndex++;
-                start = end + 2;
-                end = message.indexOf("{}", start);
             }
-            stringBuilder.append(message.substring(start));
-
-            return stringBuilder.toString();
+            valueIndex++;
+            start = end + 2;
+            end = message.indexOf("{}", start);
         }
+        stringBuilder.append(message, start, message.length());
+        final String rendered = stringBuilder.toString();
+        releaseStringBuilder(stringBuilder);
+        return rendered;
     }
 
 }
@@ -12,15 +12,19 @@ import io.heraldprox.herald.sensor.datatype.PayloadData;
 import io.heraldprox.herald.sensor.datatype.SensorState;
 import io.heraldprox.herald.sensor.datatype.SensorType;
 import io.heraldprox.herald.sensor.datatype.TargetIdentifier;
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * CSV detection log for post event analysis and visualisation.
+ * <br>
+ * Payloads stored in the log file are loaded once on construction and merged with payloads
+ * in memory, which are held in sorted order. By default, the log file is rewritten on every
+ * change. With a debounce interval, changes are written together after the interval, thus
+ * a burst of new payloads causes at most one write per interval.
  */
 public class DetectionLog extends SensorDelegateLogger {
     private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "Data.DetectionLog");
@@ -28,13 +32,30 @@ public class DetectionLog extends SensorDelegateLogger {
     private final PayloadData payloadData;
     private final String deviceName = android.os.Build.MODEL;
     private final String deviceOS = Integer.toString(android.os.Build.VERSION.SDK_INT);
-    private final Map<String, String> payloads = new ConcurrentHashMap<>();
+    // Payload -> target identifier, sorted by payload
+    private final ConcurrentSkipListMap<String, String> payloads = new ConcurrentSkipListMap<>();
     private final PayloadDataFormatter payloadDataFormatter;
+    private final long debounceInterval;
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
 
     public DetectionLog(@NonNull final Context context, @NonNull final String filename, @NonNull final PayloadData payloadData, @NonNull final PayloadDataFormatter payloadDataFormatter) {
+        this(context, filename, payloadData, payloadDataFormatter, TimeInterval.zero);
+    }
+
+    /**
+     * Detection log with debounced writes.
+     * @param context Application context.
+     * @param filename File name of log file.
+     * @param payloadData Payload of this device.
+     * @param payloadDataFormatter Formatter for payloads in log file.
+     * @param debounceInterval Time delay between a change and writing the log file, or zero to write on every change.
+     */
+    public DetectionLog(@NonNull final Context context, @NonNull final String filename, @NonNull final PayloadData payloadData, @NonNull final PayloadDataFormatter payloadDataFormatter, @NonNull final TimeInterval debounceInterval) {
         super(context, filename);
         this.payloadData = payloadData;
         this.payloadDataFormatter = payloadDataFormatter;
+        this.debounceInterval = debounceInterval.millis();
+        read();
         write();
     }
 
@@ -43,12 +64,27 @@ public class DetectionLog extends SensorDelegateLogger {
     }
 
     public DetectionLog(@NonNull final TextFile textFile, @NonNull final PayloadData payloadData) {
+        this(textFile, payloadData, TimeInterval.zero);
+    }
+
+    /**
+     * Detection log with debounced writes.
+     * @param textFile Log file.
+     * @param payloadData Payload of this device.
+     * @param debounceInterval Time delay between a change and writing the log file, or zero to write on every change.
+     */
+    public DetectionLog(@NonNull final TextFile textFile, @NonNull final PayloadData payloadData, @NonNull final TimeInterval debounceInterval) {
         super(textFile);
         this.payloadData = payloadData;
         this.payloadDataFormatter = new ConcretePayloadDataFormatter();
+        this.debounceInterval = debounceInterval.millis();
+        read();
         write();
     }
 
+    /**
+     * Load payloads stored in log file, e.g. from before app restart.
+     */
     private void read() {
         final String content = contentsOf();
         if (null == content || content.isEmpty()) {
@@ -56,56 +92,69 @@ public class DetectionLog extends SensorDelegateLogger {
         }
         // Parse log file to read previously stored payloads
         final String[] data = content.trim().split(",");
-        final List<String> storedPayloads = new ArrayList<>(data.length);
+        int stored = 0;
         // File format is : deviceName,osName,osVersion,selfPayload,targetPayload1,...,targetPayloadN
         // Target payloads start at index 4
         for (int i=4; i<data.length; i++) {
             if (null != data[i] && !data[i].isEmpty()) {
-                storedPayloads.add(data[i].trim());
+                // Register stored payloads as { payload -> "stored" } where "stored" is the target identifier
+                if (null == payloads.putIfAbsent(data[i].trim(), "stored")) {
+                    stored++;
+                }
             }
         }
-        // Register stored payloads as { payload -> "stored" } where "stored" is the target identifier
-        // if payload is not in memory already (due to app restart).
-        final List<String> mergedPayloads = new ArrayList<>(storedPayloads.size());
-        for (final String targetPayload : storedPayloads) {
-            if (payloads.containsKey(targetPayload)) {
-                continue;
-            }
-            payloads.put(targetPayload, "stored");
-            mergedPayloads.add(targetPayload);
+        logger.debug("read (stored={})", stored);
+    }
+
+    /**
+     * Write log file now if debounce interval is zero, or schedule write otherwise.
+     */
+    private void changed() {
+        dirty.set(true);
+        if (debounceInterval > 0) {
+            scheduleSnapshot(debounceInterval);
+        } else {
+            write();
         }
-        Collections.sort(storedPayloads);
-        Collections.sort(mergedPayloads);
-        logger.debug("read (stored={},merged={})", storedPayloads.toString(), mergedPayloads.toString());
     }
 
-    private void write() {
-        // Read stored payloads to combine with payloads in memory
-        read();
-        // Write all payloads
-        final StringBuilder content = new StringBuilder();
+    private synchronized void write() {
+        dirty.set(false);
+        overwrite(content());
+    }
+
+    /**
+     * Write pending changes to log file atomically.
+     */
+    @Override
+    public synchronized void snapshot() {
+        if (!dirty.getAndSet(false)) {
+            return;
+        }
+        replace(content());
+    }
+
+    @NonNull
+    private String content() {
+        final String selfPayload = payloadDataFormatter.shortFormat(payloadData);
+        final StringBuilder content = new StringBuilder(64 + payloads.size() * (selfPayload.length() + 1));
         content.append(csv(deviceName));
         content.append(',');
         content.append("Android");
         content.append(',');
         content.append(csv(deviceOS));
         content.append(',');
-        content.append(csv(payloadDataFormatter.shortFormat(payloadData)));
-        final List<String> payloadList = new ArrayList<>(payloads.size());
+        content.append(csv(selfPayload));
+        // Payloads are already in sorted order
         for (final String payload : payloads.keySet()) {
-            if (payload.equals(payloadDataFormatter.shortFormat(payloadData))) {
+            if (payload.equals(selfPayload)) {
                 continue;
             }
-            payloadList.add(payload);
-        }
-        Collections.sort(payloadList);
-        for (final String payload : payloadList) {
             content.append(',');
             content.append(payload);
         }
-        logger.debug("write (content={})", content.toString());
         content.append("\n");
-        overwrite(content.toString());
+        return content.toString();
     }
 
 
@@ -120,21 +169,28 @@ public class DetectionLog extends SensorDelegateLogger {
 
     @Override
     public void sensor(@NonNull final SensorType sensor, @NonNull final PayloadData didRead, @NonNull final TargetIdentifier fromTarget) {
-        final String previousTarget = payloads.put(payloadDataFormatter.shortFormat(didRead), fromTarget.value);
-        if (null == previousTarget || "stored".equals(previousTarget)) {
-            logger.debug("didRead (payload={})", payloadDataFormatter.shortFormat(payloadData));
-            write();
+        final String payload = payloadDataFormatter.shortFormat(didRead);
+        final String previousTarget = payloads.put(payload, fromTarget.value);
+        if (null == previousTarget) {
+            logger.debug("didRead (payload={})", payload);
+            changed();
         }
     }
 
     @Override
     public void sensor(@NonNull final SensorType sensor, @NonNull final List<PayloadData> didShare, @NonNull final TargetIdentifier fromTarget) {
+        // One write for all new payloads
+        boolean changed = false;
         for (final PayloadData payloadData : didShare) {
-            final String previousTarget = payloads.put(payloadDataFormatter.shortFormat(payloadData), fromTarget.value);
-            if (null == previousTarget || "stored".equals(previousTarget)) {
-                logger.debug("didShare (payload={})", payloadDataFormatter.shortFormat(payloadData));
-                write();
+            final String payload = payloadDataFormatter.shortFormat(payloadData);
+            final String previousTarget = payloads.put(payload, fromTarget.value);
+            if (null == previousTarget) {
+                logger.debug("didShare (payload={})", payload);
+                changed = true;
             }
         }
+        if (changed) {
+            changed();
+        }
     }
 }
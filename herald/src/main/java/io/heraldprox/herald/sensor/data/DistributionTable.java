@@ -0,0 +1,116 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import io.heraldprox.herald.sensor.datatype.Distribution;
+
+/**
+ * CSV table of distributions sorted by key, for statistics logs that rewrite the whole
+ * file on change. Keys are held in sorted order and each formatted row is cached until
+ * its distribution is marked dirty, thus producing the file content only formats the
+ * rows that have changed and concatenates the rest, instead of sorting all keys and
+ * formatting all distributions.
+ */
+final class DistributionTable {
+    @NonNull
+    private final String header;
+    @NonNull
+    private final String prefix;
+    private final ConcurrentSkipListMap<String, Distribution> distributions = new ConcurrentSkipListMap<>();
+    private final Set<String> dirty = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    // Formatted rows, guarded by this
+    private final Map<String, String> rows = new HashMap<>();
+
+    /**
+     * CSV table.
+     * @param header Header row, including newline character.
+     * @param prefix Values in front of key on every row, including trailing comma.
+     */
+    DistributionTable(@NonNull final String header, @NonNull final String prefix) {
+        this.header = header;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Add or replace distribution and mark it dirty.
+     * @param key Key.
+     * @param distribution Distribution, which is read on content() only.
+     */
+    void put(@NonNull final String key, @NonNull final Distribution distribution) {
+        distributions.put(key, distribution);
+        dirty.add(key);
+    }
+
+    /**
+     * Mark distribution dirty after it has been updated.
+     * @param key Key.
+     */
+    void touch(@NonNull final String key) {
+        dirty.add(key);
+    }
+
+    /**
+     * Test if any distribution has changed since last call to content().
+     * @return True if content has changed.
+     */
+    boolean dirty() {
+        return !dirty.isEmpty();
+    }
+
+    /**
+     * Get table content, comprising of header row and a row for every distribution with
+     * mean, standard deviation, min and max.
+     * @return CSV content.
+     */
+    @NonNull
+    synchronized String content() {
+        final Iterator<String> iterator = dirty.iterator();
+        while (iterator.hasNext()) {
+            final String key = iterator.next();
+            iterator.remove();
+            final String row = row(key, distributions.get(key));
+            if (null == row) {
+                rows.remove(key);
+            } else {
+                rows.put(key, row);
+            }
+        }
+        final StringBuilder content = new StringBuilder(header.length() + rows.size() * (prefix.length() + 64));
+        content.append(header);
+        for (final String key : distributions.keySet()) {
+            final String row = rows.get(key);
+            if (null != row) {
+                content.append(row);
+            }
+        }
+        return content.toString();
+    }
+
+    @Nullable
+    private String row(@NonNull final String key, @Nullable final Distribution distribution) {
+        if (null == distribution) {
+            return null;
+        }
+        final Double mean = distribution.mean();
+        final Double standardDeviation = distribution.standardDeviation();
+        final Double min = distribution.min();
+        final Double max = distribution.max();
+        if (null == mean || null == standardDeviation || null == min || null == max) {
+            return null;
+        }
+        return prefix + TextFile.csv(key) + ',' + distribution.count() + ',' + mean + ',' + standardDeviation + ',' + min + ',' + max + '\n';
+    }
+}
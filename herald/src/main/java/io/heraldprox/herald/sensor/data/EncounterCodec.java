@@ -0,0 +1,75 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.List;
+
+import io.heraldprox.herald.sensor.datatype.Encounter;
+
+/**
+ * File format for persisting encounters in {@link EncounterStore}.
+ */
+public interface EncounterCodec {
+
+    /**
+     * File name extension for files in this format, including the dot, e.g. ".csv"
+     * @return File name extension.
+     */
+    @NonNull
+    String extension();
+
+    /**
+     * Read all encounters from file, in file order.
+     * @param file Source file.
+     * @return Valid encounters in file, or null on failure.
+     */
+    @Nullable
+    List<Encounter> read(@NonNull File file);
+
+    /**
+     * Replace file content with encounters.
+     * @param file Target file.
+     * @param encounters Encounters to be written.
+     * @return True on success, false otherwise.
+     */
+    boolean write(@NonNull File file, @NonNull List<Encounter> encounters);
+
+    /**
+     * Open file for appending encounters.
+     * @param file Target file, created if it does not exist.
+     * @return Appender, or null on failure.
+     */
+    @Nullable
+    Appender appender(@NonNull File file);
+
+    /**
+     * Writer for appending encounters to the end of a file. Appended encounters may be
+     * buffered by the appender, they are written to file on flush() or close() at the latest.
+     */
+    interface Appender {
+
+        /**
+         * Append encounter.
+         * @param encounter Encounter.
+         * @return True on success, false otherwise.
+         */
+        boolean append(@NonNull Encounter encounter);
+
+        /**
+         * Write all buffered encounters to file.
+         * @return True on success, false otherwise.
+         */
+        boolean flush();
+
+        /**
+         * Flush and close file.
+         */
+        void close();
+    }
+}
@@ -0,0 +1,498 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import io.heraldprox.herald.sensor.datatype.Encounter;
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
+
+/**
+ * Time partitioned store of encounters for range queries and data retention.
+ * <br>
+ * Encounters are partitioned into segments of fixed duration (e.g. one day), where each
+ * segment is persisted as a separate file named "prefix-key.extension" and the key is the
+ * segment start time divided by segment duration. File format is determined by the
+ * {@link EncounterCodec}, which is CSV by default. Segment files are listed on
+ * construction but only parsed when a query first touches the segment. Each loaded
+ * segment holds its encounters sorted by time with a parallel array of timestamps,
+ * thus range queries select segments by key and locate encounters by binary search.
+ * Data retention deletes whole segment files, and only rewrites the one segment
+ * that straddles the cut off time.
+ * <br>
+ * A store without folder is held in memory only.
+ */
+public class EncounterStore {
+    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "Data.EncounterStore");
+    @Nullable
+    private final File folder;
+    @NonNull
+    private final String prefix;
+    private final long segmentDuration;
+    @NonNull
+    private final EncounterCodec codec;
+    @NonNull
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    // Appender for the segment receiving appends
+    @Nullable
+    private Segment activeSegment = null;
+    @Nullable
+    private EncounterCodec.Appender activeAppender = null;
+
+    /**
+     * Segment of encounters, sorted by time.
+     */
+    private final static class Segment {
+        private final long key;
+        @Nullable
+        private final File file;
+        private boolean loaded;
+        @NonNull
+        private final ArrayList<Encounter> encounters = new ArrayList<>();
+        @NonNull
+        private long[] timestamps = new long[16];
+
+        private Segment(final long key, @Nullable final File file, final boolean loaded) {
+            this.key = key;
+            this.file = file;
+            this.loaded = loaded;
+        }
+
+        private int size() {
+            return encounters.size();
+        }
+
+        /**
+         * Insert encounter in time order. Encounters usually arrive in time order, thus
+         * this is an append in most cases.
+         */
+        private void add(@NonNull final Encounter encounter, final long time) {
+            final int size = encounters.size();
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+            }
+            if (0 == size || time >= timestamps[size - 1]) {
+                timestamps[size] = time;
+                encounters.add(encounter);
+                return;
+            }
+            // Out of order arrival, insert after all encounters at the same time
+            final int index = lowerBound(time + 1);
+            System.arraycopy(timestamps, index, timestamps, index + 1, size - index);
+            timestamps[index] = time;
+            encounters.add(index, encounter);
+        }
+
+        /**
+         * Index of first encounter at or after time.
+         */
+        private int lowerBound(final long time) {
+            int low = 0, high = encounters.size();
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (timestamps[middle] < time) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Remove all encounters before index.
+         */
+        private void removeBefore(final int index) {
+            final int size = encounters.size();
+            encounters.subList(0, index).clear();
+            System.arraycopy(timestamps, index, timestamps, 0, size - index);
+        }
+
+        private void clear() {
+            encounters.clear();
+        }
+    }
+
+    /**
+     * In memory store with one day segments.
+     */
+    public EncounterStore() {
+        this(null, "encounters", TimeInterval.day);
+    }
+
+    /**
+     * Persistent store with CSV segment files.
+     * @param folder Folder for segment files, or null for in memory store.
+     * @param prefix File name prefix for segment files.
+     * @param segmentDuration Time period covered by each segment, e.g. TimeInterval.day or TimeInterval.hour.
+     */
+    public EncounterStore(@Nullable final File folder, @NonNull final String prefix, @NonNull final TimeInterval segmentDuration) {
+        this(folder, prefix, segmentDuration, new CSVEncounterCodec());
+    }
+
+    /**
+     * Persistent store.
+     * @param folder Folder for segment files, or null for in memory store.
+     * @param prefix File name prefix for segment files.
+     * @param segmentDuration Time period covered by each segment, e.g. TimeInterval.day or TimeInterval.hour.
+     * @param codec File format for segment files.
+     */
+    public EncounterStore(@Nullable final File folder, @NonNull final String prefix, @NonNull final TimeInterval segmentDuration, @NonNull final EncounterCodec codec) {
+        this.folder = folder;
+        this.prefix = prefix;
+        this.segmentDuration = Math.max(1000, segmentDuration.millis());
+        this.codec = codec;
+        if (null == folder) {
+            return;
+        }
+        if (!folder.exists() && !folder.mkdirs()) {
+            logger.fault("Make folder failed (folder={})", folder);
+        }
+        // List segments without loading content
+        final File[] files = folder.listFiles();
+        if (null == files) {
+            return;
+        }
+        for (final File file : files) {
+            final Long key = key(file.getName(), codec);
+            if (null != key) {
+                segments.put(key, new Segment(key, file, false));
+            }
+        }
+        logger.debug("Found segments (folder={},prefix={},count={})", folder, prefix, segments.size());
+    }
+
+    // MARK: - Segments
+
+    /**
+     * Parse segment key from file name.
+     * @param filename File name.
+     * @param codec File format.
+     * @return Segment key, or null if file is not a segment file of this store in given format.
+     */
+    @Nullable
+    private Long key(@NonNull final String filename, @NonNull final EncounterCodec codec) {
+        final String extension = codec.extension();
+        if (!filename.startsWith(prefix + "-") || !filename.endsWith(extension)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(filename.substring(prefix.length() + 1, filename.length() - extension.length()));
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    /**
+     * Segment key for time, i.e. floor(time / segmentDuration).
+     */
+    private long key(final long time) {
+        return (time >= 0 ? time / segmentDuration : -((-time + segmentDuration - 1) / segmentDuration));
+    }
+
+    @NonNull
+    private Segment segment(final long key) {
+        Segment segment = segments.get(key);
+        if (null == segment) {
+            segment = new Segment(key, (null == folder ? null : new File(folder, prefix + "-" + key + codec.extension())), true);
+            segments.put(key, segment);
+        }
+        return segment;
+    }
+
+    /**
+     * Load segment content from file on first access.
+     */
+    @NonNull
+    private Segment loaded(@NonNull final Segment segment) {
+        if (segment.loaded) {
+            return segment;
+        }
+        segment.loaded = true;
+        if (null == segment.file || !segment.file.exists()) {
+            return segment;
+        }
+        if (segment == activeSegment) {
+            closeActiveAppender();
+        }
+        final List<Encounter> encounters = codec.read(segment.file);
+        if (null == encounters) {
+            logger.fault("Load segment failed (file={})", segment.file);
+            return segment;
+        }
+        // Stable sort as file is in arrival order
+        Collections.sort(encounters, new Comparator<Encounter>() {
+            @Override
+            public int compare(@NonNull final Encounter a, @NonNull final Encounter b) {
+                //noinspection ConstantConditions
+                final long ta = a.timestamp.getTime(), tb = b.timestamp.getTime();
+                return (ta < tb ? -1 : (ta == tb ? 0 : 1));
+            }
+        });
+        for (final Encounter encounter : encounters) {
+            //noinspection ConstantConditions
+            segment.add(encounter, encounter.timestamp.getTime());
+        }
+        logger.debug("Loaded segment (file={},count={})", segment.file.getName(), segment.size());
+        return segment;
+    }
+
+    // MARK: - Persistence
+
+    private void closeActiveAppender() {
+        if (null != activeAppender) {
+            activeAppender.close();
+        }
+        activeAppender = null;
+        activeSegment = null;
+    }
+
+    private void appendToFile(@NonNull final Segment segment, @NonNull final Encounter encounter) {
+        if (null == segment.file) {
+            return;
+        }
+        if (segment != activeSegment || null == activeAppender) {
+            closeActiveAppender();
+            activeAppender = codec.appender(segment.file);
+            if (null == activeAppender) {
+                logger.fault("Append segment failed (file={})", segment.file);
+                return;
+            }
+            activeSegment = segment;
+        }
+        if (!activeAppender.append(encounter)) {
+            logger.fault("Append segment failed (file={})", segment.file);
+            closeActiveAppender();
+        }
+    }
+
+    private void rewriteFile(@NonNull final Segment segment) {
+        if (null == segment.file) {
+            return;
+        }
+        if (segment == activeSegment) {
+            closeActiveAppender();
+        }
+        if (!codec.write(segment.file, segment.encounters)) {
+            logger.fault("Rewrite segment failed (file={})", segment.file);
+        }
+    }
+
+    private void deleteFile(@NonNull final Segment segment) {
+        if (segment == activeSegment) {
+            closeActiveAppender();
+        }
+        if (null != segment.file && segment.file.exists() && !segment.file.delete()) {
+            logger.fault("Delete segment failed (file={})", segment.file);
+        }
+    }
+
+    // MARK: - Encounters
+
+    /**
+     * Append encounter to its segment. Encounters without timestamp are ignored. Appending
+     * to a segment that has not been loaded writes to file without loading the segment.
+     * @param encounter Encounter.
+     */
+    public synchronized void append(@NonNull final Encounter encounter) {
+        if (null == encounter.timestamp) {
+            return;
+        }
+        final long time = encounter.timestamp.getTime();
+        final Segment segment = segment(key(time));
+        if (segment.loaded) {
+            segment.add(encounter, time);
+        }
+        appendToFile(segment, encounter);
+    }
+
+    /**
+     * Get encounters from start date (inclusive) to end date (exclusive), in time order.
+     * @param start Start date (inclusive)
+     * @param end End date (exclusive)
+     * @return Encounters in requested period.
+     */
+    @NonNull
+    public synchronized List<Encounter> subdata(final long start, final long end) {
+        final List<Encounter> subdata = new ArrayList<>();
+        if (end <= start) {
+            return subdata;
+        }
+        for (final Segment unloaded : segments.subMap(key(start), true, key(end - 1), true).values()) {
+            final Segment segment = loaded(unloaded);
+            final int from = segment.lowerBound(start);
+            final int to = segment.lowerBound(end);
+            if (from < to) {
+                subdata.addAll(segment.encounters.subList(from, to));
+            }
+        }
+        return subdata;
+    }
+
+    /**
+     * Get all encounters from start date (inclusive), in time order.
+     * @param start Start date (inclusive)
+     * @return Encounters from start date.
+     */
+    @NonNull
+    public synchronized List<Encounter> subdata(final long start) {
+        final List<Encounter> subdata = new ArrayList<>();
+        for (final Segment unloaded : segments.tailMap(key(start), true).values()) {
+            final Segment segment = loaded(unloaded);
+            final int from = segment.lowerBound(start);
+            if (from < segment.size()) {
+                subdata.addAll(segment.encounters.subList(from, segment.size()));
+            }
+        }
+        return subdata;
+    }
+
+    /**
+     * Remove all encounters before date (exclusive). Segments that end before the cut off
+     * date are deleted without loading, and only the segment containing the cut off date is
+     * rewritten if it contains encounters before the cut off date.
+     * @param before Cut off date (exclusive)
+     */
+    public synchronized void remove(final long before) {
+        final long cutOffKey = key(before);
+        int deleted = 0;
+        final Map<Long, Segment> expired = segments.headMap(cutOffKey, false);
+        for (final Segment segment : expired.values()) {
+            deleteFile(segment);
+            deleted++;
+        }
+        expired.clear();
+        final Segment boundary = segments.get(cutOffKey);
+        if (null != boundary) {
+            final Segment segment = loaded(boundary);
+            final int index = segment.lowerBound(before);
+            if (index > 0) {
+                segment.removeBefore(index);
+                rewriteFile(segment);
+            }
+        }
+        logger.debug("Removed segments (before={},deleted={},remaining={})", before, deleted, segments.size());
+    }
+
+    /**
+     * Remove all encounters and segment files.
+     */
+    public synchronized void reset() {
+        for (final Segment segment : segments.values()) {
+            deleteFile(segment);
+            segment.clear();
+        }
+        segments.clear();
+        closeActiveAppender();
+    }
+
+    /**
+     * Write buffered encounters to segment file that is open for appending.
+     */
+    public synchronized void flush() {
+        if (null != activeAppender && !activeAppender.flush()) {
+            logger.fault("Flush segment failed (file={})", (null == activeSegment ? null : activeSegment.file));
+        }
+    }
+
+    /**
+     * Close segment file that is open for appending. The store remains usable and
+     * reopens the file on next append.
+     */
+    public synchronized void close() {
+        closeActiveAppender();
+    }
+
+    // MARK: - Conversion
+
+    /**
+     * Convert encounter file from one format to another, e.g. CSV to binary.
+     * @param from Source file.
+     * @param fromCodec Source file format.
+     * @param to Target file, replaced if it exists.
+     * @param toCodec Target file format.
+     * @return Number of converted encounters, or -1 on failure.
+     */
+    public static int convert(@NonNull final File from, @NonNull final EncounterCodec fromCodec, @NonNull final File to, @NonNull final EncounterCodec toCodec) {
+        final List<Encounter> encounters = fromCodec.read(from);
+        if (null == encounters || !toCodec.write(to, encounters)) {
+            return -1;
+        }
+        return encounters.size();
+    }
+
+    /**
+     * Convert segment files of this store in another format, e.g. CSV segment files of an
+     * earlier version, into the format of this store. Converted segments are merged with
+     * existing segments and source files are deleted after successful conversion.
+     * @param from File format of segment files to be converted.
+     * @return Number of converted encounters.
+     */
+    public synchronized int convert(@NonNull final EncounterCodec from) {
+        if (null == folder || from.extension().equals(codec.extension())) {
+            return 0;
+        }
+        final File[] files = folder.listFiles();
+        if (null == files) {
+            return 0;
+        }
+        int count = 0;
+        for (final File file : files) {
+            final Long key = key(file.getName(), from);
+            if (null == key) {
+                continue;
+            }
+            final List<Encounter> encounters = from.read(file);
+            if (null == encounters) {
+                logger.fault("Convert segment failed (file={})", file);
+                continue;
+            }
+            final Segment segment = loaded(segment(key));
+            for (final Encounter encounter : encounters) {
+                //noinspection ConstantConditions
+                segment.add(encounter, encounter.timestamp.getTime());
+            }
+            rewriteFile(segment);
+            if (!file.delete()) {
+                logger.fault("Convert segment failed, cannot delete file (file={})", file);
+            }
+            count += encounters.size();
+        }
+        logger.debug("Converted segments (from={},to={},count={})", from.extension(), codec.extension(), count);
+        return count;
+    }
+
+    /**
+     * Number of segments, loaded or otherwise.
+     * @return Segment count.
+     */
+    public synchronized int segments() {
+        return segments.size();
+    }
+
+    /**
+     * Number of segments that have been loaded into memory.
+     * @return Loaded segment count.
+     */
+    public synchronized int loadedSegments() {
+        int count = 0;
+        for (final Segment segment : segments.values()) {
+            if (segment.loaded) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
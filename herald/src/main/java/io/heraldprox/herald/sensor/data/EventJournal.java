@@ -0,0 +1,952 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.heraldprox.herald.sensor.DefaultSensorDelegate;
+import io.heraldprox.herald.sensor.datatype.Calibration;
+import io.heraldprox.herald.sensor.datatype.CalibrationMeasurementUnit;
+import io.heraldprox.herald.sensor.datatype.Data;
+import io.heraldprox.herald.sensor.datatype.ImmediateSendData;
+import io.heraldprox.herald.sensor.datatype.Location;
+import io.heraldprox.herald.sensor.datatype.PayloadData;
+import io.heraldprox.herald.sensor.datatype.Proximity;
+import io.heraldprox.herald.sensor.datatype.ProximityMeasurementUnit;
+import io.heraldprox.herald.sensor.datatype.SensorState;
+import io.heraldprox.herald.sensor.datatype.SensorType;
+import io.heraldprox.herald.sensor.datatype.TargetIdentifier;
+
+/**
+ * Binary append-only journal of sensor delegate events, as a compact alternative to
+ * CSV loggers such as {@link ContactLog}.
+ * <br>
+ * File comprises of a 4 byte header (magic "HEJ" and version) followed by records. Each
+ * writer session starts with a session record holding the absolute time in milliseconds.
+ * Event records hold the event type, sensor type, time in milliseconds as a variable
+ * length, zig-zag encoded delta from the previous record, a target identifier reference
+ * and event specific values. Target identifiers and payloads are written once per session
+ * and referenced by dictionary index afterwards, thus a typical RSSI measurement record
+ * is about 6 bytes. Proximity and calibration values that are integers, e.g. RSSI and
+ * transmit power, are stored as variable length integers, other values are stored
+ * losslessly as doubles.
+ * <br>
+ * Records are encoded into an in-memory buffer on the calling thread and appended to the
+ * file on the shared I/O thread after the write delay. The writer truncates an incomplete
+ * record at the end of the file, e.g. due to an interrupted write, before appending. A
+ * journal containing an invalid record, e.g. an unknown event type, is moved to a backup
+ * file instead, thus records after it are retained for inspection. Use
+ * {@link Reader} to stream events from a journal, and {@link #exportCsv(File, File, PayloadDataFormatter)}
+ * to convert a journal to the {@link ContactLog} CSV format.
+ */
+public class EventJournal extends DefaultSensorDelegate implements Resettable {
+    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "Data.EventJournal");
+    private final static byte[] magic = new byte[]{'H', 'E', 'J', 1};
+    private final static Charset utf8 = Charset.forName("UTF-8");
+    private final static int sessionRecord = 0;
+    // Dictionary reference for no value, new entry and first existing entry
+    private final static int referenceNone = 0, referenceNew = 1, referenceBase = 2;
+    // Flag for value stored as double rather than variable length integer
+    private final static int flagDouble = 0x80;
+    private final static SensorType[] sensorTypes = SensorType.values();
+    private final static SensorState[] sensorStates = SensorState.values();
+    private final static ProximityMeasurementUnit[] proximityUnits = ProximityMeasurementUnit.values();
+    private final static CalibrationMeasurementUnit[] calibrationUnits = CalibrationMeasurementUnit.values();
+    private final static EventType[] eventTypes = EventType.values();
+    @NonNull
+    private final File file;
+    private final long writeDelayMillis;
+    private final int maxDictionarySize;
+    private final int flushThreshold;
+    // Encoder state, guarded by this
+    @NonNull
+    private Encoder encoder = new Encoder();
+    private final Map<TargetIdentifier, Integer> targets = new HashMap<>();
+    private final Map<PayloadData, Integer> payloads = new HashMap<>();
+    private boolean sessionStarted = false;
+    private long previousTime = 0;
+    private long events = 0;
+    // File state, guarded by ioLock
+    private final Object ioLock = new Object();
+    @NonNull
+    private Encoder spare = new Encoder();
+    @Nullable
+    private FileOutputStream outputStream = null;
+    // Output stream has been opened on a new file, thus buffered records must start a session
+    private boolean outputStreamCreated = false;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Event type, one per sensor delegate callback. Codes of existing types must not change.
+     */
+    public enum EventType {
+        detect(1), read(2), measure(3), share(4), visit(5), detectHerald(6), delete(7),
+        receive(8), measureWithPayload(9), state(10);
+
+        public final int code;
+
+        EventType(final int code) {
+            this.code = code;
+        }
+
+        @Nullable
+        private static EventType of(final int code) {
+            for (final EventType eventType : eventTypes) {
+                if (eventType.code == code) {
+                    return eventType;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Event decoded from journal.
+     */
+    public final static class Event {
+        /** Time in milliseconds since epoch. */
+        public final long time;
+        @NonNull
+        public final EventType type;
+        @NonNull
+        public final SensorType sensor;
+        /** Target for all events except visit and state. */
+        @Nullable
+        public final TargetIdentifier target;
+        /** Payload for read and measureWithPayload, payloads for share, empty otherwise. */
+        @NonNull
+        public final List<PayloadData> payloads;
+        /** Proximity for measure and measureWithPayload. */
+        @Nullable
+        public final Proximity proximity;
+        /** Location description for visit. */
+        @Nullable
+        public final String location;
+        /** Data for receive. */
+        @Nullable
+        public final Data data;
+        /** State for state. */
+        @Nullable
+        public final SensorState state;
+
+        private Event(final long time, @NonNull final EventType type, @NonNull final SensorType sensor, @Nullable final TargetIdentifier target, @NonNull final List<PayloadData> payloads, @Nullable final Proximity proximity, @Nullable final String location, @Nullable final Data data, @Nullable final SensorState state) {
+            this.time = time;
+            this.type = type;
+            this.sensor = sensor;
+            this.target = target;
+            this.payloads = payloads;
+            this.proximity = proximity;
+            this.location = location;
+            this.data = data;
+            this.state = state;
+        }
+
+        /**
+         * Get payload of read and measureWithPayload events.
+         * @return First payload, or null if event has no payload.
+         */
+        @Nullable
+        public PayloadData payload() {
+            return (payloads.isEmpty() ? null : payloads.get(0));
+        }
+    }
+
+    /**
+     * Event journal.
+     * @param file Journal file within a folder.
+     * @param writeDelay Time delay in seconds between appending buffered events to file.
+     * @param maxDictionarySize Maximum number of target identifiers or payloads held in memory
+     *                          for referencing, before a new session is started to reset
+     *                          the dictionaries. Minimum 1.
+     */
+    public EventJournal(@NonNull final File file, final int writeDelay, final int maxDictionarySize) {
+        this.file = file;
+        this.writeDelayMillis = Math.max(0, writeDelay) * 1000L;
+        this.maxDictionarySize = Math.max(1, maxDictionarySize);
+        this.flushThreshold = 64 * 1024;
+        final File folder = file.getParentFile();
+        if (null != folder && !folder.exists() && !folder.mkdirs()) {
+            logger.fault("Make folder failed (folder={})", folder);
+        }
+    }
+
+    /**
+     * Event journal with 30 second write delay and up to 4096 dictionary entries.
+     * @param file Journal file within a folder.
+     */
+    public EventJournal(@NonNull final File file) {
+        this(file, 30, 4096);
+    }
+
+    /**
+     * Event journal with 30 second write delay and up to 4096 dictionary entries.
+     * @param context Application context.
+     * @param filename File name of file to be stored within "Sensor" folder in application context.
+     */
+    public EventJournal(@NonNull final Context context, @NonNull final String filename) {
+        this(TextFile.file(context, filename));
+    }
+
+    @NonNull
+    public File file() {
+        return file;
+    }
+
+    /**
+     * Number of events recorded since creation or reset.
+     * @return Event count.
+     */
+    public synchronized long events() {
+        return events;
+    }
+
+    @Override
+    public void reset() {
+        TextFileScheduler.shared().cancel(flushTask);
+        flushScheduled.set(false);
+        synchronized (ioLock) {
+            synchronized (this) {
+                encoder.reset();
+                startSession();
+                events = 0;
+            }
+            closeOutputStream();
+            if (file.exists() && !file.delete()) {
+                logger.fault("reset, delete failed (file={})", file);
+            }
+        }
+    }
+
+    // MARK: - SensorDelegate
+
+    @Override
+    public synchronized void sensor(@NonNull final SensorType sensor, @NonNull final TargetIdentifier didDetect) {
+        record(EventType.detect, sensor, didDetect);
+        commit();
+    }
+
+    @Override
+    public synchronized void sensor(@NonNull final SensorType sensor, final boolean available, @NonNull final TargetIdentifier didDeleteOrDetect) {
+        record((available ? EventType.detectHerald : EventType.delete), sensor, didDeleteOrDetect);
+        commit();
+    }
+
+    @Override
+    public synchronized void sensor(@NonNull final SensorType sensor, @NonNull final PayloadData didRead, @NonNull final TargetIdentifier fromTarget) {
+        record(EventType.read, sensor, fromTarget);
+        payload(didRead);
+        commit();
+    }
+
+    @Override
+    public synchronized void sensor(@NonNull final SensorType sensor, @NonNull final ImmediateSendData didReceive, @NonNull final TargetIdentifier fromTarget) {
+        record(EventType.receive, sensor, fromTarget);
+        final byte[] value = (null == didReceive.data || null == didReceive.data.value ? new byte[0] : didReceive.data.value);
+        encoder.varLong(value.length);
+        encoder.bytes(value);
+        commit();
+    }
+
+    @Override
+    public synchronized void sensor(@NonNull final SensorType sensor, @NonNull final List<PayloadData> didShare, @NonNull final TargetIdentifier fromTarget) {
+        record(EventType.share, sensor, fromTarget);
+        encoder.varLong(didShare.size());
+        for (final PayloadData payloadData : didShare) {
+            payload(payloadData);
+        }
+        commit();
+    }
+
+    @Override
+    public synchronized void sensor(@NonNull final SensorType sensor, @NonNull final Proximity didMeasure, @NonNull final TargetIdentifier fromTarget) {
+        record(EventType.measure, sensor, fromTarget);
+        proximity(didMeasure);
+        commit();
+    }
+
+    @Override
+    public synchronized void sensor(@NonNull final SensorType sensor, @NonNull final Location didVisit) {
+        record(EventType.visit, sensor, null);
+        final byte[] value = didVisit.description().getBytes(utf8);
+        encoder.varLong(value.length);
+        encoder.bytes(value);
+        commit();
+    }
+
+    @Override
+    public synchronized void sensor(@NonNull final SensorType sensor, @NonNull final Proximity didMeasure, @NonNull final TargetIdentifier fromTarget, @NonNull final PayloadData withPayload) {
+        record(EventType.measureWithPayload, sensor, fromTarget);
+        proximity(didMeasure);
+        payload(withPayload);
+        commit();
+    }
+
+    @Override
+    public synchronized void sensor(@NonNull final SensorType sensor, @NonNull final SensorState didUpdateState) {
+        record(EventType.state, sensor, null);
+        encoder.int8(didUpdateState.ordinal());
+        commit();
+    }
+
+    // MARK: - Encoding
+
+    private void startSession() {
+        targets.clear();
+        payloads.clear();
+        previousTime = System.currentTimeMillis();
+        encoder.int8(sessionRecord);
+        encoder.int64(previousTime);
+        sessionStarted = true;
+    }
+
+    /**
+     * Encode common record fields.
+     */
+    private void record(@NonNull final EventType type, @NonNull final SensorType sensor, @Nullable final TargetIdentifier target) {
+        if (!sessionStarted || targets.size() >= maxDictionarySize || payloads.size() >= maxDictionarySize) {
+            startSession();
+        }
+        final long time = System.currentTimeMillis();
+        encoder.int8(type.code);
+        encoder.int8(sensor.ordinal());
+        encoder.zigZag(time - previousTime);
+        previousTime = time;
+        if (null == target) {
+            encoder.varLong(referenceNone);
+            return;
+        }
+        final Integer index = targets.get(target);
+        if (null != index) {
+            encoder.varLong(referenceBase + index);
+            return;
+        }
+        targets.put(target, targets.size());
+        final byte[] value = target.value.getBytes(utf8);
+        encoder.varLong(referenceNew);
+        encoder.varLong(value.length);
+        encoder.bytes(value);
+    }
+
+    private void payload(@NonNull final PayloadData payloadData) {
+        final Integer index = payloads.get(payloadData);
+        if (null != index) {
+            encoder.varLong(referenceBase + index);
+            return;
+        }
+        payloads.put(payloadData, payloads.size());
+        encoder.varLong(referenceNew);
+        encoder.varLong(payloadData.value.length);
+        encoder.bytes(payloadData.value);
+    }
+
+    private void proximity(@NonNull final Proximity proximity) {
+        final double value = (null == proximity.value ? Double.NaN : proximity.value);
+        final boolean proximityInteger = integer(value);
+        encoder.int8(proximity.unit.ordinal() | (proximityInteger ? 0 : flagDouble));
+        number(value, proximityInteger);
+        final Calibration calibration = proximity.calibration;
+        if (null == calibration || null == calibration.unit || null == calibration.value) {
+            encoder.int8(0);
+            return;
+        }
+        final boolean calibrationInteger = integer(calibration.value);
+        encoder.int8((calibration.unit.ordinal() + 1) | (calibrationInteger ? 0 : flagDouble));
+        number(calibration.value, calibrationInteger);
+    }
+
+    private void number(final double value, final boolean integer) {
+        if (integer) {
+            encoder.zigZag((long) value);
+        } else {
+            encoder.int64(Double.doubleToRawLongBits(value));
+        }
+    }
+
+    /**
+     * Test if value can be stored losslessly as variable length integer.
+     */
+    private static boolean integer(final double value) {
+        return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE && Double.doubleToLongBits(value) == Double.doubleToLongBits((double) (long) value);
+    }
+
+    /**
+     * Complete record and schedule append to file.
+     */
+    private void commit() {
+        events++;
+        if (encoder.length >= flushThreshold) {
+            // Set flag before scheduling, as the flush may run and clear it immediately
+            flushScheduled.set(true);
+            TextFileScheduler.shared().schedule(flushTask, 0);
+        } else if (!flushScheduled.getAndSet(true)) {
+            TextFileScheduler.shared().schedule(flushTask, writeDelayMillis);
+        }
+    }
+
+    // MARK: - I/O
+
+    /**
+     * Append buffered records to file. Encoding of new events continues into a second
+     * buffer while file I/O is in progress.
+     * @return True on success, false on failure.
+     */
+    public boolean flush() {
+        synchronized (ioLock) {
+            flushScheduled.set(false);
+            final Encoder pending;
+            synchronized (this) {
+                if (0 == encoder.length) {
+                    return true;
+                }
+                pending = encoder;
+                encoder = spare;
+                spare = pending;
+            }
+            try {
+                final FileOutputStream outputStream = outputStream();
+                if (outputStreamCreated) {
+                    outputStreamCreated = false;
+                    // Buffered records continuing a session that was written to a file that has
+                    // since been deleted would be unreadable in the new file
+                    if (sessionRecord != pending.bytes[0]) {
+                        logger.fault("flush, journal recreated, discarding records of previous session (file={},bytes={})", file, pending.length);
+                        synchronized (this) {
+                            pending.reset();
+                            encoder.reset();
+                            sessionStarted = false;
+                        }
+                        return false;
+                    }
+                }
+                outputStream.write(pending.bytes, 0, pending.length);
+                pending.reset();
+                return true;
+            } catch (Throwable e) {
+                logger.fault("flush failed (file={})", file, e);
+                closeOutputStream();
+                // Discard buffered records and start a new session, as buffered records may
+                // reference dictionary entries that have not been written
+                synchronized (this) {
+                    pending.reset();
+                    encoder.reset();
+                    sessionStarted = false;
+                }
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Append buffered records to file and close file.
+     */
+    public void close() {
+        TextFileScheduler.shared().cancel(flushTask);
+        synchronized (ioLock) {
+            flush();
+            closeOutputStream();
+        }
+    }
+
+    /**
+     * Get output stream for appending records, writing the header for new files,
+     * truncating an incomplete record at the end of existing files, and moving
+     * existing files with invalid content to a backup file.
+     */
+    @NonNull
+    private FileOutputStream outputStream() throws Exception {
+        if (null != outputStream && file.exists()) {
+            return outputStream;
+        }
+        closeOutputStream();
+        if (file.exists() && file.length() > 0) {
+            final Reader reader = Reader.open(file);
+            if (null == reader) {
+                backup();
+            } else {
+                while (null != reader.next()) {
+                    // Find end of last complete record
+                }
+                final long validLength = reader.position();
+                if (validLength < file.length() && !reader.incomplete()) {
+                    backup();
+                } else if (validLength < file.length()) {
+                    logger.fault("Truncating incomplete record (file={},length={},valid={})", file, file.length(), validLength);
+                    final FileOutputStream truncate = new FileOutputStream(file, true);
+                    try {
+                        truncate.getChannel().truncate(validLength);
+                    } finally {
+                        truncate.close();
+                    }
+                }
+            }
+        }
+        final boolean empty = !file.exists() || 0 == file.length();
+        final FileOutputStream outputStream = new FileOutputStream(file, true);
+        if (empty) {
+            outputStream.write(magic);
+        }
+        this.outputStream = outputStream;
+        this.outputStreamCreated = empty;
+        return outputStream;
+    }
+
+    /**
+     * Move invalid journal to backup file, replacing any previous backup.
+     */
+    private void backup() {
+        final File backup = new File(file.getParentFile(), file.getName() + ".invalid");
+        logger.fault("Invalid journal, moving to backup (file={},backup={})", file, backup);
+        if (!file.renameTo(backup) && !file.delete()) {
+            throw new IllegalStateException("Cannot replace invalid journal");
+        }
+    }
+
+    private void closeOutputStream() {
+        if (null == outputStream) {
+            return;
+        }
+        try {
+            outputStream.close();
+        } catch (Throwable e) {
+            logger.fault("close failed (file={})", file, e);
+        }
+        outputStream = null;
+    }
+
+    // MARK: - CSV export
+
+    /**
+     * Convert journal to {@link ContactLog} CSV format. Events that are not logged by
+     * ContactLog, i.e. receive, measureWithPayload and state, are omitted.
+     * @param journal Journal file.
+     * @param csv CSV file, which is overwritten.
+     * @param payloadDataFormatter Formatter for payload column.
+     * @return True on success, false on failure.
+     */
+    public static boolean exportCsv(@NonNull final File journal, @NonNull final File csv, @NonNull final PayloadDataFormatter payloadDataFormatter) {
+        final SensorLogger logger = new ConcreteSensorLogger("Sensor", "Data.EventJournal");
+        final Reader reader = Reader.open(journal);
+        if (null == reader) {
+            return false;
+        }
+        try {
+            final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(csv), utf8));
+            try {
+                writer.write("time,sensor,id,detect,read,measure,share,visit,detectHerald,delete,data\n");
+                final StringBuilder stringBuilder = new StringBuilder(256);
+                Event event;
+                while (null != (event = reader.next())) {
+                    stringBuilder.setLength(0);
+                    if (csv(event, payloadDataFormatter, stringBuilder)) {
+                        writer.append(stringBuilder);
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+            return true;
+        } catch (Throwable e) {
+            logger.fault("exportCsv failed (journal={},csv={})", journal, csv, e);
+            return false;
+        }
+    }
+
+    /**
+     * Render event as ContactLog rows.
+     * @return True if event has rows, false otherwise.
+     */
+    private static boolean csv(@NonNull final Event event, @NonNull final PayloadDataFormatter payloadDataFormatter, @NonNull final StringBuilder stringBuilder) {
+        final String target = (null == event.target ? "" : TextFile.csv(event.target.value));
+        switch (event.type) {
+            case detect:
+                prefix(event, target, stringBuilder).append(",1,,,,,,,\n");
+                return true;
+            case detectHerald:
+                prefix(event, target, stringBuilder).append(",,,,,,6,,\n");
+                return true;
+            case delete:
+                prefix(event, target, stringBuilder).append(",,,,,,,7,\n");
+                return true;
+            case read:
+                prefix(event, target, stringBuilder).append(",,2,,,,,,").append(TextFile.csv(payloadDataFormatter.shortFormat(event.payloads.get(0)))).append('\n');
+                return true;
+            case share:
+                for (final PayloadData payloadData : event.payloads) {
+                    prefix(event, target, stringBuilder).append(",,,,4,,,,").append(TextFile.csv(payloadDataFormatter.shortFormat(payloadData))).append('\n');
+                }
+                return !event.payloads.isEmpty();
+            case measure:
+                //noinspection ConstantConditions
+                prefix(event, target, stringBuilder).append(",,,3,,,,,").append(TextFile.csv(event.proximity.description())).append('\n');
+                return true;
+            case visit:
+                //noinspection ConstantConditions
+                prefix(event, target, stringBuilder).append(",,,,,5,,,").append(TextFile.csv(event.location)).append('\n');
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @NonNull
+    private static StringBuilder prefix(@NonNull final Event event, @NonNull final String target, @NonNull final StringBuilder stringBuilder) {
+        TimestampCodec.appendMilliseconds(stringBuilder, event.time);
+        return stringBuilder.append(',').append(event.sensor.name()).append(',').append(target);
+    }
+
+    // MARK: - Reader
+
+    /**
+     * Streaming reader for decoding events from a journal through a memory mapped buffer.
+     * Reading stops at the end of the file or at the first incomplete or invalid record.
+     */
+    public final static class Reader {
+        @NonNull
+        private final ByteBuffer buffer;
+        private final List<TargetIdentifier> targets = new ArrayList<>();
+        private final List<PayloadData> payloads = new ArrayList<>();
+        private long previousTime = 0;
+        private boolean sessionStarted = false;
+        private boolean incomplete = false;
+        private int position;
+
+        private Reader(@NonNull final ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.position = buffer.position();
+        }
+
+        /**
+         * Open journal for reading.
+         * @param file Journal file.
+         * @return Reader, or null if the file cannot be read or is not a journal.
+         */
+        @Nullable
+        public static Reader open(@NonNull final File file) {
+            final SensorLogger logger = new ConcreteSensorLogger("Sensor", "Data.EventJournal");
+            try {
+                final FileInputStream fileInputStream = new FileInputStream(file);
+                try {
+                    final FileChannel fileChannel = fileInputStream.getChannel();
+                    final ByteBuffer buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+                    final byte[] header = new byte[magic.length];
+                    if (buffer.remaining() < header.length) {
+                        logger.fault("open failed, missing header (file={})", file);
+                        return null;
+                    }
+                    buffer.get(header);
+                    if (!Arrays.equals(header, magic)) {
+                        logger.fault("open failed, invalid header (file={})", file);
+                        return null;
+                    }
+                    return new Reader(buffer);
+                } finally {
+                    fileInputStream.close();
+                }
+            } catch (Throwable e) {
+                logger.fault("open failed (file={})", file, e);
+                return null;
+            }
+        }
+
+        /**
+         * File position after the last complete record that has been read.
+         * @return Position in bytes.
+         */
+        public long position() {
+            return position;
+        }
+
+        /**
+         * Reading has stopped at an incomplete record at the end of the journal, e.g. due
+         * to an interrupted write, rather than at an invalid record.
+         * @return True if the remaining bytes are an incomplete final record.
+         */
+        public boolean incomplete() {
+            return incomplete;
+        }
+
+        /**
+         * Read next event.
+         * @return Event, or null at end of journal.
+         */
+        @Nullable
+        public Event next() {
+            try {
+                while (buffer.hasRemaining()) {
+                    final int code = buffer.get() & 0xFF;
+                    if (sessionRecord == code) {
+                        previousTime = buffer.getLong();
+                        targets.clear();
+                        payloads.clear();
+                        sessionStarted = true;
+                        position = buffer.position();
+                        continue;
+                    }
+                    final EventType type = EventType.of(code);
+                    if (null == type || !sessionStarted) {
+                        return null;
+                    }
+                    final Event event = event(type);
+                    if (null == event) {
+                        return null;
+                    }
+                    position = buffer.position();
+                    return event;
+                }
+            } catch (BufferUnderflowException e) {
+                // Incomplete record
+                incomplete = true;
+            }
+            return null;
+        }
+
+        @Nullable
+        private Event event(@NonNull final EventType type) {
+            final int sensorOrdinal = buffer.get() & 0xFF;
+            if (sensorOrdinal >= sensorTypes.length) {
+                return null;
+            }
+            final SensorType sensor = sensorTypes[sensorOrdinal];
+            final long time = previousTime + zigZag();
+            final long targetReference = varLong();
+            TargetIdentifier target = null;
+            if (referenceNew == targetReference) {
+                target = new TargetIdentifier(new String(bytes(), utf8));
+                // Commit dictionary entry only once the record is complete
+            } else if (targetReference >= referenceBase) {
+                final long index = targetReference - referenceBase;
+                if (index >= targets.size()) {
+                    return null;
+                }
+                target = targets.get((int) index);
+            }
+            List<PayloadData> payloads = Collections.emptyList();
+            final List<PayloadData> newPayloads = new ArrayList<>(0);
+            Proximity proximity = null;
+            String location = null;
+            Data data = null;
+            SensorState state = null;
+            switch (type) {
+                case read: {
+                    final PayloadData payloadData = payload(newPayloads);
+                    if (null == payloadData) {
+                        return null;
+                    }
+                    payloads = Collections.singletonList(payloadData);
+                    break;
+                }
+                case share: {
+                    final long count = varLong();
+                    if (count < 0 || count > buffer.remaining()) {
+                        return null;
+                    }
+                    payloads = new ArrayList<>((int) count);
+                    for (long i=0; i<count; i++) {
+                        final PayloadData payloadData = payload(newPayloads);
+                        if (null == payloadData) {
+                            return null;
+                        }
+                        payloads.add(payloadData);
+                    }
+                    break;
+                }
+                case measure: {
+                    proximity = proximity();
+                    if (null == proximity) {
+                        return null;
+                    }
+                    break;
+                }
+                case measureWithPayload: {
+                    proximity = proximity();
+                    final PayloadData payloadData = payload(newPayloads);
+                    if (null == proximity || null == payloadData) {
+                        return null;
+                    }
+                    payloads = Collections.singletonList(payloadData);
+                    break;
+                }
+                case visit: {
+                    location = new String(bytes(), utf8);
+                    break;
+                }
+                case receive: {
+                    data = new Data(bytes());
+                    break;
+                }
+                case state: {
+                    final int stateOrdinal = buffer.get() & 0xFF;
+                    if (stateOrdinal >= sensorStates.length) {
+                        return null;
+                    }
+                    state = sensorStates[stateOrdinal];
+                    break;
+                }
+                default:
+                    break;
+            }
+            // Record is complete, commit dictionary entries in the order they were written
+            if (referenceNew == targetReference) {
+                targets.add(target);
+            }
+            this.payloads.addAll(newPayloads);
+            previousTime = time;
+            return new Event(time, type, sensor, target, payloads, proximity, location, data, state);
+        }
+
+        @Nullable
+        private PayloadData payload(@NonNull final List<PayloadData> newPayloads) {
+            final long reference = varLong();
+            if (referenceNew == reference) {
+                final PayloadData payloadData = new PayloadData(bytes());
+                newPayloads.add(payloadData);
+                return payloadData;
+            }
+            final long index = reference - referenceBase;
+            if (index < 0) {
+                return null;
+            }
+            if (index < payloads.size()) {
+                return payloads.get((int) index);
+            }
+            // Payload defined earlier in the same record, e.g. share
+            if (index - payloads.size() < newPayloads.size()) {
+                return newPayloads.get((int) (index - payloads.size()));
+            }
+            return null;
+        }
+
+        @Nullable
+        private Proximity proximity() {
+            final int proximityHeader = buffer.get() & 0xFF;
+            final int proximityOrdinal = proximityHeader & ~flagDouble;
+            if (proximityOrdinal >= proximityUnits.length) {
+                return null;
+            }
+            final double value = number(proximityHeader);
+            final int calibrationHeader = buffer.get() & 0xFF;
+            Calibration calibration = null;
+            if (0 != calibrationHeader) {
+                final int calibrationOrdinal = (calibrationHeader & ~flagDouble) - 1;
+                if (calibrationOrdinal < 0 || calibrationOrdinal >= calibrationUnits.length) {
+                    return null;
+                }
+                calibration = new Calibration(calibrationUnits[calibrationOrdinal], number(calibrationHeader));
+            }
+            return new Proximity(proximityUnits[proximityOrdinal], value, calibration);
+        }
+
+        private double number(final int header) {
+            if (0 != (header & flagDouble)) {
+                return Double.longBitsToDouble(buffer.getLong());
+            }
+            return (double) zigZag();
+        }
+
+        @NonNull
+        private byte[] bytes() {
+            final long length = varLong();
+            if (length < 0 || length > buffer.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            final byte[] bytes = new byte[(int) length];
+            buffer.get(bytes);
+            return bytes;
+        }
+
+        private long varLong() {
+            long value = 0;
+            for (int shift=0; shift<64; shift+=7) {
+                final byte b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            return value;
+        }
+
+        private long zigZag() {
+            final long value = varLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+
+    // MARK: - Encoding primitives
+
+    private final static class Encoder {
+        @NonNull
+        private byte[] bytes = new byte[4096];
+        private int length = 0;
+
+        private void reset() {
+            length = 0;
+        }
+
+        private void ensure(final int count) {
+            if (length + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+            }
+        }
+
+        private void int8(final int value) {
+            ensure(1);
+            bytes[length++] = (byte) value;
+        }
+
+        private void int64(final long value) {
+            ensure(8);
+            for (int shift=56; shift>=0; shift-=8) {
+                bytes[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void varLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        private void zigZag(final long value) {
+            varLong((value << 1) ^ (value >> 63));
+        }
+
+        private void bytes(@NonNull final byte[] value) {
+            ensure(value.length);
+            System.arraycopy(value, 0, bytes, length, value.length);
+            length += value.length;
+        }
+    }
+}
@@ -14,9 +14,8 @@ import io.heraldprox.herald.sensor.datatype.Distribution;
 import io.heraldprox.herald.sensor.datatype.Proximity;
 import io.heraldprox.herald.sensor.datatype.SensorType;
 import io.heraldprox.herald.sensor.datatype.TargetIdentifier;
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -24,6 +23,10 @@ import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * CSV log of event time intervals for post event analysis ands visualisation.
+ * <br>
+ * By default, the log file is rewritten on every change. In aggregation mode, changes
+ * are held in memory and written as an atomic snapshot after the snapshot interval or
+ * on demand via snapshot(), thus frequent events cause at most one rewrite per interval.
  */
 public class EventTimeIntervalLog extends SensorDelegateLogger {
     @NonNull
@@ -33,78 +36,104 @@ public class EventTimeIntervalLog extends SensorDelegateLogger {
     private final Map<TargetIdentifier, String> targetIdentifierToPayload = new ConcurrentHashMap<>();
     private final Map<String, Date> payloadToTime = new ConcurrentHashMap<>();
     private final Map<String, Distribution> payloadToSample = new ConcurrentHashMap<>();
+    @NonNull
+    private final DistributionTable table;
+    private final long snapshotInterval;
     public  enum EventType {
         detect,read,measure,share,sharedPeer,visit
     }
 
     public EventTimeIntervalLog(@NonNull final Context context, @NonNull final String filename, @NonNull final PayloadData payloadData, @NonNull final EventType eventType) {
+        this(context, filename, payloadData, eventType, TimeInterval.zero);
+    }
+
+    /**
+     * Event time interval log in aggregation mode.
+     * @param context Application context.
+     * @param filename File name of log file.
+     * @param payloadData Payload of this device.
+     * @param eventType Event type to log.
+     * @param snapshotInterval Time delay between a change and writing a snapshot, or zero to write on every change.
+     */
+    public EventTimeIntervalLog(@NonNull final Context context, @NonNull final String filename, @NonNull final PayloadData payloadData, @NonNull final EventType eventType, @NonNull final TimeInterval snapshotInterval) {
         super(context, filename);
         this.payloadData = payloadData;
         this.eventType = eventType;
+        this.table = table(payloadData, eventType);
+        this.snapshotInterval = snapshotInterval.millis();
         write();
     }
 
     public EventTimeIntervalLog(@NonNull final TextFile textFile, @NonNull final PayloadData payloadData, @NonNull final EventType eventType) {
+        this(textFile, payloadData, eventType, TimeInterval.zero);
+    }
+
+    /**
+     * Event time interval log in aggregation mode.
+     * @param textFile Log file.
+     * @param payloadData Payload of this device.
+     * @param eventType Event type to log.
+     * @param snapshotInterval Time delay between a change and writing a snapshot, or zero to write on every change.
+     */
+    public EventTimeIntervalLog(@NonNull final TextFile textFile, @NonNull final PayloadData payloadData, @NonNull final EventType eventType, @NonNull final TimeInterval snapshotInterval) {
         super(textFile);
         this.payloadData = payloadData;
         this.eventType = eventType;
+        this.table = table(payloadData, eventType);
+        this.snapshotInterval = snapshotInterval.millis();
         write();
     }
 
+    @NonNull
+    private static DistributionTable table(@NonNull final PayloadData payloadData, @NonNull final EventType eventType) {
+        return new DistributionTable("event,central,peripheral,count,mean,sd,min,max\n",
+                TextFile.csv(eventType.name()) + "," + TextFile.csv(payloadData.shortName()) + ",");
+    }
+
     private void add(@NonNull final String payload) {
         final Date time = payloadToTime.get(payload);
         final Distribution distribution = payloadToSample.get(payload);
         if (null == time || null == distribution) {
             payloadToTime.put(payload, new Date());
-            payloadToSample.put(payload, new Distribution());
+            final Distribution sample = new Distribution();
+            payloadToSample.put(payload, sample);
+            if (included(payload)) {
+                table.put(payload, sample);
+            }
             return;
         }
         final Date now = new Date();
         payloadToTime.put(payload, now);
         distribution.add((now.getTime() - time.getTime()) / 1000d);
-        write();
-    }
-
-    private void write() {
-        final StringBuilder content = new StringBuilder("event,central,peripheral,count,mean,sd,min,max\n");
-        final List<String> payloadList = new ArrayList<>();
-        final String event = csv(eventType.name());
-        final String centralPayload = csv(payloadData.shortName());
-        for (final String payload : payloadToSample.keySet()) {
-            if (EventType.visit != eventType && payload.equals(payloadData.shortName())) {
-                continue;
-            }
-            payloadList.add(payload);
+        if (!included(payload)) {
+            return;
         }
-        Collections.sort(payloadList);
-        for (final String payload : payloadList) {
-            final Distribution distribution = payloadToSample.get(payload);
-            if (null == distribution) {
-                continue;
-            }
-            if (null == distribution.mean() || null == distribution.standardDeviation() || null == distribution.min() || null == distribution.max()) {
-                continue;
-            }
-            content.append(event);
-            content.append(',');
-            content.append(centralPayload);
-            content.append(',');
-            content.append(csv(payload));
-            content.append(',');
-            content.append(distribution.count());
-            content.append(',');
-            content.append(distribution.mean());
-            content.append(',');
-            content.append(distribution.standardDeviation());
-            content.append(',');
-            content.append(distribution.min());
-            content.append(',');
-            content.append(distribution.max());
-            content.append('\n');
+        table.touch(payload);
+        if (snapshotInterval > 0) {
+            scheduleSnapshot(snapshotInterval);
+        } else {
+            write();
         }
-        overwrite(content.toString());
     }
 
+    private boolean included(@NonNull final String payload) {
+        return EventType.visit == eventType || !payload.equals(payloadData.shortName());
+    }
+
+    private synchronized void write() {
+        overwrite(table.content());
+    }
+
+    /**
+     * Write snapshot of event time intervals to file atomically, if intervals have changed since last write.
+     */
+    @Override
+    public synchronized void snapshot() {
+        if (!table.dirty()) {
+            return;
+        }
+        replace(table.content());
+    }
 
     // MARK:- SensorDelegate
 
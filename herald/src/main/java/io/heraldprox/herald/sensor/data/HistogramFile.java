@@ -0,0 +1,410 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Fixed-layout binary histogram file for value range [min, max], memory mapped such
+ * that counters are updated in place and persistence is a sync of the mapped pages,
+ * rather than rendering and rewriting the entire histogram as CSV.
+ * <br>
+ * File layout (little-endian, the native byte order of Android devices):
+ * <br>- 0: magic "HEH" and version byte
+ * <br>- 4: int32 min value (inclusive)
+ * <br>- 8: int32 max value (inclusive)
+ * <br>- 12: int32 CRC32 checksum of bytes from offset 16 to end of file, updated on sync
+ * <br>- 16: int64 total count
+ * <br>- 24: int64 count for each value in [min, max]
+ * <br>
+ * A file with a checksum mismatch is accepted if all counts are non-negative and sum to
+ * the total, as this is the state after an update without a subsequent sync, otherwise
+ * the file is renamed with suffix ".invalid" and a new histogram is started. A valid file
+ * with a different value range is remapped to the requested range. Use {@link #importCsv(TextFile)}
+ * and {@link #exportCsv(TextFile)} to migrate from and to the CSV format (value,count) of
+ * Histogram and RssiHistogram.
+ */
+public class HistogramFile {
+    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "Data.HistogramFile");
+    private final static byte[] magic = new byte[]{'H', 'E', 'H'};
+    public final static byte version = 1;
+    private final static int offsetMin = 4;
+    private final static int offsetMax = 8;
+    private final static int offsetChecksum = 12;
+    private final static int offsetTotal = 16;
+    private final static int offsetCounts = 24;
+    public final int min, max;
+    @NonNull
+    private final File file;
+    @NonNull
+    private final ByteBuffer buffer;
+    @Nullable
+    private RandomAccessFile randomAccessFile = null;
+    @NonNull
+    private final byte[] checksumBuffer;
+    @NonNull
+    private final CRC32 crc32 = new CRC32();
+    private boolean modified = false;
+
+    /**
+     * Open or create binary histogram file for value range [min, max]. Counts are held
+     * in memory only if the file cannot be mapped.
+     * @param file Histogram file.
+     * @param min Minimum value (inclusive).
+     * @param max Maximum value (inclusive).
+     */
+    public HistogramFile(@NonNull final File file, final int min, final int max) {
+        this.file = file;
+        this.min = min;
+        this.max = max;
+        final int size = size(min, max);
+        this.checksumBuffer = new byte[size - offsetTotal];
+        this.buffer = open(size);
+    }
+
+    /**
+     * Get histogram file.
+     * @return Histogram file.
+     */
+    @NonNull
+    public File file() {
+        return file;
+    }
+
+    /**
+     * Get total count.
+     * @return Sum of all counts.
+     */
+    public synchronized long total() {
+        return buffer.getLong(offsetTotal);
+    }
+
+    /**
+     * Get count of value.
+     * @param value Value.
+     * @return Count of value, or 0 for out of range values.
+     */
+    public synchronized long count(final int value) {
+        if (value < min || value > max) {
+            return 0;
+        }
+        return buffer.getLong(offsetCounts + (value - min) * 8);
+    }
+
+    /**
+     * Increment count of value in place. Out of range values are discarded.
+     * @param value Value.
+     * @param increment Increment.
+     */
+    public synchronized void add(final int value, final long increment) {
+        if (value < min || value > max) {
+            return;
+        }
+        final int offset = offsetCounts + (value - min) * 8;
+        buffer.putLong(offset, buffer.getLong(offset) + increment);
+        buffer.putLong(offsetTotal, buffer.getLong(offsetTotal) + increment);
+        modified = true;
+    }
+
+    /**
+     * Read counts into array, where counts[i] is the count of value (min + i).
+     * @param counts Destination array.
+     * @return Total count.
+     */
+    public synchronized long read(@NonNull final long[] counts) {
+        final int length = Math.min(counts.length, max - min + 1);
+        long total = 0;
+        for (int i=0; i<length; i++) {
+            counts[i] = buffer.getLong(offsetCounts + i * 8);
+            total += counts[i];
+        }
+        return total;
+    }
+
+    /**
+     * Replace counts with array content, where counts[i] is the count of value (min + i).
+     * @param counts Source array.
+     */
+    public synchronized void write(@NonNull final long[] counts) {
+        final int length = max - min + 1;
+        long total = 0;
+        for (int i=0; i<length; i++) {
+            final long count = (i < counts.length ? counts[i] : 0);
+            buffer.putLong(offsetCounts + i * 8, count);
+            total += count;
+        }
+        buffer.putLong(offsetTotal, total);
+        modified = true;
+    }
+
+    /**
+     * Clear all counts.
+     */
+    public synchronized void clear() {
+        for (int offset=offsetTotal; offset<buffer.capacity(); offset+=8) {
+            buffer.putLong(offset, 0);
+        }
+        modified = true;
+    }
+
+    /**
+     * Update checksum and flush modified pages to storage.
+     * @return True on success, false on failure.
+     */
+    public synchronized boolean sync() {
+        if (!modified) {
+            return true;
+        }
+        buffer.putInt(offsetChecksum, checksum(buffer));
+        try {
+            if (buffer instanceof MappedByteBuffer) {
+                ((MappedByteBuffer) buffer).force();
+            }
+            modified = false;
+            return true;
+        } catch (Throwable e) {
+            logger.fault("sync failed (file={})", file, e);
+            return false;
+        }
+    }
+
+    /**
+     * Sync and release file handle. The mapping remains valid until it is garbage collected.
+     */
+    public synchronized void close() {
+        sync();
+        if (null == randomAccessFile) {
+            return;
+        }
+        try {
+            randomAccessFile.close();
+        } catch (Throwable e) {
+            logger.fault("close failed (file={})", file, e);
+        }
+        randomAccessFile = null;
+    }
+
+    // MARK: - CSV import and export
+
+    /**
+     * Replace counts with content of CSV file (value,count). Out of range values and invalid
+     * rows are discarded.
+     * @param textFile CSV file.
+     * @return True if at least one row was imported, false otherwise.
+     */
+    public synchronized boolean importCsv(@NonNull final TextFile textFile) {
+        final long[] counts = new long[max - min + 1];
+        boolean imported = false;
+        for (final String row : textFile.contentsOf().split("\n")) {
+            final String[] cols = row.split(",", 2);
+            if (cols.length != 2) {
+                continue;
+            }
+            try {
+                final int value = Integer.parseInt(cols[0].trim());
+                final long count = Long.parseLong(cols[1].trim());
+                if (value < min || value > max || count < 0) {
+                    continue;
+                }
+                counts[value - min] = count;
+                imported = true;
+            } catch (NumberFormatException e) {
+                logger.fault("importCsv, invalid row (file={},row={})", file, row);
+            }
+        }
+        if (imported) {
+            write(counts);
+        }
+        return imported;
+    }
+
+    /**
+     * Write counts to CSV file (value,count), replacing existing content.
+     * @param textFile CSV file.
+     */
+    public synchronized void exportCsv(@NonNull final TextFile textFile) {
+        final StringBuilder s = new StringBuilder();
+        for (int value=min; value<=max; value++) {
+            s.append(value).append(',').append(count(value)).append('\n');
+        }
+        textFile.overwrite(s.toString());
+    }
+
+    // MARK: - Internals
+
+    private static int size(final int min, final int max) {
+        return offsetCounts + (max - min + 1) * 8;
+    }
+
+    /**
+     * Compute checksum of total and counts.
+     * @param buffer File content.
+     * @return CRC32 checksum.
+     */
+    private int checksum(@NonNull final ByteBuffer buffer) {
+        final ByteBuffer view = buffer.duplicate();
+        view.position(offsetTotal);
+        view.get(checksumBuffer, 0, checksumBuffer.length);
+        crc32.reset();
+        crc32.update(checksumBuffer, 0, checksumBuffer.length);
+        return (int) crc32.getValue();
+    }
+
+    /**
+     * Open file and map content for read and write, carrying over counts from a valid
+     * existing file and discarding an invalid file.
+     * @param size Expected file size.
+     * @return Mapped buffer, or heap buffer if the file cannot be mapped.
+     */
+    @NonNull
+    private ByteBuffer open(final int size) {
+        // Validate existing file
+        ByteBuffer existing = null;
+        if (file.exists() && file.length() > 0) {
+            existing = validate(file);
+            if (null == existing) {
+                final File invalid = new File(file.getParentFile(), file.getName() + ".invalid");
+                logger.fault("open, invalid file, starting new histogram (file={},renamedTo={})", file, invalid);
+                //noinspection ResultOfMethodCallIgnored
+                invalid.delete();
+                if (!file.renameTo(invalid)) {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                }
+            }
+        }
+        final boolean inPlace = (null != existing && existing.getInt(offsetMin) == min && existing.getInt(offsetMax) == max);
+        // Map file
+        ByteBuffer buffer;
+        try {
+            final File folder = file.getParentFile();
+            if (null != folder && !folder.exists() && !folder.mkdirs()) {
+                logger.fault("Make folder failed (folder={})", folder);
+            }
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            if (!inPlace) {
+                randomAccessFile.setLength(0);
+            }
+            randomAccessFile.setLength(size);
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (Throwable e) {
+            logger.fault("open failed, using memory only (file={})", file, e);
+            if (null != randomAccessFile) {
+                try {
+                    randomAccessFile.close();
+                } catch (Throwable ignored) {
+                }
+                randomAccessFile = null;
+            }
+            buffer = ByteBuffer.allocate(size);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (inPlace && null != randomAccessFile) {
+            return buffer;
+        }
+        // Initialise header and carry over counts of existing file in requested range
+        buffer.put(0, magic[0]);
+        buffer.put(1, magic[1]);
+        buffer.put(2, magic[2]);
+        buffer.put(3, version);
+        buffer.putInt(offsetMin, min);
+        buffer.putInt(offsetMax, max);
+        long total = 0;
+        for (int value=min; value<=max; value++) {
+            long count = 0;
+            if (null != existing) {
+                final int existingMin = existing.getInt(offsetMin);
+                final int existingMax = existing.getInt(offsetMax);
+                if (value >= existingMin && value <= existingMax) {
+                    count = existing.getLong(offsetCounts + (value - existingMin) * 8);
+                }
+            }
+            buffer.putLong(offsetCounts + (value - min) * 8, count);
+            total += count;
+        }
+        buffer.putLong(offsetTotal, total);
+        if (null != existing) {
+            logger.debug("open, remapped value range (file={},from=[{},{}],to=[{},{}])", file, existing.getInt(offsetMin), existing.getInt(offsetMax), min, max);
+        }
+        modified = true;
+        buffer.putInt(offsetChecksum, checksum(buffer));
+        return buffer;
+    }
+
+    /**
+     * Read and validate histogram file.
+     * @param file Histogram file.
+     * @return File content, or null if file is invalid.
+     */
+    @Nullable
+    private static ByteBuffer validate(@NonNull final File file) {
+        final long length = file.length();
+        if (length < offsetCounts + 8 || length > Integer.MAX_VALUE) {
+            return null;
+        }
+        final byte[] bytes = new byte[(int) length];
+        FileInputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            int read = 0;
+            while (read < bytes.length) {
+                final int n = inputStream.read(bytes, read, bytes.length - read);
+                if (n < 0) {
+                    return null;
+                }
+                read += n;
+            }
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (null != inputStream) {
+                try {
+                    inputStream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        // Header
+        if (bytes[0] != magic[0] || bytes[1] != magic[1] || bytes[2] != magic[2] || bytes[3] != version) {
+            return null;
+        }
+        final int min = buffer.getInt(offsetMin);
+        final int max = buffer.getInt(offsetMax);
+        if (min > max || length != offsetCounts + ((long) max - min + 1) * 8) {
+            return null;
+        }
+        // Checksum
+        final CRC32 crc32 = new CRC32();
+        crc32.update(bytes, offsetTotal, bytes.length - offsetTotal);
+        if ((int) crc32.getValue() == buffer.getInt(offsetChecksum)) {
+            return buffer;
+        }
+        // Consistent counts after update without sync
+        long total = 0;
+        for (int offset=offsetCounts; offset<bytes.length; offset+=8) {
+            final long count = buffer.getLong(offset);
+            if (count < 0) {
+                return null;
+            }
+            total += count;
+        }
+        if (total != buffer.getLong(offsetTotal)) {
+            return null;
+        }
+        return buffer;
+    }
+}
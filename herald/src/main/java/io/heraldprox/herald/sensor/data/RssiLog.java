@@ -6,8 +6,10 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -19,15 +21,14 @@ import io.heraldprox.herald.sensor.datatype.ProximityMeasurementUnit;
 import io.heraldprox.herald.sensor.datatype.SensorType;
 import io.heraldprox.herald.sensor.datatype.TargetIdentifier;
 import io.heraldprox.herald.sensor.datatype.TimeInterval;
-import io.heraldprox.herald.sensor.datatype.Tuple;
 
 public class RssiLog extends SensorDelegateLogger {
     private final SensorLogger logger = new ConcreteSensorLogger("Analysis", "RssiLog");
     private final static int minRSSI = -100, maxRSSI = 0;
     private final static TimeInterval quantisationPeriod = new TimeInterval(5);
     private final static TimeInterval histogramPeriod = TimeInterval.hour;
-    private final List<PointMeasurement> pointMeasurements = new ArrayList<>();
-    private final List<HistogramForPeriod> histogramForPeriods = new ArrayList<>();
+    private final static int histogramPeriods = 24;
+    private final Aggregator aggregator = new Aggregator(minRSSI, maxRSSI, quantisationPeriod, histogramPeriod, histogramPeriods);
 
     /**
      * RSSI measurement taken at a point in time for a specific target.
@@ -107,17 +108,23 @@ public class RssiLog extends SensorDelegateLogger {
         append(new PointMeasurement(fromTarget, didMeasure));
     }
 
-    public Histogram histogram() {
-        final HistogramForPeriod historic = merge(histogramForPeriods);
-        final HistogramForPeriod pending = merge(histogramForPeriods(pointMeasurements, histogramPeriod));
-        final Histogram histogram = new Histogram(minRSSI, maxRSSI);
-        if (null != historic) {
-            histogram.add(historic.histogram);
-        }
-        if (null != pending) {
-            histogram.add(pending.histogram);
-        }
-        return histogram;
+    /**
+     * Get histogram of quantised RSSI values for all measurements, including the current
+     * time window. This is O(bins + targets in current time window).
+     * @return Histogram of RSSI values.
+     */
+    @NonNull
+    public synchronized Histogram histogram() {
+        return aggregator.histogram();
+    }
+
+    /**
+     * Get histograms of the most recent periods, excluding the current period.
+     * @return Histograms in time order, for up to 24 hours.
+     */
+    @NonNull
+    public synchronized List<HistogramForPeriod> histogramForPeriods() {
+        return aggregator.histogramForPeriods();
     }
 
     // MARK: - Accumulate measurements
@@ -130,17 +137,9 @@ public class RssiLog extends SensorDelegateLogger {
         final String txPower = (null != pointMeasurement.txPower ? pointMeasurement.txPower.toString() : "");
         final String line = writeCsv(timestamp, target, rssi, txPower);
         // Add to logger
-        logger.debug("Append (sizeInMemory={},line={})", pointMeasurements.size(), line);
+        logger.debug("Append (targetsInWindow={},line={})", aggregator.targetsInWindow(), line);
         // Add to memory
-        if (!pointMeasurements.isEmpty()) {
-            final Date periodEndPointMeasurement = periodEnd(pointMeasurement.timestamp, histogramPeriod);
-            final Date periodEndBuffer = periodEnd(pointMeasurements.get(0).timestamp, histogramPeriod);
-            if (periodEndPointMeasurement.after(periodEndBuffer)) {
-                histogramForPeriods.addAll(histogramForPeriods(pointMeasurements, histogramPeriod));
-                pointMeasurements.clear();
-            }
-        }
-        pointMeasurements.add(pointMeasurement);
+        aggregator.add(pointMeasurement);
     }
 
     // MARK: - Process measurements
@@ -159,7 +158,7 @@ public class RssiLog extends SensorDelegateLogger {
         final List<PointMeasurement> quantisedPointMeasurements = new ArrayList<>(pointMeasurements.size());
         // Quantise point measurements by time duration and target identifier to compact the data
         long currentTimeWindow = -1;
-        final Map<TargetIdentifier, Tuple<Double, Double>> quantisedData = new HashMap<>();
+        final Map<TargetIdentifier, MaxSlot> quantisedData = new HashMap<>();
         // Assumes point measurements are sorted by time
         for (final PointMeasurement pointMeasurement : pointMeasurements) {
             // Get quantised time window of point measurement, i.e. time rounded by duration
@@ -171,11 +170,11 @@ public class RssiLog extends SensorDelegateLogger {
                 final List<TargetIdentifier> keys = new ArrayList<>(quantisedData.keySet());
                 Collections.sort(keys);
                 for (final TargetIdentifier key : keys) {
-                    final Tuple<Double, Double> value = quantisedData.get(key);
-                    if (null == value.a) {
+                    final MaxSlot value = quantisedData.get(key);
+                    if (null == value.rssi) {
                         continue;
                     }
-                    final PointMeasurement quantisedPointMeasurement = new PointMeasurement(timestamp, key, value.a, value.b);
+                    final PointMeasurement quantisedPointMeasurement = new PointMeasurement(timestamp, key, value.rssi, value.txPower);
                     quantisedPointMeasurements.add(quantisedPointMeasurement);
                 }
                 quantisedData.clear();
@@ -184,20 +183,11 @@ public class RssiLog extends SensorDelegateLogger {
             // Accumulate data for time window by establishing max RSSI and TxPower for each target
             // in each time window as the quantised value. This is necessary as multiple readings
             // may be taken for one target in a short period of time.
-            Tuple<Double, Double> quantisedDataForTarget = quantisedData.get(pointMeasurement.target);
+            final MaxSlot quantisedDataForTarget = quantisedData.get(pointMeasurement.target);
             if (quantisedDataForTarget == null) {
-                quantisedData.put(pointMeasurement.target, new Tuple<>(pointMeasurement.rssi, pointMeasurement.txPower));
+                quantisedData.put(pointMeasurement.target, new MaxSlot(pointMeasurement.rssi, pointMeasurement.txPower));
             } else {
-                // Update quantised RSSI
-                if (null != pointMeasurement.rssi && (null == quantisedDataForTarget.a || pointMeasurement.rssi > quantisedDataForTarget.a)) {
-                    quantisedDataForTarget = new Tuple<>(pointMeasurement.rssi, quantisedDataForTarget.b);
-                    quantisedData.put(pointMeasurement.target, quantisedDataForTarget);
-                }
-                // Update quantised TxPower
-                if (null != pointMeasurement.txPower && (null == quantisedDataForTarget.b || pointMeasurement.txPower > quantisedDataForTarget.b)) {
-                    quantisedDataForTarget = new Tuple<>(quantisedDataForTarget.a, pointMeasurement.txPower);
-                    quantisedData.put(pointMeasurement.target, quantisedDataForTarget);
-                }
+                quantisedDataForTarget.max(pointMeasurement.rssi, pointMeasurement.txPower);
             }
         }
         // Flush last time window
@@ -206,11 +196,11 @@ public class RssiLog extends SensorDelegateLogger {
             final List<TargetIdentifier> keys = new ArrayList<>(quantisedData.keySet());
             Collections.sort(keys);
             for (final TargetIdentifier key : keys) {
-                final Tuple<Double, Double> value = quantisedData.get(key);
-                if (null == value.a) {
+                final MaxSlot value = quantisedData.get(key);
+                if (null == value.rssi) {
                     continue;
                 }
-                final PointMeasurement quantisedPointMeasurement = new PointMeasurement(timestamp, key, value.a, value.b);
+                final PointMeasurement quantisedPointMeasurement = new PointMeasurement(timestamp, key, value.rssi, value.txPower);
                 quantisedPointMeasurements.add(quantisedPointMeasurement);
             }
             quantisedData.clear();
@@ -228,15 +218,9 @@ public class RssiLog extends SensorDelegateLogger {
     @NonNull
     protected final static List<PointMeasurement> subdata(@NonNull final List<PointMeasurement> pointMeasurements, @NonNull final Date start, @NonNull final Date end) {
         // Search for first point measurement at or after start timestamp
-        int startIndex = 0;
-        while (startIndex < pointMeasurements.size() && pointMeasurements.get(startIndex).timestamp.before(start)) {
-            startIndex++;
-        }
-        // Search for last point measurement before end timestamp
-        int endIndex = startIndex;
-        while (endIndex < pointMeasurements.size() && pointMeasurements.get(endIndex).timestamp.before(end)) {
-            endIndex++;
-        }
+        final int startIndex = firstIndexNotBefore(pointMeasurements, start, 0);
+        // Search for first point measurement at or after end timestamp
+        final int endIndex = Math.max(startIndex, firstIndexNotBefore(pointMeasurements, end, startIndex));
         return pointMeasurements.subList(startIndex, endIndex);
     }
 
@@ -249,13 +233,30 @@ public class RssiLog extends SensorDelegateLogger {
     @NonNull
     protected final static List<PointMeasurement> subdata(@NonNull final List<PointMeasurement> pointMeasurements, @NonNull final Date start) {
         // Search for first point measurement at or after start timestamp
-        int startIndex = 0;
-        while (startIndex < pointMeasurements.size() && pointMeasurements.get(startIndex).timestamp.before(start)) {
-            startIndex++;
-        }
+        final int startIndex = firstIndexNotBefore(pointMeasurements, start, 0);
         return pointMeasurements.subList(startIndex, pointMeasurements.size());
     }
 
+    /**
+     * Binary search for first point measurement at or after timestamp.
+     * @param pointMeasurements Point measurements, assumes sorted in time order.
+     * @param timestamp Timestamp.
+     * @param fromIndex Start index for search.
+     * @return Index of first point measurement at or after timestamp, or size of list if not found.
+     */
+    private static int firstIndexNotBefore(@NonNull final List<PointMeasurement> pointMeasurements, @NonNull final Date timestamp, final int fromIndex) {
+        int low = fromIndex, high = pointMeasurements.size();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (pointMeasurements.get(mid).timestamp.before(timestamp)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
     /**
      * Filter point measurements based on min (inclusive) and max (exclusive) values.
      * @param pointMeasurements Point measurements for filtering, assumes sorted in time order.
@@ -345,4 +346,207 @@ public class RssiLog extends SensorDelegateLogger {
         }
         return new HistogramForPeriod(start, end, histogram);
     }
+
+    // MARK: - Streaming aggregation
+
+    /**
+     * Maximum RSSI and TxPower for a target in a time window.
+     */
+    private final static class MaxSlot {
+        @Nullable
+        private Double rssi;
+        @Nullable
+        private Double txPower;
+        private long window;
+
+        private MaxSlot(@Nullable final Double rssi, @Nullable final Double txPower) {
+            this.rssi = rssi;
+            this.txPower = txPower;
+        }
+
+        private void max(@Nullable final Double rssi, @Nullable final Double txPower) {
+            if (null != rssi && (null == this.rssi || rssi > this.rssi)) {
+                this.rssi = rssi;
+            }
+            if (null != txPower && (null == this.txPower || txPower > this.txPower)) {
+                this.txPower = txPower;
+            }
+        }
+    }
+
+    /**
+     * Streaming aggregator that folds each measurement into a per-target maximum for the
+     * current quantisation window, and each closed window into the histogram of the current
+     * period. Histograms of closed periods are kept in a ring of fixed size arrays and
+     * accumulated in a cumulative total, thus memory usage is bounded by the number of
+     * targets in the current window and the ring size, regardless of measurement rate.
+     * Results are identical to quantise() and histogramOfRssi() for measurements in time order.
+     */
+    protected final static class Aggregator {
+        private final int min, max;
+        private final long windowSeconds, periodSeconds;
+        private final long[] total;
+        @NonNull
+        private long[] current;
+        private final long[][] ring;
+        private final long[] ringStart;
+        private int ringHead = 0;
+        private int ringCount = 0;
+        private long currentPeriod = Long.MIN_VALUE;
+        private long currentWindow = Long.MIN_VALUE;
+        private final Map<TargetIdentifier, MaxSlot> window = new HashMap<>();
+        private int targetsInWindow = 0;
+
+        /**
+         * Streaming aggregator.
+         * @param min Minimum RSSI value (inclusive).
+         * @param max Maximum RSSI value (inclusive).
+         * @param window Quantisation time window.
+         * @param period Histogram period, which must be a multiple of the time window.
+         * @param periods Number of recent period histograms to keep.
+         */
+        protected Aggregator(final int min, final int max, @NonNull final TimeInterval window, @NonNull final TimeInterval period, final int periods) {
+            this.min = min;
+            this.max = max;
+            this.windowSeconds = Math.max(1, window.value);
+            this.periodSeconds = Math.max(windowSeconds, period.value);
+            this.total = new long[max - min + 1];
+            this.current = new long[max - min + 1];
+            this.ring = new long[Math.max(1, periods)][max - min + 1];
+            this.ringStart = new long[ring.length];
+        }
+
+        /**
+         * Number of targets measured in the current time window.
+         * @return Target count.
+         */
+        protected int targetsInWindow() {
+            return targetsInWindow;
+        }
+
+        protected void add(@NonNull final PointMeasurement pointMeasurement) {
+            final long timeWindow = (pointMeasurement.timestamp.secondsSinceUnixEpoch() / windowSeconds) * windowSeconds;
+            if (timeWindow != currentWindow) {
+                closeWindow();
+                final long period = (timeWindow / periodSeconds) * periodSeconds;
+                if (period != currentPeriod) {
+                    closePeriod();
+                    currentPeriod = period;
+                }
+                currentWindow = timeWindow;
+            }
+            final MaxSlot slot = window.get(pointMeasurement.target);
+            if (null == slot) {
+                final MaxSlot newSlot = new MaxSlot(pointMeasurement.rssi, pointMeasurement.txPower);
+                newSlot.window = timeWindow;
+                window.put(pointMeasurement.target, newSlot);
+                targetsInWindow++;
+            } else if (slot.window != timeWindow) {
+                // Reuse slot of target from previous window
+                slot.rssi = pointMeasurement.rssi;
+                slot.txPower = pointMeasurement.txPower;
+                slot.window = timeWindow;
+                targetsInWindow++;
+            } else {
+                slot.max(pointMeasurement.rssi, pointMeasurement.txPower);
+            }
+        }
+
+        /**
+         * Fold maximum RSSI of each target in current window into current period histogram,
+         * and discard slots of targets that were not measured in the current window.
+         */
+        private void closeWindow() {
+            if (Long.MIN_VALUE == currentWindow) {
+                return;
+            }
+            final Iterator<MaxSlot> iterator = window.values().iterator();
+            while (iterator.hasNext()) {
+                final MaxSlot slot = iterator.next();
+                if (slot.window != currentWindow) {
+                    iterator.remove();
+                    continue;
+                }
+                increment(current, slot.rssi);
+            }
+            targetsInWindow = 0;
+            currentWindow = Long.MIN_VALUE;
+        }
+
+        /**
+         * Move current period histogram to ring and cumulative total.
+         */
+        private void closePeriod() {
+            if (Long.MIN_VALUE == currentPeriod) {
+                return;
+            }
+            for (int i=current.length; i-->0;) {
+                total[i] += current[i];
+            }
+            // Swap arrays to reuse the evicted ring slot as the next period histogram
+            final long[] evicted = ring[ringHead];
+            ring[ringHead] = current;
+            ringStart[ringHead] = currentPeriod;
+            ringHead = (ringHead + 1) % ring.length;
+            ringCount = Math.min(ringCount + 1, ring.length);
+            Arrays.fill(evicted, 0);
+            current = evicted;
+            currentPeriod = Long.MIN_VALUE;
+        }
+
+        private void increment(@NonNull final long[] bins, @Nullable final Double rssi) {
+            if (null == rssi) {
+                return;
+            }
+            final long value = Math.round(rssi);
+            if (value < min || value > max) {
+                return;
+            }
+            bins[(int) (value - min)]++;
+        }
+
+        /**
+         * Histogram of all measurements, including current period and current window.
+         */
+        @NonNull
+        protected Histogram histogram() {
+            final long[] bins = Arrays.copyOf(total, total.length);
+            for (int i=bins.length; i-->0;) {
+                bins[i] += current[i];
+            }
+            if (Long.MIN_VALUE != currentWindow) {
+                for (final MaxSlot slot : window.values()) {
+                    if (slot.window == currentWindow) {
+                        increment(bins, slot.rssi);
+                    }
+                }
+            }
+            final Histogram histogram = new Histogram(min, max);
+            for (int i=0; i<bins.length; i++) {
+                if (bins[i] > 0) {
+                    histogram.add(min + i, bins[i]);
+                }
+            }
+            return histogram;
+        }
+
+        /**
+         * Histograms of recent closed periods in time order.
+         */
+        @NonNull
+        protected List<HistogramForPeriod> histogramForPeriods() {
+            final List<HistogramForPeriod> histogramForPeriods = new ArrayList<>(ringCount);
+            for (int i=0; i<ringCount; i++) {
+                final int index = (ringHead - ringCount + i + ring.length) % ring.length;
+                final Histogram histogram = new Histogram(min, max);
+                for (int j=0; j<ring[index].length; j++) {
+                    if (ring[index][j] > 0) {
+                        histogram.add(min + j, ring[index][j]);
+                    }
+                }
+                histogramForPeriods.add(new HistogramForPeriod(new Date(ringStart[index]), new Date(ringStart[index] + periodSeconds), histogram));
+            }
+            return histogramForPeriods;
+        }
+    }
 }
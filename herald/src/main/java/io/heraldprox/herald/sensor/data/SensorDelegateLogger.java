@@ -9,6 +9,8 @@ import android.content.Context;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import io.heraldprox.herald.sensor.DefaultSensorDelegate;
 
 /**
@@ -17,6 +19,15 @@ import io.heraldprox.herald.sensor.DefaultSensorDelegate;
 public class SensorDelegateLogger extends DefaultSensorDelegate implements Resettable {
     @Nullable
     private final TextFile textFile;
+    private final AtomicBoolean snapshotScheduled = new AtomicBoolean(false);
+    private final Runnable snapshotTask = new Runnable() {
+        @Override
+        public void run() {
+            // Reset before snapshot, such that changes during snapshot schedule another snapshot
+            snapshotScheduled.set(false);
+            snapshot();
+        }
+    };
 
     public SensorDelegateLogger() {
         textFile = null;
@@ -114,6 +125,35 @@ public class SensorDelegateLogger extends DefaultSensorDelegate implements Reset
         textFile.overwrite(content);
     }
 
+    /**
+     * Replace file content atomically, such that readers never observe a partially written file.
+     * @param content Content to write.
+     */
+    protected void replace(@NonNull final String content) {
+        if (null == textFile) {
+            return;
+        }
+        textFile.replace(content);
+    }
+
+    /**
+     * Write snapshot of in-memory state to file. Override this method in loggers that
+     * aggregate data in memory and write snapshots periodically or on demand.
+     */
+    public void snapshot() {
+    }
+
+    /**
+     * Schedule snapshot() on the shared I/O thread after delay, unless a snapshot is already
+     * scheduled, thus state changes within the delay are written together in one snapshot.
+     * @param delayMillis Delay in milliseconds.
+     */
+    protected void scheduleSnapshot(final long delayMillis) {
+        if (!snapshotScheduled.getAndSet(true)) {
+            TextFileScheduler.shared().schedule(snapshotTask, delayMillis);
+        }
+    }
+
     /**
      * Test if the file is empty.
      * @return True if empty, false otherwise.
@@ -5,12 +5,92 @@
 package io.heraldprox.herald.sensor.data;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
+/**
+ * Sensor logger for rendering messages of the form "text (param={})" with values.
+ * <br>
+ * Fixed arity methods for up to three values avoid allocating a varargs array when the
+ * message is suppressed by the log level. Values that are expensive to compute should
+ * either be guarded by the isEnabled methods or wrapped in a {@link Parameter} that is
+ * only evaluated when the message is rendered.
+ * <br>
+ * Implementations only need to provide the varargs methods, as the fixed arity and
+ * isEnabled methods default to delegating to them and reporting all levels as enabled.
+ */
 public interface SensorLogger extends Resettable {
 
+    /**
+     * Deferred message value, evaluated only if the message is rendered.
+     */
+    interface Parameter {
+        @Nullable
+        Object value();
+    }
+
+    default boolean isDebugEnabled() {
+        return true;
+    }
+
+    default boolean isInfoEnabled() {
+        return true;
+    }
+
+    default boolean isFaultEnabled() {
+        return true;
+    }
+
+    default void debug(@NonNull final String message) {
+        debug(message, new Object[0]);
+    }
+
+    default void debug(@NonNull final String message, @Nullable final Object value0) {
+        debug(message, new Object[]{value0});
+    }
+
+    default void debug(@NonNull final String message, @Nullable final Object value0, @Nullable final Object value1) {
+        debug(message, new Object[]{value0, value1});
+    }
+
+    default void debug(@NonNull final String message, @Nullable final Object value0, @Nullable final Object value1, @Nullable final Object value2) {
+        debug(message, new Object[]{value0, value1, value2});
+    }
+
     void debug(@NonNull final String message, final Object... values);
 
+    default void info(@NonNull final String message) {
+        info(message, new Object[0]);
+    }
+
+    default void info(@NonNull final String message, @Nullable final Object value0) {
+        info(message, new Object[]{value0});
+    }
+
+    default void info(@NonNull final String message, @Nullable final Object value0, @Nullable final Object value1) {
+        info(message, new Object[]{value0, value1});
+    }
+
+    default void info(@NonNull final String message, @Nullable final Object value0, @Nullable final Object value1, @Nullable final Object value2) {
+        info(message, new Object[]{value0, value1, value2});
+    }
+
     void info(@NonNull final String message, final Object... values);
 
+    default void fault(@NonNull final String message) {
+        fault(message, new Object[0]);
+    }
+
+    default void fault(@NonNull final String message, @Nullable final Object value0) {
+        fault(message, new Object[]{value0});
+    }
+
+    default void fault(@NonNull final String message, @Nullable final Object value0, @Nullable final Object value1) {
+        fault(message, new Object[]{value0, value1});
+    }
+
+    default void fault(@NonNull final String message, @Nullable final Object value0, @Nullable final Object value1, @Nullable final Object value2) {
+        fault(message, new Object[]{value0, value1, value2});
+    }
+
     void fault(@NonNull final String message, final Object... values);
 }
@@ -15,15 +15,18 @@ import io.heraldprox.herald.sensor.datatype.Proximity;
 import io.heraldprox.herald.sensor.datatype.Distribution;
 import io.heraldprox.herald.sensor.datatype.SensorType;
 import io.heraldprox.herald.sensor.datatype.TargetIdentifier;
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * CSV statistics log for post event analysis and visualisation
+ * <br>
+ * By default, the log file is rewritten on every change. In aggregation mode, changes
+ * are held in memory and written as an atomic snapshot after the snapshot interval or
+ * on demand via snapshot(), thus frequent events cause at most one rewrite per interval.
  */
 public class StatisticsLog extends SensorDelegateLogger {
     @NonNull
@@ -31,16 +34,41 @@ public class StatisticsLog extends SensorDelegateLogger {
     private final Map<TargetIdentifier, String> identifierToPayload = new ConcurrentHashMap<>();
     private final Map<String, Date> payloadToTime = new ConcurrentHashMap<>();
     private final Map<String, Distribution> payloadToSample = new ConcurrentHashMap<>();
+    private final DistributionTable table = new DistributionTable("payload,count,mean,sd,min,max\n", "");
+    private final long snapshotInterval;
 
     public StatisticsLog(@NonNull final Context context, @NonNull final String filename, @NonNull final PayloadData payloadData) {
+        this(context, filename, payloadData, TimeInterval.zero);
+    }
+
+    /**
+     * Statistics log in aggregation mode.
+     * @param context Application context.
+     * @param filename File name of log file.
+     * @param payloadData Payload of this device, which is excluded from the log.
+     * @param snapshotInterval Time delay between a change and writing a snapshot, or zero to write on every change.
+     */
+    public StatisticsLog(@NonNull final Context context, @NonNull final String filename, @NonNull final PayloadData payloadData, @NonNull final TimeInterval snapshotInterval) {
         super(context, filename);
         this.payloadData = payloadData;
+        this.snapshotInterval = snapshotInterval.millis();
         write();
     }
 
     public StatisticsLog(@NonNull final TextFile textFile, @NonNull final PayloadData payloadData) {
+        this(textFile, payloadData, TimeInterval.zero);
+    }
+
+    /**
+     * Statistics log in aggregation mode.
+     * @param textFile Log file.
+     * @param payloadData Payload of this device, which is excluded from the log.
+     * @param snapshotInterval Time delay between a change and writing a snapshot, or zero to write on every change.
+     */
+    public StatisticsLog(@NonNull final TextFile textFile, @NonNull final PayloadData payloadData, @NonNull final TimeInterval snapshotInterval) {
         super(textFile);
         this.payloadData = payloadData;
+        this.snapshotInterval = snapshotInterval.millis();
         write();
     }
 
@@ -65,47 +93,40 @@ public class StatisticsLog extends SensorDelegateLogger {
         final Distribution distribution = payloadToSample.get(payload);
         if (null == time || null == distribution) {
             payloadToTime.put(payload, timestamp);
-            payloadToSample.put(payload, new Distribution());
+            final Distribution sample = new Distribution();
+            payloadToSample.put(payload, sample);
+            if (!payload.equals(payloadData.shortName())) {
+                table.put(payload, sample);
+            }
             return;
         }
         payloadToTime.put(payload, timestamp);
         // Calculate difference at millisecond accuracy before rounding to second
         distribution.add((timestamp.getTime() - time.getTime()) / 1000d);
-        write();
+        if (payload.equals(payloadData.shortName())) {
+            return;
+        }
+        table.touch(payload);
+        if (snapshotInterval > 0) {
+            scheduleSnapshot(snapshotInterval);
+        } else {
+            write();
+        }
     }
 
-    private void write() {
-        final StringBuilder content = new StringBuilder("payload,count,mean,sd,min,max\n");
-        final List<String> payloadList = new ArrayList<>();
-        for (final String payload : payloadToSample.keySet()) {
-            if (payload.equals(payloadData.shortName())) {
-                continue;
-            }
-            payloadList.add(payload);
-        }
-        Collections.sort(payloadList);
-        for (final String payload : payloadList) {
-            final Distribution distribution = payloadToSample.get(payload);
-            if (null == distribution) {
-                continue;
-            }
-            if (null == distribution.mean() || null == distribution.standardDeviation() || null == distribution.min() || null == distribution.max()) {
-                continue;
-            }
-            content.append(csv(payload));
-            content.append(',');
-            content.append(distribution.count());
-            content.append(',');
-            content.append(distribution.mean());
-            content.append(',');
-            content.append(distribution.standardDeviation());
-            content.append(',');
-            content.append(distribution.min());
-            content.append(',');
-            content.append(distribution.max());
-            content.append('\n');
+    private synchronized void write() {
+        overwrite(table.content());
+    }
+
+    /**
+     * Write snapshot of statistics to file atomically, if statistics have changed since last write.
+     */
+    @Override
+    public synchronized void snapshot() {
+        if (!table.dirty()) {
+            return;
         }
-        overwrite(content.toString());
+        replace(table.content());
     }
 
 
@@ -14,25 +14,43 @@ import androidx.annotation.Nullable;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Text file with buffered writes. Buffered data is flushed to storage by the shared
+ * {@link TextFileScheduler} after the write delay, thus all text files share a single
+ * background thread, and files without pending data do not cause any wake ups. All
+ * writes go through a {@link TextFileChannel} that keeps the file open for appending.
+ * Pending lines are held in a lock-free {@link TextFileWriteBuffer}, thus write() does
+ * not block other writers, and the overflow policy determines the action when the
+ * buffer is full.
+ */
 public class TextFile implements Resettable {
     private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "Data.TextFile");
-    private final ScheduledExecutorService executorService = Executors.newScheduledThreadPool(1);
     @NonNull
     private final File file;
-    private final ConcurrentLinkedQueue<String> writeBuffer = new ConcurrentLinkedQueue<>();
-    private final AtomicInteger writeBufferSize = new AtomicInteger();
+    private final long writeDelayMillis;
+    @NonNull
+    private final TextFileScheduler scheduler = TextFileScheduler.shared();
+    @NonNull
+    private final Runnable flushTask;
+    @NonNull
+    private final TextFileChannel channel;
+    @NonNull
+    private final TextFileWriteBuffer writeBuffer;
+    @NonNull
+    private final TextFileWriteBuffer.OverflowPolicy overflowPolicy;
+    // Flush after write delay, or immediately when buffer is filling up
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean flushNowScheduled = new AtomicBoolean(false);
+    private final AtomicLong droppedLines = new AtomicLong(0);
+    private final AtomicLong blockedWrites = new AtomicLong(0);
 
     /**
      * Line consumer for forEachLine().
@@ -55,7 +73,34 @@ public class TextFile implements Resettable {
      * @param writeDelay Time delay in seconds between flushing buffered data to storage.
      */
     public TextFile(@NonNull final File file, final int writeDelay) {
+        this(null, file, writeDelay, 1024, TextFileWriteBuffer.OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Text file with configurable write delay and write buffer on write() calls.
+     * @param file File within a folder.
+     * @param writeDelay Time delay in seconds between flushing buffered data to storage.
+     * @param capacity Maximum number of pending lines in write buffer.
+     * @param overflowPolicy Action when write buffer is full.
+     */
+    public TextFile(@NonNull final File file, final int writeDelay, final int capacity, @NonNull final TextFileWriteBuffer.OverflowPolicy overflowPolicy) {
+        this(null, file, writeDelay, capacity, overflowPolicy);
+    }
+
+    /**
+     * Text file with configurable write delay and write buffer on write() calls.
+     * @param context Application context for notifying media scanner after flush, or null.
+     * @param file File within a folder.
+     * @param writeDelay Time delay in seconds between flushing buffered data to storage.
+     * @param capacity Maximum number of pending lines in write buffer.
+     * @param overflowPolicy Action when write buffer is full.
+     */
+    private TextFile(@Nullable final Context context, @NonNull final File file, final int writeDelay, final int capacity, @NonNull final TextFileWriteBuffer.OverflowPolicy overflowPolicy) {
         this.file = file;
+        this.writeDelayMillis = writeDelay * 1000L;
+        this.channel = new TextFileChannel(file);
+        this.writeBuffer = new TextFileWriteBuffer(capacity);
+        this.overflowPolicy = overflowPolicy;
         final File folder = file.getParentFile();
         if (null == folder) {
             logger.fault("File must exist in a folder");
@@ -63,12 +108,15 @@ public class TextFile implements Resettable {
         if (null != folder && !folder.exists() && !folder.mkdirs()) {
             logger.fault("Make folder failed (folder={})", folder);
         }
-        executorService.scheduleWithFixedDelay(new Runnable() {
+        this.flushTask = new Runnable() {
             @Override
             public void run() {
-                flush();
+                if (!flush() || null == context) {
+                    return;
+                }
+                MediaScannerConnection.scanFile(context, new String[]{file.getAbsolutePath()}, null, null);
             }
-        }, writeDelay, writeDelay, TimeUnit.SECONDS);
+        };
     }
 
     /**
@@ -87,16 +135,7 @@ public class TextFile implements Resettable {
      * @param writeDelay Time delay in seconds between flushing buffered data to storage
      */
     public TextFile(@NonNull final Context context, @NonNull final String filename, final int writeDelay) {
-        this(new File(new File(getRootFolder(context), "Sensor"), filename));
-        executorService.scheduleWithFixedDelay(new Runnable() {
-            @Override
-            public void run() {
-                if (!flush()) {
-                    return;
-                }
-                MediaScannerConnection.scanFile(context, new String[]{file.getAbsolutePath()}, null, null);
-            }
-        }, writeDelay, writeDelay, TimeUnit.SECONDS);
+        this(context, file(context, filename), writeDelay, 1024, TextFileWriteBuffer.OverflowPolicy.BLOCK);
     }
 
     // MARK: - Resettable
@@ -114,6 +153,25 @@ public class TextFile implements Resettable {
         writeBuffer.clear();
     }
 
+    /**
+     * Flush pending writes and cancel scheduled flush. The text file remains usable.
+     */
+    public synchronized void close() {
+        // Cancel before flush, as flush clears the scheduled flags, thus a concurrent
+        // write after flush schedules a new flush rather than having it cancelled
+        scheduler.cancel(flushTask);
+        flush();
+        channel.close();
+    }
+
+    /**
+     * Set durability policy for writes, default is TextFileChannel.Durability.WRITE.
+     * @param durability Durability policy.
+     */
+    public void durability(@NonNull final TextFileChannel.Durability durability) {
+        channel.durability(durability);
+    }
+
     // MARK: - I/O functions
 
     /**
@@ -244,6 +302,17 @@ public class TextFile implements Resettable {
         }
     }
 
+    /**
+     * Get file within "Sensor" folder in application context.
+     * @param context Application context.
+     * @param filename File name.
+     * @return File, which may not exist yet.
+     */
+    @NonNull
+    public static File file(@NonNull final Context context, @NonNull final String filename) {
+        return new File(new File(getRootFolder(context), "Sensor"), filename);
+    }
+
     /**
      * Get root folder for SD card or emulated external storage.
      *
@@ -267,13 +336,45 @@ public class TextFile implements Resettable {
 
     /**
      * Append line to new or existing file. The line is added to the
-     * write buffer and automatically flushed once every 30 seconds
-     * or when the buffer contains > 256k of text.
+     * write buffer and automatically flushed after the write delay,
+     * or as soon as possible when the buffer is half full or contains
+     * > 256k of text. This function does not block unless the buffer
+     * is full and the overflow policy is BLOCK.
      */
-    public synchronized void write(@NonNull final String line) {
-        writeBuffer.add(line);
-        if (writeBufferSize.addAndGet(line.length()) > 262144) {
-            flush();
+    public void write(@NonNull final String line) {
+        if (!writeBuffer.offer(line)) {
+            overflow(line);
+        }
+        if (writeBuffer.size() > writeBuffer.capacity() / 2 || writeBuffer.characters() > 262144) {
+            if (!flushNowScheduled.getAndSet(true)) {
+                scheduler.schedule(flushTask, 0);
+            }
+        } else if (!flushScheduled.getAndSet(true)) {
+            scheduler.schedule(flushTask, writeDelayMillis);
+        }
+    }
+
+    private void overflow(@NonNull final String line) {
+        switch (overflowPolicy) {
+            case DROP_NEWEST: {
+                droppedLines.incrementAndGet();
+                break;
+            }
+            case DROP_OLDEST: {
+                do {
+                    if (null != writeBuffer.poll()) {
+                        droppedLines.incrementAndGet();
+                    }
+                } while (!writeBuffer.offer(line));
+                break;
+            }
+            default: {
+                blockedWrites.incrementAndGet();
+                do {
+                    flush();
+                } while (!writeBuffer.offer(line));
+                break;
+            }
         }
     }
 
@@ -282,35 +383,52 @@ public class TextFile implements Resettable {
      * @return True if data was written, false otherwise.
      */
     public synchronized boolean flush() {
-        if (writeBuffer.isEmpty()) {
+        // Reset before draining, such that lines written after draining schedule another flush
+        flushScheduled.set(false);
+        flushNowScheduled.set(false);
+        final List<String> lines = new ArrayList<>(writeBuffer.size());
+        if (0 == writeBuffer.drainTo(lines)) {
             return false;
         }
-        final List<String> lines = new ArrayList<>(writeBuffer);
-        final StringBuilder content = new StringBuilder(writeBufferSize.get() + lines.size());
-        // Newline character is added to the end by writeNow()
-        for (int i=0; i<lines.size(); i++) {
-            if (i > 0) {
-                content.append('\n');
-            }
-            content.append(lines.get(i));
-        }
-        writeNow(content.toString());
-        clearBuffer();
+        writeNow(lines);
         return true;
     }
 
     /**
-     * Append line to new or existing file immediately.
+     * Number of lines discarded due to full write buffer.
+     * @return Dropped line count.
+     */
+    public long droppedLines() {
+        return droppedLines.get();
+    }
+
+    /**
+     * Number of write() calls that flushed the write buffer due to full write buffer.
+     * @return Blocked write count.
+     */
+    public long blockedWrites() {
+        return blockedWrites.get();
+    }
+
+    /**
+     * Append lines to new or existing file immediately, as one write to the open file.
+     * @param lines Lines of text
+     */
+    protected void writeNow(@NonNull final List<String> lines) {
+        // Lines are encoded directly into the channel buffer with newline characters
+        if (!channel.append(lines)) {
+            logger.fault("write failed (file={})", file);
+        }
+    }
+
+    /**
+     * Append line to new or existing file immediately. Concurrent calls are committed
+     * together in one write to the open file.
      * @param line Line of text
      */
-    public synchronized void writeNow(@NonNull final String line) {
-        try {
-            final FileOutputStream fileOutputStream = new FileOutputStream(file, true);
-            fileOutputStream.write((line + "\n").getBytes());
-            fileOutputStream.flush();
-            fileOutputStream.close();
-        } catch (Throwable e) {
-            logger.fault("write failed (file={})", file, e);
+    public void writeNow(@NonNull final String line) {
+        if (!channel.append(line)) {
+            logger.fault("write failed (file={})", file);
         }
     }
 
@@ -320,14 +438,32 @@ public class TextFile implements Resettable {
      */
     public synchronized void overwrite(@NonNull final String content) {
         clearBuffer();
-        try {
-            // No longer writing to temporary file first as this caused the test to fail on latest Android version
-            final FileOutputStream fileOutputStream = new FileOutputStream(file, false);
-            fileOutputStream.write(content.getBytes());
-            fileOutputStream.flush();
-            fileOutputStream.close();
-        } catch (Throwable e) {
-            logger.fault("overwrite failed (file={})", file, e);
+        // No longer writing to temporary file first as this caused the test to fail on latest Android version
+        if (!channel.overwrite(content)) {
+            logger.fault("overwrite failed (file={})", file);
+        }
+    }
+
+    /**
+     * Replace file content atomically by writing content to a temporary file in the same
+     * folder, and then renaming the temporary file to replace this file. Readers of this
+     * file therefore see either the previous or the new content in full, never a partially
+     * written file. Falls back to overwrite() if the temporary file cannot be renamed.
+     * @param content Text content
+     */
+    public synchronized void replace(@NonNull final String content) {
+        clearBuffer();
+        final File temporaryFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        final TextFileChannel temporaryChannel = new TextFileChannel(temporaryFile);
+        final boolean written = temporaryChannel.overwrite(content);
+        temporaryChannel.close();
+        // Close channel to release previous file, the channel reopens the replaced file on next write
+        channel.close();
+        if (!written || !temporaryFile.renameTo(file)) {
+            logger.fault("replace failed, overwriting file instead (file={})", file);
+            //noinspection ResultOfMethodCallIgnored
+            temporaryFile.delete();
+            overwrite(content);
         }
     }
 
@@ -3,6 +3,7 @@ package io.heraldprox.herald.sensor.data;
 import androidx.annotation.NonNull;
 
 import java.io.File;
+import java.util.List;
 
 /**
  * In memory implementation of TextFile to enable automated testing of loggers.
@@ -40,6 +41,18 @@ public class TextFileBuffer extends TextFile {
         buffer.append('\n');
     }
 
+    @Override
+    protected synchronized void writeNow(@NonNull List<String> lines) {
+        for (final String line : lines) {
+            writeNow(line);
+        }
+    }
+
+    @Override
+    public synchronized void replace(@NonNull String content) {
+        overwrite(content);
+    }
+
     @Override
     public synchronized void overwrite(@NonNull String content) {
         clearBuffer();
@@ -0,0 +1,378 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Append engine for text files with a persistent file channel and group commit.
+ * <br>
+ * The file channel is opened on first write and kept open, and lines are encoded as UTF-8
+ * directly into a reusable direct buffer. Concurrent writers are batched by group commit,
+ * where the first writer becomes the leader and writes the lines of all waiting writers
+ * in one write call, while the other writers wait for their lines to be committed. The
+ * durability policy determines whether each commit is forced to storage. The channel is
+ * reopened if the file has been deleted or replaced, e.g. by TextFile.removeAll().
+ * <br>
+ * All functions are thread safe.
+ */
+public class TextFileChannel {
+    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "Data.TextFileChannel");
+    private final static Charset utf8 = Charset.forName("UTF-8");
+    private final static int bufferCapacity = 8192;
+    @NonNull
+    private final File file;
+    @NonNull
+    private Durability durability;
+    private final Object lock = new Object();
+    // Lines waiting to be committed, and ticket of last line enqueued and committed
+    @NonNull
+    private List<CharSequence> pending = new ArrayList<>();
+    private long enqueued = 0;
+    private long committed = 0;
+    private boolean leader = false;
+    // Tickets (exclusive, inclusive] of most recent failed commit, for reporting failure to waiting writers
+    private long failedFrom = 0;
+    private long failedTo = 0;
+    // Only accessed by leader
+    @Nullable
+    private FileOutputStream fileOutputStream = null;
+    @Nullable
+    private FileChannel fileChannel = null;
+    @Nullable
+    private ByteBuffer buffer = null;
+    @NonNull
+    private final CharsetEncoder encoder = utf8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    // Metrics
+    private long commits = 0;
+    private long lines = 0;
+    private long forces = 0;
+
+    /**
+     * Durability policy for committed writes.
+     */
+    public enum Durability {
+        /**
+         * Commit is complete when data has been written to the operating system, which
+         * writes data to storage in the background. Data survives app termination.
+         */
+        WRITE,
+        /**
+         * Commit is complete when data has been forced to storage. Data survives power loss.
+         */
+        FORCE
+    }
+
+    public TextFileChannel(@NonNull final File file, @NonNull final Durability durability) {
+        this.file = file;
+        this.durability = durability;
+    }
+
+    public TextFileChannel(@NonNull final File file) {
+        this(file, Durability.WRITE);
+    }
+
+    /**
+     * Set durability policy for subsequent commits.
+     * @param durability Durability policy.
+     */
+    public void durability(@NonNull final Durability durability) {
+        synchronized (lock) {
+            this.durability = durability;
+        }
+    }
+
+    /**
+     * Append line to file, followed by newline character. Returns when the line has been committed.
+     * @param line Line of text.
+     * @return True on success, false otherwise.
+     */
+    public boolean append(@NonNull final CharSequence line) {
+        return append(Collections.singletonList(line));
+    }
+
+    /**
+     * Append lines to file, each followed by newline character. Returns when all lines have been committed.
+     * @param lines Lines of text.
+     * @return True on success, false otherwise.
+     */
+    public boolean append(@NonNull final Collection<? extends CharSequence> lines) {
+        final long ticket;
+        synchronized (lock) {
+            pending.addAll(lines);
+            enqueued += lines.size();
+            ticket = enqueued;
+        }
+        return commit(ticket, null);
+    }
+
+    /**
+     * Replace file content. Lines appended before this call are committed first.
+     * @param content File content.
+     * @return True on success, false otherwise.
+     */
+    public boolean overwrite(@NonNull final CharSequence content) {
+        final long ticket;
+        synchronized (lock) {
+            ticket = enqueued;
+        }
+        return commit(ticket, content);
+    }
+
+    /**
+     * Wait until all lines up to ticket have been committed, committing lines of all waiting
+     * writers when no other writer is committing.
+     * @param ticket Ticket of last line to be committed.
+     * @param overwrite Content to replace file content with after commit, or null to append only.
+     * @return True on success, false otherwise.
+     */
+    private boolean commit(final long ticket, @Nullable final CharSequence overwrite) {
+        final List<CharSequence> batch;
+        final long batchFrom, batchTicket;
+        final Durability batchDurability;
+        synchronized (lock) {
+            while (true) {
+                if (null == overwrite && committed >= ticket) {
+                    return !(ticket > failedFrom && ticket <= failedTo);
+                }
+                if (!leader) {
+                    break;
+                }
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            leader = true;
+            batch = pending;
+            batchFrom = committed;
+            batchTicket = enqueued;
+            batchDurability = durability;
+            pending = new ArrayList<>();
+        }
+        boolean success = false;
+        try {
+            success = write(batch, overwrite, batchDurability);
+        } finally {
+            synchronized (lock) {
+                completed(batch, batchFrom, batchTicket, batchDurability, success);
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Record completion of batch, release leadership and wake up waiting writers.
+     * Only called by leader while holding lock.
+     */
+    private void completed(@NonNull final List<CharSequence> batch, final long batchFrom, final long batchTicket, @NonNull final Durability batchDurability, final boolean success) {
+        leader = false;
+        committed = batchTicket;
+        if (!success) {
+            failedFrom = batchFrom;
+            failedTo = batchTicket;
+        }
+        commits++;
+        lines += batch.size();
+        if (success && Durability.FORCE == batchDurability) {
+            forces++;
+        }
+        lock.notifyAll();
+    }
+
+    /**
+     * Write batch of lines, optionally followed by truncating the file and writing content.
+     * Only called by leader.
+     */
+    private boolean write(@NonNull final List<CharSequence> batch, @Nullable final CharSequence overwrite, @NonNull final Durability durability) {
+        try {
+            final FileChannel fileChannel = open();
+            final ByteBuffer buffer = buffer();
+            for (final CharSequence line : batch) {
+                encode(line, buffer, fileChannel);
+                if (!buffer.hasRemaining()) {
+                    drain(buffer, fileChannel);
+                }
+                buffer.put((byte) '\n');
+            }
+            drain(buffer, fileChannel);
+            if (null != overwrite) {
+                fileChannel.truncate(0);
+                encode(overwrite, buffer, fileChannel);
+                drain(buffer, fileChannel);
+            }
+            if (Durability.FORCE == durability) {
+                fileChannel.force(false);
+            }
+            return true;
+        } catch (Throwable e) {
+            logger.fault("write failed (file={})", file, e);
+            // Discard partially encoded data and reopen channel on next write
+            if (null != buffer) {
+                buffer.clear();
+            }
+            closeChannel();
+            return false;
+        }
+    }
+
+    private void encode(@NonNull final CharSequence text, @NonNull final ByteBuffer buffer, @NonNull final FileChannel fileChannel) throws Exception {
+        final CharBuffer input = CharBuffer.wrap(text);
+        encoder.reset();
+        while (true) {
+            final CoderResult result = encoder.encode(input, buffer, true);
+            if (result.isOverflow()) {
+                drain(buffer, fileChannel);
+                continue;
+            }
+            if (result.isError()) {
+                result.throwException();
+            }
+            break;
+        }
+        while (encoder.flush(buffer).isOverflow()) {
+            drain(buffer, fileChannel);
+        }
+    }
+
+    private static void drain(@NonNull final ByteBuffer buffer, @NonNull final FileChannel fileChannel) throws Exception {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            fileChannel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @NonNull
+    private ByteBuffer buffer() {
+        if (null == buffer) {
+            buffer = ByteBuffer.allocateDirect(bufferCapacity);
+        }
+        return buffer;
+    }
+
+    /**
+     * Get open file channel, reopening the channel if the file no longer exists.
+     */
+    @NonNull
+    private FileChannel open() throws Exception {
+        if (null != fileChannel && fileChannel.isOpen() && file.exists()) {
+            return fileChannel;
+        }
+        closeChannel();
+        final File folder = file.getParentFile();
+        if (null != folder && !folder.exists() && !folder.mkdirs()) {
+            logger.fault("Make folder failed (folder={})", folder);
+        }
+        // Append mode positions every write at the end of file
+        fileOutputStream = new FileOutputStream(file, true);
+        fileChannel = fileOutputStream.getChannel();
+        return fileChannel;
+    }
+
+    private void closeChannel() {
+        if (null != fileOutputStream) {
+            try {
+                fileOutputStream.close();
+            } catch (Throwable e) {
+                logger.fault("close failed (file={})", file, e);
+            }
+        }
+        fileOutputStream = null;
+        fileChannel = null;
+    }
+
+    /**
+     * Commit pending lines and close file channel. The channel is reopened on next write.
+     */
+    public void close() {
+        final List<CharSequence> batch;
+        final long batchFrom, batchTicket;
+        final Durability batchDurability;
+        synchronized (lock) {
+            while (leader) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            leader = true;
+            batch = pending;
+            batchFrom = committed;
+            batchTicket = enqueued;
+            batchDurability = durability;
+            pending = new ArrayList<>();
+        }
+        boolean success = true;
+        try {
+            if (!batch.isEmpty()) {
+                success = write(batch, null, batchDurability);
+            }
+            closeChannel();
+        } finally {
+            synchronized (lock) {
+                if (batch.isEmpty()) {
+                    leader = false;
+                    lock.notifyAll();
+                } else {
+                    completed(batch, batchFrom, batchTicket, batchDurability, success);
+                }
+            }
+        }
+    }
+
+    // MARK: - Metrics
+
+    /**
+     * Number of group commits, each comprising of one or more lines written in one batch.
+     * @return Commit count.
+     */
+    public long commits() {
+        synchronized (lock) {
+            return commits;
+        }
+    }
+
+    /**
+     * Number of lines committed.
+     * @return Line count.
+     */
+    public long lines() {
+        synchronized (lock) {
+            return lines;
+        }
+    }
+
+    /**
+     * Number of commits forced to storage.
+     * @return Force count.
+     */
+    public long forces() {
+        synchronized (lock) {
+            return forces;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
+
+/**
+ * Shared scheduler for delayed flushing of buffered writes to storage, on a single
+ * background thread for all text files.
+ * <br>
+ * Flush tasks are only scheduled when there is pending data, thus idle files do not cause
+ * wake ups or hold resources. The scheduler wakes up when the earliest pending flush is due,
+ * and runs all flush tasks that are due within the coalesce window in the same wake up,
+ * thus files written at similar times are flushed together in one wake up per interval.
+ * <br>
+ * The background thread is created on demand and stopped by shutdown(), which runs all
+ * pending flush tasks first. Scheduling after shutdown restarts the background thread.
+ */
+public class TextFileScheduler {
+    private final static SensorLogger logger = new ConcreteSensorLogger("Sensor", "Data.TextFileScheduler");
+    @Nullable
+    private static TextFileScheduler shared = null;
+    private final long coalesceWindowMillis;
+    // Due time of pending flush tasks
+    @NonNull
+    private final Map<Runnable, Long> pending = new HashMap<>();
+    @Nullable
+    private ScheduledThreadPoolExecutor executor = null;
+    @Nullable
+    private ScheduledFuture<?> wakeUp = null;
+    private long wakeUpTime = Long.MAX_VALUE;
+    // Metrics
+    private long wakeUps = 0;
+    private long flushes = 0;
+    private long lastFlushLatency = 0;
+    private long maxFlushLatency = 0;
+
+    /**
+     * Scheduler with configurable coalesce window.
+     * @param coalesceWindow Flush tasks that are due within this time window from the
+     *                       earliest due task are run together in one wake up.
+     */
+    public TextFileScheduler(@NonNull final TimeInterval coalesceWindow) {
+        this.coalesceWindowMillis = Math.max(0, coalesceWindow.millis());
+    }
+
+    /**
+     * Scheduler with 30 second coalesce window, matching the default write delay of text files.
+     */
+    public TextFileScheduler() {
+        this(new TimeInterval(30));
+    }
+
+    /**
+     * Scheduler shared by all text files.
+     * @return Shared scheduler.
+     */
+    @NonNull
+    public synchronized static TextFileScheduler shared() {
+        if (null == shared) {
+            shared = new TextFileScheduler();
+        }
+        return shared;
+    }
+
+    @NonNull
+    private ScheduledThreadPoolExecutor executor() {
+        if (null == executor) {
+            executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "TextFileScheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.setRemoveOnCancelPolicy(true);
+        }
+        return executor;
+    }
+
+    /**
+     * Schedule flush task to run after delay. Scheduling a task that is already pending
+     * retains the earlier due time, thus the task runs once.
+     * @param task Flush task.
+     * @param delayMillis Delay in milliseconds.
+     */
+    public synchronized void schedule(@NonNull final Runnable task, final long delayMillis) {
+        final long due = System.currentTimeMillis() + Math.max(0, delayMillis);
+        final Long existing = pending.get(task);
+        if (null != existing && existing <= due) {
+            return;
+        }
+        pending.put(task, due);
+        if (due < wakeUpTime) {
+            scheduleWakeUp(due);
+        }
+    }
+
+    /**
+     * Cancel pending flush task.
+     * @param task Flush task.
+     */
+    public synchronized void cancel(@NonNull final Runnable task) {
+        pending.remove(task);
+    }
+
+    private void scheduleWakeUp(final long time) {
+        if (null != wakeUp) {
+            wakeUp.cancel(false);
+        }
+        wakeUpTime = time;
+        try {
+            wakeUp = executor().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    wakeUp();
+                }
+            }, Math.max(0, time - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (Throwable e) {
+            logger.fault("schedule failed", e);
+            wakeUp = null;
+            wakeUpTime = Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Run all tasks due within coalesce window, then schedule next wake up. Tasks are
+     * run outside of lock, as tasks acquire the lock of their text file, which may be
+     * held by a thread that is scheduling a task.
+     */
+    private void wakeUp() {
+        final List<Runnable> tasks;
+        synchronized (this) {
+            wakeUp = null;
+            wakeUpTime = Long.MAX_VALUE;
+            tasks = takeDue(System.currentTimeMillis() + coalesceWindowMillis);
+            wakeUps++;
+        }
+        run(tasks);
+        synchronized (this) {
+            long earliest = Long.MAX_VALUE;
+            for (final Long due : pending.values()) {
+                earliest = Math.min(earliest, due);
+            }
+            if (earliest != Long.MAX_VALUE && earliest < wakeUpTime) {
+                scheduleWakeUp(earliest);
+            }
+        }
+    }
+
+    @NonNull
+    private List<Runnable> takeDue(final long time) {
+        final List<Runnable> tasks = new ArrayList<>();
+        final Iterator<Map.Entry<Runnable, Long>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Runnable, Long> entry = iterator.next();
+            if (entry.getValue() <= time) {
+                tasks.add(entry.getKey());
+                iterator.remove();
+            }
+        }
+        return tasks;
+    }
+
+    private void run(@NonNull final List<Runnable> tasks) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        final long start = System.nanoTime();
+        for (final Runnable task : tasks) {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                logger.fault("flush failed", e);
+            }
+        }
+        final long latency = (System.nanoTime() - start) / 1000000;
+        synchronized (this) {
+            flushes += tasks.size();
+            lastFlushLatency = latency;
+            maxFlushLatency = Math.max(maxFlushLatency, latency);
+        }
+    }
+
+    /**
+     * Run all pending flush tasks and stop background thread. The scheduler remains usable,
+     * and restarts the background thread when a flush is scheduled.
+     */
+    public void shutdown() {
+        final List<Runnable> tasks;
+        final ScheduledThreadPoolExecutor executor;
+        synchronized (this) {
+            tasks = takeDue(Long.MAX_VALUE);
+            executor = this.executor;
+            this.executor = null;
+            wakeUp = null;
+            wakeUpTime = Long.MAX_VALUE;
+        }
+        if (null != executor) {
+            executor.shutdownNow();
+        }
+        run(tasks);
+    }
+
+    // MARK: - Metrics
+
+    /**
+     * Number of background threads, which is zero before first use and after shutdown,
+     * and one otherwise.
+     * @return Thread count.
+     */
+    public synchronized int threadCount() {
+        return (null == executor ? 0 : executor.getPoolSize());
+    }
+
+    /**
+     * Number of flush tasks waiting to run.
+     * @return Pending task count.
+     */
+    public synchronized int pending() {
+        return pending.size();
+    }
+
+    /**
+     * Number of times the background thread woke up to run flush tasks.
+     * @return Wake up count.
+     */
+    public synchronized long wakeUps() {
+        return wakeUps;
+    }
+
+    /**
+     * Number of flush tasks run.
+     * @return Flush count.
+     */
+    public synchronized long flushes() {
+        return flushes;
+    }
+
+    /**
+     * Time taken to run all flush tasks in the most recent wake up.
+     * @return Latency in milliseconds.
+     */
+    public synchronized long lastFlushLatency() {
+        return lastFlushLatency;
+    }
+
+    /**
+     * Maximum time taken to run all flush tasks in one wake up.
+     * @return Latency in milliseconds.
+     */
+    public synchronized long maxFlushLatency() {
+        return maxFlushLatency;
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        return "TextFileScheduler{" +
+                "threads=" + threadCount() +
+                ", pending=" + pending.size() +
+                ", wakeUps=" + wakeUps +
+                ", flushes=" + flushes +
+                ", lastFlushLatency=" + lastFlushLatency +
+                ", maxFlushLatency=" + maxFlushLatency +
+                '}';
+    }
+}
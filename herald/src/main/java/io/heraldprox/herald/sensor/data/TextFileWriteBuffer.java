@@ -0,0 +1,180 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free bounded ring buffer of pending lines for text files.
+ * <br>
+ * Each slot carries a sequence number that indicates whether the slot is ready for the
+ * next producer or consumer, thus producers claim slots by compare-and-set on the tail
+ * counter and never block each other or the consumer. Slots are pre-allocated, thus
+ * adding a line does not allocate memory. Consumers also claim slots by compare-and-set,
+ * such that a producer can discard the oldest line when the buffer is full while the
+ * I/O thread is draining the buffer.
+ */
+public class TextFileWriteBuffer {
+    private final int capacity;
+    private final int mask;
+    @NonNull
+    private final AtomicReferenceArray<String> slots;
+    @NonNull
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong(0);
+    private final AtomicLong tail = new AtomicLong(0);
+    private final AtomicLong characters = new AtomicLong(0);
+
+    /**
+     * Action when a line is written to a full buffer.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Discard the oldest pending line to make space for the new line.
+         */
+        DROP_OLDEST,
+        /**
+         * Discard the new line.
+         */
+        DROP_NEWEST,
+        /**
+         * Writer flushes the buffer to make space for the new line, thus no lines
+         * are discarded but the writer blocks on file I/O.
+         */
+        BLOCK
+    }
+
+    /**
+     * Ring buffer.
+     * @param capacity Maximum number of pending lines, rounded up to power of two, minimum 2.
+     */
+    public TextFileWriteBuffer(final int capacity) {
+        int size = 2;
+        while (size < capacity && size < (1 << 30)) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i=0; i<size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Add line to tail of buffer.
+     * @param line Line of text.
+     * @return True if line was added, false if buffer is full.
+     */
+    public boolean offer(@NonNull final String line) {
+        long position = tail.get();
+        while (true) {
+            final int index = (int) (position & mask);
+            final long difference = sequences.get(index) - position;
+            if (0 == difference) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.set(index, line);
+                    characters.addAndGet(line.length());
+                    // Publish slot to consumers
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // Slot still holds line from previous round
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Remove line from head of buffer.
+     * @return Oldest line, or null if buffer is empty.
+     */
+    @Nullable
+    public String poll() {
+        long position = head.get();
+        while (true) {
+            final int index = (int) (position & mask);
+            final long difference = sequences.get(index) - (position + 1);
+            if (0 == difference) {
+                if (head.compareAndSet(position, position + 1)) {
+                    final String line = slots.get(index);
+                    slots.set(index, null);
+                    characters.addAndGet(-line.length());
+                    // Release slot to producers of next round
+                    sequences.set(index, position + capacity);
+                    return line;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Remove all lines from buffer.
+     * @param lines Collection for receiving the removed lines in order.
+     * @return Number of removed lines.
+     */
+    public int drainTo(@NonNull final Collection<String> lines) {
+        int count = 0;
+        String line;
+        while ((line = poll()) != null) {
+            lines.add(line);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Discard all lines in buffer.
+     * @return Number of discarded lines.
+     */
+    public int clear() {
+        int count = 0;
+        while (poll() != null) {
+            count++;
+        }
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Approximate number of lines in buffer, exact when there are no concurrent writes.
+     * @return Number of lines.
+     */
+    public int size() {
+        final long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(capacity, size));
+    }
+
+    /**
+     * Approximate number of characters in buffer.
+     * @return Number of characters.
+     */
+    public long characters() {
+        return characters.get();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
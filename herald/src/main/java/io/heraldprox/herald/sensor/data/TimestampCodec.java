@@ -0,0 +1,272 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Thread-safe UTC timestamp formatter and parser for fixed-width timestamps
+ * "yyyy-MM-dd HH:mm:ss" and "yyyy-MM-dd HH:mm:ss.SSSZ".
+ * <br>
+ * Each thread formats into its own reusable character buffer, thus callers never
+ * contend on a shared formatter. The buffer caches the "yyyy-MM-dd HH:mm:ss" prefix
+ * of the last formatted second, such that consecutive log entries within the same
+ * second only write the milliseconds. Parsing reads the digits at fixed offsets
+ * without allocating intermediate objects.
+ */
+public class TimestampCodec {
+    /**
+     * Result of {@link #parse(CharSequence)} for text that is not a valid timestamp.
+     */
+    public final static long INVALID = Long.MIN_VALUE;
+    /** Length of "yyyy-MM-dd HH:mm:ss". */
+    public final static int secondsLength = 19;
+    /** Length of "yyyy-MM-dd HH:mm:ss.SSSZ", where Z is "+0000". */
+    public final static int millisecondsLength = 28;
+    // Years 1583 to 9999 in milliseconds since epoch, where the proleptic Gregorian
+    // calendar agrees with the Julian-Gregorian calendar of SimpleDateFormat
+    private final static long minMillis = -12212553600000L;
+    private final static long maxMillis = 253402300799999L;
+
+    /**
+     * Per-thread formatting state.
+     */
+    private final static class State {
+        private final char[] buffer = new char[millisecondsLength];
+        private long second = Long.MIN_VALUE;
+    }
+
+    private final static ThreadLocal<State> state = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            final State state = new State();
+            state.buffer[19] = '.';
+            state.buffer[23] = '+';
+            state.buffer[24] = '0';
+            state.buffer[25] = '0';
+            state.buffer[26] = '0';
+            state.buffer[27] = '0';
+            return state;
+        }
+    };
+
+    /**
+     * Format time as "yyyy-MM-dd HH:mm:ss.SSSZ" in UTC, e.g. "2021-01-01 12:00:00.000+0000".
+     * @param millis Milliseconds since epoch.
+     * @return Formatted timestamp.
+     */
+    @NonNull
+    public static String formatMilliseconds(final long millis) {
+        if (millis < minMillis || millis > maxMillis) {
+            return fallback("yyyy-MM-dd HH:mm:ss.SSSZ", millis);
+        }
+        return new String(fill(millis), 0, millisecondsLength);
+    }
+
+    /**
+     * Format time as "yyyy-MM-dd HH:mm:ss" in UTC, e.g. "2021-01-01 12:00:00".
+     * @param millis Milliseconds since epoch.
+     * @return Formatted timestamp.
+     */
+    @NonNull
+    public static String formatSeconds(final long millis) {
+        if (millis < minMillis || millis > maxMillis) {
+            return fallback("yyyy-MM-dd HH:mm:ss", millis);
+        }
+        return new String(fill(millis), 0, secondsLength);
+    }
+
+    /**
+     * Append time as "yyyy-MM-dd HH:mm:ss.SSSZ" in UTC without intermediate string.
+     * @param stringBuilder Destination.
+     * @param millis Milliseconds since epoch.
+     * @return Destination.
+     */
+    @NonNull
+    public static StringBuilder appendMilliseconds(@NonNull final StringBuilder stringBuilder, final long millis) {
+        if (millis < minMillis || millis > maxMillis) {
+            return stringBuilder.append(fallback("yyyy-MM-dd HH:mm:ss.SSSZ", millis));
+        }
+        return stringBuilder.append(fill(millis), 0, millisecondsLength);
+    }
+
+    /**
+     * Append time as "yyyy-MM-dd HH:mm:ss" in UTC without intermediate string.
+     * @param stringBuilder Destination.
+     * @param millis Milliseconds since epoch.
+     * @return Destination.
+     */
+    @NonNull
+    public static StringBuilder appendSeconds(@NonNull final StringBuilder stringBuilder, final long millis) {
+        if (millis < minMillis || millis > maxMillis) {
+            return stringBuilder.append(fallback("yyyy-MM-dd HH:mm:ss", millis));
+        }
+        return stringBuilder.append(fill(millis), 0, secondsLength);
+    }
+
+    /**
+     * Parse fixed-width timestamp "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd HH:mm:ss.SSS" or
+     * "yyyy-MM-dd HH:mm:ss.SSSZ", where Z is a time zone offset "+HHMM" or "-HHMM".
+     * Timestamps without time zone are in UTC. Years before 1583 are rejected as
+     * invalid as they are ambiguous between the Julian and Gregorian calendars.
+     * @param text Timestamp.
+     * @return Milliseconds since epoch, or {@link #INVALID} if text is not a valid timestamp.
+     */
+    public static long parse(@Nullable final CharSequence text) {
+        if (null == text) {
+            return INVALID;
+        }
+        final int length = text.length();
+        if (!(length == secondsLength || length == 23 || length == millisecondsLength)) {
+            return INVALID;
+        }
+        if (text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != ' ' || text.charAt(13) != ':' || text.charAt(16) != ':') {
+            return INVALID;
+        }
+        final int year = digits(text, 0, 4);
+        final int month = digits(text, 5, 2);
+        final int day = digits(text, 8, 2);
+        final int hour = digits(text, 11, 2);
+        final int minute = digits(text, 14, 2);
+        final int second = digits(text, 17, 2);
+        if (year < 1583 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return INVALID;
+        }
+        int millis = 0;
+        int offsetMinutes = 0;
+        if (length > secondsLength) {
+            if (text.charAt(19) != '.') {
+                return INVALID;
+            }
+            millis = digits(text, 20, 3);
+            if (millis < 0) {
+                return INVALID;
+            }
+        }
+        if (length == millisecondsLength) {
+            final char sign = text.charAt(23);
+            final int offsetHours = digits(text, 24, 2);
+            final int offsetRemainder = digits(text, 26, 2);
+            if ((sign != '+' && sign != '-') || offsetHours < 0 || offsetRemainder < 0 || offsetRemainder > 59) {
+                return INVALID;
+            }
+            offsetMinutes = (sign == '+' ? 1 : -1) * (offsetHours * 60 + offsetRemainder);
+        }
+        final long days = daysFromCivil(year, month, day);
+        final long seconds = days * 86400L + hour * 3600L + minute * 60L + second - offsetMinutes * 60L;
+        return seconds * 1000L + millis;
+    }
+
+    // MARK: - Internals
+
+    /**
+     * Fill thread buffer with timestamp, recomputing the date and time prefix only when
+     * the second has changed since the last call on this thread.
+     * @param millis Milliseconds since epoch, within years 1583 to 9999.
+     * @return Thread buffer containing "yyyy-MM-dd HH:mm:ss.SSS+0000".
+     */
+    @NonNull
+    private static char[] fill(final long millis) {
+        final State state = TimestampCodec.state.get();
+        final char[] buffer = state.buffer;
+        long second = millis / 1000;
+        int milli = (int) (millis % 1000);
+        if (milli < 0) {
+            second--;
+            milli += 1000;
+        }
+        if (second != state.second) {
+            long days = second / 86400;
+            int secondOfDay = (int) (second % 86400);
+            if (secondOfDay < 0) {
+                days--;
+                secondOfDay += 86400;
+            }
+            civilFromDays(days, buffer);
+            buffer[10] = ' ';
+            put2(buffer, 11, secondOfDay / 3600);
+            buffer[13] = ':';
+            put2(buffer, 14, (secondOfDay / 60) % 60);
+            buffer[16] = ':';
+            put2(buffer, 17, secondOfDay % 60);
+            state.second = second;
+        }
+        buffer[20] = (char) ('0' + milli / 100);
+        buffer[21] = (char) ('0' + (milli / 10) % 10);
+        buffer[22] = (char) ('0' + milli % 10);
+        return buffer;
+    }
+
+    /**
+     * Write "yyyy-MM-dd" for days since epoch into buffer, using the proleptic Gregorian
+     * calendar algorithm by Howard Hinnant.
+     */
+    private static void civilFromDays(final long daysSinceEpoch, @NonNull final char[] buffer) {
+        final long z = daysSinceEpoch + 719468;
+        final long era = (z >= 0 ? z : z - 146096) / 146097;
+        final long doe = z - era * 146097;
+        final long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        final long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        final long mp = (5 * doy + 2) / 153;
+        final int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        final int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        final int year = (int) (yoe + era * 400 + (month <= 2 ? 1 : 0));
+        put2(buffer, 0, year / 100);
+        put2(buffer, 2, year % 100);
+        buffer[4] = '-';
+        put2(buffer, 5, month);
+        buffer[7] = '-';
+        put2(buffer, 8, day);
+    }
+
+    /**
+     * Days since epoch for proleptic Gregorian date, inverse of {@link #civilFromDays(long, char[])}.
+     */
+    private static long daysFromCivil(final int year, final int month, final int day) {
+        final long y = (month <= 2 ? year - 1 : year);
+        final long era = (y >= 0 ? y : y - 399) / 400;
+        final long yoe = y - era * 400;
+        final long doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        final long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    private static void put2(@NonNull final char[] buffer, final int offset, final int value) {
+        buffer[offset] = (char) ('0' + value / 10);
+        buffer[offset + 1] = (char) ('0' + value % 10);
+    }
+
+    /**
+     * Parse decimal digits at fixed position.
+     * @return Value, or -1 if any character is not a digit.
+     */
+    private static int digits(@NonNull final CharSequence text, final int offset, final int count) {
+        int value = 0;
+        for (int i = offset, end = offset + count; i < end; i++) {
+            final char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Format time outside of years 1583 to 9999, which is either not fixed-width
+     * or in the Julian calendar.
+     */
+    @NonNull
+    private static String fallback(@NonNull final String pattern, final long millis) {
+        final SimpleDateFormat dateFormatter = new SimpleDateFormat(pattern, Locale.UK);
+        dateFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return dateFormatter.format(new java.util.Date(millis));
+    }
+}
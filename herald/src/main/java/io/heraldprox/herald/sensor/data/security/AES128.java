@@ -7,6 +7,9 @@ package io.heraldprox.herald.sensor.data.security;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
@@ -18,9 +21,29 @@ import io.heraldprox.herald.sensor.datatype.Data;
 
 /**
  * AES128 encryption algorithm
+ * <br>
+ * Each thread reuses its own cipher instance, and keys derived once via {@link Key} are
+ * reused across messages, thus per message cost is limited to cipher initialisation and
+ * encryption. ByteBuffer based functions encrypt and decrypt into caller supplied buffers.
  */
-public class AES128 implements Encryption {
+public class AES128 implements ReusableKeyEncryption {
     private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "Data.Security.AES128");
+    private final static String transformation = "AES/CBC/PKCS5Padding";
+    // Initialisation vector length (128 bits = 16 bytes)
+    private final static int ivLength = 16;
+    private final static int blockLength = 16;
+    // Cipher instances are not thread safe, thus each thread reuses its own instance
+    private final static ThreadLocal<Cipher> cipher = new ThreadLocal<Cipher>() {
+        @Nullable
+        @Override
+        protected Cipher initialValue() {
+            try {
+                return Cipher.getInstance(transformation);
+            } catch (Throwable e) {
+                return null;
+            }
+        }
+    };
     @NonNull
     private final PseudoRandomFunction random;
 
@@ -32,73 +55,163 @@ public class AES128 implements Encryption {
         this(new SecureRandomFunction());
     }
 
-    @Nullable
+    /**
+     * Encryption key with AES key material derived once on construction, for reuse
+     * across many messages, e.g. the shared key of a transport layer security session.
+     */
+    public static class Key extends EncryptionKey {
+        @NonNull
+        private final SecretKey secretKey;
+
+        public Key(@NonNull final Data data) {
+            super(data);
+            this.secretKey = deriveSecretKey(this);
+        }
+    }
+
+    @NonNull
     @Override
-    public Data encrypt(@NonNull Data data, @NonNull EncryptionKey with) {
+    public EncryptionKey key(@NonNull final Data data) {
+        return new Key(data);
+    }
+
+    /**
+     * Derive AES key from encryption key.
+     * @param with Encryption key.
+     * @return AES key, cached for {@link Key} and derived on demand otherwise.
+     */
+    @NonNull
+    public static SecretKey secretKey(@NonNull final Data with) {
+        if (with instanceof Key) {
+            return ((Key) with).secretKey;
+        }
+        return deriveSecretKey(with);
+    }
+
+    @NonNull
+    private static SecretKey deriveSecretKey(@NonNull final Data with) {
         // Convert key data to hash to ensure key length is 256 bits
         final Data keyData = new SHA256().hash(with);
-        final SecretKey key = new SecretKeySpec(keyData.value, "AES");
-        // Generate random initialisation vector (128 bits = 16 bytes)
-        final Data ivData = new Data((byte) 0, 16);
+        return new SecretKeySpec(keyData.value, "AES");
+    }
+
+    /**
+     * Length of encrypted data, comprising of IV and padded cipher text.
+     * @param dataLength Length of data to be encrypted.
+     * @return Length of encrypted data.
+     */
+    public static int encryptedLength(final int dataLength) {
+        return ivLength + (dataLength / blockLength + 1) * blockLength;
+    }
+
+    @Nullable
+    @Override
+    public Data encrypt(@NonNull Data data, @NonNull EncryptionKey with) {
+        final byte[] encrypted = new byte[encryptedLength(data.value.length)];
+        final int length = encrypt(ByteBuffer.wrap(data.value), ByteBuffer.wrap(encrypted), with);
+        if (length < 0) {
+            return null;
+        }
+        // Build result = iv + encrypted
+        return new Data(length == encrypted.length ? encrypted : Arrays.copyOf(encrypted, length));
+    }
+
+    /**
+     * Encrypt data from input buffer into output buffer, writing IV followed by encrypted data.
+     * @param input Data to be encrypted, from position to limit.
+     * @param output Output buffer, requires encryptedLength(input.remaining()) bytes from position.
+     * @param with Encryption key.
+     * @return Number of bytes written to output, or -1 on failure, leaving input and output positions unchanged.
+     */
+    public int encrypt(@NonNull final ByteBuffer input, @NonNull final ByteBuffer output, @NonNull final EncryptionKey with) {
+        if (output.remaining() < encryptedLength(input.remaining())) {
+            logger.fault("encrypt failed, output buffer too small (inputCount={},outputCount={})", input.remaining(), output.remaining());
+            return -1;
+        }
+        final Cipher cipherEncrypt = cipher.get();
+        if (null == cipherEncrypt) {
+            logger.fault("encrypt failed, cipher unavailable");
+            return -1;
+        }
+        final SecretKey key = secretKey(with);
+        // Generate random initialisation vector
+        final Data ivData = new Data((byte) 0, ivLength);
         if (!random.nextBytes(ivData)) {
             logger.fault("encrypt failed, cannot generate random IV");
-            return null;
+            return -1;
         }
-        final IvParameterSpec iv = new IvParameterSpec(ivData.value);
-        // Encrypt data with key and iv
+        // Encrypt data with key and iv, leaving room for iv in output
+        final int inputPosition = input.position();
+        final int outputPosition = output.position();
         try {
-            final Cipher cipherEncrypt = Cipher.getInstance("AES/CBC/PKCS5Padding");
-            cipherEncrypt.init(Cipher.ENCRYPT_MODE, key, iv);
-            final byte[] encrypted = cipherEncrypt.doFinal(data.value);
-            if (null == encrypted) {
-                logger.fault("encrypt failed, cannot encrypt data");
-                return null;
-            }
-            final Data encryptedData = new Data(encrypted);
-            // Build result = iv + encrypted
-            final Data result = new Data();
-            result.append(ivData);
-            result.append(encryptedData);
-            return result;
+            cipherEncrypt.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(ivData.value));
+            output.position(outputPosition + ivLength);
+            final int length = cipherEncrypt.doFinal(input, output);
+            // Write iv only after encryption succeeded
+            final ByteBuffer iv = output.duplicate();
+            iv.position(outputPosition);
+            iv.put(ivData.value);
+            return ivLength + length;
         } catch (Throwable e) {
+            input.position(inputPosition);
+            output.position(outputPosition);
             logger.fault("encrypt failed, exception", e);
-            return null;
+            return -1;
         }
     }
 
     @Nullable
     @Override
     public Data decrypt(@NonNull Data data, @NonNull EncryptionKey with) {
-        // Convert key data to hash to ensure key length is 256 bits
-        final Data keyData = new SHA256().hash(with);
-        final SecretKey key = new SecretKeySpec(keyData.value, "AES");
         // Get iv from first 16 bytes of data
-        if (!(data.value.length > 16)) {
+        if (!(data.value.length > ivLength)) {
             logger.fault("decrypt failed, cannot decode IV data fragment");
             return null;
         }
-        final Data ivData = data.prefix(16);
-        final IvParameterSpec iv = new IvParameterSpec(ivData.value);
-        // Get encrypted data after iv
-        final Data encryptedData = data.suffix(16);
-        if (null == encryptedData) {
-            logger.fault("decrypt failed, cannot decode encrypted data fragment");
+        final byte[] decrypted = new byte[data.value.length];
+        final int length = decrypt(ByteBuffer.wrap(data.value), ByteBuffer.wrap(decrypted), with);
+        if (length < 0) {
             return null;
         }
-        // Decrypt data
+        return new Data(length == decrypted.length ? decrypted : Arrays.copyOf(decrypted, length));
+    }
+
+    /**
+     * Decrypt data from input buffer, comprising of IV followed by encrypted data, into output buffer.
+     * @param input Data to be decrypted, from position to limit.
+     * @param output Output buffer, requires input.remaining() bytes from position.
+     * @param with Encryption key.
+     * @return Number of bytes written to output, or -1 on failure, leaving input and output positions unchanged.
+     */
+    public int decrypt(@NonNull final ByteBuffer input, @NonNull final ByteBuffer output, @NonNull final EncryptionKey with) {
+        // Get iv from first 16 bytes of data
+        if (!(input.remaining() > ivLength)) {
+            logger.fault("decrypt failed, cannot decode IV data fragment");
+            return -1;
+        }
+        if (output.remaining() < input.remaining()) {
+            logger.fault("decrypt failed, output buffer too small (inputCount={},outputCount={})", input.remaining(), output.remaining());
+            return -1;
+        }
+        final Cipher cipherDecrypt = cipher.get();
+        if (null == cipherDecrypt) {
+            logger.fault("decrypt failed, cipher unavailable");
+            return -1;
+        }
+        final SecretKey key = secretKey(with);
+        final int inputPosition = input.position();
+        final int outputPosition = output.position();
+        final byte[] iv = new byte[ivLength];
+        input.get(iv);
+        // Decrypt data after iv
         try {
-            final Cipher cipherEncrypt = Cipher.getInstance("AES/CBC/PKCS5Padding");
-            cipherEncrypt.init(Cipher.DECRYPT_MODE, key, iv);
-            final byte[] decrypted = cipherEncrypt.doFinal(encryptedData.value);
-            if (null == decrypted) {
-                logger.fault("decrypt failed, cannot decrypted data");
-                return null;
-            }
-            final Data decryptedData = new Data(decrypted);
-            return decryptedData;
+            cipherDecrypt.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+            return cipherDecrypt.doFinal(input, output);
         } catch (Throwable e) {
+            input.position(inputPosition);
+            output.position(outputPosition);
             logger.fault("decrypt failed, exception", e);
-            return null;
+            return -1;
         }
     }
 }
@@ -7,9 +7,6 @@ package io.heraldprox.herald.sensor.data.security;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
 import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
 import io.heraldprox.herald.sensor.data.SensorLogger;
 import io.heraldprox.herald.sensor.datatype.Data;
@@ -27,23 +24,60 @@ public class ConcreteTransportLayerSecurity implements TransportLayerSecurity {
     // Limitation : Encrypted data is < 65536 bytes
     private final Data.DataLengthEncodingOption encodingForEncryptedDataCount = Data.DataLengthEncodingOption.UINT16;
     @NonNull
-    private final KeyExchange keyExchange;
+    private final KeyExchangeKeyPairPool keyExchange;
     private final Integrity integrity = new SHA256();
     @NonNull
     private final Encryption encryption;
-    private final Map<TransportLayerSecuritySessionID,TransportLayerSecuritySession> sessions = new ConcurrentHashMap<>();
+    @NonNull
+    private final TransportLayerSecuritySessionStore sessions;
 
-    public ConcreteTransportLayerSecurity(@NonNull final DiffieHellmanParameters keyExchangeParameters, @NonNull final PseudoRandomFunction random) {
-        this.keyExchange = new DiffieHellmanMerkle(keyExchangeParameters, random);
+    /**
+     * Transport layer security with bounded session store and background key pair generation.
+     * @param keyExchangeParameters Diffie-Hellman parameters.
+     * @param random Source of randomness for key pairs and initialisation vectors.
+     * @param sessions Session store.
+     * @param keyPairPoolSize Number of key pairs generated in advance, zero to generate on demand.
+     */
+    public ConcreteTransportLayerSecurity(@NonNull final DiffieHellmanParameters keyExchangeParameters, @NonNull final PseudoRandomFunction random, @NonNull final TransportLayerSecuritySessionStore sessions, final int keyPairPoolSize) {
+        this.keyExchange = new KeyExchangeKeyPairPool(new DiffieHellmanMerkle(keyExchangeParameters, random), keyPairPoolSize);
         this.encryption = new AES128(random);
+        this.sessions = sessions;
+    }
+
+    /**
+     * Transport layer security with default session store, generating key pairs on demand
+     * to keep the sequence of random numbers deterministic for a given random function.
+     * @param keyExchangeParameters Diffie-Hellman parameters.
+     * @param random Source of randomness for key pairs and initialisation vectors.
+     */
+    public ConcreteTransportLayerSecurity(@NonNull final DiffieHellmanParameters keyExchangeParameters, @NonNull final PseudoRandomFunction random) {
+        this(keyExchangeParameters, random, new TransportLayerSecuritySessionStore(), 0);
     }
 
     public ConcreteTransportLayerSecurity(@NonNull final DiffieHellmanParameters keyExchangeParameters) {
-        this(keyExchangeParameters, new SecureRandomFunction());
+        this(keyExchangeParameters, new SecureRandomFunction(), new TransportLayerSecuritySessionStore(), 2);
     }
 
     public ConcreteTransportLayerSecurity() {
-        this(DiffieHellmanParameters.modpGroup14, new SecureRandomFunction());
+        this(DiffieHellmanParameters.modpGroup14);
+    }
+
+    /**
+     * Session store, for monitoring hit, miss and eviction counts.
+     * @return Session store.
+     */
+    @NonNull
+    public TransportLayerSecuritySessionStore sessionStore() {
+        return sessions;
+    }
+
+    /**
+     * Key pair pool, for monitoring hit and miss counts.
+     * @return Key pair pool.
+     */
+    @NonNull
+    public KeyExchangeKeyPairPool keyPairPool() {
+        return keyExchange;
     }
 
     /**
@@ -54,7 +88,7 @@ public class ConcreteTransportLayerSecurity implements TransportLayerSecurity {
     @Override
     public KeyExchangePublicKey readPublicKey() {
         final TransportLayerSecuritySession bobSession = new TransportLayerSecuritySession(keyExchange, integrity, encryption);
-        sessions.put(bobSession.ownId, bobSession);
+        sessions.put(bobSession);
         return bobSession.ownPublicKey;
     }
 
@@ -107,7 +141,7 @@ public class ConcreteTransportLayerSecurity implements TransportLayerSecurity {
     @Override
     public Data writeEncryptedData(@NonNull final KeyExchangePublicKey peerPublicKey, @NonNull final Data data) {
         final TransportLayerSecuritySession aliceSession = new TransportLayerSecuritySession(keyExchange, integrity, encryption);
-        sessions.put(aliceSession.ownId, aliceSession);
+        sessions.put(aliceSession);
         final TransportLayerSecuritySessionID bobSessionId = aliceSession.establishSession(peerPublicKey);
         if (null == bobSessionId) {
             logger.fault("writeEncryptedData failed, cannot establish session (peerPublicKeyCount={})", peerPublicKey.value.length);
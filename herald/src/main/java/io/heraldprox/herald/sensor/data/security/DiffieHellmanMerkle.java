@@ -9,6 +9,7 @@ import androidx.annotation.Nullable;
 
 import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
 import io.heraldprox.herald.sensor.data.SensorLogger;
+import io.heraldprox.herald.sensor.datatype.MontgomeryModulus;
 import io.heraldprox.herald.sensor.datatype.UIntBig;
 
 /**
@@ -52,7 +53,8 @@ public class DiffieHellmanMerkle implements KeyExchange {
         //noinspection UnnecessaryLocalVariable
         final UIntBig exponent = privateKey;
         final UIntBig modulus = parameters.p;
-        final UIntBig publicKey = base.modPow(exponent, modulus);
+        final MontgomeryModulus.FixedBase generatorTable = parameters.generatorTable();
+        final UIntBig publicKey = (null != generatorTable ? generatorTable.modPow(exponent) : base.modPow(exponent, modulus));
         final KeyExchangePublicKey publicKeyData = new KeyExchangePublicKey(publicKey.data());
         return new KeyExchangeKeyPair(privateKeyData, publicKeyData);
     }
@@ -77,45 +79,82 @@ public class DiffieHellmanMerkle implements KeyExchange {
     // MARK: - Optional in-situ test functions
 
     /**
-     * Run performance test on phone hardware.
+     * Run performance test on phone hardware. Key exchange round trips are measured after
+     * warm up, followed by a comparison of Montgomery and square-and-multiply exponentiation
+     * for the same public key computation.
      * Note : Use release build for performance tests as it is generally faster than debug build
+     * @param samples Number of measured round trips.
      */
     public void performanceTest(final int samples) {
-        long timeKeyPair = 0;
-        long timeSharedKey = 0;
-        long timeRoundtrip = 0;
+        if (samples <= 0) {
+            return;
+        }
+        // Warm up
+        final long[] timings = new long[3];
+        for (int i=0; i<2; i++) {
+            roundTrip(timings);
+        }
+        // Key exchange round trips
+        timings[0] = 0;
+        timings[1] = 0;
+        timings[2] = 0;
+        int completed = 0;
         for (int i=0; i<samples; i++) {
-            // Roundtrip key generation and exchange
-            final long t0 = System.nanoTime();
-            final KeyExchangeKeyPair aliceKeyPair = keyPair();
-            final long t1 = System.nanoTime();
-            final KeyExchangeKeyPair bobKeyPair = keyPair();
-            final long t2 = System.nanoTime();
-            final KeyExchangeSharedKey aliceSharedKey = sharedKey(aliceKeyPair.privateKey, bobKeyPair.publicKey);
-            final long t3 = System.nanoTime();
-            final KeyExchangeSharedKey bobSharedKey = sharedKey(bobKeyPair.privateKey, aliceKeyPair.publicKey);
-            final long t4 = System.nanoTime();
-            if (null == aliceSharedKey) {
-                logger.fault("performanceTest, alice key is null");
-                continue;
-            }
-            if (null == bobSharedKey) {
-                logger.fault("performanceTest, bob key is null");
-                continue;
-            }
-            if (!aliceSharedKey.equals(bobSharedKey)) {
-                logger.fault("performanceTest, shared key mismatch");
-                continue;
+            if (roundTrip(timings)) {
+                completed++;
             }
-            // Update time counters
-            timeKeyPair += (t1-t0);
-            timeKeyPair += (t2-t1);
-            timeSharedKey += (t3-t2);
-            timeSharedKey += (t4-t3);
-            timeRoundtrip += (t4-t0);
+        }
+        if (0 == completed) {
+            return;
         }
         logger.debug("performanceTest (samples={},roundTrip={}ns,keyPair={}ns,sharedKey={}ns)",
-            samples, (timeRoundtrip / samples), (timeKeyPair / (samples * 2)), (timeSharedKey / (samples * 2)));
+            completed, (timings[0] / completed), (timings[1] / (completed * 2)), (timings[2] / (completed * 2)));
+        // Montgomery versus square-and-multiply for public key
+        final UIntBig exponent = new UIntBig(parameters.p.bitLength() - 2, random);
+        final long t0 = System.nanoTime();
+        final UIntBig expected = parameters.g.modPowSquareAndMultiply(exponent, parameters.p);
+        final long t1 = System.nanoTime();
+        final UIntBig actual = parameters.g.modPow(exponent, parameters.p);
+        final long t2 = System.nanoTime();
+        if (!expected.equals(actual)) {
+            logger.fault("performanceTest, modPow mismatch");
+            return;
+        }
+        logger.debug("performanceTest (bitLength={},squareAndMultiply={}ns,montgomery={}ns,speedUp={})",
+            parameters.p.bitLength(), (t1 - t0), (t2 - t1), (t1 - t0) / Math.max(1, t2 - t1));
     }
-}
 
+    /**
+     * Roundtrip key generation and exchange between alice and bob.
+     * @param timings Accumulated time for roundtrip, key pair and shared key in nanoseconds.
+     * @return True if shared keys match.
+     */
+    private boolean roundTrip(@NonNull final long[] timings) {
+        final long t0 = System.nanoTime();
+        final KeyExchangeKeyPair aliceKeyPair = keyPair();
+        final long t1 = System.nanoTime();
+        final KeyExchangeKeyPair bobKeyPair = keyPair();
+        final long t2 = System.nanoTime();
+        final KeyExchangeSharedKey aliceSharedKey = sharedKey(aliceKeyPair.privateKey, bobKeyPair.publicKey);
+        final long t3 = System.nanoTime();
+        final KeyExchangeSharedKey bobSharedKey = sharedKey(bobKeyPair.privateKey, aliceKeyPair.publicKey);
+        final long t4 = System.nanoTime();
+        if (null == aliceSharedKey) {
+            logger.fault("performanceTest, alice key is null");
+            return false;
+        }
+        if (null == bobSharedKey) {
+            logger.fault("performanceTest, bob key is null");
+            return false;
+        }
+        if (!aliceSharedKey.equals(bobSharedKey)) {
+            logger.fault("performanceTest, shared key mismatch");
+            return false;
+        }
+        // Update time counters
+        timings[0] += (t4 - t0);
+        timings[1] += (t2 - t0);
+        timings[2] += (t4 - t2);
+        return true;
+    }
+}
@@ -7,12 +7,22 @@ package io.heraldprox.herald.sensor.data.security;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
+import io.heraldprox.herald.sensor.data.SensorLogger;
+import io.heraldprox.herald.sensor.datatype.MontgomeryModulus;
 import io.heraldprox.herald.sensor.datatype.UIntBig;
 
 /**
  * Common Diffie-Hellman parameters
  */
 public class DiffieHellmanParameters {
+    private final static SensorLogger logger = new ConcreteSensorLogger("Sensor", "Data.Security.DiffieHellmanParameters");
+    // Fixed base tables for generator g, shared by all instances with the same parameters,
+    // keyed on the hex encoding of p and g as the UIntBig values are mutable
+    private final static Map<String, MontgomeryModulus.FixedBase> generatorTables = new HashMap<>();
     @NonNull
     public final UIntBig p;
     @NonNull
@@ -135,4 +145,48 @@ public class DiffieHellmanParameters {
             return null;
         }
     }
+
+    /**
+     * Fixed base precomputation table for generator g, covering private keys of up to
+     * p.bitLength() - 2 bits. The table is built on first use and shared by all parameter
+     * instances with the same p and g, thus key pair generation in all key exchange and
+     * transport layer security instances costs multiplications only.
+     * @return Table for g, or null if p is even or one.
+     */
+    @Nullable
+    public MontgomeryModulus.FixedBase generatorTable() {
+        final String key = p.hexEncodedString() + "," + g.hexEncodedString();
+        synchronized (generatorTables) {
+            final MontgomeryModulus.FixedBase existing = generatorTables.get(key);
+            if (null != existing) {
+                return existing;
+            }
+            final MontgomeryModulus modulus = MontgomeryModulus.getInstance(p);
+            if (null == modulus) {
+                logger.fault("generatorTable failed, modulus is not odd (pBits={})", p.bitLength());
+                return null;
+            }
+            final long t0 = System.currentTimeMillis();
+            final MontgomeryModulus.FixedBase table = modulus.fixedBase(g, p.bitLength() - 2);
+            final long t1 = System.currentTimeMillis();
+            generatorTables.put(key, table);
+            logger.debug("generatorTable (pBits={},windowBits={},bytes={},totalBytes={},elapsed={}ms)",
+                    p.bitLength(), table.windowBits(), table.bytes(), generatorTableBytes(), (t1 - t0));
+            return table;
+        }
+    }
+
+    /**
+     * Memory footprint of all generator tables built so far.
+     * @return Total size of shared tables in bytes.
+     */
+    public static long generatorTableBytes() {
+        synchronized (generatorTables) {
+            long bytes = 0;
+            for (final MontgomeryModulus.FixedBase table : generatorTables.values()) {
+                bytes += table.bytes();
+            }
+            return bytes;
+        }
+    }
 }
@@ -0,0 +1,163 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data.security;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
+import io.heraldprox.herald.sensor.data.SensorLogger;
+
+/**
+ * Key exchange with a pool of ephemeral key pairs that is pre-generated on a background
+ * thread, such that key pair generation (a modular exponentiation) is off the critical
+ * path of establishing a session. Each key pair is handed out at most once. Key pairs are
+ * generated inline when the pool is empty, and a pool capacity of zero disables background
+ * generation altogether, e.g. for deterministic tests where the order of random numbers matters.
+ */
+public class KeyExchangeKeyPairPool implements KeyExchange {
+    private final static SensorLogger logger = new ConcreteSensorLogger("Sensor", "Data.Security.KeyExchangeKeyPairPool");
+    // Single low priority background thread shared by all pools
+    @Nullable
+    private static ExecutorService executorService = null;
+    @NonNull
+    private final KeyExchange keyExchange;
+    private final int capacity;
+    @Nullable
+    private final BlockingQueue<KeyExchangeKeyPair> pool;
+    private final AtomicBoolean refilling = new AtomicBoolean(false);
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+
+    /**
+     * Key pair pool, filled in the background immediately.
+     * @param keyExchange Key exchange algorithm for generating key pairs and shared keys.
+     * @param capacity Number of pre-generated key pairs, zero to disable pool.
+     */
+    public KeyExchangeKeyPairPool(@NonNull final KeyExchange keyExchange, final int capacity) {
+        this.keyExchange = keyExchange;
+        this.capacity = Math.max(0, capacity);
+        this.pool = (this.capacity > 0 ? new ArrayBlockingQueue<KeyExchangeKeyPair>(this.capacity) : null);
+        refill();
+    }
+
+    @NonNull
+    private synchronized static ExecutorService executorService() {
+        if (null == executorService) {
+            executorService = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "KeyExchangeKeyPairPool");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return executorService;
+    }
+
+    // MARK: - KeyExchange
+
+    @NonNull
+    @Override
+    public KeyExchangeKeyPair keyPair() {
+        final KeyExchangeKeyPair pooled = (null == pool ? null : pool.poll());
+        if (null != pooled) {
+            hits.incrementAndGet();
+            refill();
+            return pooled;
+        }
+        misses.incrementAndGet();
+        final KeyExchangeKeyPair generated = keyExchange.keyPair();
+        refill();
+        return generated;
+    }
+
+    @Nullable
+    @Override
+    public KeyExchangeSharedKey sharedKey(@NonNull final KeyExchangePrivateKey own, @NonNull final KeyExchangePublicKey peer) {
+        return keyExchange.sharedKey(own, peer);
+    }
+
+    // MARK: - Pool
+
+    /**
+     * Schedule background generation of key pairs until the pool is full. At most one
+     * refill task per pool is active at any time.
+     */
+    private void refill() {
+        final BlockingQueue<KeyExchangeKeyPair> pool = this.pool;
+        if (null == pool || pool.remainingCapacity() == 0 || !refilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executorService().execute(new Runnable() {
+                @Override
+                public void run() {
+                    boolean failed = false;
+                    do {
+                        try {
+                            while (pool.remainingCapacity() > 0) {
+                                if (!pool.offer(keyExchange.keyPair())) {
+                                    break;
+                                }
+                            }
+                        } catch (Throwable e) {
+                            logger.fault("refill failed, exception", e);
+                            failed = true;
+                        } finally {
+                            refilling.set(false);
+                        }
+                        // Key pairs taken after the last check trigger another round
+                    } while (!failed && pool.remainingCapacity() > 0 && refilling.compareAndSet(false, true));
+                }
+            });
+        } catch (Throwable e) {
+            refilling.set(false);
+            logger.fault("refill failed, cannot schedule key pair generation", e);
+        }
+    }
+
+    /**
+     * Maximum number of pre-generated key pairs.
+     * @return Pool capacity.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Number of pre-generated key pairs currently available.
+     * @return Pool size.
+     */
+    public int size() {
+        return (null == pool ? 0 : pool.size());
+    }
+
+    /**
+     * Number of key pairs served from the pool.
+     * @return Hit count.
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of key pairs generated inline because the pool was empty.
+     * @return Miss count.
+     */
+    public long misses() {
+        return misses.get();
+    }
+}
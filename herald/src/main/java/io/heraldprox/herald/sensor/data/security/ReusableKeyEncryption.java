@@ -0,0 +1,24 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data.security;
+
+import androidx.annotation.NonNull;
+
+import io.heraldprox.herald.sensor.datatype.Data;
+
+/**
+ * Encryption algorithm that can prepare key material once for reuse across many messages,
+ * e.g. the shared key of a transport layer security session.
+ */
+public interface ReusableKeyEncryption extends Encryption {
+
+    /**
+     * Create encryption key with key material prepared for this algorithm.
+     * @param data Key data.
+     * @return Encryption key for use with this algorithm.
+     */
+    @NonNull
+    EncryptionKey key(@NonNull Data data);
+}
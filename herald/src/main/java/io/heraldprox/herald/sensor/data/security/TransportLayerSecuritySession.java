@@ -71,7 +71,12 @@ public class TransportLayerSecuritySession {
         }
         this.peerId = new TransportLayerSecuritySessionID(peerIdValue);
         this.peerPublicKey = peerPublicKey;
-        this.sharedKey = new EncryptionKey(sharedKey);
+        // Derive key material once for all messages in this session, if supported by encryption
+        if (encryption instanceof ReusableKeyEncryption) {
+            this.sharedKey = ((ReusableKeyEncryption) encryption).key(sharedKey);
+        } else {
+            this.sharedKey = new EncryptionKey(sharedKey);
+        }
         return this.peerId;
     }
 
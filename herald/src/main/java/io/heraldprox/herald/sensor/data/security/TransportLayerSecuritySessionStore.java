@@ -0,0 +1,192 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data.security;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
+
+/**
+ * Bounded session store with least recently used replacement and idle timeout eviction.
+ * <br>
+ * Sessions are held in access order, thus the eldest entry is always the session that
+ * has been idle for the longest time. Idle sessions are evicted from the eldest end on
+ * every insertion, and the least recently used session is evicted when the store is full.
+ * Hit, miss and eviction counters are maintained for monitoring.
+ * <br>
+ * All functions are thread safe.
+ */
+public class TransportLayerSecuritySessionStore {
+    private final int capacity;
+    private final long idleTimeoutMillis;
+    @NonNull
+    private final LinkedHashMap<TransportLayerSecuritySessionID, Entry> sessions;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    private final static class Entry {
+        @NonNull
+        private final TransportLayerSecuritySession session;
+        private long lastAccess;
+
+        private Entry(@NonNull final TransportLayerSecuritySession session, final long lastAccess) {
+            this.session = session;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    /**
+     * Session store.
+     * @param capacity Maximum number of sessions, minimum 1.
+     * @param idleTimeout Sessions that have not been accessed for this duration are evicted.
+     */
+    public TransportLayerSecuritySessionStore(final int capacity, @NonNull final TimeInterval idleTimeout) {
+        this.capacity = Math.max(1, capacity);
+        this.idleTimeoutMillis = (idleTimeout.value >= Long.MAX_VALUE / 1000 ? Long.MAX_VALUE : idleTimeout.millis());
+        this.sessions = new LinkedHashMap<TransportLayerSecuritySessionID, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(@NonNull final Map.Entry<TransportLayerSecuritySessionID, Entry> eldest) {
+                if (size() > TransportLayerSecuritySessionStore.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Session store with capacity for 64 sessions and 5 minute idle timeout.
+     */
+    public TransportLayerSecuritySessionStore() {
+        this(64, TimeInterval.minutes(5));
+    }
+
+    /**
+     * Add session, evicting idle sessions and the least recently used session if the store is full.
+     * @param session Session to be stored under its own session ID.
+     */
+    public synchronized void put(@NonNull final TransportLayerSecuritySession session) {
+        final long now = System.currentTimeMillis();
+        evictIdle(now);
+        sessions.put(session.ownId, new Entry(session, now));
+    }
+
+    /**
+     * Get session and mark it as recently used.
+     * @param sessionId Session ID.
+     * @return Session, or null if the session is unknown or has been evicted.
+     */
+    @Nullable
+    public synchronized TransportLayerSecuritySession get(@NonNull final TransportLayerSecuritySessionID sessionId) {
+        final Entry entry = sessions.get(sessionId);
+        if (null == entry) {
+            misses++;
+            return null;
+        }
+        final long now = System.currentTimeMillis();
+        if (now - entry.lastAccess > idleTimeoutMillis) {
+            sessions.remove(sessionId);
+            evictions++;
+            misses++;
+            return null;
+        }
+        entry.lastAccess = now;
+        hits++;
+        return entry.session;
+    }
+
+    /**
+     * Remove session.
+     * @param sessionId Session ID.
+     * @return Removed session, or null if session is unknown.
+     */
+    @Nullable
+    public synchronized TransportLayerSecuritySession remove(@NonNull final TransportLayerSecuritySessionID sessionId) {
+        final Entry entry = sessions.remove(sessionId);
+        return (null == entry ? null : entry.session);
+    }
+
+    /**
+     * Evict all sessions that have been idle for longer than the idle timeout.
+     * @return Number of evicted sessions.
+     */
+    public synchronized int evictIdle() {
+        return evictIdle(System.currentTimeMillis());
+    }
+
+    private int evictIdle(final long now) {
+        int evicted = 0;
+        final Iterator<Entry> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            // Access order means remaining sessions have been accessed more recently
+            if (now - iterator.next().lastAccess <= idleTimeoutMillis) {
+                break;
+            }
+            iterator.remove();
+            evicted++;
+        }
+        evictions += evicted;
+        return evicted;
+    }
+
+    /**
+     * Number of sessions in store.
+     * @return Session count.
+     */
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Maximum number of sessions in store.
+     * @return Capacity.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Number of get() calls that found a session.
+     * @return Hit count.
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Number of get() calls for unknown or evicted sessions.
+     * @return Miss count.
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * Number of sessions evicted due to capacity or idle timeout.
+     * @return Eviction count.
+     */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        return "TransportLayerSecuritySessionStore{" +
+                "size=" + sessions.size() +
+                ", capacity=" + capacity +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                '}';
+    }
+}
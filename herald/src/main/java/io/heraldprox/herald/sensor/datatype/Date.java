@@ -6,19 +6,12 @@ package io.heraldprox.herald.sensor.datatype;
 
 import androidx.annotation.NonNull;
 
-import java.text.SimpleDateFormat;
-import java.util.Locale;
-import java.util.TimeZone;
+import io.heraldprox.herald.sensor.data.TimestampCodec;
 
 /**
  * UTC date time
  */
 public class Date extends java.util.Date {
-    private final static SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.UK);
-    static {
-        dateFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
-    }
-
     public Date() {
         super();
     }
@@ -45,6 +38,6 @@ public class Date extends java.util.Date {
 
     @NonNull
     public String toString() {
-        return dateFormatter.format(this);
+        return TimestampCodec.formatSeconds(getTime());
     }
 }
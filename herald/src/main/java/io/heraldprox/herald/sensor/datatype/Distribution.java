@@ -40,6 +40,22 @@ public class Distribution {
         max = x;
     }
 
+    /**
+     * Initialise distribution with summary statistics, e.g. collected in a single pass.
+     * @param f Sample count.
+     * @param x Mean value.
+     * @param sumOfSquaredDeviations Sum of squared deviations from mean.
+     * @param min Minimum value.
+     * @param max Maximum value.
+     */
+    public Distribution(final long f, final double x, final double sumOfSquaredDeviations, final double min, final double max) {
+        n = f;
+        m1 = x;
+        m2 = sumOfSquaredDeviations;
+        this.min = min;
+        this.max = max;
+    }
+
     /**
      * Add single occurrence of sample value to distribution.
      * @param x Sample value.
@@ -7,19 +7,14 @@ package io.heraldprox.herald.sensor.datatype;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Locale;
-import java.util.TimeZone;
+
+import io.heraldprox.herald.sensor.data.TimestampCodec;
 
 /**
  * Encounter record describing proximity with target at a moment in time
  */
 public class Encounter {
-    private final static SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.UK);
-    static {
-        dateFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
-    }
     @Nullable
     public Date timestamp = null;
     @Nullable
@@ -42,12 +37,11 @@ public class Encounter {
         if (!(fields.length >= 6)) {
             return;
         }
-        try {
-            if (null != fields[0] && !fields[0].isEmpty()) {
-                this.timestamp = dateFormatter.parse(fields[0]);
+        if (null != fields[0] && !fields[0].isEmpty()) {
+            final long millis = TimestampCodec.parse(fields[0]);
+            if (TimestampCodec.INVALID != millis) {
+                this.timestamp = new Date(millis);
             }
-        } catch (Throwable e) {
-            // TODO report issue here
         }
         Calibration calibration = null;
         try {
@@ -75,7 +69,7 @@ public class Encounter {
 
     @NonNull
     public String csvString() {
-        final String f0 = (null == timestamp ? "" : dateFormatter.format(timestamp));
+        final String f0 = (null == timestamp ? "" : TimestampCodec.formatSeconds(timestamp.getTime()));
         //noinspection ConstantConditions
         final String f1 = (null == proximity || null == proximity.value ? "" : proximity.value.toString());
         //noinspection ConstantConditions
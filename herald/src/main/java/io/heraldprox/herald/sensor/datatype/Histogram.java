@@ -7,10 +7,11 @@ package io.heraldprox.herald.sensor.datatype;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import io.heraldprox.herald.sensor.data.HistogramFile;
 import io.heraldprox.herald.sensor.data.TextFile;
 
 /**
- * Accumulate histogram and optionally store data to CSV file at regular intervals.
+ * Accumulate histogram and optionally store data to CSV file or binary histogram file at regular intervals.
  */
 public class Histogram {
     public final int min, max;
@@ -18,6 +19,8 @@ public class Histogram {
     private final long[] histogram;
     @Nullable
     private final TextFile textFile;
+    @Nullable
+    private final HistogramFile histogramFile;
     @NonNull
     private final TimeInterval updatePeriod;
     @NonNull
@@ -39,15 +42,37 @@ public class Histogram {
      * @param textFile
      */
     public Histogram(final int min, final int max, @NonNull final TimeInterval updatePeriod, @Nullable final TextFile textFile) {
+        this(min, max, updatePeriod, textFile, null);
+    }
+
+    /**
+     * Accumulate histogram for value range of binary histogram file. Counts are updated in place
+     * within the memory mapped file and synced to storage at regular intervals.
+     * @param histogramFile Binary histogram file for value range [min, max].
+     * @param updatePeriod Time interval between syncs.
+     */
+    public Histogram(@NonNull final HistogramFile histogramFile, @NonNull final TimeInterval updatePeriod) {
+        this(histogramFile.min, histogramFile.max, updatePeriod, null, histogramFile);
+    }
+
+    private Histogram(final int min, final int max, @NonNull final TimeInterval updatePeriod, @Nullable final TextFile textFile, @Nullable final HistogramFile histogramFile) {
         this.min = min;
         this.max = max;
         this.histogram = new long[max - min + 1];
         this.textFile = textFile;
+        this.histogramFile = histogramFile;
         this.updatePeriod = updatePeriod;
-        clear();
         if (textFile != null) {
             read(textFile);
         }
+        if (histogramFile != null) {
+            histogramFile.read(histogram);
+            for (int i=0; i<histogram.length; i++) {
+                if (histogram[i] > 0) {
+                    accumulate(min + i, histogram[i]);
+                }
+            }
+        }
     }
 
     /**
@@ -106,27 +131,11 @@ public class Histogram {
         // Increment count
         final int index = value - min;
         histogram[index] += increment;
-        samples += increment;
-        // Update mode
-        if (histogram[index] > countMax) {
-            countMax = histogram[index];
-            mode = value;
-        }
-        // Update bounds
-        if (null == minValue || value < minValue) {
-            minValue = value;
-        }
-        if (null == maxValue || value > maxValue) {
-            maxValue = value;
-        }
-        // Write histogram to text file at regular intervals
-        if (textFile != null) {
-            final Date time = new Date();
-            if (lastUpdateTime.secondsSinceUnixEpoch() + updatePeriod.value < time.secondsSinceUnixEpoch()) {
-                write(textFile);
-                lastUpdateTime = time;
-            }
+        accumulate(value, increment);
+        if (histogramFile != null) {
+            histogramFile.add(value, increment);
         }
+        persist();
     }
 
     /**
@@ -148,28 +157,53 @@ public class Histogram {
                 // Increment count
                 final int index = value - min;
                 histogram[index] += increment;
-                samples += increment;
-                // Update mode
-                if (histogram[index] > countMax) {
-                    countMax = histogram[index];
-                    mode = value;
-                }
-                // Update bounds
-                if (null == minValue || value < minValue) {
-                    minValue = value;
-                }
-                if (null == maxValue || value > maxValue) {
-                    maxValue = value;
+                accumulate(value, increment);
+                if (histogramFile != null) {
+                    histogramFile.add(value, increment);
                 }
             }
         }
-        // Write histogram to text file at regular intervals
-        if (textFile != null) {
-            final Date time = new Date();
-            if (lastUpdateTime.secondsSinceUnixEpoch() + updatePeriod.value < time.secondsSinceUnixEpoch()) {
+        persist();
+    }
+
+    /**
+     * Update total count, mode and bounds after count of value has been incremented.
+     * @param value Value.
+     * @param increment Increment.
+     */
+    private void accumulate(final int value, final long increment) {
+        final int index = value - min;
+        samples += increment;
+        // Update mode
+        if (histogram[index] > countMax) {
+            countMax = histogram[index];
+            mode = value;
+        }
+        // Update bounds
+        if (null == minValue || value < minValue) {
+            minValue = value;
+        }
+        if (null == maxValue || value > maxValue) {
+            maxValue = value;
+        }
+    }
+
+    /**
+     * Write histogram to text file, or sync binary histogram file, at regular intervals.
+     */
+    private void persist() {
+        if (null == textFile && null == histogramFile) {
+            return;
+        }
+        final Date time = new Date();
+        if (lastUpdateTime.secondsSinceUnixEpoch() + updatePeriod.value < time.secondsSinceUnixEpoch()) {
+            if (textFile != null) {
                 write(textFile);
-                lastUpdateTime = time;
             }
+            if (histogramFile != null) {
+                histogramFile.sync();
+            }
+            lastUpdateTime = time;
         }
     }
 
@@ -183,6 +217,9 @@ public class Histogram {
         samples = 0;
         countMax = 0;
         mode = null;
+        if (histogramFile != null) {
+            histogramFile.clear();
+        }
     }
 
     /**
@@ -204,18 +241,10 @@ public class Histogram {
             }
             final int index = value - min;
             histogram[index] = count;
-            samples += count;
-            if (histogram[index] > countMax) {
-                countMax = histogram[index];
-                mode = value;
-            }
-            // Update bounds
-            if (null == minValue || value < minValue) {
-                minValue = value;
-            }
-            if (null == maxValue || value > maxValue) {
-                maxValue = value;
-            }
+            accumulate(value, count);
+        }
+        if (histogramFile != null) {
+            histogramFile.write(histogram);
         }
     }
 
@@ -0,0 +1,472 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.datatype;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Odd modulus prepared for fast modular exponentiation using Montgomery multiplication.
+ * <br>
+ * Values are held as 32-bit limbs (LSB ... MSB) in int arrays and multiplied with long
+ * accumulators, such that each modular multiplication is a single interleaved multiply
+ * and reduce pass (CIOS) without trial division. Exponentiation uses a sliding window
+ * over the exponent bits, and a fixed base can be precomputed to replace all squarings
+ * with table lookups for repeated exponentiation of the same base, e.g. the generator
+ * of a Diffie-Hellman group.
+ * <br>
+ * Instances are immutable and thread safe.
+ */
+public class MontgomeryModulus {
+    private final static long mask = 0xFFFFFFFFL;
+    // Exponent bit length thresholds for increasing sliding window size
+    private final static int[] windowThresholds = new int[]{7, 25, 81, 241, 673, 1793};
+    // Number of moduli with cached instances
+    private final static int instanceCacheSize = 8;
+    // Instances for recently used moduli, least recently used first, keyed on private copies of the moduli
+    private final static Map<UIntBig, MontgomeryModulus> instances = new LinkedHashMap<UIntBig, MontgomeryModulus>(instanceCacheSize, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(@NonNull final Map.Entry<UIntBig, MontgomeryModulus> eldest) {
+            return size() > instanceCacheSize;
+        }
+    };
+    @NonNull
+    private final UIntBig modulus;
+    // Modulus limbs (LSB ... MSB)
+    @NonNull
+    private final int[] n;
+    // Number of limbs, R = 2 ^ (32 * k)
+    private final int k;
+    // -n^-1 mod 2^32
+    private final int nPrime;
+    // R^2 mod n, for conversion into Montgomery form
+    @NonNull
+    private final int[] rSquared;
+    // R mod n, i.e. one in Montgomery form
+    @NonNull
+    private final int[] one;
+
+    private MontgomeryModulus(@NonNull final UIntBig modulus) {
+        this.modulus = modulus;
+        this.n = limbs(modulus.magnitude());
+        this.k = n.length;
+        // Newton iteration for n[0]^-1 mod 2^32, each step doubles the correct bits
+        int inverse = n[0];
+        for (int i = 0; i < 5; i++) {
+            inverse *= 2 - n[0] * inverse;
+        }
+        this.nPrime = -inverse;
+        // R mod n and R^2 mod n by modular doubling from 1
+        final int[] value = new int[k];
+        value[0] = 1;
+        for (int i = 0; i < 32 * k; i++) {
+            doubleMod(value);
+        }
+        this.one = value.clone();
+        for (int i = 0; i < 32 * k; i++) {
+            doubleMod(value);
+        }
+        this.rSquared = value;
+    }
+
+    /**
+     * Prepare modulus for Montgomery multiplication. Instances are cached for the most
+     * recently used moduli, as deriving R mod n and R^2 mod n costs 64 * k modular
+     * doublings, which is significant for repeated exponentiation with the same modulus.
+     * @param modulus Odd modulus greater than one.
+     * @return Montgomery modulus, or null if modulus is even or one.
+     */
+    @Nullable
+    public static MontgomeryModulus getInstance(@NonNull final UIntBig modulus) {
+        if (!modulus.isOdd() || modulus.isOne()) {
+            return null;
+        }
+        synchronized (instances) {
+            final MontgomeryModulus cached = instances.get(modulus);
+            if (null != cached) {
+                return cached;
+            }
+        }
+        // Copy modulus to guard cache against modification of the caller's instance
+        final UIntBig copy = new UIntBig(modulus.magnitude().clone());
+        final MontgomeryModulus montgomeryModulus = new MontgomeryModulus(copy);
+        synchronized (instances) {
+            instances.put(copy, montgomeryModulus);
+        }
+        return montgomeryModulus;
+    }
+
+    /**
+     * Modulus.
+     * @return Copy of modulus as unlimited value.
+     */
+    @NonNull
+    public UIntBig modulus() {
+        return new UIntBig(modulus.magnitude().clone());
+    }
+
+    /**
+     * Modular exponentiation r = (base ^ exponent) % modulus using sliding window.
+     * @param base Base value.
+     * @param exponent Exponent value.
+     * @return r, the result
+     */
+    @NonNull
+    public UIntBig modPow(@NonNull final UIntBig base, @NonNull final UIntBig exponent) {
+        final int[] scratch = new int[k + 2];
+        final int[] baseM = new int[k];
+        multiply(reduced(base), rSquared, baseM, scratch);
+        final int[] result = modPow(baseM, limbs(exponent.magnitude()), exponent.bitLength(), scratch);
+        return value(fromMontgomery(result, scratch));
+    }
+
+    /**
+     * Precompute table for repeated exponentiation of a fixed base.
+     * @param base Fixed base, e.g. generator g.
+     * @param exponentBitLength Maximum bit length of exponents.
+     * @return Precomputed table for base.
+     */
+    @NonNull
+    public FixedBase fixedBase(@NonNull final UIntBig base, final int exponentBitLength) {
+        return new FixedBase(base, Math.max(1, exponentBitLength));
+    }
+
+    /**
+     * Fixed base exponentiation using precomputed powers T[i] = base ^ (2 ^ (w * i)), such
+     * that base ^ exponent = T[0] ^ e[0] * T[1] ^ e[1] * ... for the w-bit digits e[i] of
+     * the exponent. The product is evaluated by accumulating the powers grouped by digit
+     * value (Brickell-Gordon-McCurley-Wilson), which requires about bitLength / w + 2 ^ w
+     * multiplications and no squarings.
+     * <br>
+     * Instances are immutable and thread safe.
+     */
+    public final class FixedBase {
+        @NonNull
+        private final UIntBig base;
+        private final int exponentBitLength;
+        private final int windowBits;
+        private final int digits;
+        // Powers T[i] in Montgomery form, stored as consecutive k limb values
+        @NonNull
+        private final int[] powers;
+
+        private FixedBase(@NonNull final UIntBig base, final int exponentBitLength) {
+            // Copy base to keep instance immutable if the caller's instance is modified
+            this.base = new UIntBig(base.magnitude().clone());
+            this.exponentBitLength = exponentBitLength;
+            // Window size that minimises multiplications per exponentiation
+            int w = 1;
+            while (w < 16 && cost(w + 1, exponentBitLength) < cost(w, exponentBitLength)) {
+                w++;
+            }
+            this.windowBits = w;
+            this.digits = (exponentBitLength + w - 1) / w;
+            this.powers = new int[digits * k];
+            final int[] scratch = new int[k + 2];
+            final int[] value = new int[k];
+            multiply(reduced(base), rSquared, value, scratch);
+            System.arraycopy(value, 0, powers, 0, k);
+            for (int i = 1; i < digits; i++) {
+                for (int j = 0; j < w; j++) {
+                    multiply(value, value, value, scratch);
+                }
+                System.arraycopy(value, 0, powers, i * k, k);
+            }
+        }
+
+        private int cost(final int w, final int bitLength) {
+            return (bitLength + w - 1) / w + (1 << w);
+        }
+
+        /**
+         * Fixed base.
+         * @return Copy of base value.
+         */
+        @NonNull
+        public UIntBig base() {
+            return new UIntBig(base.magnitude().clone());
+        }
+
+        /**
+         * Maximum exponent bit length covered by table.
+         * @return Bit length.
+         */
+        public int exponentBitLength() {
+            return exponentBitLength;
+        }
+
+        /**
+         * Window size in bits.
+         * @return Window size.
+         */
+        public int windowBits() {
+            return windowBits;
+        }
+
+        /**
+         * Memory footprint of precomputed table.
+         * @return Size in bytes.
+         */
+        public long bytes() {
+            return 4L * powers.length;
+        }
+
+        /**
+         * Modular exponentiation r = (base ^ exponent) % modulus. Exponents exceeding the
+         * table bit length fall back to sliding window exponentiation.
+         * @param exponent Exponent value.
+         * @return r, the result
+         */
+        @NonNull
+        public UIntBig modPow(@NonNull final UIntBig exponent) {
+            final int bitLength = exponent.bitLength();
+            if (bitLength > exponentBitLength) {
+                return MontgomeryModulus.this.modPow(base, exponent);
+            }
+            final int[] e = limbs(exponent.magnitude());
+            final int[] scratch = new int[k + 2];
+            final int[] a = one.clone();
+            final int[] b = one.clone();
+            final int[] t = new int[k];
+            final int[] digit = new int[digits];
+            for (int i = 0; i < digits; i++) {
+                digit[i] = bits(e, i * windowBits, windowBits);
+            }
+            boolean accumulated = false;
+            for (int d = (1 << windowBits) - 1; d > 0; d--) {
+                for (int i = 0; i < digits; i++) {
+                    if (digit[i] == d) {
+                        System.arraycopy(powers, i * k, t, 0, k);
+                        multiply(b, t, b, scratch);
+                        accumulated = true;
+                    }
+                }
+                if (accumulated) {
+                    multiply(a, b, a, scratch);
+                }
+            }
+            return value(fromMontgomery(a, scratch));
+        }
+    }
+
+    // MARK: - Montgomery arithmetic
+
+    /**
+     * Sliding window exponentiation in Montgomery form.
+     * @param baseM Base in Montgomery form.
+     * @param e Exponent limbs.
+     * @param bitLength Exponent bit length.
+     * @param scratch Scratch buffer of k + 2 limbs.
+     * @return Result in Montgomery form.
+     */
+    @NonNull
+    private int[] modPow(@NonNull final int[] baseM, @NonNull final int[] e, final int bitLength, @NonNull final int[] scratch) {
+        final int[] result = one.clone();
+        if (bitLength == 0) {
+            return result;
+        }
+        int w = 1;
+        while (w <= windowThresholds.length && bitLength > windowThresholds[w - 1]) {
+            w++;
+        }
+        // Odd powers base^1, base^3, ..., base^(2^w - 1)
+        final int[][] table = new int[1 << (w - 1)][];
+        table[0] = baseM;
+        if (table.length > 1) {
+            final int[] square = new int[k];
+            multiply(baseM, baseM, square, scratch);
+            for (int i = 1; i < table.length; i++) {
+                table[i] = new int[k];
+                multiply(table[i - 1], square, table[i], scratch);
+            }
+        }
+        boolean started = false;
+        int i = bitLength - 1;
+        while (i >= 0) {
+            if (bit(e, i) == 0) {
+                multiply(result, result, result, scratch);
+                i--;
+                continue;
+            }
+            // Longest window [l, i] ending in a set bit
+            int l = Math.max(i - w + 1, 0);
+            while (bit(e, l) == 0) {
+                l++;
+            }
+            final int window = bits(e, l, i - l + 1);
+            if (started) {
+                for (int j = l; j <= i; j++) {
+                    multiply(result, result, result, scratch);
+                }
+                multiply(result, table[window >>> 1], result, scratch);
+            } else {
+                System.arraycopy(table[window >>> 1], 0, result, 0, k);
+                started = true;
+            }
+            i = l - 1;
+        }
+        return result;
+    }
+
+    /**
+     * Montgomery multiplication out = a * b * R^-1 mod n, using coarsely integrated operand
+     * scanning. Requires a * b < n * R, which holds for a < R and b < n. The output may
+     * be the same array as either input.
+     * @param a Multiplicand of k limbs.
+     * @param b Multiplier of k limbs.
+     * @param out Output of k limbs.
+     * @param t Scratch buffer of k + 2 limbs.
+     */
+    private void multiply(@NonNull final int[] a, @NonNull final int[] b, @NonNull final int[] out, @NonNull final int[] t) {
+        for (int i = 0; i < t.length; i++) {
+            t[i] = 0;
+        }
+        final long n0 = n[0] & mask;
+        for (int i = 0; i < k; i++) {
+            // t = t + a * b[i]
+            final long bi = b[i] & mask;
+            long carry = 0;
+            for (int j = 0; j < k; j++) {
+                final long s = (t[j] & mask) + (a[j] & mask) * bi + carry;
+                t[j] = (int) s;
+                carry = s >>> 32;
+            }
+            long s = (t[k] & mask) + carry;
+            t[k] = (int) s;
+            t[k + 1] = (int) (s >>> 32);
+            // t = (t + m * n) / 2^32
+            final long m = (t[0] * nPrime) & mask;
+            s = (t[0] & mask) + m * n0;
+            carry = s >>> 32;
+            for (int j = 1; j < k; j++) {
+                s = (t[j] & mask) + m * (n[j] & mask) + carry;
+                t[j - 1] = (int) s;
+                carry = s >>> 32;
+            }
+            s = (t[k] & mask) + carry;
+            t[k - 1] = (int) s;
+            t[k] = t[k + 1] + (int) (s >>> 32);
+        }
+        // Conditional final subtraction
+        if (t[k] != 0 || compare(t, n) >= 0) {
+            long borrow = 0;
+            for (int j = 0; j < k; j++) {
+                final long s = (t[j] & mask) - (n[j] & mask) - borrow;
+                t[j] = (int) s;
+                borrow = (s >>> 63);
+            }
+        }
+        System.arraycopy(t, 0, out, 0, k);
+    }
+
+    /**
+     * Convert from Montgomery form, i.e. multiply by one.
+     */
+    @NonNull
+    private int[] fromMontgomery(@NonNull final int[] a, @NonNull final int[] scratch) {
+        final int[] unit = new int[k];
+        unit[0] = 1;
+        final int[] result = new int[k];
+        multiply(a, unit, result, scratch);
+        return result;
+    }
+
+    /**
+     * Replace value with 2 * value mod n, for value < n.
+     */
+    private void doubleMod(@NonNull final int[] value) {
+        int carry = 0;
+        for (int i = 0; i < k; i++) {
+            final int limb = value[i];
+            value[i] = (limb << 1) | carry;
+            carry = limb >>> 31;
+        }
+        if (carry != 0 || compare(value, n) >= 0) {
+            long borrow = 0;
+            for (int i = 0; i < k; i++) {
+                final long s = (value[i] & mask) - (n[i] & mask) - borrow;
+                value[i] = (int) s;
+                borrow = (s >>> 63);
+            }
+        }
+    }
+
+    /**
+     * Compare first k limbs of a with n.
+     */
+    private int compare(@NonNull final int[] a, @NonNull final int[] b) {
+        for (int i = k; i-- > 0;) {
+            if (a[i] != b[i]) {
+                return ((a[i] & mask) < (b[i] & mask) ? -1 : 1);
+            }
+        }
+        return 0;
+    }
+
+    // MARK: - Conversion
+
+    /**
+     * Value as k limbs, reduced modulo n if value does not fit in k limbs.
+     */
+    @NonNull
+    private int[] reduced(@NonNull final UIntBig value) {
+        if ((value.magnitude().length + 1) / 2 <= k) {
+            final int[] limbs = new int[k];
+            final int[] source = limbs(value.magnitude());
+            System.arraycopy(source, 0, limbs, 0, source.length);
+            return limbs;
+        }
+        final UIntBig copy = new UIntBig(value.magnitude().clone());
+        copy.mod(modulus);
+        final int[] limbs = new int[k];
+        final int[] source = limbs(copy.magnitude());
+        System.arraycopy(source, 0, limbs, 0, source.length);
+        return limbs;
+    }
+
+    /**
+     * Convert 16-bit magnitude to 32-bit limbs.
+     */
+    @NonNull
+    private static int[] limbs(@NonNull final short[] magnitude) {
+        final int[] limbs = new int[(magnitude.length + 1) / 2];
+        for (int i = 0; i < magnitude.length; i++) {
+            limbs[i >>> 1] |= (magnitude[i] & 0xFFFF) << ((i & 1) << 4);
+        }
+        return limbs;
+    }
+
+    /**
+     * Convert 32-bit limbs to unlimited value.
+     */
+    @NonNull
+    private static UIntBig value(@NonNull final int[] limbs) {
+        final short[] magnitude = new short[limbs.length * 2];
+        for (int i = 0; i < limbs.length; i++) {
+            magnitude[2 * i] = (short) limbs[i];
+            magnitude[2 * i + 1] = (short) (limbs[i] >>> 16);
+        }
+        return new UIntBig(UIntBig.trimZeroMSBs(magnitude));
+    }
+
+    private static int bit(@NonNull final int[] e, final int index) {
+        return (e[index >>> 5] >>> (index & 31)) & 1;
+    }
+
+    /**
+     * Get count bits from index as unsigned value, where count <= 16.
+     */
+    private static int bits(@NonNull final int[] e, final int index, final int count) {
+        int value = 0;
+        for (int i = count; i-- > 0;) {
+            final int position = index + i;
+            value = (value << 1) | ((position >>> 5) < e.length ? bit(e, position) : 0);
+        }
+        return value;
+    }
+}
@@ -7,8 +7,6 @@ package io.heraldprox.herald.sensor.datatype;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
-import io.heraldprox.herald.sensor.data.SensorLogger;
 import io.heraldprox.herald.sensor.data.security.PseudoRandomFunction;
 import io.heraldprox.herald.sensor.datatype.random.RandomSource;
 
@@ -18,7 +16,6 @@ import java.util.Arrays;
  * Mutable unsigned integer of unlimited size (for 32-bit architectures)
  */
 public class UIntBig {
-    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "Datatype.UIntBig");
     // Unsigned value (LSB ... MSB)
     @NonNull
     private short[] magnitude;
@@ -215,18 +212,34 @@ public class UIntBig {
 
     /**
      * Modular exponentiation r = (a ^ b) % c where a=self, b=exponent, c=modulus.
-     * Performance test shows software implementation is acceptably slower than native hardware
-     * <ul>
-     * <li>Test samples = 399,626,333</li>
-     * <li>Native 64-bit hardware = 416ns/call</li>
-     * <li>Software 32-bit implementation = 3613ns/call</li>
-     * </ul>
+     * Odd moduli (e.g. all Diffie-Hellman groups) use Montgomery multiplication with 32-bit
+     * limbs and sliding window exponentiation, see {@link MontgomeryModulus}. Even moduli
+     * fall back to square-and-multiply with 16-bit limbs.
      * @param exponent (b)
      * @param modulus (c)
      * @return r, the result
      */
     @NonNull
     public UIntBig modPow(@NonNull final UIntBig exponent, @NonNull final UIntBig modulus) {
+        if (modulus.isZero()) {
+            return new UIntBig();
+        }
+        final MontgomeryModulus montgomeryModulus = MontgomeryModulus.getInstance(modulus);
+        if (null != montgomeryModulus) {
+            return montgomeryModulus.modPow(this, exponent);
+        }
+        return modPowSquareAndMultiply(exponent, modulus);
+    }
+
+    /**
+     * Modular exponentiation r = (a ^ b) % c using square-and-multiply, for any modulus.
+     * This is the reference implementation for testing and benchmarking modPow.
+     * @param exponent (b)
+     * @param modulus (c)
+     * @return r, the result
+     */
+    @NonNull
+    public UIntBig modPowSquareAndMultiply(@NonNull final UIntBig exponent, @NonNull final UIntBig modulus) {
         if (modulus.isZero()) {
             return new UIntBig();
         }
@@ -239,8 +252,6 @@ public class UIntBig {
         final UIntBig base = new UIntBig(this);
         base.mod(modulus);
         final UIntBig exp = new UIntBig(exponent);
-        long n = 0;
-        final long t0 = System.nanoTime();
         while (!exp.isZero()) {
             if (exp.isOdd()) {
                 result.times(base);
@@ -249,12 +260,7 @@ public class UIntBig {
             exp.rightShiftByOne();
             base.times(base);
             base.mod(modulus);
-            final long t1 = System.nanoTime();
-            n++;
-            logger.debug("modPow progress (bitLength={},elapsed={}ms,average={}}ns/cycle)", n, (t1-t0)/1000000, (t1-t0)/n);
         }
-        final long t1 = System.nanoTime();
-        logger.debug("modPow total (bitLength={},elapsed={}ms,average={}}ns/cycle)", n, (t1-t0)/1000000, (t1-t0)/n);
         return result;
     }
 
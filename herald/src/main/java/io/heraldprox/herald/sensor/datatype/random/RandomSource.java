@@ -137,6 +137,23 @@ public abstract class RandomSource {
         return data.int64(0).value;
     }
 
+    /**
+     * Reusable SHA-256 digest per thread, as MessageDigest.getInstance() is expensive
+     * and MessageDigest is not thread safe.
+     */
+    private final static ThreadLocal<MessageDigest> sha256 = new ThreadLocal<MessageDigest>() {
+        @Nullable
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (Throwable e) {
+                logger.fault("SHA-256 unavailable, emulating with non-cryptographic hash function", e);
+                return null;
+            }
+        }
+    };
+
     /**
      * Cryptographic hash function : SHA256
      * Reverts to non-cryptographic Java hash function in the unlikely event that
@@ -145,21 +162,39 @@ public abstract class RandomSource {
      */
     @NonNull
     protected static Data hash(@NonNull final Data data) {
-        try {
-            final MessageDigest sha = MessageDigest.getInstance("SHA-256");
-            final byte[] hash = sha.digest(data.value);
-            return new Data(hash);
-        } catch (Throwable e) {
-            // This should never happen as every implementation of Java should
-            // support MD5, SHA1, and SHA256 as a minimum.
-            logger.fault("SHA-256 unavailable, emulating with non-cryptographic hash function", e);
-            // Revert to build-in hash function to emulate 256-bit (32-byte) hash
-            final Data hash = new Data();
-            hash.append(new Int32(Arrays.hashCode(data.value)));
-            while (hash.value.length < 32) {
-                hash.append(new Int32(Arrays.hashCode(hash.value)));
+        final byte[] hash = new byte[32];
+        hash(data.value, 0, data.value.length, hash, 0);
+        return new Data(hash);
+    }
+
+    /**
+     * Cryptographic hash function : SHA256, allocation free using reusable digest.
+     * Reverts to non-cryptographic Java hash function in the unlikely event that
+     * SHA256 is not supported on the system.
+     *
+     * @param input Input buffer.
+     * @param inputOffset Offset of data in input buffer.
+     * @param inputLength Length of data in input buffer.
+     * @param output Output buffer, requires 32 bytes from outputOffset.
+     * @param outputOffset Offset of hash in output buffer.
+     */
+    protected static void hash(@NonNull final byte[] input, final int inputOffset, final int inputLength, @NonNull final byte[] output, final int outputOffset) {
+        final MessageDigest sha = sha256.get();
+        if (null != sha) {
+            try {
+                sha.update(input, inputOffset, inputLength);
+                sha.digest(output, outputOffset, 32);
+                return;
+            } catch (Throwable e) {
+                sha.reset();
+                logger.fault("SHA-256 failed, emulating with non-cryptographic hash function", e);
             }
-            return hash;
         }
+        final Data hash = new Data();
+        hash.append(new Int32(Arrays.hashCode(Arrays.copyOfRange(input, inputOffset, inputOffset + inputLength))));
+        while (hash.value.length < 32) {
+            hash.append(new Int32(Arrays.hashCode(hash.value)));
+        }
+        System.arraycopy(hash.value, 0, output, outputOffset, 32);
     }
 }
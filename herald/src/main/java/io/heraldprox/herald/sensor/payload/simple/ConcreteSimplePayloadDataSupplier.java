@@ -36,11 +36,14 @@ public class ConcreteSimplePayloadDataSupplier extends DefaultPayloadDataSupplie
     @Nullable
     private MatchingKey matchingKey = null;
     @Nullable
-    private Integer period = null;
+    private HashChain.Cursor contactKeySeeds = null;
     @Nullable
-    private ContactKey contactKey = null;
+    private Integer period = null;
     @Nullable
     private ContactIdentifier contactIdentifier = null;
+    // Scratch buffers for deriving contact identifiers without intermediate keys
+    private final byte[] contactKeySeed = new byte[F.hashLength];
+    private final byte[] scratch = new byte[F.hashLength];
 
     public ConcreteSimplePayloadDataSupplier(@NonNull final UInt8 protocolAndVersion, @NonNull final UInt16 countryCode, @NonNull final UInt16 stateCode, @NonNull final SecretKey secretKey) {
         // Generate common header
@@ -89,7 +92,7 @@ public class ConcreteSimplePayloadDataSupplier extends DefaultPayloadDataSupplie
             this.matchingKey = matchingKey(time);
             this.day = day;
             // Reset contact key on matching key change
-            this.contactKey = null;
+            this.contactKeySeeds = null;
             this.period = null;
         }
 
@@ -100,14 +103,25 @@ public class ConcreteSimplePayloadDataSupplier extends DefaultPayloadDataSupplie
                 logger.fault("Contact identifier out of range, failed to generate matching key (time={},day={})", time, day);
                 return null;
             }
-            final ContactKeySeed contactKeySeed = K.contactKeySeed(matchingKey, period);
-            if (null == contactKeySeed) {
+            // Walk forward along the contact key seed chain for the day, each period
+            // costs O(1) hashes amortised rather than up to 240 hashes
+            if (null == this.contactKeySeeds) {
+                final HashChain contactKeySeedChain = K.contactKeySeedChain(matchingKey);
+                this.contactKeySeeds = (null == contactKeySeedChain ? null : contactKeySeedChain.cursor(period));
+            }
+            final HashChain.Cursor contactKeySeeds = this.contactKeySeeds;
+            if (null == contactKeySeeds || !contactKeySeeds.seek(period)) {
                 logger.fault("Contact identifier out of range, failed to generate contact key seed (time={},day={})", time, day);
                 return null;
             }
-            this.contactKey = K.contactKey(contactKeySeed);
+            contactKeySeeds.value(contactKeySeed, 0);
+            final byte[] contactIdentifier = new byte[K.contactIdentifierLength];
+            if (!K.contactIdentifier(contactKeySeed, 0, scratch, contactIdentifier, 0)) {
+                logger.fault("Contact identifier out of range, failed to generate contact key (time={},day={})", time, day);
+                return null;
+            }
             this.period = period;
-            this.contactIdentifier = K.contactIdentifier(this.contactKey);
+            this.contactIdentifier = new ContactIdentifier(contactIdentifier);
         }
 
         // Defensive check
@@ -17,6 +17,10 @@ public class ContactIdentifier extends Data {
         super(value);
     }
 
+    public ContactIdentifier(@NonNull final byte[] value) {
+        super(value);
+    }
+
     public ContactIdentifier(final byte repeating, final int count) {
         super(repeating, count);
     }
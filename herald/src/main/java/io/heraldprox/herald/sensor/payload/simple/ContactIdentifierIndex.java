@@ -0,0 +1,352 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.payload.simple;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
+import io.heraldprox.herald.sensor.data.SensorLogger;
+import io.heraldprox.herald.sensor.datatype.Encounter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Compact index of all contact identifiers derived from a batch of matching keys, for
+ * on-device or server-side matching of encounters.
+ * <br>
+ * Matching keys are expanded in parallel on a fork-join pool, where each worker reuses
+ * its thread local digest and scratch buffers to derive all 241 contact identifiers per
+ * matching key without allocating intermediate keys. Contact identifiers are written straight into an
+ * open addressing hash table of 16-byte keys, mapping each identifier to the index of
+ * its matching key in the batch and its period of the day. Encounters can then be
+ * matched in a single pass. Duplicate matching keys are expanded once, and matching keys
+ * that fail to expand are logged and excluded from the index.
+ * <br>
+ * The number of matching keys per index is bounded by a retention window of 14 days
+ * with up to 512 matching keys per day, and by a quarter of the maximum heap size,
+ * thus an oversized batch fails fast rather than exhausting memory.
+ */
+public class ContactIdentifierIndex {
+    private final static SensorLogger logger = new ConcreteSensorLogger("Sensor", "Payload.Simple.ContactIdentifierIndex");
+    // Contact identifier length in bytes
+    private final static int identifierLength = K.contactIdentifierLength;
+    // Offset of contact identifier in simple payload after protocol, country and state
+    private final static int identifierOffset = ConcreteSimplePayloadDataSupplier.payloadLength - identifierLength;
+    // Periods 0 to 240 inclusive per matching key
+    private final static int periods = 241;
+    // Number of matching keys expanded sequentially by each fork-join task
+    private final static int batchSize = 16;
+    // Retention window of matching keys in days
+    private final static int retentionDays = 14;
+    // Maximum matching keys published per day
+    private final static int maxMatchingKeysPerDay = 512;
+    // Maximum matching keys per index, such that the key table stays within 2^22 slots (84MB)
+    private final static int maxMatchingKeys = retentionDays * maxMatchingKeysPerDay;
+    // Bytes per slot for contact identifier and entry
+    private final static int slotSize = identifierLength + 4;
+    private final static int empty = -1;
+    private final int mask;
+    @NonNull
+    private final byte[] keys;
+    // Entry = (matching key index << 8) | period, or -1 if slot is empty
+    @NonNull
+    private final AtomicIntegerArray entries;
+    // Number of matching keys expanded into the index
+    @NonNull
+    private final AtomicInteger matchingKeys = new AtomicInteger(0);
+
+    /**
+     * Index with capacity for all contact identifiers of a number of matching keys.
+     * @param matchingKeys Number of matching keys.
+     */
+    private ContactIdentifierIndex(final int matchingKeys) {
+        final int capacity = capacity(matchingKeys);
+        this.mask = capacity - 1;
+        this.keys = new byte[capacity * identifierLength];
+        this.entries = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            entries.set(i, empty);
+        }
+    }
+
+    /**
+     * Match result for an encounter.
+     */
+    public final static class Match {
+        @NonNull
+        public final Encounter encounter;
+        /** Index of matching key in the batch used to build the index. */
+        public final int matchingKey;
+        /** Period of the day for the contact identifier, in range [0, 240]. */
+        public final int period;
+
+        public Match(@NonNull final Encounter encounter, final int matchingKey, final int period) {
+            this.encounter = encounter;
+            this.matchingKey = matchingKey;
+            this.period = period;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Match{" +
+                    "encounter=" + encounter.csvString() +
+                    ", matchingKey=" + matchingKey +
+                    ", period=" + period +
+                    '}';
+        }
+    }
+
+    /**
+     * Expand matching keys into contact identifier index on a fork-join pool that is
+     * created for this expansion and shut down on completion.
+     * @param matchingKeys Matching keys, the index of each key in the list is reported on match.
+     * @return Index of all contact identifiers for all matching keys, or null if there are too many keys.
+     */
+    @Nullable
+    public static ContactIdentifierIndex expand(@NonNull final List<MatchingKey> matchingKeys) {
+        // ForkJoinPool.commonPool() requires API 24
+        final ForkJoinPool pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors()));
+        try {
+            return expand(matchingKeys, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Expand matching keys into contact identifier index on a fork-join pool.
+     * @param matchingKeys Matching keys, the index of the first occurrence of each key in
+     *                     the list is reported on match.
+     * @param pool Fork-join pool for parallel expansion, owned by the caller.
+     * @return Index of all contact identifiers for all matching keys, or null if there are too many keys.
+     */
+    @Nullable
+    public static ContactIdentifierIndex expand(@NonNull final List<MatchingKey> matchingKeys, @NonNull final ForkJoinPool pool) {
+        // Unique matching keys and the position of their first occurrence in the list
+        final Set<MatchingKey> unique = new HashSet<>(matchingKeys.size() * 2);
+        final List<MatchingKey> keyList = new ArrayList<>(matchingKeys.size());
+        final List<Integer> positionList = new ArrayList<>(matchingKeys.size());
+        for (int i = 0; i < matchingKeys.size(); i++) {
+            final MatchingKey matchingKey = matchingKeys.get(i);
+            if (unique.add(matchingKey)) {
+                keyList.add(matchingKey);
+                positionList.add(i);
+            }
+        }
+        if (keyList.size() > maxMatchingKeys) {
+            logger.fault("expand failed, too many matching keys (matchingKeys={},max={})", keyList.size(), maxMatchingKeys);
+            return null;
+        }
+        final long requiredMemory = (long) capacity(keyList.size()) * slotSize;
+        final long availableMemory = Runtime.getRuntime().maxMemory() / 4;
+        if (requiredMemory > availableMemory) {
+            logger.fault("expand failed, insufficient memory (matchingKeys={},required={},available={})", keyList.size(), requiredMemory, availableMemory);
+            return null;
+        }
+        final MatchingKey[] keys = keyList.toArray(new MatchingKey[0]);
+        final int[] positions = new int[keys.length];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = positionList.get(i);
+        }
+        final ContactIdentifierIndex index = new ContactIdentifierIndex(keys.length);
+        final long t0 = System.currentTimeMillis();
+        pool.invoke(new ExpansionTask(index, keys, positions, 0, keys.length));
+        final long t1 = System.currentTimeMillis();
+        logger.debug("expand (matchingKeys={},unique={},expanded={},contactIdentifiers={},elapsed={}ms)", matchingKeys.size(), keys.length, index.matchingKeys(), index.size(), t1 - t0);
+        return index;
+    }
+
+    /**
+     * Power of two capacity at load factor <= 0.5 for short probe sequences.
+     * @param matchingKeys Number of matching keys.
+     * @return Number of slots.
+     */
+    private static int capacity(final int matchingKeys) {
+        int capacity = 16;
+        while (capacity < matchingKeys * periods * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Number of unique matching keys that were expanded into the index, excluding
+     * matching keys that failed to expand.
+     * @return Matching key count.
+     */
+    public int matchingKeys() {
+        return matchingKeys.get();
+    }
+
+    /**
+     * Number of contact identifiers in index.
+     * @return Contact identifier count.
+     */
+    public int size() {
+        return matchingKeys.get() * periods;
+    }
+
+    /**
+     * Look up contact identifier. Contact identifiers of matching keys that failed to
+     * expand are not in the index.
+     * @param identifier Contact identifier.
+     * @return Packed entry (matching key index and period), or -1 if not found.
+     */
+    public int get(@NonNull final ContactIdentifier identifier) {
+        if (identifier.value.length != identifierLength) {
+            return empty;
+        }
+        return get(identifier.value, 0);
+    }
+
+    /**
+     * Look up contact identifier stored at offset in byte array.
+     * @param source Byte array containing 16-byte contact identifier.
+     * @param offset Offset of contact identifier in source.
+     * @return Packed entry (matching key index and period), or -1 if not found.
+     */
+    public int get(@NonNull final byte[] source, final int offset) {
+        if (offset < 0 || offset + identifierLength > source.length) {
+            return empty;
+        }
+        for (int slot = hash(source, offset) & mask;; slot = (slot + 1) & mask) {
+            final int entry = entries.get(slot);
+            if (empty == entry) {
+                return empty;
+            }
+            if (equals(keys, slot * identifierLength, source, offset)) {
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * Matching key index of packed entry.
+     * @param entry Packed entry from get().
+     * @return Index of matching key in batch.
+     */
+    public static int matchingKey(final int entry) {
+        return entry >>> 8;
+    }
+
+    /**
+     * Period of packed entry.
+     * @param entry Packed entry from get().
+     * @return Period of the day in range [0, 240].
+     */
+    public static int period(final int entry) {
+        return entry & 0xFF;
+    }
+
+    /**
+     * Match encounters against index in a single pass.
+     * @param encounters Encounters with simple payloads.
+     * @return Encounters where the contact identifier in the payload is in the index.
+     */
+    @NonNull
+    public List<Match> match(@NonNull final List<Encounter> encounters) {
+        final List<Match> matches = new ArrayList<>();
+        for (final Encounter encounter : encounters) {
+            if (null == encounter.payload) {
+                continue;
+            }
+            final byte[] payload = encounter.payload.value;
+            if (payload.length != ConcreteSimplePayloadDataSupplier.payloadLength) {
+                continue;
+            }
+            final int entry = get(payload, identifierOffset);
+            if (empty != entry) {
+                matches.add(new Match(encounter, matchingKey(entry), period(entry)));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Insert contact identifier. Slots are claimed atomically, thus concurrent
+     * insertions from multiple workers are safe. Lookups are only performed after
+     * all workers have joined.
+     */
+    private void put(@NonNull final byte[] source, final int offset, final int matchingKey, final int period) {
+        final int entry = (matchingKey << 8) | period;
+        for (int slot = hash(source, offset) & mask;; slot = (slot + 1) & mask) {
+            if (entries.compareAndSet(slot, empty, entry)) {
+                System.arraycopy(source, offset, keys, slot * identifierLength, identifierLength);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Contact identifiers are truncated SHA-256 hashes, thus the first four bytes
+     * are already uniformly distributed.
+     */
+    private static int hash(@NonNull final byte[] source, final int offset) {
+        return ((source[offset] & 0xFF) << 24) | ((source[offset + 1] & 0xFF) << 16) | ((source[offset + 2] & 0xFF) << 8) | (source[offset + 3] & 0xFF);
+    }
+
+    private static boolean equals(@NonNull final byte[] a, final int aOffset, @NonNull final byte[] b, final int bOffset) {
+        for (int i = 0; i < identifierLength; i++) {
+            if (a[aOffset + i] != b[bOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fork-join task for expanding a range of matching keys.
+     */
+    private final static class ExpansionTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        @NonNull
+        private final ContactIdentifierIndex index;
+        @NonNull
+        private final MatchingKey[] matchingKeys;
+        // Position of each matching key in the list provided by the caller
+        @NonNull
+        private final int[] positions;
+        private final int from, to;
+
+        private ExpansionTask(@NonNull final ContactIdentifierIndex index, @NonNull final MatchingKey[] matchingKeys, @NonNull final int[] positions, final int from, final int to) {
+            this.index = index;
+            this.matchingKeys = matchingKeys;
+            this.positions = positions;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > batchSize) {
+                final int middle = (from + to) >>> 1;
+                invokeAll(new ExpansionTask(index, matchingKeys, positions, from, middle), new ExpansionTask(index, matchingKeys, positions, middle, to));
+                return;
+            }
+            // Scratch buffers reused for all matching keys in range
+            final byte[] contactIdentifiers = new byte[periods * identifierLength];
+            final byte[] scratch = new byte[3 * F.hashLength];
+            for (int i = from; i < to; i++) {
+                if (!K.contactIdentifiers(matchingKeys[i], contactIdentifiers, 0, scratch)) {
+                    logger.fault("expand, failed to derive contact identifiers, matching key excluded (position={})", positions[i]);
+                    continue;
+                }
+                for (int period = 0; period < periods; period++) {
+                    index.put(contactIdentifiers, period * identifierLength, positions[i], period);
+                }
+                index.matchingKeys.incrementAndGet();
+            }
+        }
+    }
+}
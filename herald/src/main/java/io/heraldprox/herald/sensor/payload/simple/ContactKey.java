@@ -16,4 +16,8 @@ public class ContactKey extends Data {
     public ContactKey(@NonNull final Data value) {
         super(value);
     }
+
+    public ContactKey(@NonNull final byte[] value) {
+        super(value);
+    }
 }
@@ -16,4 +16,8 @@ public class ContactKeySeed extends Data {
     public ContactKeySeed(@NonNull final Data value) {
         super(value);
     }
+
+    public ContactKeySeed(@NonNull final byte[] value) {
+        super(value);
+    }
 }
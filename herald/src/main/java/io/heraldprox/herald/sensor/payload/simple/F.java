@@ -19,18 +19,63 @@ import java.security.MessageDigest;
 public class F {
     private final static SensorLogger logger = new ConcreteSensorLogger("Sensor", "Payload.SimplePayloadDataSupplier");
 
+    // SHA-256 digest length in bytes
+    protected final static int hashLength = 32;
+    /**
+     * Reusable SHA-256 digest per thread, as MessageDigest.getInstance() is expensive
+     * and MessageDigest is not thread safe.
+     */
+    private final static ThreadLocal<MessageDigest> sha256 = new ThreadLocal<MessageDigest>() {
+        @Nullable
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (Throwable e) {
+                logger.fault("SHA-256 unavailable", e);
+                return null;
+            }
+        }
+    };
+
     /**
      * Cryptographic hash function : SHA256
      */
     @Nullable
     protected static Data hash(@NonNull final Data data) {
+        final byte[] hash = new byte[hashLength];
+        if (!hash(data.value, 0, data.value.length, hash, 0)) {
+            return null;
+        }
+        return new Data(hash);
+    }
+
+    /**
+     * Cryptographic hash function : SHA256, allocation free
+     * <br>
+     * Input and output may refer to the same buffer, as the input is consumed
+     * before the output is written.
+     * @param input Input buffer.
+     * @param inputOffset Offset of data in input buffer.
+     * @param inputLength Length of data in input buffer.
+     * @param output Output buffer, requires 32 bytes from outputOffset.
+     * @param outputOffset Offset of hash in output buffer.
+     * @return True on success, false if SHA-256 is unavailable.
+     */
+    protected static boolean hash(@NonNull final byte[] input, final int inputOffset, final int inputLength, @NonNull final byte[] output, final int outputOffset) {
+        final MessageDigest sha = sha256.get();
+        if (null == sha) {
+            logger.fault("SHA-256 unavailable");
+            return false;
+        }
         try {
-            final MessageDigest sha = MessageDigest.getInstance("SHA-256");
-            final byte[] hash = sha.digest(data.value);
-            return new Data(hash);
+            sha.update(input, inputOffset, inputLength);
+            sha.digest(output, outputOffset, hashLength);
+            return true;
         } catch (Throwable e) {
-            logger.fault("SHA-256 unavailable", e);
-            return null;
+            sha.reset();
+            logger.fault("SHA-256 failed", e);
+            return false;
         }
     }
 
@@ -50,17 +95,47 @@ public class F {
         return data.subdata(0, n);
     }
 
+    /**
+     * Truncation function : Retain first n bytes of data, allocation free
+     * <br>
+     * Truncation is usually fused into the next function by passing a shorter input
+     * length, e.g. hash(buffer, 0, 16, ...) is equivalent to hash(truncate(buffer)).
+     * This function is for retaining the truncated data in a separate buffer.
+     * @param input Input buffer.
+     * @param inputOffset Offset of data in input buffer.
+     * @param n Number of bytes to retain.
+     * @param output Output buffer, requires n bytes from outputOffset.
+     * @param outputOffset Offset of truncated data in output buffer.
+     */
+    protected static void truncate(@NonNull final byte[] input, final int inputOffset, final int n, @NonNull final byte[] output, final int outputOffset) {
+        System.arraycopy(input, inputOffset, output, outputOffset, n);
+    }
+
     /**
      * XOR function : Compute left xor right, assumes left and right are the same length
      */
     @NonNull
     protected static Data xor(@NonNull final Data left, @NonNull final Data right) {
-        final byte[] leftByteArray = left.value;
-        final byte[] rightByteArray = right.value;
         final byte[] resultByteArray = new byte[left.value.length];
-        for (int i=0; i<leftByteArray.length; i++) {
-            resultByteArray[i] = (byte) (leftByteArray[i] ^ rightByteArray[i]);
-        }
+        xor(left.value, 0, right.value, 0, resultByteArray, 0, left.value.length);
         return new Data(resultByteArray);
     }
+
+    /**
+     * XOR function : Compute left xor right, allocation free
+     * <br>
+     * Output may refer to the same buffer as left or right for in-place operation.
+     * @param left Left buffer.
+     * @param leftOffset Offset of data in left buffer.
+     * @param right Right buffer.
+     * @param rightOffset Offset of data in right buffer.
+     * @param output Output buffer, requires length bytes from outputOffset.
+     * @param outputOffset Offset of result in output buffer.
+     * @param length Number of bytes.
+     */
+    protected static void xor(@NonNull final byte[] left, final int leftOffset, @NonNull final byte[] right, final int rightOffset, @NonNull final byte[] output, final int outputOffset, final int length) {
+        for (int i=0; i<length; i++) {
+            output[outputOffset + i] = (byte) (left[leftOffset + i] ^ right[rightOffset + i]);
+        }
+    }
 }
@@ -0,0 +1,261 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.payload.simple;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import io.heraldprox.herald.sensor.datatype.Data;
+
+/**
+ * Checkpointed reversed hash chain for deriving matching key seeds and contact key seeds.
+ * <br>
+ * The value at index length is the head of the chain, and the value at index i is
+ * hash(truncate(value at index i + 1)). Walking the chain from the head to index 0 is
+ * performed once on construction, retaining a checkpoint every stride steps. The value
+ * at any index is then derived from the nearest checkpoint above it in at most stride - 1
+ * hashes. A stride of sqrt(length) minimises the combined cost of memory and lookup.
+ * <br>
+ * Instances are immutable and thread safe. Cursors are not thread safe. A chain is invalid
+ * if SHA-256 failed during construction, in which case all lookups fail.
+ */
+public class HashChain {
+    private final static int hashLength = F.hashLength;
+    private final int length;
+    private final int stride;
+    // Checkpoints at index 0, stride, 2 * stride, ... followed by the head at index length,
+    // stored as consecutive 32 byte values
+    @NonNull
+    private final byte[] checkpoints;
+    private final int headOffset;
+    private final boolean valid;
+
+    /**
+     * Reversed hash chain with sqrt(length) checkpoints.
+     * @param head Value at index length, i.e. the end of the chain, must be 32 bytes.
+     * @param length Index of the head value, the chain contains length + 1 values.
+     */
+    public HashChain(@NonNull final Data head, final int length) {
+        this(head, length, (int) Math.ceil(Math.sqrt(length)));
+    }
+
+    /**
+     * Reversed hash chain with configurable checkpoint stride.
+     * @param head Value at index length, i.e. the end of the chain, must be 32 bytes.
+     * @param length Index of the head value, the chain contains length + 1 values.
+     * @param stride Number of steps between checkpoints, minimum 1.
+     */
+    public HashChain(@NonNull final Data head, final int length, final int stride) {
+        this.length = Math.max(0, length);
+        this.stride = Math.max(1, stride);
+        this.checkpoints = new byte[(this.length / this.stride + 2) * hashLength];
+        this.headOffset = checkpoints.length - hashLength;
+        System.arraycopy(head.value, 0, checkpoints, headOffset, Math.min(head.value.length, hashLength));
+        final byte[] value = new byte[hashLength];
+        System.arraycopy(checkpoints, headOffset, value, 0, hashLength);
+        boolean valid = true;
+        for (int index = this.length; valid && index-- > 0;) {
+            valid = step(value, 0, value, 0);
+            if (valid && 0 == index % this.stride) {
+                System.arraycopy(value, 0, checkpoints, (index / this.stride) * hashLength, hashLength);
+            }
+        }
+        this.valid = valid;
+    }
+
+    /**
+     * Chain has been built successfully.
+     * @return True if all checkpoints were derived, false if SHA-256 failed.
+     */
+    public boolean valid() {
+        return valid;
+    }
+
+    /**
+     * Index of head value.
+     * @return Index of last value in chain.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Number of steps between checkpoints.
+     * @return Stride.
+     */
+    public int stride() {
+        return stride;
+    }
+
+    /**
+     * Number of checkpoints retained in memory, including the head.
+     * @return Checkpoint count.
+     */
+    public int checkpoints() {
+        return checkpoints.length / hashLength;
+    }
+
+    /**
+     * Derive value at index from nearest checkpoint in at most stride - 1 hashes.
+     * @param index Index of value in range [0, length].
+     * @return Value at index, or null if index is out of range or SHA-256 failed.
+     */
+    @Nullable
+    public Data get(final int index) {
+        final byte[] value = new byte[hashLength];
+        if (!get(index, value, 0)) {
+            return null;
+        }
+        return new Data(value);
+    }
+
+    /**
+     * Derive value at index from nearest checkpoint in at most stride - 1 hashes, allocation free.
+     * @param index Index of value in range [0, length].
+     * @param output Output buffer, requires 32 bytes from outputOffset.
+     * @param outputOffset Offset of value in output buffer.
+     * @return True on success, false if index is out of range or SHA-256 failed.
+     */
+    public boolean get(final int index, @NonNull final byte[] output, final int outputOffset) {
+        if (!valid || index < 0 || index > length) {
+            return false;
+        }
+        // Find nearest checkpoint at or above index
+        final int checkpoint = (index + stride - 1) / stride;
+        final int checkpointIndex = Math.min(checkpoint * stride, length);
+        System.arraycopy(checkpoints, checkpointOffset(checkpointIndex), output, outputOffset, hashLength);
+        for (int i = checkpointIndex; i > index; i--) {
+            if (!step(output, outputOffset, output, outputOffset)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Create cursor for walking forward along the chain, i.e. from index towards head.
+     * @param index Start index in range [0, length].
+     * @return Cursor at index, or null if index is out of range or SHA-256 failed.
+     */
+    @Nullable
+    public Cursor cursor(final int index) {
+        final Cursor cursor = new Cursor();
+        if (!cursor.seek(index)) {
+            return null;
+        }
+        return cursor;
+    }
+
+    /**
+     * Get offset of checkpoint value at index, where index is a multiple of stride or length.
+     */
+    private int checkpointOffset(final int index) {
+        if (index == length) {
+            return headOffset;
+        }
+        return (index / stride) * hashLength;
+    }
+
+    /**
+     * Chain step function : hash(truncate(value)), allocation free and in-place safe.
+     * @return True on success, false if SHA-256 failed.
+     */
+    private static boolean step(@NonNull final byte[] input, final int inputOffset, @NonNull final byte[] output, final int outputOffset) {
+        return F.hash(input, inputOffset, hashLength / 2, output, outputOffset);
+    }
+
+    /**
+     * Incremental walk forward along the chain, e.g. from one day or period to the next.
+     * The cursor derives all values between a pair of checkpoints in one pass, thus
+     * walking the entire chain costs one hash per step.
+     */
+    public final class Cursor {
+        // Values for indices [segmentStart, segmentStart + segmentLength)
+        @NonNull
+        private final byte[] segment = new byte[(stride + 1) * hashLength];
+        private int segmentStart = -1;
+        private int segmentLength = 0;
+        private int index;
+
+        private Cursor() {
+        }
+
+        /**
+         * Current index.
+         * @return Index in range [0, length].
+         */
+        public int index() {
+            return index;
+        }
+
+        /**
+         * Value at current index.
+         * @return Value at index.
+         */
+        @NonNull
+        public Data value() {
+            final byte[] value = new byte[hashLength];
+            value(value, 0);
+            return new Data(value);
+        }
+
+        /**
+         * Value at current index, allocation free.
+         * @param output Output buffer, requires 32 bytes from outputOffset.
+         * @param outputOffset Offset of value in output buffer.
+         */
+        public void value(@NonNull final byte[] output, final int outputOffset) {
+            System.arraycopy(segment, (index - segmentStart) * hashLength, output, outputOffset, hashLength);
+        }
+
+        /**
+         * Move cursor to next index towards head.
+         * @return True if cursor was moved, false if cursor is already at head.
+         */
+        public boolean next() {
+            if (index >= length) {
+                return false;
+            }
+            return seek(index + 1);
+        }
+
+        /**
+         * Move cursor to index. This is O(1) within the current segment and at most
+         * stride hashes otherwise.
+         * @param index Index in range [0, length].
+         * @return True if cursor was moved, false if index is out of range or SHA-256 failed.
+         */
+        public boolean seek(final int index) {
+            if (!valid || index < 0 || index > length) {
+                return false;
+            }
+            if ((index < segmentStart || index >= segmentStart + segmentLength) && !load(index)) {
+                return false;
+            }
+            this.index = index;
+            return true;
+        }
+
+        /**
+         * Derive all values between the checkpoints surrounding index.
+         * @return True on success, false if SHA-256 failed, in which case the segment is cleared.
+         */
+        private boolean load(final int index) {
+            final int start = (index / stride) * stride;
+            final int end = Math.min(start + stride, length);
+            System.arraycopy(checkpoints, checkpointOffset(end), segment, (end - start) * hashLength, hashLength);
+            for (int i = end - start; i > 0; i--) {
+                if (!step(segment, i * hashLength, segment, (i - 1) * hashLength)) {
+                    segmentStart = -1;
+                    segmentLength = 0;
+                    return false;
+                }
+            }
+            segmentStart = start;
+            segmentLength = end - start + 1;
+            return true;
+        }
+    }
+}
@@ -9,12 +9,15 @@ import androidx.annotation.Nullable;
 
 import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
 import io.heraldprox.herald.sensor.data.SensorLogger;
+import io.heraldprox.herald.sensor.datatype.Data;
 import io.heraldprox.herald.sensor.datatype.TimeInterval;
 
 import java.security.SecureRandom;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.TimeZone;
 
 /**
@@ -22,14 +25,29 @@ import java.util.TimeZone;
  */
 @SuppressWarnings("ConstantConditions")
 public class K {
+    private final static SensorLogger logger = new ConcreteSensorLogger("Sensor", "Payload.Simple.K");
     // Secret key length
     private final static int secretKeyLength = 2048;
     // Days supported by key derivation function
     private final static int days = 2000;
     // Periods per day
     private final static int periods = 240;
+    // Contact identifier length in bytes
+    protected final static int contactIdentifierLength = 16;
     // Epoch as time interval since 1970
     private final static TimeInterval epoch = K.getEpoch();
+    // Number of secret keys with cached matching key seed chains
+    private final static int matchingKeySeedChainCacheSize = 16;
+    // Matching key seed chains for recently used secret keys, least recently used first.
+    // Chains are keyed on the hash of the secret key, which is the head of the chain, thus
+    // the cache retains no key material beyond the chains themselves and never holds a
+    // copy of the secret key. Entries are evicted when the secret key is no longer used.
+    private final static Map<Data, HashChain> matchingKeySeedChains = new LinkedHashMap<Data, HashChain>(matchingKeySeedChainCacheSize, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(@NonNull final Map.Entry<Data, HashChain> eldest) {
+            return size() > matchingKeySeedChainCacheSize;
+        }
+    };
 
     /**
      * Date from string date "yyyy-MM-dd'T'HH:mm:ssXXXX" in UTC
@@ -129,15 +147,49 @@ public class K {
         if (!(onDay <= K.days && onDay >= 0)) {
             return null;
         }
-        MatchingKeySeed matchingKeySeed = new MatchingKeySeed(F.hash(secretKey));
-        int matchingKeySeedDay = K.days;
-        // Work backwards from day 2000 to derive seeds for day 1999, 1998, until
-        // reaching the required day
-        while (matchingKeySeedDay > onDay) {
-            matchingKeySeed = new MatchingKeySeed(F.hash(F.truncate(matchingKeySeed)));
-            matchingKeySeedDay -= 1;
+        // Seeds are derived from checkpoints on the cached hash chain for the secret key,
+        // thus each seed costs at most sqrt(2000) hashes after the chain has been built.
+        final HashChain matchingKeySeedChain = matchingKeySeedChain(secretKey);
+        if (null == matchingKeySeedChain) {
+            return null;
+        }
+        final Data matchingKeySeed = matchingKeySeedChain.get(onDay);
+        if (null == matchingKeySeed) {
+            return null;
         }
-        return matchingKeySeed;
+        return new MatchingKeySeed(matchingKeySeed);
+    }
+
+    /**
+     * Checkpointed hash chain of all matching key seeds derived from secret key. Chains
+     * are cached for the most recently used secret keys.
+     *
+     * @param secretKey Secret key.
+     * @return Hash chain where the value at index i is the matching key seed for day i,
+     * or null if SHA-256 failed.
+     */
+    @Nullable
+    protected static HashChain matchingKeySeedChain(@NonNull final SecretKey secretKey) {
+        final Data head = F.hash(secretKey);
+        if (null == head) {
+            logger.fault("Failed to derive matching key seed chain, SHA-256 failed");
+            return null;
+        }
+        synchronized (matchingKeySeedChains) {
+            final HashChain cached = matchingKeySeedChains.get(head);
+            if (null != cached) {
+                return cached;
+            }
+        }
+        final HashChain hashChain = new HashChain(head, K.days);
+        if (!hashChain.valid()) {
+            logger.fault("Failed to derive matching key seed chain, SHA-256 failed");
+            return null;
+        }
+        synchronized (matchingKeySeedChains) {
+            matchingKeySeedChains.put(head, hashChain);
+        }
+        return hashChain;
     }
 
     /**
@@ -151,9 +203,32 @@ public class K {
     @NonNull
     protected static MatchingKey matchingKey(@NonNull final MatchingKeySeed deriveFrom) {
         // Matching key on day N is derived from matching key seed on day N and day N-1
-        final MatchingKeySeed matchingKeySeedMinusOne = new MatchingKeySeed(F.hash(F.truncate(deriveFrom)));
-        final MatchingKey matchingKey = new MatchingKey(F.hash(F.xor(deriveFrom, matchingKeySeedMinusOne)));
-        return matchingKey;
+        final byte[] matchingKey = new byte[F.hashLength];
+        if (!deriveKey(deriveFrom.value, 0, matchingKey, 0, matchingKey, 0)) {
+            logger.fault("Failed to derive matching key, SHA-256 failed");
+            return new MatchingKey(new Data());
+        }
+        return new MatchingKey(matchingKey);
+    }
+
+    /**
+     * Key derivation function shared by matching key and contact key, allocation free.
+     * Key N = hash(seed N xor seed N-1), where seed N-1 = hash(truncate(seed N)).
+     *
+     * @param seed Buffer containing 32 byte seed N.
+     * @param seedOffset Offset of seed in buffer.
+     * @param scratch Scratch buffer, requires 32 bytes from scratchOffset for seed N-1.
+     * @param scratchOffset Offset of seed N-1 in scratch buffer.
+     * @param output Output buffer, requires 32 bytes from outputOffset. May be the seed or scratch buffer.
+     * @param outputOffset Offset of key in output buffer.
+     * @return True on success, false if SHA-256 failed.
+     */
+    private static boolean deriveKey(@NonNull final byte[] seed, final int seedOffset, @NonNull final byte[] scratch, final int scratchOffset, @NonNull final byte[] output, final int outputOffset) {
+        if (!F.hash(seed, seedOffset, F.hashLength / 2, scratch, scratchOffset)) {
+            return false;
+        }
+        F.xor(seed, seedOffset, scratch, scratchOffset, scratch, scratchOffset, F.hashLength);
+        return F.hash(scratch, scratchOffset, F.hashLength, output, outputOffset);
     }
 
     /**
@@ -172,15 +247,42 @@ public class K {
         if (!(forPeriod <= K.periods && forPeriod >= 0)) {
             return null;
         }
-        ContactKeySeed contactKeySeed = new ContactKeySeed(F.hash(deriveFrom));
-        int contactKeySeedPeriod = K.periods;
+        final byte[] contactKeySeed = new byte[F.hashLength];
+        if (!F.hash(deriveFrom.value, 0, deriveFrom.value.length, contactKeySeed, 0)) {
+            return null;
+        }
         // Work backwards from period 240 to derive seeds for period 239, 238, until
         // reaching the required period
-        while (contactKeySeedPeriod > forPeriod) {
-            contactKeySeed = new ContactKeySeed(F.hash(F.truncate(contactKeySeed)));
-            contactKeySeedPeriod -= 1;
+        for (int contactKeySeedPeriod = K.periods; contactKeySeedPeriod > forPeriod; contactKeySeedPeriod--) {
+            if (!F.hash(contactKeySeed, 0, F.hashLength / 2, contactKeySeed, 0)) {
+                return null;
+            }
         }
-        return contactKeySeed;
+        return new ContactKeySeed(contactKeySeed);
+    }
+
+    /**
+     * Checkpointed hash chain of all contact key seeds derived from matching key. Use a
+     * {@link HashChain.Cursor} to walk forward from one period to the next in O(1)
+     * amortised time.
+     *
+     * @param deriveFrom Matching key.
+     * @return Hash chain where the value at index i is the contact key seed for period i,
+     * or null if SHA-256 failed.
+     */
+    @Nullable
+    protected static HashChain contactKeySeedChain(@NonNull final MatchingKey deriveFrom) {
+        final Data head = F.hash(deriveFrom);
+        if (null == head) {
+            logger.fault("Failed to derive contact key seed chain, SHA-256 failed");
+            return null;
+        }
+        final HashChain hashChain = new HashChain(head, K.periods);
+        if (!hashChain.valid()) {
+            logger.fault("Failed to derive contact key seed chain, SHA-256 failed");
+            return null;
+        }
+        return hashChain;
     }
 
     /**
@@ -191,32 +293,100 @@ public class K {
     }
 
     public static void forEachContactIdentifier(@NonNull final MatchingKey deriveFrom, @NonNull final ForEachContactIdentifierAction action) {
-        ContactKeySeed contactKeySeed = new ContactKeySeed(F.hash(deriveFrom));
-        int contactKeySeedPeriod = K.periods;
-        action.consume(contactIdentifier(contactKey(contactKeySeed)), contactKeySeedPeriod);
+        final byte[] contactKeySeed = new byte[F.hashLength];
+        final byte[] contactKey = new byte[F.hashLength];
+        final byte[] scratch = new byte[F.hashLength];
+        if (!F.hash(deriveFrom.value, 0, deriveFrom.value.length, contactKeySeed, 0)) {
+            logger.fault("Failed to derive contact identifiers, SHA-256 failed");
+            return;
+        }
         // Work backwards from period 240 to derive seeds for period 239, 238, until
         // reaching the required period
-        while (contactKeySeedPeriod >= 0) {
-            contactKeySeed = new ContactKeySeed(F.hash(F.truncate(contactKeySeed)));
-            contactKeySeedPeriod -= 1;
-            action.consume(contactIdentifier(contactKey(contactKeySeed)), contactKeySeedPeriod);
+        for (int contactKeySeedPeriod = K.periods; contactKeySeedPeriod >= -1; contactKeySeedPeriod--) {
+            if ((contactKeySeedPeriod < K.periods && !F.hash(contactKeySeed, 0, F.hashLength / 2, contactKeySeed, 0))
+                    || !deriveKey(contactKeySeed, 0, scratch, 0, contactKey, 0)) {
+                logger.fault("Failed to derive contact identifiers, SHA-256 failed");
+                return;
+            }
+            final byte[] contactIdentifier = new byte[contactIdentifierLength];
+            F.truncate(contactKey, 0, contactIdentifierLength, contactIdentifier, 0);
+            action.consume(new ContactIdentifier(contactIdentifier), contactKeySeedPeriod);
+        }
+    }
+
+    /**
+     * Derive contact identifiers for all periods of the day, allocation free. This is
+     * equivalent to contactIdentifier(contactKey(contactKeySeed(deriveFrom, period)))
+     * for periods 0 to 240, with the identifier for period i at output offset + i * 16.
+     *
+     * @param deriveFrom Matching key.
+     * @param output Output buffer, requires 241 * 16 bytes from outputOffset.
+     * @param outputOffset Offset of contact identifier for period 0 in output buffer.
+     * @param scratch Scratch buffer, requires 96 bytes.
+     * @return True on success, false if SHA-256 failed, in which case the output is incomplete.
+     */
+    protected static boolean contactIdentifiers(@NonNull final MatchingKey deriveFrom, @NonNull final byte[] output, final int outputOffset, @NonNull final byte[] scratch) {
+        // Scratch = contact key seed (0..31), contact key (32..63), seed N-1 (64..95)
+        final int contactKeySeed = 0, contactKey = F.hashLength, contactKeySeedMinusOne = 2 * F.hashLength;
+        if (!F.hash(deriveFrom.value, 0, deriveFrom.value.length, scratch, contactKeySeed)) {
+            logger.fault("Failed to derive contact identifiers, SHA-256 failed");
+            return false;
         }
+        for (int period = K.periods; period >= 0; period--) {
+            if ((period < K.periods && !F.hash(scratch, contactKeySeed, F.hashLength / 2, scratch, contactKeySeed))
+                    || !deriveKey(scratch, contactKeySeed, scratch, contactKeySeedMinusOne, scratch, contactKey)) {
+                logger.fault("Failed to derive contact identifiers, SHA-256 failed");
+                return false;
+            }
+            F.truncate(scratch, contactKey, contactIdentifierLength, output, outputOffset + period * contactIdentifierLength);
+        }
+        return true;
     }
 
     public static ContactKey contactKey(@NonNull final ContactKeySeed deriveFrom) {
         // Contact key at period N is derived from contact key seed at period N and period N-1
-        final ContactKeySeed contactKeySeedMinusOne = new ContactKeySeed(F.hash(F.truncate(deriveFrom)));
-        final ContactKey contactKey = new ContactKey(F.hash(F.xor(deriveFrom, contactKeySeedMinusOne)));
-        return contactKey;
+        final byte[] contactKey = new byte[F.hashLength];
+        if (!deriveKey(deriveFrom.value, 0, contactKey, 0, contactKey, 0)) {
+            logger.fault("Failed to derive contact key, SHA-256 failed");
+            return new ContactKey(new Data());
+        }
+        return new ContactKey(contactKey);
+    }
+
+    /**
+     * Generate contact identifier I_{c} from contact key seed, allocation free. This is
+     * equivalent to contactIdentifier(contactKey(contactKeySeed)).
+     *
+     * @param contactKeySeed Buffer containing 32 byte contact key seed.
+     * @param contactKeySeedOffset Offset of contact key seed in buffer.
+     * @param scratch Scratch buffer, requires 32 bytes.
+     * @param output Output buffer, requires 16 bytes from outputOffset.
+     * @param outputOffset Offset of contact identifier in output buffer.
+     * @return True on success, false if SHA-256 failed.
+     */
+    protected static boolean contactIdentifier(@NonNull final byte[] contactKeySeed, final int contactKeySeedOffset, @NonNull final byte[] scratch, @NonNull final byte[] output, final int outputOffset) {
+        if (!deriveKey(contactKeySeed, contactKeySeedOffset, scratch, 0, scratch, 0)) {
+            logger.fault("Failed to derive contact identifier, SHA-256 failed");
+            return false;
+        }
+        F.truncate(scratch, 0, contactIdentifierLength, output, outputOffset);
+        return true;
     }
 
     /**
      * Generate contact identifer I_{c}
      *
      * @param contactKey The ContactKey used to generate this period's ContactIdentifier
+     * @return Contact identifier, or null if contact key is shorter than the contact identifier,
+     * e.g. where SHA-256 failed.
      */
-    @NonNull
+    @Nullable
     protected static ContactIdentifier contactIdentifier(@NonNull final ContactKey contactKey) {
-        return new ContactIdentifier(F.truncate(contactKey, 16));
+        if (contactKey.value.length < contactIdentifierLength) {
+            return null;
+        }
+        final byte[] contactIdentifier = new byte[contactIdentifierLength];
+        F.truncate(contactKey.value, 0, contactIdentifierLength, contactIdentifier, 0);
+        return new ContactIdentifier(contactIdentifier);
     }
 }
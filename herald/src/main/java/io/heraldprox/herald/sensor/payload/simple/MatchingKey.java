@@ -17,6 +17,10 @@ public class MatchingKey extends Data {
         super(value);
     }
 
+    public MatchingKey(@NonNull final byte[] value) {
+        super(value);
+    }
+
     public MatchingKey(final byte repeating, final int count) {
         super(repeating, count);
     }
@@ -16,4 +16,8 @@ public class MatchingKeySeed extends Data {
     public MatchingKeySeed(@NonNull final Data value) {
         super(value);
     }
+
+    public MatchingKeySeed(@NonNull final byte[] value) {
+        super(value);
+    }
 }
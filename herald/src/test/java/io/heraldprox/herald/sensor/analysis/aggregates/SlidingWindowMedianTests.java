@@ -0,0 +1,188 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.aggregates;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import io.heraldprox.herald.sensor.analysis.algorithms.distance.SmoothedLinearModel;
+import io.heraldprox.herald.sensor.analysis.algorithms.distance.SmoothedLinearModelAnalyser;
+import io.heraldprox.herald.sensor.analysis.sampling.CallableForNewSample;
+import io.heraldprox.herald.sensor.analysis.sampling.Sample;
+import io.heraldprox.herald.sensor.analysis.sampling.SampleList;
+import io.heraldprox.herald.sensor.analysis.sampling.SampledID;
+import io.heraldprox.herald.sensor.analysis.views.InRange;
+import io.heraldprox.herald.sensor.analysis.views.Since;
+import io.heraldprox.herald.sensor.datatype.Date;
+import io.heraldprox.herald.sensor.datatype.Distance;
+import io.heraldprox.herald.sensor.datatype.RSSI;
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("ConstantConditions")
+public class SlidingWindowMedianTests {
+
+    @Test
+    public void testEmpty() {
+        final SlidingWindowMedian median = new SlidingWindowMedian(-99, -10);
+        assertNull(median.median());
+        assertEquals(0, median.size());
+        assertEquals(Long.MIN_VALUE, median.oldest());
+        assertEquals(Long.MIN_VALUE, median.newest());
+    }
+
+    @Test
+    public void testAddRemove() {
+        final SlidingWindowMedian median = new SlidingWindowMedian(0, 10, 1);
+        // Median [1] is 1
+        assertTrue(median.add(0, 1));
+        assertEquals(1, median.median(), Double.MIN_VALUE);
+        // Median [1,4] is 2.5
+        assertTrue(median.add(1000, 4));
+        assertEquals(2.5, median.median(), Double.MIN_VALUE);
+        // Median [1,4,4] is 4
+        assertTrue(median.add(2000, 4));
+        assertEquals(4, median.median(), Double.MIN_VALUE);
+        // Median [4,4] is 4
+        median.clearBefore(1000);
+        assertEquals(4, median.median(), Double.MIN_VALUE);
+        assertEquals(1000, median.oldest());
+        assertEquals(2000, median.newest());
+        // Values are rounded and out of range values are ignored
+        assertTrue(median.add(3000, 9.6));
+        assertFalse(median.add(4000, 11));
+        assertFalse(median.add(4000, -1));
+        assertEquals(3, median.size());
+        median.clearBefore(2500);
+        assertEquals(10, median.median(), Double.MIN_VALUE);
+        median.clearBefore(5000);
+        assertNull(median.median());
+        assertEquals(0, median.size());
+        median.add(6000, 5);
+        assertEquals(5, median.median(), Double.MIN_VALUE);
+        median.clear();
+        assertNull(median.median());
+    }
+
+    @Test
+    public void testSlidingWindow() {
+        // Sliding window median is same as median of all samples in window
+        final Random random = new Random(0);
+        final SlidingWindowMedian slidingWindowMedian = new SlidingWindowMedian(-99, -10, 4);
+        final SampleList<RSSI> sampleList = new SampleList<>(1000);
+        final Median<RSSI> median = new Median<>();
+        int rssi = -60;
+        for (int i=0; i<1000; i++) {
+            rssi = Math.max(-99, Math.min(-10, rssi + random.nextInt(11) - 5));
+            slidingWindowMedian.add(i * 1000, rssi);
+            sampleList.push(i, new RSSI(rssi));
+            final int window = 1 + random.nextInt(60);
+            slidingWindowMedian.clearBefore((i - window) * 1000);
+            median.reset();
+            final Double expected = sampleList.filter(new Since<RSSI>(i - window)).aggregate(median).get(0);
+            assertEquals(expected, slidingWindowMedian.median(), Double.MIN_VALUE);
+            // Window is never reopened, so align list with window
+            sampleList.clearBeforeDate(new Date(slidingWindowMedian.oldest() / 1000));
+        }
+    }
+
+    @Test
+    public void testAnalyser() {
+        // Incremental analyser gives same distance as smoothed linear model over entire window
+        final Random random = new Random(0);
+        final SampleList<RSSI> input = new SampleList<>(100);
+        final SampleList<Distance> output = new SampleList<>(100);
+        final SmoothedLinearModel<RSSI> model = new SmoothedLinearModel<>();
+        final SmoothedLinearModelAnalyser analyser = new SmoothedLinearModelAnalyser(TimeInterval.zero, TimeInterval.minute, new SmoothedLinearModel<RSSI>());
+        final SampledID sampled = new SampledID(1);
+        final CallableForNewSample<Distance> callable = new CallableForNewSample<Distance>() {
+            @Override
+            public void newSample(SampledID sampled, Sample<Distance> item) {
+            }
+        };
+        // Analyser records last run time by clock, so sample times must be from now onwards
+        final long start = new Date().secondsSinceUnixEpoch();
+        int count = 0;
+        for (long time=start; time<start + 300; time++) {
+            // Include invalid samples and keep median within model range
+            input.push(time, new RSSI(0 == time % 10 ? -5 : -99 + random.nextInt(30)));
+            if (analyser.analyse(new Date(time), sampled, input, output, callable)) {
+                model.reset();
+                final Double expected = input.filter(new Since<RSSI>(time - 60)).filter(new InRange<RSSI>(-99, -10)).aggregate(model).get(0);
+                assertEquals(expected, output.latestValue().value, Double.MIN_VALUE);
+                count++;
+            }
+        }
+        assertTrue(count > 200);
+    }
+
+    @Test
+    public void testAnalyserEvictsExpiredWindows() {
+        final SmoothedLinearModelAnalyser analyser = new SmoothedLinearModelAnalyser(TimeInterval.zero, TimeInterval.minute, new SmoothedLinearModel<RSSI>());
+        final SampleList<Distance> output = new SampleList<>(100);
+        final CallableForNewSample<Distance> callable = new CallableForNewSample<Distance>() {
+            @Override
+            public void newSample(SampledID sampled, Sample<Distance> item) {
+            }
+        };
+        final long start = new Date().secondsSinceUnixEpoch();
+        // Targets observed once, e.g. rotated pseudo device addresses
+        for (int target=0; target<10; target++) {
+            final SampleList<RSSI> input = new SampleList<>(100);
+            for (long time=start; time<=start + 60; time++) {
+                input.push(time, new RSSI(-80));
+            }
+            assertTrue(analyser.analyse(new Date(start + 60), new SampledID(target), input, output, callable));
+        }
+        assertEquals(10, analyser.windows());
+        // Windows of targets without samples in the smoothing window are evicted
+        final SampleList<RSSI> input = new SampleList<>(100);
+        for (long time=start + 180; time<=start + 240; time++) {
+            input.push(time, new RSSI(-80));
+        }
+        assertTrue(analyser.analyse(new Date(start + 240), new SampledID(10), input, output, callable));
+        assertEquals(1, analyser.windows());
+    }
+
+    @Test
+    public void performance() {
+        final int samples = 100000;
+        final int window = 60;
+        final SlidingWindowMedian slidingWindowMedian = new SlidingWindowMedian(-99, -10);
+        final SampleList<RSSI> sampleList = new SampleList<>(window);
+        final Median<RSSI> median = new Median<>();
+        final RSSI[] values = new RSSI[90];
+        for (int i=0; i<values.length; i++) {
+            values[i] = new RSSI(-99 + i);
+        }
+        for (int warmup=0; warmup<2; warmup++) {
+            double checksum = 0;
+            long t0 = System.nanoTime();
+            for (int i=0; i<samples; i++) {
+                sampleList.push(i, values[(i * 7) % values.length]);
+                median.reset();
+                checksum += sampleList.aggregate(median).get(0);
+            }
+            final long elapsedMedian = System.nanoTime() - t0;
+            t0 = System.nanoTime();
+            for (int i=0; i<samples; i++) {
+                slidingWindowMedian.add(i * 1000L, values[(i * 7) % values.length].value);
+                slidingWindowMedian.clearBefore((i - window + 1) * 1000L);
+                checksum -= slidingWindowMedian.median();
+            }
+            final long elapsedSlidingWindowMedian = System.nanoTime() - t0;
+            sampleList.clear();
+            slidingWindowMedian.clear();
+            if (warmup == 1) {
+                System.out.println("median,recompute=" + (elapsedMedian / samples) + "ns,incremental=" + (elapsedSlidingWindowMedian / samples) + "ns,checksum=" + checksum);
+            }
+        }
+    }
+}
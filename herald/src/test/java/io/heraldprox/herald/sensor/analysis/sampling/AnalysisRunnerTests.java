@@ -6,6 +6,7 @@ package io.heraldprox.herald.sensor.analysis.sampling;
 
 import androidx.annotation.NonNull;
 
+import io.heraldprox.herald.sensor.analysis.aggregates.Mean;
 import io.heraldprox.herald.sensor.analysis.algorithms.distance.FowlerBasicAnalyser;
 import io.heraldprox.herald.sensor.analysis.algorithms.distance.SmoothedLinearModel;
 import io.heraldprox.herald.sensor.analysis.algorithms.distance.SmoothedLinearModelAnalyser;
@@ -18,7 +19,14 @@ import io.heraldprox.herald.sensor.datatype.TimeInterval;
 
 import org.junit.Test;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 @SuppressWarnings({"ConstantConditions", "unchecked"})
@@ -38,6 +46,29 @@ public class AnalysisRunnerTests {
         assertEquals(listManager.sampledIDs().size(), 0);
     }
 
+    @Test
+    public void listmanager_shard() {
+        for (int shards=1; shards<=16; shards++) {
+            for (long i=-100; i<100; i++) {
+                final int shard = ListManager.shard(new SampledID(i), shards);
+                assertTrue(shard >= 0 && shard < shards);
+            }
+        }
+        final ListManager<RSSI> listManager = new ListManager<>(10, 2);
+        assertSame(listManager.lock(new SampledID(1)), listManager.lock(new SampledID(3)));
+        assertNotSame(listManager.lock(new SampledID(1)), listManager.lock(new SampledID(2)));
+    }
+
+    @Test
+    public void variantset_lock() {
+        // Lists of a target in all list managers are guarded by the same lock
+        final VariantSet variantSet = new VariantSet(10, 4);
+        final SampledID sampledID = new SampledID(1234);
+        assertSame(variantSet.lock(sampledID), variantSet.listManager(RSSI.class).lock(sampledID));
+        assertSame(variantSet.lock(sampledID), variantSet.listManager(Distance.class).lock(sampledID));
+        assertSame(variantSet.lock(sampledID), variantSet.add(Int8.class, 5).lock(sampledID));
+    }
+
     @Test
     public void variantset_listmanager() {
         final VariantSet variantSet = new VariantSet(15);
@@ -277,6 +308,158 @@ public class AnalysisRunnerTests {
         assertEquals(samples.get(0).value().value, 1.0, 0.001);
     }
 
+    @Test
+    public void analysisrunner_parallel() throws Exception {
+        final int targets = 100;
+        final AnalysisRunner serial = new AnalysisRunner(new AnalysisProviderManager(new MeanAnalyser(null, null, null)), new AnalysisDelegateManager(new ConcurrentDistanceDelegate()), 25);
+        final ConcurrentDistanceDelegate delegate = new ConcurrentDistanceDelegate();
+        final AnalysisRunner parallel = new AnalysisRunner(new AnalysisProviderManager(new MeanAnalyser(null, null, null)), new AnalysisDelegateManager(delegate), 25, 4, 4);
+        for (int i=0; i<targets; i++) {
+            for (int j=0; j<10; j++) {
+                final Sample<RSSI> sample = new Sample<>(j * 10, new RSSI(-50 - i % 40 - j));
+                serial.newSample(new SampledID(i), sample);
+                parallel.newSample(new SampledID(i), sample);
+            }
+        }
+        serial.run(new Date(100));
+        assertEquals(1, serial.runs());
+        assertEquals(targets, serial.analysed());
+        parallel.run(new Date(100));
+        awaitRuns(parallel, 1);
+        assertEquals(targets, parallel.analysed());
+        assertEquals(0, parallel.skipped());
+        assertEquals(0, parallel.rejected());
+        // Parallel analysis produces the same result as serial analysis for every target
+        assertEquals(targets, delegate.distances.size());
+        for (int i=0; i<targets; i++) {
+            final SampledID sampledID = new SampledID(i);
+            assertEquals(serial.variantSet().listManager(Distance.class, sampledID).get(0).value().value,
+                    delegate.distances.get(sampledID), Double.MIN_VALUE);
+        }
+        parallel.shutdown();
+    }
+
+    @Test
+    public void analysisrunner_parallel_skipped_rejected() throws Exception {
+        // Target 1 is in shard 0, targets 2, 4, 6 are in shard 1
+        final SampledID blocked = new SampledID(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ConcurrentDistanceDelegate delegate = new ConcurrentDistanceDelegate();
+        // One worker thread and queue for two shard tasks
+        final AnalysisRunner runner = new AnalysisRunner(new AnalysisProviderManager(new MeanAnalyser(blocked, started, release)), new AnalysisDelegateManager(delegate), 25, 1, 2);
+        runner.newSample(blocked, new Sample<>(0, new RSSI(-50)));
+        runner.run(new Date(10));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        // Worker is blocked, shard 1 tasks are queued until queue is full
+        runner.newSample(new SampledID(2), new Sample<>(0, new RSSI(-52)));
+        runner.run(new Date(10));
+        runner.newSample(new SampledID(4), new Sample<>(0, new RSSI(-54)));
+        runner.run(new Date(10));
+        runner.newSample(new SampledID(6), new Sample<>(0, new RSSI(-56)));
+        runner.run(new Date(10));
+        // Run 4 is rejected and completes immediately, metrics of other runs are recorded on completion
+        assertEquals(1, runner.runs());
+        assertEquals(1, runner.rejected());
+        assertEquals(3, runner.skipped());
+        release.countDown();
+        awaitRuns(runner, 4);
+        assertEquals(3, runner.analysed());
+        assertEquals(1 + 2 + 3, runner.skipped());
+        assertEquals(3, delegate.distances.size());
+        // Rejected target is analysed in a later run
+        runner.run(new Date(10));
+        awaitRuns(runner, 5);
+        assertEquals(3 + 4, runner.analysed());
+        assertEquals(-56, delegate.distances.get(new SampledID(6)), Double.MIN_VALUE);
+        runner.shutdown();
+    }
+
+    private static void awaitRuns(@NonNull final AnalysisRunner runner, final long runs) throws InterruptedException {
+        for (int i=0; i<1000 && runner.runs() < runs; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(runs, runner.runs());
+    }
+
+    /**
+     * Mean RSSI as distance, optionally blocking analysis of one target until released.
+     */
+    private final static class MeanAnalyser implements AnalysisProvider<RSSI, Distance> {
+        private final SampledID blocked;
+        private final CountDownLatch started;
+        private final CountDownLatch release;
+
+        private MeanAnalyser(final SampledID blocked, final CountDownLatch started, final CountDownLatch release) {
+            this.blocked = blocked;
+            this.started = started;
+            this.release = release;
+        }
+
+        @NonNull
+        @Override
+        public Class<RSSI> inputType() {
+            return RSSI.class;
+        }
+
+        @NonNull
+        @Override
+        public Class<Distance> outputType() {
+            return Distance.class;
+        }
+
+        @Override
+        public boolean analyse(@NonNull final Date timeNow, @NonNull final SampledID sampled, @NonNull final SampleList<RSSI> input, @NonNull final SampleList<Distance> output, @NonNull final CallableForNewSample<Distance> callable) {
+            if (sampled.equals(blocked)) {
+                started.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            }
+            final Double mean = input.aggregate(new Mean<RSSI>()).get(Mean.class);
+            if (null == mean) {
+                return false;
+            }
+            final Sample<Distance> newSample = new Sample<>(timeNow, new Distance(mean));
+            output.push(newSample);
+            callable.newSample(sampled, newSample);
+            return true;
+        }
+    }
+
+    private final static class ConcurrentDistanceDelegate implements AnalysisDelegate<Distance> {
+        private final Map<SampledID, Double> distances = new ConcurrentHashMap<>();
+
+        @Override
+        public void newSample(@NonNull final SampledID sampled, @NonNull final Sample<Distance> item) {
+            distances.put(sampled, item.value().value);
+        }
+
+        @NonNull
+        @Override
+        public Class<Distance> inputType() {
+            return Distance.class;
+        }
+
+        @Override
+        public void reset() {
+            distances.clear();
+        }
+
+        @Override
+        public void removeSamplesFor(SampledID sampled) {
+            distances.remove(sampled);
+        }
+
+        @NonNull
+        @Override
+        public SampleList<Distance> samples() {
+            return new SampleList<>(1);
+        }
+    }
+
     private final static class DummyRSSISource {
         private final SampledID sampledID;
         private final SampleList<RSSI> data;
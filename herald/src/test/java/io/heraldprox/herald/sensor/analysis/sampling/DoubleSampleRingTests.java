@@ -0,0 +1,201 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.sampling;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import io.heraldprox.herald.sensor.analysis.aggregates.Gaussian;
+import io.heraldprox.herald.sensor.analysis.aggregates.Mean;
+import io.heraldprox.herald.sensor.analysis.aggregates.Median;
+import io.heraldprox.herald.sensor.analysis.aggregates.Mode;
+import io.heraldprox.herald.sensor.analysis.aggregates.Variance;
+import io.heraldprox.herald.sensor.datatype.Date;
+import io.heraldprox.herald.sensor.datatype.DoubleValue;
+import io.heraldprox.herald.sensor.datatype.RSSI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("ConstantConditions")
+public class DoubleSampleRingTests {
+
+    @Test
+    public void ring() {
+        final DoubleSampleRing ring = new DoubleSampleRing(3);
+        assertEquals(3, ring.capacity());
+        assertEquals(0, ring.size());
+        assertFalse(ring.cursor().next());
+        // Wrap around replaces oldest
+        for (int i=0; i<5; i++) {
+            ring.push(1000 * i, -50 - i);
+        }
+        assertEquals(3, ring.size());
+        assertEquals(2000, ring.taken(0));
+        assertEquals(-52, ring.value(0), Double.MIN_VALUE);
+        assertEquals(4000, ring.taken(2));
+        assertEquals(-54, ring.value(2), Double.MIN_VALUE);
+        // Cursor from oldest to newest
+        final DoubleSampleRing.Cursor cursor = ring.cursor();
+        for (int repeat=0; repeat<2; repeat++) {
+            for (int i=0; i<3; i++) {
+                assertTrue(cursor.next());
+                assertEquals(i, cursor.index());
+                assertEquals(1000 * (i + 2), cursor.taken());
+                assertEquals(-52 - i, cursor.value(), Double.MIN_VALUE);
+            }
+            assertFalse(cursor.next());
+            cursor.reset();
+        }
+        // Clear before
+        ring.clearBefore(3500);
+        assertEquals(1, ring.size());
+        assertEquals(4000, ring.taken(0));
+        ring.clearBefore(5000);
+        assertEquals(0, ring.size());
+        ring.push(6000, -60);
+        assertEquals(1, ring.size());
+        assertEquals(-60, ring.value(0), Double.MIN_VALUE);
+        ring.clear();
+        assertEquals(0, ring.size());
+        // Zero capacity
+        final DoubleSampleRing empty = new DoubleSampleRing(0);
+        assertEquals(-1, empty.push(0, 0));
+        assertEquals(0, empty.size());
+    }
+
+    @Test
+    public void sampleList() {
+        final SampleList<RSSI> sampleList = new SampleList<>(3);
+        final Sample<RSSI> sample = new Sample<>(new Date(new java.util.Date(1234567)), new RSSI(-50));
+        sampleList.push(sample);
+        sampleList.push(2000, new RSSI(-60));
+        // Pushed sample is returned as is, including milliseconds
+        assertSame(sample, sampleList.get(0));
+        assertEquals(1234567, sampleList.get(0).taken().getTime());
+        // Sample is created on demand and reused
+        assertEquals(2000, sampleList.get(1).taken().secondsSinceUnixEpoch());
+        assertEquals(-60, sampleList.get(1).value().value, Double.MIN_VALUE);
+        assertSame(sampleList.get(1), sampleList.get(1));
+        assertEquals(-60, sampleList.latestValue().value, Double.MIN_VALUE);
+        assertEquals(2000, sampleList.latest().secondsSinceUnixEpoch());
+        assertNull(sampleList.get(2));
+        assertNull(sampleList.get(-1));
+        // Cursor
+        final DoubleSampleRing.Cursor cursor = sampleList.cursor();
+        assertTrue(cursor.next());
+        assertEquals(1234567, cursor.taken());
+        assertTrue(cursor.next());
+        assertEquals(2000000, cursor.taken());
+        assertFalse(cursor.next());
+    }
+
+    @Test
+    public void aggregate() {
+        final Random random = new Random(0);
+        final SampleList<RSSI> sampleList = new SampleList<>(100);
+        for (int i=0; i<150; i++) {
+            sampleList.push(i, new RSSI(-99 + random.nextInt(90)));
+        }
+        // Primitive and fused path of DoubleAggregate gives same result as Sample path
+        final Summary<RSSI> summary = sampleList.aggregate(new Mean<RSSI>(), new Variance<RSSI>(), new Mode<RSSI>(), new Median<RSSI>(), new Gaussian<RSSI>());
+        final Summary<RSSI> summaryOfSamples = sampleList.aggregate(
+                new SampleAggregate<>(new Mean<RSSI>()), new SampleAggregate<>(new Variance<RSSI>()), new SampleAggregate<>(new Mode<RSSI>()),
+                new SampleAggregate<>(new Median<RSSI>()), new SampleAggregate<>(new Gaussian<RSSI>()));
+        // Fused aggregation sums squared deviations by value rather than by sample, thus variance
+        // may differ in the last digits
+        for (int i=0; i<5; i++) {
+            assertEquals(summaryOfSamples.get(i), summary.get(i), 1e-9);
+        }
+    }
+
+    @Test
+    public void performance() {
+        final int listSize = 60;
+        final int samples = 1000000;
+        final RSSI[] values = new RSSI[100];
+        for (int i=0; i<values.length; i++) {
+            values[i] = new RSSI(-i);
+        }
+        final Mean<RSSI> mean = new Mean<>();
+        final Variance<RSSI> variance = new Variance<>();
+        final SampleAggregate<RSSI> meanOfSamples = new SampleAggregate<>(mean);
+        final SampleAggregate<RSSI> varianceOfSamples = new SampleAggregate<>(variance);
+        for (int warmup=0; warmup<2; warmup++) {
+            // Push Sample objects and aggregate via Sample objects
+            final SampleList<RSSI> sampleList = new SampleList<>(listSize);
+            double checksum = 0;
+            long t0 = System.nanoTime();
+            for (int i=0; i<samples; i++) {
+                sampleList.push(new Sample<>(new Date(i), values[i % values.length]));
+                if (listSize - 1 == i % listSize) {
+                    meanOfSamples.reset();
+                    varianceOfSamples.reset();
+                    checksum += sampleList.aggregate(meanOfSamples, varianceOfSamples).get(1);
+                }
+            }
+            final long elapsedSamples = System.nanoTime() - t0;
+            // Push primitive samples and aggregate via primitive samples
+            final SampleList<RSSI> ringList = new SampleList<>(listSize);
+            t0 = System.nanoTime();
+            for (int i=0; i<samples; i++) {
+                ringList.push(i, values[i % values.length]);
+                if (listSize - 1 == i % listSize) {
+                    mean.reset();
+                    variance.reset();
+                    checksum -= ringList.aggregate(mean, variance).get(1);
+                }
+            }
+            final long elapsedRing = System.nanoTime() - t0;
+            if (warmup == 1) {
+                System.out.println("push+aggregate,samples=" + (elapsedSamples / samples) + "ns,ring=" + (elapsedRing / samples) + "ns,checksum=" + checksum);
+            }
+        }
+    }
+
+    /**
+     * Aggregate that only accepts Sample objects, for comparing with primitive path.
+     */
+    private final static class SampleAggregate<T extends DoubleValue> implements Aggregate<T> {
+        private final Aggregate<T> aggregate;
+
+        private SampleAggregate(@NonNull final Aggregate<T> aggregate) {
+            this.aggregate = aggregate;
+        }
+
+        @Override
+        public int runs() {
+            return aggregate.runs();
+        }
+
+        @Override
+        public void beginRun(int thisRun) {
+            aggregate.beginRun(thisRun);
+        }
+
+        @Override
+        public void map(@NonNull Sample<T> value) {
+            aggregate.map(value);
+        }
+
+        @Nullable
+        @Override
+        public Double reduce() {
+            return aggregate.reduce();
+        }
+
+        @Override
+        public void reset() {
+            aggregate.reset();
+        }
+    }
+}
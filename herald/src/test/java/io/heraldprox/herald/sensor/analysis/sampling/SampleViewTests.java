@@ -0,0 +1,178 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.sampling;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import io.heraldprox.herald.sensor.analysis.aggregates.Mean;
+import io.heraldprox.herald.sensor.analysis.aggregates.Median;
+import io.heraldprox.herald.sensor.analysis.aggregates.Mode;
+import io.heraldprox.herald.sensor.analysis.aggregates.Variance;
+import io.heraldprox.herald.sensor.analysis.views.InPeriod;
+import io.heraldprox.herald.sensor.analysis.views.InRange;
+import io.heraldprox.herald.sensor.analysis.views.Since;
+import io.heraldprox.herald.sensor.analysis.views.Until;
+import io.heraldprox.herald.sensor.datatype.Date;
+import io.heraldprox.herald.sensor.datatype.RSSI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("ConstantConditions")
+public class SampleViewTests {
+
+    @Test
+    public void binarySearch() {
+        final DoubleSampleRing ring = new DoubleSampleRing(5);
+        for (int i=0; i<8; i++) {
+            ring.push(1000 * (i / 2), i);
+        }
+        // Ring contains times 1000,2000,2000,3000,3000 after wrap around
+        assertTrue(ring.ordered());
+        assertEquals(0, ring.indexNotBefore(0, 0, 5));
+        assertEquals(1, ring.indexNotBefore(2000, 0, 5));
+        assertEquals(3, ring.indexNotBefore(2500, 0, 5));
+        assertEquals(5, ring.indexNotBefore(4000, 0, 5));
+        assertEquals(0, ring.indexAfter(500, 0, 5));
+        assertEquals(3, ring.indexAfter(2000, 0, 5));
+        assertEquals(5, ring.indexAfter(3000, 0, 5));
+        // Out of order push
+        ring.push(0, 0);
+        assertFalse(ring.ordered());
+        ring.clear();
+        assertTrue(ring.ordered());
+    }
+
+    @Test
+    public void timeFilter() {
+        final SampleList<RSSI> list = new SampleList<>(10);
+        for (int i=0; i<15; i++) {
+            list.push(i, new RSSI(-50 - i));
+        }
+        // List contains times 5 to 14
+        assertView(list, list.filter(new Since<RSSI>(8)), 8, 14);
+        assertView(list, list.filter(new Until<RSSI>(8)), 5, 8);
+        assertView(list, list.filter(new InPeriod<RSSI>(7, 9)), 7, 9);
+        assertView(list, list.filter(new Since<RSSI>(0)), 5, 14);
+        assertView(list, list.filter(new Since<RSSI>(8)).filter(new Until<RSSI>(11)), 8, 11);
+        assertEquals(0, list.filter(new Since<RSSI>(20)).size());
+        assertNull(list.filter(new Since<RSSI>(20)).get(0));
+        assertNull(list.filter(new Since<RSSI>(20)).latest());
+        // Unordered list falls back to testing every sample
+        final SampleList<RSSI> unordered = new SampleList<>(10);
+        for (int i=0; i<10; i++) {
+            unordered.push((i * 7) % 10, new RSSI(-50 - i));
+        }
+        assertFalse(unordered.ring().ordered());
+        final SampleView<RSSI> view = unordered.filter(new Since<RSSI>(5));
+        assertEquals(5, view.size());
+        for (int i=0; i<view.size(); i++) {
+            assertTrue(view.get(i).taken().secondsSinceUnixEpoch() >= 5);
+        }
+    }
+
+    @Test
+    public void valueFilter() {
+        final SampleList<RSSI> list = new SampleList<>(10);
+        for (int i=0; i<10; i++) {
+            list.push(i, new RSSI(-50 - (i % 4) * 10));
+        }
+        // Values -50,-60,-70,-80,-50,-60,-70,-80,-50,-60
+        final SampleView<RSSI> view = list.filter(new InRange<RSSI>(-65, -45)).filter(new Since<RSSI>(3));
+        assertEquals(4, view.size());
+        assertSame(list.get(4), view.get(0));
+        assertSame(list.get(5), view.get(1));
+        assertSame(list.get(8), view.get(2));
+        assertSame(list.get(9), view.get(3));
+        assertNull(view.get(4));
+        assertEquals(9, view.latest().secondsSinceUnixEpoch());
+        // Iteration gives same samples as get
+        int count = 0;
+        final SampleView<RSSI> iterated = list.filter(new InRange<RSSI>(-65, -45)).filter(new Since<RSSI>(3));
+        while (iterated.hasNext()) {
+            assertSame(view.get(count++), iterated.next());
+        }
+        assertEquals(4, count);
+        // Non-primitive filter
+        final SampleView<RSSI> odd = view.filter(new Filter<RSSI>() {
+            @Override
+            public boolean test(@NonNull Sample<RSSI> item) {
+                return 1 == item.taken().secondsSinceUnixEpoch() % 2;
+            }
+        });
+        assertEquals(2, odd.size());
+        assertSame(list.get(5), odd.get(0));
+        assertSame(list.get(9), odd.get(1));
+    }
+
+    @Test
+    public void aggregate() {
+        final Random random = new Random(0);
+        final SampleList<RSSI> list = new SampleList<>(100);
+        for (int i=0; i<150; i++) {
+            list.push(i, new RSSI(-99 + random.nextInt(100)));
+        }
+        final Filter<RSSI> valid = new InRange<>(-99, -10);
+        final Filter<RSSI> recent = new Since<>(100);
+        // View gives same result as copy
+        final SampleView<RSSI> view = list.filter(valid).filter(recent);
+        final SampleList<RSSI> copy = list.filter(valid).filter(recent).toView();
+        assertEquals(copy.size(), view.size());
+        assertEquals(copy.latest().getTime(), view.latest().getTime());
+        final Summary<RSSI> summaryOfView = view.aggregate(new Mean<RSSI>(), new Variance<RSSI>(), new Mode<RSSI>(), new Median<RSSI>());
+        final Summary<RSSI> summaryOfCopy = copy.aggregate(new Mean<RSSI>(), new Variance<RSSI>(), new Mode<RSSI>(), new Median<RSSI>());
+        for (int i=0; i<4; i++) {
+            assertEquals(summaryOfCopy.get(i), summaryOfView.get(i), Double.MIN_VALUE);
+        }
+    }
+
+    @Test
+    public void performance() {
+        final int listSize = 1000;
+        final int repeats = 10000;
+        final SampleList<RSSI> list = new SampleList<>(listSize);
+        for (int i=0; i<listSize; i++) {
+            list.push(i, new RSSI(-99 + (i % 100)));
+        }
+        final Filter<RSSI> valid = new InRange<>(-99, -10);
+        final Filter<RSSI> recent = new Since<>(listSize - 60);
+        final Mean<RSSI> mean = new Mean<>();
+        for (int warmup=0; warmup<2; warmup++) {
+            double checksum = 0;
+            long t0 = System.nanoTime();
+            for (int i=0; i<repeats; i++) {
+                // Iterate, test and copy all samples, as before views
+                mean.reset();
+                checksum += new IteratorProxy<>(list.iterator(), valid).filter(recent).toView().aggregate(mean).get(0);
+            }
+            final long elapsedCopy = System.nanoTime() - t0;
+            t0 = System.nanoTime();
+            for (int i=0; i<repeats; i++) {
+                mean.reset();
+                checksum -= list.filter(valid).filter(recent).aggregate(mean).get(0);
+            }
+            final long elapsedView = System.nanoTime() - t0;
+            if (warmup == 1) {
+                System.out.println("filter+aggregate,copy=" + (elapsedCopy / repeats) + "ns,view=" + (elapsedView / repeats) + "ns,checksum=" + checksum);
+            }
+        }
+    }
+
+    private static void assertView(@NonNull final SampleList<RSSI> list, @NonNull final SampleView<RSSI> view, final long fromSeconds, final long toSeconds) {
+        assertEquals(toSeconds - fromSeconds + 1, view.size());
+        for (int i=0; i<view.size(); i++) {
+            assertEquals(fromSeconds + i, view.get(i).taken().secondsSinceUnixEpoch());
+            assertSame(list.get((int) (fromSeconds - list.get(0).taken().secondsSinceUnixEpoch() + i)), view.get(i));
+        }
+        assertEquals(new Date(toSeconds).getTime(), view.latest().getTime());
+    }
+}
@@ -0,0 +1,245 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.sampling;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import io.heraldprox.herald.sensor.analysis.aggregates.Gaussian;
+import io.heraldprox.herald.sensor.analysis.aggregates.Mean;
+import io.heraldprox.herald.sensor.analysis.aggregates.Median;
+import io.heraldprox.herald.sensor.analysis.aggregates.Mode;
+import io.heraldprox.herald.sensor.analysis.aggregates.Variance;
+import io.heraldprox.herald.sensor.analysis.views.InRange;
+import io.heraldprox.herald.sensor.datatype.Distance;
+import io.heraldprox.herald.sensor.datatype.DoubleValue;
+import io.heraldprox.herald.sensor.datatype.RSSI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("ConstantConditions")
+public class StatisticsTests {
+
+    @Test
+    public void statistics() {
+        final Statistics statistics = new Statistics();
+        statistics.reset(Statistics.sum | Statistics.histogram);
+        assertEquals(0, statistics.count());
+        assertNull(statistics.mean());
+        assertNull(statistics.mode());
+        assertNull(statistics.median());
+        // values = -60, -62, -68, -68
+        statistics.add(-60);
+        statistics.add(-62);
+        statistics.add(-68);
+        statistics.add(-68);
+        assertEquals(4, statistics.count());
+        assertEquals(-258, statistics.sum(), Double.MIN_VALUE);
+        assertEquals(-64.5, statistics.mean(), Double.MIN_VALUE);
+        assertEquals(51, statistics.sumOfSquaredDeviations(), Double.MIN_VALUE);
+        assertEquals(-68, statistics.mode(), Double.MIN_VALUE);
+        assertEquals(-65, statistics.median(), Double.MIN_VALUE);
+        assertTrue(statistics.selected(Statistics.sum));
+        assertFalse(statistics.selected(Statistics.sum | Statistics.minMax));
+        // Equally frequent values selects largest value as mode
+        statistics.add(-60);
+        assertEquals(-60, statistics.mode(), Double.MIN_VALUE);
+        // Histogram is unavailable for non-integer and out of range values
+        statistics.add(-60.5);
+        assertFalse(statistics.histogramAvailable());
+        assertNull(statistics.mode());
+        statistics.reset(Statistics.histogram);
+        statistics.add(128);
+        assertFalse(statistics.histogramAvailable());
+        // Reset clears histogram
+        statistics.reset(Statistics.histogram | Statistics.minMax | Statistics.sumOfSquares);
+        assertTrue(statistics.histogramAvailable());
+        statistics.add(1);
+        statistics.add(3);
+        assertEquals(2, statistics.count());
+        assertEquals(3, statistics.mode(), Double.MIN_VALUE);
+        assertEquals(2, statistics.median(), Double.MIN_VALUE);
+        assertEquals(1, statistics.min(), Double.MIN_VALUE);
+        assertEquals(3, statistics.max(), Double.MIN_VALUE);
+    }
+
+    @Test
+    public void fused() {
+        final Random random = new Random(0);
+        // Integer values use histogram for mode and median
+        final SampleList<RSSI> rssiList = new SampleList<>(100);
+        for (int i=0; i<100; i++) {
+            rssiList.push(i, new RSSI(-99 + random.nextInt(100)));
+        }
+        assertFused(rssiList);
+        // Non-integer values fall back to mapping samples for mode and median
+        final SampleList<Distance> distanceList = new SampleList<>(100);
+        for (int i=0; i<100; i++) {
+            distanceList.push(i, new Distance(random.nextInt(20) / 4d));
+        }
+        assertFused(distanceList);
+        // Empty list
+        final Summary<RSSI> summary = new SampleList<RSSI>(10).aggregate(new Mean<RSSI>(), new Variance<RSSI>(), new Mode<RSSI>(), new Median<RSSI>(), new Gaussian<RSSI>());
+        for (int i=0; i<5; i++) {
+            assertNull(summary.get(i));
+        }
+    }
+
+    @Test
+    public void fusedView() {
+        final Random random = new Random(0);
+        final SampleList<RSSI> list = new SampleList<>(100);
+        for (int i=0; i<100; i++) {
+            list.push(i, new RSSI(-99 + random.nextInt(100)));
+        }
+        final Filter<RSSI> filter = new InRange<>(-80, -20);
+        final Summary<RSSI> summary = list.filter(filter).aggregate(new Mean<RSSI>(), new Variance<RSSI>(), new Mode<RSSI>(), new Median<RSSI>());
+        final Summary<RSSI> summaryOfSamples = list.filter(filter).aggregate(
+                new SampleAggregate<>(new Mean<RSSI>()), new SampleAggregate<>(new Variance<RSSI>()),
+                new SampleAggregate<>(new Mode<RSSI>()), new SampleAggregate<>(new Median<RSSI>()));
+        for (int i=0; i<4; i++) {
+            assertEquals(summaryOfSamples.get(i), summary.get(i), 1e-9);
+        }
+    }
+
+    @Test
+    public void mappedAggregateIsNotReduced() {
+        // Aggregate that has already mapped samples continues to map samples
+        final SampleList<RSSI> list = new SampleList<>(10);
+        list.push(0, new RSSI(-50));
+        list.push(1, new RSSI(-60));
+        final Mean<RSSI> mean = new Mean<>();
+        final Mode<RSSI> mode = new Mode<>();
+        list.aggregate(mean, mode);
+        final Summary<RSSI> summary = list.aggregate(mean, mode);
+        assertEquals(-55, summary.get(Mean.class), Double.MIN_VALUE);
+        assertEquals(-50, summary.get(Mode.class), Double.MIN_VALUE);
+        // Reset enables reduction again
+        mode.reset();
+        list.push(2, new RSSI(-60));
+        assertEquals(-60, list.aggregate(mode).get(0), Double.MIN_VALUE);
+    }
+
+    @Test
+    public void reducedAggregateAccumulates() {
+        // Aggregates reduced from statistics and reused without reset accumulate new samples
+        final SampleList<RSSI> first = new SampleList<>(10);
+        first.push(0, new RSSI(-50));
+        first.push(1, new RSSI(-50));
+        first.push(2, new RSSI(-60));
+        final Mean<RSSI> mean = new Mean<>();
+        final Median<RSSI> median = new Median<>();
+        final Mode<RSSI> mode = new Mode<>();
+        assertEquals(-50, first.aggregate(mean, median, mode).get(Median.class), Double.MIN_VALUE);
+        final SampleList<RSSI> second = new SampleList<>(10);
+        second.push(3, new RSSI(-70));
+        final Summary<RSSI> summary = second.aggregate(mean, median, mode);
+        assertEquals(-57.5, summary.get(Mean.class), Double.MIN_VALUE);
+        assertEquals(-55, summary.get(Median.class), Double.MIN_VALUE);
+        assertEquals(-50, summary.get(Mode.class), Double.MIN_VALUE);
+        // Mapping samples directly also accumulates until reset
+        median.reset();
+        first.aggregate(median);
+        median.map(4, -80);
+        assertEquals(-55, median.reduce(), Double.MIN_VALUE);
+        median.reset();
+        median.map(5, -80);
+        assertEquals(-80, median.reduce(), Double.MIN_VALUE);
+    }
+
+    @Test
+    public void performance() {
+        final int listSize = 60;
+        final int repeats = 100000;
+        final SampleList<RSSI> list = new SampleList<>(listSize);
+        for (int i=0; i<listSize; i++) {
+            list.push(i, new RSSI(-99 + (i * 7) % 90));
+        }
+        final Mean<RSSI> mean = new Mean<>();
+        final Variance<RSSI> variance = new Variance<>();
+        final Mode<RSSI> mode = new Mode<>();
+        final Median<RSSI> median = new Median<>();
+        final Gaussian<RSSI> gaussian = new Gaussian<>();
+        final Aggregate<RSSI>[] fused = new Aggregate[]{mean, variance, mode, median, gaussian};
+        final Aggregate<RSSI>[] mapped = new Aggregate[]{new SampleAggregate<>(mean), new SampleAggregate<>(variance),
+                new SampleAggregate<>(mode), new SampleAggregate<>(median), new SampleAggregate<>(gaussian)};
+        for (int warmup=0; warmup<2; warmup++) {
+            double checksum = 0;
+            long t0 = System.nanoTime();
+            for (int i=0; i<repeats; i++) {
+                for (final Aggregate<RSSI> aggregate : mapped) {
+                    aggregate.reset();
+                }
+                checksum += list.aggregate(mapped).get(3);
+            }
+            final long elapsedMapped = System.nanoTime() - t0;
+            t0 = System.nanoTime();
+            for (int i=0; i<repeats; i++) {
+                for (final Aggregate<RSSI> aggregate : fused) {
+                    aggregate.reset();
+                }
+                checksum -= list.aggregate(fused).get(3);
+            }
+            final long elapsedFused = System.nanoTime() - t0;
+            if (warmup == 1) {
+                System.out.println("aggregate,mapped=" + (elapsedMapped / repeats) + "ns,fused=" + (elapsedFused / repeats) + "ns,checksum=" + checksum);
+            }
+        }
+    }
+
+    private static <T extends DoubleValue> void assertFused(@NonNull final SampleList<T> list) {
+        final Summary<T> summary = list.aggregate(new Mean<T>(), new Variance<T>(), new Mode<T>(), new Median<T>(), new Gaussian<T>());
+        final Summary<T> summaryOfSamples = list.aggregate(
+                new SampleAggregate<>(new Mean<T>()), new SampleAggregate<>(new Variance<T>()), new SampleAggregate<>(new Mode<T>()),
+                new SampleAggregate<>(new Median<T>()), new SampleAggregate<>(new Gaussian<T>()));
+        for (int i=0; i<5; i++) {
+            assertEquals(summaryOfSamples.get(i), summary.get(i), 1e-9);
+        }
+    }
+
+    /**
+     * Aggregate that only accepts Sample objects, for comparing with fused path.
+     */
+    private final static class SampleAggregate<T extends DoubleValue> implements Aggregate<T> {
+        private final Aggregate<T> aggregate;
+
+        private SampleAggregate(@NonNull final Aggregate<T> aggregate) {
+            this.aggregate = aggregate;
+        }
+
+        @Override
+        public int runs() {
+            return aggregate.runs();
+        }
+
+        @Override
+        public void beginRun(int thisRun) {
+            aggregate.beginRun(thisRun);
+        }
+
+        @Override
+        public void map(@NonNull Sample<T> value) {
+            aggregate.map(value);
+        }
+
+        @Nullable
+        @Override
+        public Double reduce() {
+            return aggregate.reduce();
+        }
+
+        @Override
+        public void reset() {
+            aggregate.reset();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import io.heraldprox.herald.sensor.datatype.Calibration;
+import io.heraldprox.herald.sensor.datatype.CalibrationMeasurementUnit;
+import io.heraldprox.herald.sensor.datatype.Encounter;
+import io.heraldprox.herald.sensor.datatype.PayloadData;
+import io.heraldprox.herald.sensor.datatype.Proximity;
+import io.heraldprox.herald.sensor.datatype.ProximityMeasurementUnit;
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("ConstantConditions")
+public class BinaryEncounterCodecTests {
+
+    @NonNull
+    private static List<Encounter> encounters(final int count) {
+        final List<Encounter> encounters = new ArrayList<>(count);
+        for (int i=0; i<count; i++) {
+            final Proximity proximity;
+            switch (i % 4) {
+                case 0:
+                    proximity = new Proximity(ProximityMeasurementUnit.RSSI, (double) -(i % 100));
+                    break;
+                case 1:
+                    proximity = new Proximity(ProximityMeasurementUnit.RSSI, (double) -(i % 100), new Calibration(CalibrationMeasurementUnit.BLETransmitPower, 12d));
+                    break;
+                case 2:
+                    proximity = new Proximity(ProximityMeasurementUnit.RTT, 0.125 * i, new Calibration(CalibrationMeasurementUnit.BLETransmitPower, -1000.5));
+                    break;
+                default:
+                    proximity = new Proximity(ProximityMeasurementUnit.RSSI, -0d);
+                    break;
+            }
+            final PayloadData payload = new PayloadData((byte) (i % 7), 10 + (i % 7));
+            encounters.add(new Encounter(proximity, payload, new Date(1600000000000L + i * 1500L - (i % 5) * 7)));
+        }
+        return encounters;
+    }
+
+    private static void assertEncountersEqual(@NonNull final List<Encounter> expected, @NonNull final List<Encounter> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i=0; i<expected.size(); i++) {
+            assertEquals(expected.get(i).timestamp, actual.get(i).timestamp);
+            assertEquals(expected.get(i).proximity, actual.get(i).proximity);
+            assertEquals(expected.get(i).payload, actual.get(i).payload);
+        }
+    }
+
+    @Test
+    public void testWriteRead() {
+        final File file = new File("BinaryEncounterCodecTests.testWriteRead.heb");
+        final BinaryEncounterCodec codec = new BinaryEncounterCodec(16);
+        final List<Encounter> encounters = encounters(100);
+        assertTrue(codec.write(file, encounters));
+        assertEncountersEqual(encounters, codec.read(file));
+        // Empty file
+        assertTrue(codec.write(file, new ArrayList<Encounter>()));
+        assertEquals(0, codec.read(file).size());
+        assertTrue(file.delete());
+    }
+
+    @Test
+    public void testAppend() {
+        final File file = new File("BinaryEncounterCodecTests.testAppend.heb");
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        final BinaryEncounterCodec codec = new BinaryEncounterCodec(16);
+        final List<Encounter> encounters = encounters(40);
+        EncounterCodec.Appender appender = codec.appender(file);
+        for (int i=0; i<20; i++) {
+            assertTrue(appender.append(encounters.get(i)));
+        }
+        // Only full blocks are written before flush
+        assertEquals(16, codec.read(file).size());
+        assertTrue(appender.flush());
+        assertEquals(20, codec.read(file).size());
+        appender.close();
+        // Reopen existing file
+        appender = codec.appender(file);
+        for (int i=20; i<40; i++) {
+            assertTrue(appender.append(encounters.get(i)));
+        }
+        appender.close();
+        assertEncountersEqual(encounters, codec.read(file));
+        // Failed flush retains encounters and leaves file readable
+        assertTrue(appender.append(encounters.get(0)));
+        assertFalse(appender.flush());
+        assertFalse(appender.flush());
+        assertEncountersEqual(encounters, codec.read(file));
+        assertTrue(file.delete());
+    }
+
+    @Test
+    public void testTruncatedBlock() throws Exception {
+        final File file = new File("BinaryEncounterCodecTests.testTruncatedBlock.heb");
+        final BinaryEncounterCodec codec = new BinaryEncounterCodec(16);
+        assertTrue(codec.write(file, encounters(40)));
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(file.length() - 1);
+        randomAccessFile.close();
+        // Last block is ignored
+        assertEquals(32, codec.read(file).size());
+        assertTrue(file.delete());
+    }
+
+    @Test
+    public void testAppendAfterTruncatedBlock() throws Exception {
+        final File file = new File("BinaryEncounterCodecTests.testAppendAfterTruncatedBlock.heb");
+        final BinaryEncounterCodec codec = new BinaryEncounterCodec(16);
+        final List<Encounter> encounters = encounters(48);
+        assertTrue(codec.write(file, encounters.subList(0, 32)));
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(file.length() - 1);
+        randomAccessFile.close();
+        // Incomplete block is truncated before appending
+        final EncounterCodec.Appender appender = codec.appender(file);
+        for (int i=32; i<48; i++) {
+            assertTrue(appender.append(encounters.get(i)));
+        }
+        appender.close();
+        final List<Encounter> expected = new ArrayList<>(encounters.subList(0, 16));
+        expected.addAll(encounters.subList(32, 48));
+        assertEncountersEqual(expected, codec.read(file));
+        assertTrue(file.delete());
+    }
+
+    @Test
+    public void testAppendWriteDelay() throws Exception {
+        final File file = new File("BinaryEncounterCodecTests.testAppendWriteDelay.heb");
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        final BinaryEncounterCodec codec = new BinaryEncounterCodec(16, 1);
+        final List<Encounter> encounters = encounters(5);
+        final EncounterCodec.Appender appender = codec.appender(file);
+        for (final Encounter encounter : encounters) {
+            assertTrue(appender.append(encounter));
+        }
+        assertEquals(0, codec.read(file).size());
+        // Partial block is flushed by shared scheduler after write delay
+        for (int i=0; i<50 && codec.read(file).size() < encounters.size(); i++) {
+            Thread.sleep(100);
+        }
+        assertEncountersEqual(encounters, codec.read(file));
+        appender.close();
+        assertTrue(file.delete());
+    }
+
+    @Test
+    public void testConvert() {
+        final File csv = new File("BinaryEncounterCodecTests.testConvert.csv");
+        final File heb = new File("BinaryEncounterCodecTests.testConvert.heb");
+        final CSVEncounterCodec csvCodec = new CSVEncounterCodec();
+        final BinaryEncounterCodec binaryCodec = new BinaryEncounterCodec();
+        final List<Encounter> encounters = encounters(1000);
+        assertTrue(csvCodec.write(csv, encounters));
+        final List<Encounter> expected = csvCodec.read(csv);
+        assertEquals(1000, EncounterStore.convert(csv, csvCodec, heb, binaryCodec));
+        assertEncountersEqual(expected, binaryCodec.read(heb));
+        System.out.println("convert,encounters=1000,csv=" + csv.length() + "B,binary=" + heb.length() + "B");
+        assertTrue(heb.length() * 4 < csv.length());
+        assertTrue(csv.delete());
+        assertTrue(heb.delete());
+    }
+
+    @Test
+    public void testStoreConvert() {
+        final File folder = new File("BinaryEncounterCodecTests.testStoreConvert");
+        final EncounterStore csvStore = new EncounterStore(folder, "test", TimeInterval.hour);
+        csvStore.reset();
+        final List<Encounter> encounters = encounters(5000);
+        for (final Encounter encounter : encounters) {
+            csvStore.append(encounter);
+        }
+        csvStore.close();
+        final int segments = csvStore.segments();
+        // CSV files hold timestamps at one second resolution
+        final List<Encounter> expected = new EncounterStore(folder, "test", TimeInterval.hour).subdata(0);
+        final EncounterStore binaryStore = new EncounterStore(folder, "test", TimeInterval.hour, new BinaryEncounterCodec());
+        assertEquals(0, binaryStore.segments());
+        assertEquals(5000, binaryStore.convert(new CSVEncounterCodec()));
+        assertEquals(segments, binaryStore.segments());
+        for (final File file : folder.listFiles()) {
+            assertFalse(file.getName().endsWith(".csv"));
+        }
+        binaryStore.close();
+        // Lazy loading of binary segments
+        final EncounterStore reloaded = new EncounterStore(folder, "test", TimeInterval.hour, new BinaryEncounterCodec());
+        assertEquals(segments, reloaded.segments());
+        assertEquals(0, reloaded.loadedSegments());
+        assertEncountersEqual(expected, reloaded.subdata(0));
+        reloaded.reset();
+        assertEquals(0, folder.listFiles().length);
+        assertTrue(folder.delete());
+    }
+
+    @Test
+    public void testReadPerformance() {
+        final File csv = new File("BinaryEncounterCodecTests.testReadPerformance.csv");
+        final File heb = new File("BinaryEncounterCodecTests.testReadPerformance.heb");
+        final CSVEncounterCodec csvCodec = new CSVEncounterCodec();
+        final BinaryEncounterCodec binaryCodec = new BinaryEncounterCodec();
+        final List<Encounter> encounters = encounters(100000);
+        assertTrue(csvCodec.write(csv, encounters));
+        assertTrue(binaryCodec.write(heb, encounters));
+        // Warm up
+        assertNotNull(csvCodec.read(csv));
+        assertNotNull(binaryCodec.read(heb));
+        final long t0 = System.nanoTime();
+        assertEquals(100000, csvCodec.read(csv).size());
+        final long t1 = System.nanoTime();
+        assertEquals(100000, binaryCodec.read(heb).size());
+        final long t2 = System.nanoTime();
+        System.out.println("read,encounters=100000,csv=" + ((t1 - t0) / 1000000) + "ms/" + csv.length() + "B,binary=" + ((t2 - t1) / 1000000) + "ms/" + heb.length() + "B");
+        assertTrue(csv.delete());
+        assertTrue(heb.delete());
+    }
+}
@@ -1,10 +1,14 @@
 package io.heraldprox.herald.sensor.data;
 
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
 import static junit.framework.TestCase.assertTrue;
 
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import io.heraldprox.herald.sensor.ble.BLESensorConfiguration;
 
 public class ConcreteSensorLoggerTests {
@@ -109,4 +113,146 @@ public class ConcreteSensorLoggerTests {
         logFile.flush();
         assertTrue(logFile.contentsOf().endsWith(",debug,ConcreteSensorLoggerTests,render,\"msg3(p1=1,p2=2,p3=NULL)\"\n"));
     }
+
+    @Test
+    public void isEnabled() {
+        final SensorLogger logger = new ConcreteSensorLogger("ConcreteSensorLoggerTests", "isEnabled");
+        BLESensorConfiguration.logLevel = SensorLoggerLevel.debug;
+        assertTrue(logger.isDebugEnabled());
+        assertTrue(logger.isInfoEnabled());
+        assertTrue(logger.isFaultEnabled());
+        BLESensorConfiguration.logLevel = SensorLoggerLevel.info;
+        assertFalse(logger.isDebugEnabled());
+        assertTrue(logger.isInfoEnabled());
+        assertTrue(logger.isFaultEnabled());
+        BLESensorConfiguration.logLevel = SensorLoggerLevel.fault;
+        assertFalse(logger.isDebugEnabled());
+        assertFalse(logger.isInfoEnabled());
+        assertTrue(logger.isFaultEnabled());
+        BLESensorConfiguration.logLevel = SensorLoggerLevel.off;
+        assertFalse(logger.isDebugEnabled());
+        assertFalse(logger.isInfoEnabled());
+        assertFalse(logger.isFaultEnabled());
+    }
+
+    @Test
+    public void parameter() {
+        final TextFile logFile = new TextFileBuffer();
+        ConcreteSensorLogger.logFile(logFile);
+        final SensorLogger logger = new ConcreteSensorLogger("ConcreteSensorLoggerTests", "parameter");
+        final AtomicInteger evaluated = new AtomicInteger(0);
+        final SensorLogger.Parameter parameter = new SensorLogger.Parameter() {
+            @Override
+            public Object value() {
+                evaluated.incrementAndGet();
+                return "value";
+            }
+        };
+        // Parameter is not evaluated when message is suppressed
+        BLESensorConfiguration.logLevel = SensorLoggerLevel.info;
+        logger.debug("msg(p1={})", parameter);
+        logFile.flush();
+        assertEquals(0, evaluated.get());
+        assertEquals(0, logFile.lines().size());
+        // Parameter is evaluated once when message is rendered
+        BLESensorConfiguration.logLevel = SensorLoggerLevel.debug;
+        logger.debug("msg(p1={})", parameter);
+        logFile.flush();
+        assertEquals(1, evaluated.get());
+        assertTrue(logFile.contentsOf().endsWith(",debug,ConcreteSensorLoggerTests,parameter,msg(p1=value)\n"));
+        // Values that log while being rendered do not corrupt the message
+        final Object nested = new Object() {
+            @Override
+            public String toString() {
+                logger.info("nested(p1={})", "inner");
+                return "outer";
+            }
+        };
+        logger.debug("msg(p1={},p2={})", nested, "\"quoted\"");
+        logFile.flush();
+        assertTrue(logFile.contentsOf().contains(",info,ConcreteSensorLoggerTests,parameter,nested(p1=inner)\n"));
+        assertTrue(logFile.contentsOf().endsWith(",debug,ConcreteSensorLoggerTests,parameter,\"msg(p1=outer,p2='quoted')\"\n"));
+    }
+
+    @Test
+    public void suppressedAllocation() {
+        final java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        // Allocation counter is only available on HotSpot based JVMs
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        final com.sun.management.ThreadMXBean allocationCounter = (com.sun.management.ThreadMXBean) threadMXBean;
+        if (!allocationCounter.isThreadAllocatedMemorySupported()) {
+            return;
+        }
+        allocationCounter.setThreadAllocatedMemoryEnabled(true);
+        final long threadId = Thread.currentThread().getId();
+        final TextFile logFile = new TextFileBuffer();
+        ConcreteSensorLogger.logFile(logFile);
+        BLESensorConfiguration.logLevel = SensorLoggerLevel.fault;
+        final SensorLogger logger = new ConcreteSensorLogger("ConcreteSensorLoggerTests", "suppressedAllocation");
+        final Object value0 = "value0", value1 = "value1", value2 = "value2";
+        final SensorLogger.Parameter parameter = new SensorLogger.Parameter() {
+            @Override
+            public Object value() {
+                return new StringBuilder("value").append(value0).toString();
+            }
+        };
+        final int calls = 100000;
+        long allocated = 0;
+        for (int repeat=0; repeat<3; repeat++) {
+            final long t0 = allocationCounter.getThreadAllocatedBytes(threadId);
+            for (int i=0; i<calls; i++) {
+                logger.debug("debug");
+                logger.debug("debug(p1={})", value0);
+                logger.debug("debug(p1={},p2={})", value0, value1);
+                logger.info("info(p1={},p2={},p3={})", value0, value1, value2);
+                logger.info("info(p1={})", parameter);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("debug(p1={},p2={},p3={},p4={})", value0, value1, value2, new StringBuilder().append(i).toString());
+                }
+            }
+            allocated = allocationCounter.getThreadAllocatedBytes(threadId) - t0;
+        }
+        System.out.println("suppressedAllocation(calls=" + (calls * 6) + ",allocated=" + allocated + "bytes)");
+        // Allow for allocation by the measurement itself, but not per call
+        assertTrue(allocated < calls);
+        logFile.flush();
+        assertEquals(0, logFile.lines().size());
+    }
+
+    @Test
+    public void varargsOnlyImplementation() {
+        // Implementations providing only the varargs methods receive all calls
+        final StringBuilder log = new StringBuilder();
+        final SensorLogger logger = new SensorLogger() {
+            @Override
+            public void reset() {
+            }
+
+            @Override
+            public void debug(final String message, final Object... values) {
+                log.append("debug,").append(message).append(',').append(values.length).append('\n');
+            }
+
+            @Override
+            public void info(final String message, final Object... values) {
+                log.append("info,").append(message).append(',').append(values.length).append('\n');
+            }
+
+            @Override
+            public void fault(final String message, final Object... values) {
+                log.append("fault,").append(message).append(',').append(values.length).append('\n');
+            }
+        };
+        assertTrue(logger.isDebugEnabled());
+        assertTrue(logger.isInfoEnabled());
+        assertTrue(logger.isFaultEnabled());
+        logger.debug("a");
+        logger.info("b", 1);
+        logger.fault("c", 1, 2);
+        logger.debug("d", 1, 2, 3);
+        logger.info("e", 1, 2, 3, 4);
+        assertEquals("debug,a,0\ninfo,b,1\nfault,c,2\ndebug,d,3\ninfo,e,4\n", log.toString());
+    }
 }
@@ -1,6 +1,7 @@
 package io.heraldprox.herald.sensor.data;
 
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
 
 import org.junit.Test;
 
@@ -10,6 +11,7 @@ import io.heraldprox.herald.sensor.datatype.PayloadData;
 import io.heraldprox.herald.sensor.datatype.SensorState;
 import io.heraldprox.herald.sensor.datatype.SensorType;
 import io.heraldprox.herald.sensor.datatype.TargetIdentifier;
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
 
 public class DetectionLogTests {
 
@@ -34,4 +36,22 @@ public class DetectionLogTests {
         detectionLog.sensor(SensorType.BLE, SensorState.on);
         assertEquals("NULL,Android,0,aaaa,bbbb,cccc,dddd,eeee,ffff\n", logFile.contentsOf());
     }
+
+    @Test
+    public void debounce() {
+        final TextFile logFile = new TextFileBuffer();
+        final DetectionLog detectionLog = new DetectionLog(logFile, new PayloadData("aaaaaaaa"), TimeInterval.minute);
+        assertTrue(logFile.contentsOf().endsWith(",Android,0,aaaa\n"));
+        // Burst of shared payloads is held in memory until snapshot
+        detectionLog.sensor(SensorType.BLE, Arrays.asList(new PayloadData("eeee"), new PayloadData("cccc"), new PayloadData("dddd")), new TargetIdentifier("G"));
+        detectionLog.sensor(SensorType.BLE, new PayloadData("bbbbbbbb"), new TargetIdentifier("B"));
+        assertTrue(logFile.contentsOf().endsWith(",Android,0,aaaa\n"));
+        detectionLog.snapshot();
+        assertTrue(logFile.contentsOf().endsWith(",Android,0,aaaa,bbbb,cccc,dddd,eeee\n"));
+        // Stored payloads are loaded on construction
+        final DetectionLog reloaded = new DetectionLog(logFile, new PayloadData("aaaaaaaa"), TimeInterval.minute);
+        reloaded.sensor(SensorType.BLE, new PayloadData("ffff"), new TargetIdentifier("F"));
+        reloaded.snapshot();
+        assertTrue(logFile.contentsOf().endsWith(",Android,0,aaaa,bbbb,cccc,dddd,eeee,ffff\n"));
+    }
 }
@@ -0,0 +1,155 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Date;
+import java.util.List;
+
+import io.heraldprox.herald.sensor.datatype.Encounter;
+import io.heraldprox.herald.sensor.datatype.PayloadData;
+import io.heraldprox.herald.sensor.datatype.Proximity;
+import io.heraldprox.herald.sensor.datatype.ProximityMeasurementUnit;
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("ConstantConditions")
+public class EncounterStoreTests {
+    private final static long hour = 60 * 60 * 1000;
+
+    @NonNull
+    private static Encounter encounter(final long time) {
+        return new Encounter(new Proximity(ProximityMeasurementUnit.RSSI, -50d), new PayloadData((byte) 1, 8), new Date(time));
+    }
+
+    @NonNull
+    private static File folder(@NonNull final String name) {
+        final File folder = new File("EncounterStoreTests." + name);
+        final File[] files = folder.listFiles();
+        if (null != files) {
+            for (final File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        return folder;
+    }
+
+    private static void delete(@NonNull final File folder) {
+        folder(folder.getName().substring("EncounterStoreTests.".length()));
+        //noinspection ResultOfMethodCallIgnored
+        folder.delete();
+    }
+
+    @Test
+    public void testSubdata() {
+        final EncounterStore store = new EncounterStore();
+        // Three days, one encounter per hour, including out of order arrival
+        for (long i=0; i<72; i++) {
+            store.append(encounter(i * hour));
+        }
+        store.append(encounter(10 * hour + 1));
+        store.append(encounter(5 * hour + 1));
+        assertEquals(3, store.segments());
+        assertEquals(74, store.subdata(0).size());
+        assertEquals(0, store.subdata(0, 0).size());
+        assertEquals(1, store.subdata(0, 1).size());
+        // Range across segment boundary in time order
+        final List<Encounter> subdata = store.subdata(5 * hour, 30 * hour);
+        assertEquals(27, subdata.size());
+        for (int i=1; i<subdata.size(); i++) {
+            assertTrue(subdata.get(i - 1).timestamp.getTime() <= subdata.get(i).timestamp.getTime());
+        }
+        assertEquals(5 * hour, subdata.get(0).timestamp.getTime());
+        assertEquals(5 * hour + 1, subdata.get(1).timestamp.getTime());
+        assertEquals(29 * hour, subdata.get(subdata.size() - 1).timestamp.getTime());
+        assertEquals(1, store.subdata(71 * hour).size());
+        assertEquals(0, store.subdata(72 * hour).size());
+        // Encounters without timestamp are ignored
+        store.append(new Encounter(null, null, null));
+        assertEquals(74, store.subdata(0).size());
+    }
+
+    @Test
+    public void testRemove() {
+        final File folder = folder("testRemove");
+        final EncounterStore store = new EncounterStore(folder, "test", TimeInterval.day);
+        for (long i=0; i<72; i++) {
+            store.append(encounter(i * hour));
+        }
+        assertEquals(3, folder.listFiles().length);
+        // Whole segment deleted, boundary segment rewritten
+        store.remove(30 * hour);
+        assertEquals(2, store.segments());
+        assertEquals(2, folder.listFiles().length);
+        assertEquals(42, store.subdata(0).size());
+        assertEquals(30 * hour, store.subdata(0).get(0).timestamp.getTime());
+        store.close();
+        final EncounterStore reloaded = new EncounterStore(folder, "test", TimeInterval.day);
+        assertEquals(42, reloaded.subdata(0).size());
+        reloaded.reset();
+        assertEquals(0, reloaded.segments());
+        assertEquals(0, folder.listFiles().length);
+        delete(folder);
+    }
+
+    @Test
+    public void testLazyLoading() throws Exception {
+        final File folder = folder("testLazyLoading");
+        final EncounterStore store = new EncounterStore(folder, "test", TimeInterval.hour);
+        for (long i=0; i<24 * 60; i++) {
+            store.append(encounter(i * 60000));
+        }
+        store.close();
+        // Unrelated files are ignored
+        final FileOutputStream fileOutputStream = new FileOutputStream(new File(folder, "test.csv"));
+        fileOutputStream.write("test".getBytes());
+        fileOutputStream.close();
+        final EncounterStore reloaded = new EncounterStore(folder, "test", TimeInterval.hour);
+        assertEquals(24, reloaded.segments());
+        assertEquals(0, reloaded.loadedSegments());
+        // Query touches only two segments
+        assertEquals(60, reloaded.subdata(90 * 60000, 150 * 60000).size());
+        assertEquals(2, reloaded.loadedSegments());
+        // Append to unloaded segment does not load segment
+        reloaded.append(encounter(23 * hour + 30));
+        assertEquals(2, reloaded.loadedSegments());
+        assertEquals(61, reloaded.subdata(23 * hour).size());
+        assertEquals(3, reloaded.loadedSegments());
+        // Retention deletes segments without loading
+        reloaded.remove(12 * hour);
+        assertEquals(12, reloaded.segments());
+        assertEquals(2, reloaded.loadedSegments());
+        assertFalse(new File(folder, "test-0.csv").exists());
+        reloaded.close();
+        delete(folder);
+    }
+
+    @Test
+    public void testSubdataPerformance() {
+        final EncounterStore store = new EncounterStore();
+        // Four weeks at one encounter every 10 seconds
+        final long samples = 28 * 24 * 60 * 6;
+        for (long i=0; i<samples; i++) {
+            store.append(encounter(i * 10000));
+        }
+        final long t0 = System.nanoTime();
+        int count = 0;
+        for (int i=0; i<600; i++) {
+            count += store.subdata(i * hour, i * hour + 60000).size();
+        }
+        final long t1 = System.nanoTime();
+        assertEquals(600 * 6, count);
+        System.out.println("subdata,encounters=" + samples + ",queries=600,elapsed=" + ((t1 - t0) / 1000000) + "ms");
+    }
+}
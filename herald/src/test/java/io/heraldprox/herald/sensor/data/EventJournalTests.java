@@ -0,0 +1,312 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.heraldprox.herald.sensor.SensorDelegate;
+import io.heraldprox.herald.sensor.datatype.Calibration;
+import io.heraldprox.herald.sensor.datatype.CalibrationMeasurementUnit;
+import io.heraldprox.herald.sensor.datatype.Data;
+import io.heraldprox.herald.sensor.datatype.Date;
+import io.heraldprox.herald.sensor.datatype.ImmediateSendData;
+import io.heraldprox.herald.sensor.datatype.Location;
+import io.heraldprox.herald.sensor.datatype.PayloadData;
+import io.heraldprox.herald.sensor.datatype.Proximity;
+import io.heraldprox.herald.sensor.datatype.ProximityMeasurementUnit;
+import io.heraldprox.herald.sensor.datatype.SensorState;
+import io.heraldprox.herald.sensor.datatype.SensorType;
+import io.heraldprox.herald.sensor.datatype.TargetIdentifier;
+import io.heraldprox.herald.sensor.datatype.WGS84PointLocationReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("ConstantConditions")
+public class EventJournalTests {
+
+    @Test
+    public void events() {
+        final File file = new File("EventJournalTests.events.hej");
+        file.delete();
+        final EventJournal journal = new EventJournal(file);
+        final long t0 = System.currentTimeMillis();
+        journal.sensor(SensorType.BLE, new TargetIdentifier("A"));
+        journal.sensor(SensorType.BLE, true, new TargetIdentifier("A"));
+        journal.sensor(SensorType.BLE, false, new TargetIdentifier("A"));
+        journal.sensor(SensorType.BLE, new PayloadData("aaaaaaaa"), new TargetIdentifier("B"));
+        journal.sensor(SensorType.BLE, new ImmediateSendData(new Data((byte) 1, 3)), new TargetIdentifier("B"));
+        journal.sensor(SensorType.BLE, Arrays.asList(new PayloadData("bbbbbbbb"), new PayloadData("aaaaaaaa"), new PayloadData("bbbbbbbb")), new TargetIdentifier("C"));
+        journal.sensor(SensorType.BLE, new Proximity(ProximityMeasurementUnit.RSSI, -10d, new Calibration(CalibrationMeasurementUnit.BLETransmitPower, 12d)), new TargetIdentifier("D"));
+        journal.sensor(SensorType.BLE, new Proximity(ProximityMeasurementUnit.RTT, 1.25d), new TargetIdentifier("D"));
+        journal.sensor(SensorType.GPS, new Location(new WGS84PointLocationReference(1d, 2d, 3d), new Date(1), new Date(2)));
+        journal.sensor(SensorType.BLE, new Proximity(ProximityMeasurementUnit.RSSI, -0d), new TargetIdentifier("A"), new PayloadData("aaaaaaaa"));
+        journal.sensor(SensorType.BLE, SensorState.on);
+        assertEquals(11, journal.events());
+        journal.close();
+        final long t1 = System.currentTimeMillis();
+
+        final EventJournal.Reader reader = EventJournal.Reader.open(file);
+        assertNotNull(reader);
+        final List<EventJournal.Event> events = new ArrayList<>();
+        EventJournal.Event event;
+        while (null != (event = reader.next())) {
+            assertTrue(event.time >= t0 && event.time <= t1);
+            events.add(event);
+        }
+        assertEquals(file.length(), reader.position());
+        assertEquals(11, events.size());
+        assertEquals(EventJournal.EventType.detect, events.get(0).type);
+        assertEquals(new TargetIdentifier("A"), events.get(0).target);
+        assertEquals(EventJournal.EventType.detectHerald, events.get(1).type);
+        assertEquals(new TargetIdentifier("A"), events.get(1).target);
+        assertEquals(EventJournal.EventType.delete, events.get(2).type);
+        assertEquals(EventJournal.EventType.read, events.get(3).type);
+        assertEquals(new TargetIdentifier("B"), events.get(3).target);
+        assertEquals(new PayloadData("aaaaaaaa"), events.get(3).payload());
+        assertEquals(EventJournal.EventType.receive, events.get(4).type);
+        assertEquals(new Data((byte) 1, 3), events.get(4).data);
+        assertEquals(EventJournal.EventType.share, events.get(5).type);
+        assertEquals(Arrays.asList(new PayloadData("bbbbbbbb"), new PayloadData("aaaaaaaa"), new PayloadData("bbbbbbbb")), events.get(5).payloads);
+        assertEquals(EventJournal.EventType.measure, events.get(6).type);
+        assertEquals(new Proximity(ProximityMeasurementUnit.RSSI, -10d, new Calibration(CalibrationMeasurementUnit.BLETransmitPower, 12d)), events.get(6).proximity);
+        assertEquals(new Proximity(ProximityMeasurementUnit.RTT, 1.25d), events.get(7).proximity);
+        assertEquals(EventJournal.EventType.visit, events.get(8).type);
+        assertEquals(SensorType.GPS, events.get(8).sensor);
+        assertNull(events.get(8).target);
+        assertEquals("WGS84(lat=1.0,lon=2.0,alt=3.0):[from=1970-01-01 00:00:01,to=1970-01-01 00:00:02]", events.get(8).location);
+        assertEquals(EventJournal.EventType.measureWithPayload, events.get(9).type);
+        assertEquals(-0d, events.get(9).proximity.value, 0);
+        assertEquals(Double.doubleToLongBits(-0d), Double.doubleToLongBits(events.get(9).proximity.value));
+        assertEquals(new PayloadData("aaaaaaaa"), events.get(9).payload());
+        assertEquals(EventJournal.EventType.state, events.get(10).type);
+        assertEquals(SensorState.on, events.get(10).state);
+        file.delete();
+    }
+
+    @Test
+    public void exportCsv() throws Exception {
+        final File file = new File("EventJournalTests.exportCsv.hej");
+        final File csv = new File("EventJournalTests.exportCsv.csv");
+        file.delete();
+        final EventJournal journal = new EventJournal(file);
+        final TextFile logFile = new TextFileBuffer();
+        final ContactLog contactLog = new ContactLog(logFile);
+        for (final SensorDelegate delegate : Arrays.<SensorDelegate>asList(contactLog, journal)) {
+            delegate.sensor(SensorType.BLE, new TargetIdentifier("A"));
+            delegate.sensor(SensorType.BLE, true, new TargetIdentifier("A,1"));
+            delegate.sensor(SensorType.BLE, false, new TargetIdentifier("A"));
+            delegate.sensor(SensorType.BLE, new PayloadData("aaaaaaaa"), new TargetIdentifier("B"));
+            delegate.sensor(SensorType.BLE, Arrays.asList(new PayloadData("bbbbbbbb"), new PayloadData("cccccccc")), new TargetIdentifier("C"));
+            delegate.sensor(SensorType.BLE, new Proximity(ProximityMeasurementUnit.RSSI, -10d, new Calibration(CalibrationMeasurementUnit.BLETransmitPower, 12d)), new TargetIdentifier("D"));
+            delegate.sensor(SensorType.BLE, new Location(new WGS84PointLocationReference(1d, 2d, 3d), new Date(1), new Date(2)));
+            delegate.sensor(SensorType.BLE, SensorState.on);
+        }
+        journal.close();
+        logFile.flush();
+        assertTrue(EventJournal.exportCsv(file, csv, new ConcretePayloadDataFormatter()));
+        final List<String> expected = logFile.lines();
+        final List<String> actual = new TextFile(csv).lines();
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.get(0), actual.get(0));
+        for (int i=1; i<expected.size(); i++) {
+            // Ignore timestamp
+            assertEquals(expected.get(i).substring(expected.get(i).indexOf(',')), actual.get(i).substring(actual.get(i).indexOf(',')));
+        }
+        file.delete();
+        csv.delete();
+    }
+
+    @Test
+    public void truncatedRecord() throws Exception {
+        final File file = new File("EventJournalTests.truncatedRecord.hej");
+        file.delete();
+        final EventJournal journal = new EventJournal(file);
+        journal.sensor(SensorType.BLE, new PayloadData("aaaaaaaa"), new TargetIdentifier("A"));
+        journal.sensor(SensorType.BLE, new PayloadData("bbbbbbbb"), new TargetIdentifier("B"));
+        journal.close();
+        // Interrupted write of last record
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(file.length() - 2);
+        randomAccessFile.close();
+        assertEquals(1, count(file));
+        // New session appends after last complete record, dictionary is reset
+        final EventJournal appender = new EventJournal(file);
+        appender.sensor(SensorType.BLE, new PayloadData("aaaaaaaa"), new TargetIdentifier("A"));
+        appender.sensor(SensorType.BLE, new PayloadData("aaaaaaaa"), new TargetIdentifier("A"));
+        appender.close();
+        final EventJournal.Reader reader = EventJournal.Reader.open(file);
+        assertEquals(new TargetIdentifier("A"), reader.next().target);
+        assertEquals(new PayloadData("aaaaaaaa"), reader.next().payload());
+        assertEquals(new TargetIdentifier("A"), reader.next().target);
+        assertNull(reader.next());
+        assertEquals(file.length(), reader.position());
+        file.delete();
+    }
+
+    @Test
+    public void invalidRecord() throws Exception {
+        final File file = new File("EventJournalTests.invalidRecord.hej");
+        final File backup = new File("EventJournalTests.invalidRecord.hej.invalid");
+        file.delete();
+        backup.delete();
+        final EventJournal journal = new EventJournal(file);
+        journal.sensor(SensorType.BLE, new TargetIdentifier("A"));
+        journal.close();
+        // Unknown event type followed by more data is invalid rather than incomplete
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.seek(file.length());
+        randomAccessFile.write(new byte[]{(byte) 99, 0, 0, 0});
+        randomAccessFile.close();
+        final long invalidLength = file.length();
+        final EventJournal.Reader reader = EventJournal.Reader.open(file);
+        assertNotNull(reader.next());
+        assertNull(reader.next());
+        assertFalse(reader.incomplete());
+        // Invalid journal is moved to backup rather than truncated
+        final EventJournal appender = new EventJournal(file);
+        appender.sensor(SensorType.BLE, new TargetIdentifier("B"));
+        appender.close();
+        assertEquals(1, count(file));
+        assertTrue(backup.exists());
+        assertEquals(invalidLength, backup.length());
+        file.delete();
+        backup.delete();
+    }
+
+    @Test
+    public void recreated() {
+        final File file = new File("EventJournalTests.recreated.hej");
+        file.delete();
+        final EventJournal journal = new EventJournal(file);
+        journal.sensor(SensorType.BLE, new TargetIdentifier("A"));
+        assertTrue(journal.flush());
+        // Journal deleted externally, buffered record references dictionary of deleted file
+        assertTrue(file.delete());
+        journal.sensor(SensorType.BLE, new TargetIdentifier("A"));
+        assertFalse(journal.flush());
+        // New session is started in new file
+        journal.sensor(SensorType.BLE, new TargetIdentifier("A"));
+        journal.close();
+        final EventJournal.Reader reader = EventJournal.Reader.open(file);
+        assertEquals(new TargetIdentifier("A"), reader.next().target);
+        assertNull(reader.next());
+        assertEquals(file.length(), reader.position());
+        file.delete();
+    }
+
+    @Test
+    public void dictionary() {
+        final File file = new File("EventJournalTests.dictionary.hej");
+        file.delete();
+        final EventJournal journal = new EventJournal(file, 30, 10);
+        for (int i=0; i<100; i++) {
+            journal.sensor(SensorType.BLE, new Proximity(ProximityMeasurementUnit.RSSI, (double) -i), new TargetIdentifier("T" + (i % 25)));
+        }
+        journal.close();
+        final EventJournal.Reader reader = EventJournal.Reader.open(file);
+        for (int i=0; i<100; i++) {
+            final EventJournal.Event event = reader.next();
+            assertEquals(new TargetIdentifier("T" + (i % 25)), event.target);
+            assertEquals(-i, event.proximity.value, 0);
+        }
+        assertNull(reader.next());
+        // Reset
+        journal.reset();
+        assertEquals(0, journal.events());
+        journal.sensor(SensorType.BLE, new TargetIdentifier("X"));
+        journal.close();
+        assertEquals(1, count(file));
+        file.delete();
+    }
+
+    @Test
+    public void invalid() throws Exception {
+        final File file = new File("EventJournalTests.invalid.hej");
+        file.delete();
+        assertNull(EventJournal.Reader.open(file));
+        final TextFile textFile = new TextFile(file);
+        textFile.overwrite("invalid");
+        textFile.close();
+        assertNull(EventJournal.Reader.open(file));
+        // Invalid file is moved to backup
+        final EventJournal journal = new EventJournal(file);
+        journal.sensor(SensorType.BLE, new TargetIdentifier("A"));
+        journal.close();
+        assertEquals(1, count(file));
+        final File backup = new File("EventJournalTests.invalid.hej.invalid");
+        assertTrue(backup.exists());
+        file.delete();
+        backup.delete();
+    }
+
+    @Test
+    public void performance() {
+        final File file = new File("EventJournalTests.performance.hej");
+        final File csv = new File("EventJournalTests.performance.csv");
+        file.delete();
+        csv.delete();
+        final int samples = 200000;
+        final TargetIdentifier[] targets = new TargetIdentifier[20];
+        final PayloadData[] payloads = new PayloadData[targets.length];
+        for (int i=0; i<targets.length; i++) {
+            targets[i] = new TargetIdentifier();
+            payloads[i] = new PayloadData((byte) i, 23);
+        }
+        final EventJournal journal = new EventJournal(file);
+        final TextFile textFile = new TextFile(csv);
+        final ContactLog contactLog = new ContactLog(textFile);
+        for (int warmup=0; warmup<2; warmup++) {
+            journal.reset();
+            textFile.reset();
+            long t0 = System.nanoTime();
+            for (int i=0; i<samples; i++) {
+                final int j = i % targets.length;
+                contactLog.sensor(SensorType.BLE, new Proximity(ProximityMeasurementUnit.RSSI, (double) -(i % 100), new Calibration(CalibrationMeasurementUnit.BLETransmitPower, 12d)), targets[j]);
+                if (j == 0) {
+                    contactLog.sensor(SensorType.BLE, payloads[j], targets[j]);
+                }
+            }
+            textFile.flush();
+            final long elapsedContactLog = System.nanoTime() - t0;
+            t0 = System.nanoTime();
+            for (int i=0; i<samples; i++) {
+                final int j = i % targets.length;
+                journal.sensor(SensorType.BLE, new Proximity(ProximityMeasurementUnit.RSSI, (double) -(i % 100), new Calibration(CalibrationMeasurementUnit.BLETransmitPower, 12d)), targets[j]);
+                if (j == 0) {
+                    journal.sensor(SensorType.BLE, payloads[j], targets[j]);
+                }
+            }
+            journal.flush();
+            final long elapsedJournal = System.nanoTime() - t0;
+            if (warmup == 1) {
+                System.out.println("performance,ContactLog=" + (elapsedContactLog / samples) + "ns/event,size=" + csv.length() + ",EventJournal=" + (elapsedJournal / samples) + "ns/event,size=" + file.length());
+            }
+        }
+        journal.close();
+        textFile.close();
+        assertTrue(file.length() * 5 < csv.length());
+        file.delete();
+        csv.delete();
+    }
+
+    private static int count(final File file) {
+        final EventJournal.Reader reader = EventJournal.Reader.open(file);
+        int count = 0;
+        while (null != reader.next()) {
+            count++;
+        }
+        return count;
+    }
+}
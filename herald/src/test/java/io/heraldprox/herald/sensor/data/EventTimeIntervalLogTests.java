@@ -14,6 +14,7 @@ import io.heraldprox.herald.sensor.datatype.Proximity;
 import io.heraldprox.herald.sensor.datatype.ProximityMeasurementUnit;
 import io.heraldprox.herald.sensor.datatype.SensorType;
 import io.heraldprox.herald.sensor.datatype.TargetIdentifier;
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
 import io.heraldprox.herald.sensor.datatype.WGS84PointLocationReference;
 
 public class EventTimeIntervalLogTests {
@@ -113,4 +114,18 @@ public class EventTimeIntervalLogTests {
         log.sensor(SensorType.GPS, new Location(new WGS84PointLocationReference(0d,0d,0d), new Date(0), new Date(1)));
         assertTrue(logFile.contentsOf().startsWith("event,central,peripheral,count,mean,sd,min,max\nvisit,aaaa,aaaa,2,"));
     }
+
+    @Test
+    public void snapshot() {
+        final TextFile logFile = new TextFileBuffer();
+        final EventTimeIntervalLog log = new EventTimeIntervalLog(logFile, new PayloadData("aaaa"), EventTimeIntervalLog.EventType.read, TimeInterval.minute);
+        assertEquals("event,central,peripheral,count,mean,sd,min,max\n", logFile.contentsOf());
+        for (int i=0; i<3; i++) {
+            log.sensor(SensorType.BLE, new PayloadData("bbbb"), new TargetIdentifier("B"));
+        }
+        // Changes are held in memory until snapshot
+        assertEquals("event,central,peripheral,count,mean,sd,min,max\n", logFile.contentsOf());
+        log.snapshot();
+        assertTrue(logFile.contentsOf().startsWith("event,central,peripheral,count,mean,sd,min,max\nread,aaaa,bbbb,2,"));
+    }
 }
@@ -0,0 +1,244 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import io.heraldprox.herald.sensor.analysis.algorithms.distance.RssiHistogram;
+import io.heraldprox.herald.sensor.datatype.Histogram;
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramFileTests {
+
+    @Test
+    public void readWrite() {
+        final File file = file("readWrite");
+        final HistogramFile histogramFile = new HistogramFile(file, -10, 10);
+        assertEquals(0, histogramFile.total());
+        assertEquals(24 + 21 * 8, file.length());
+        for (int i=-20; i<20; i++) {
+            histogramFile.add(i, i + 20);
+        }
+        assertTrue(histogramFile.sync());
+        histogramFile.close();
+        // Reopen
+        final HistogramFile histogramFileRead = new HistogramFile(file, -10, 10);
+        long total = 0;
+        for (int i=-20; i<20; i++) {
+            if (i < -10 || i > 10) {
+                assertEquals(0, histogramFileRead.count(i));
+            } else {
+                assertEquals(i + 20, histogramFileRead.count(i));
+                total += i + 20;
+            }
+        }
+        assertEquals(total, histogramFileRead.total());
+        final long[] counts = new long[21];
+        assertEquals(total, histogramFileRead.read(counts));
+        assertEquals(10, counts[0]);
+        assertEquals(30, counts[20]);
+        // Write and clear
+        counts[0] = 100;
+        histogramFileRead.write(counts);
+        assertEquals(total + 90, histogramFileRead.total());
+        histogramFileRead.clear();
+        assertEquals(0, histogramFileRead.total());
+        assertEquals(0, histogramFileRead.count(-10));
+        histogramFileRead.close();
+        delete(file);
+    }
+
+    @Test
+    public void updateWithoutSync() {
+        final File file = file("updateWithoutSync");
+        final HistogramFile histogramFile = new HistogramFile(file, 0, 10);
+        histogramFile.add(1, 1);
+        histogramFile.sync();
+        // Updates after sync are in the mapped file but checksum is outdated
+        histogramFile.add(2, 2);
+        final HistogramFile histogramFileRead = new HistogramFile(file, 0, 10);
+        assertEquals(1, histogramFileRead.count(1));
+        assertEquals(2, histogramFileRead.count(2));
+        assertEquals(3, histogramFileRead.total());
+        histogramFileRead.close();
+        histogramFile.close();
+        delete(file);
+    }
+
+    @Test
+    public void invalid() throws Exception {
+        final File file = file("invalid");
+        final File invalid = new File(file.getParentFile(), file.getName() + ".invalid");
+        final HistogramFile histogramFile = new HistogramFile(file, 0, 10);
+        histogramFile.add(1, 1);
+        histogramFile.close();
+        // Corrupt count such that checksum and total do not match
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.seek(24 + 8);
+        randomAccessFile.write(new byte[]{5, 0, 0, 0, 0, 0, 0, 0});
+        randomAccessFile.close();
+        final HistogramFile histogramFileInvalid = new HistogramFile(file, 0, 10);
+        assertEquals(0, histogramFileInvalid.total());
+        assertEquals(0, histogramFileInvalid.count(1));
+        assertTrue(invalid.exists());
+        histogramFileInvalid.close();
+        // Unknown version
+        final RandomAccessFile randomAccessFileVersion = new RandomAccessFile(file, "rw");
+        randomAccessFileVersion.seek(3);
+        randomAccessFileVersion.writeByte(HistogramFile.version + 1);
+        randomAccessFileVersion.close();
+        final HistogramFile histogramFileVersion = new HistogramFile(file, 0, 10);
+        assertEquals(0, histogramFileVersion.total());
+        histogramFileVersion.close();
+        delete(invalid);
+        delete(file);
+    }
+
+    @Test
+    public void remap() {
+        final File file = file("remap");
+        final HistogramFile histogramFile = new HistogramFile(file, 0, 10);
+        for (int i=0; i<=10; i++) {
+            histogramFile.add(i, 1);
+        }
+        histogramFile.close();
+        final HistogramFile histogramFileRemapped = new HistogramFile(file, 5, 20);
+        assertEquals(24 + 16 * 8, file.length());
+        assertEquals(6, histogramFileRemapped.total());
+        for (int i=5; i<=20; i++) {
+            assertEquals((i <= 10 ? 1 : 0), histogramFileRemapped.count(i));
+        }
+        histogramFileRemapped.close();
+        delete(file);
+    }
+
+    @Test
+    public void csv() {
+        final File file = file("csv");
+        final File csvFile = file("csv.csv");
+        final TextFile textFile = new TextFile(csvFile);
+        // Import CSV file written by Histogram
+        final Histogram histogram = new Histogram(-10, 10);
+        for (int i=-10; i<=10; i++) {
+            histogram.add(i, i + 10);
+        }
+        histogram.write(textFile);
+        final HistogramFile histogramFile = new HistogramFile(file, -10, 10);
+        assertTrue(histogramFile.importCsv(textFile));
+        for (int i=-10; i<=10; i++) {
+            assertEquals(i + 10, histogramFile.count(i));
+        }
+        assertEquals(histogram.count(), histogramFile.total());
+        // Export CSV file for Histogram
+        histogramFile.add(0, 100);
+        histogramFile.exportCsv(textFile);
+        final Histogram histogramRead = new Histogram(-10, 10, TimeInterval.never, textFile);
+        assertEquals(110, histogramRead.count(0));
+        assertEquals(histogramFile.total(), histogramRead.count());
+        // Invalid CSV
+        textFile.overwrite("value,count\n");
+        assertFalse(histogramFile.importCsv(textFile));
+        assertEquals(110, histogramFile.count(0));
+        histogramFile.close();
+        delete(file);
+        delete(csvFile);
+    }
+
+    @Test
+    public void histogram() {
+        final File file = file("histogram");
+        final Histogram histogram = new Histogram(new HistogramFile(file, 0, 100), TimeInterval.zero);
+        histogram.add(50);
+        histogram.add(60, 2);
+        final Histogram histogramRead = new Histogram(new HistogramFile(file, 0, 100), TimeInterval.zero);
+        assertEquals(3, histogramRead.count());
+        assertEquals(1, histogramRead.count(50));
+        assertEquals(2, histogramRead.count(60));
+        assertEquals(50, histogramRead.minValue().intValue());
+        assertEquals(60, histogramRead.maxValue().intValue());
+        assertEquals(60, histogramRead.mode().intValue());
+        delete(file);
+    }
+
+    @Test
+    public void rssiHistogram() {
+        final File file = file("rssiHistogram");
+        final RssiHistogram rssiHistogram = new RssiHistogram(new HistogramFile(file, -99, -10), TimeInterval.zero);
+        for (int rssi=-98; rssi<=-10; rssi++) {
+            rssiHistogram.add(rssi);
+        }
+        rssiHistogram.update();
+        final RssiHistogram rssiHistogramRead = new RssiHistogram(new HistogramFile(file, -99, -10), TimeInterval.zero);
+        for (int i=0; i<rssiHistogram.histogram.length; i++) {
+            assertEquals(rssiHistogram.histogram[i], rssiHistogramRead.histogram[i]);
+        }
+        assertEquals(rssiHistogram.samplePercentile(0.5), rssiHistogramRead.samplePercentile(0.5));
+        assertEquals(rssiHistogram.normalise(-50), rssiHistogramRead.normalise(-50), Double.MIN_VALUE);
+        delete(file);
+    }
+
+    @Test
+    public void performance() {
+        final File file = file("performance");
+        final File csvFile = file("performance.csv");
+        final HistogramFile histogramFile = new HistogramFile(file, -99, -10);
+        final RssiHistogram binary = new RssiHistogram(histogramFile, TimeInterval.never);
+        final RssiHistogram csv = new RssiHistogram(-99, -10, TimeInterval.never, new TextFile(csvFile));
+        final TextFile textFile = new TextFile(csvFile);
+        final int samples = 1000000;
+        final int persists = 1000;
+        for (int warmup=0; warmup<2; warmup++) {
+            long t0 = System.nanoTime();
+            for (int i=0; i<samples; i++) {
+                binary.add(-99 + (i % 90));
+            }
+            final long addBinary = System.nanoTime() - t0;
+            t0 = System.nanoTime();
+            for (int i=0; i<samples; i++) {
+                csv.add(-99 + (i % 90));
+            }
+            final long addCsv = System.nanoTime() - t0;
+            t0 = System.nanoTime();
+            for (int i=0; i<persists; i++) {
+                histogramFile.add(-50, 1);
+                histogramFile.sync();
+            }
+            final long persistBinary = System.nanoTime() - t0;
+            t0 = System.nanoTime();
+            for (int i=0; i<persists; i++) {
+                csv.add(-50);
+                csv.write(textFile);
+            }
+            final long persistCsv = System.nanoTime() - t0;
+            if (warmup == 1) {
+                System.out.println("add,csv=" + (addCsv / samples) + "ns,binary=" + (addBinary / samples) + "ns");
+                System.out.println("persist,csv=" + (persistCsv / persists / 1000) + "us,binary=" + (persistBinary / persists / 1000) + "us");
+            }
+        }
+        histogramFile.close();
+        delete(file);
+        delete(csvFile);
+    }
+
+    private static File file(final String name) {
+        final File file = new File(new File("HistogramFileTests"), name);
+        delete(file);
+        return file;
+    }
+
+    private static void delete(final File file) {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        //noinspection ResultOfMethodCallIgnored
+        file.getParentFile().delete();
+    }
+}
@@ -389,6 +389,67 @@ public class RssiLogTests {
         assertEquals(-1, histogram1.mode().intValue());
     }
 
+    @Test
+    public void aggregator() throws Exception {
+        // Streaming aggregation is identical to batch quantisation and histogram of each period
+        final java.util.Random random = new java.util.Random(0);
+        final List<RssiLog.PointMeasurement> pointMeasurements = new ArrayList<>();
+        final RssiLog.Aggregator aggregator = new RssiLog.Aggregator(-100, 0, TimeInterval.seconds(5), TimeInterval.hour, 3);
+        final long t0 = 1609459200;
+        for (long t=t0; t<t0 + 5 * 3600; t += random.nextInt(3)) {
+            final RssiLog.PointMeasurement pointMeasurement = new RssiLog.PointMeasurement(new Date(t), new TargetIdentifier("T" + random.nextInt(10)), (double) -random.nextInt(110), null);
+            pointMeasurements.add(pointMeasurement);
+            aggregator.add(pointMeasurement);
+        }
+        final List<RssiLog.HistogramForPeriod> expected = RssiLog.histogramForPeriods(pointMeasurements, TimeInterval.hour);
+        assertEquals(5, expected.size());
+        final Histogram expectedTotal = RssiLog.merge(expected).histogram;
+        final Histogram actualTotal = aggregator.histogram();
+        assertEquals(expectedTotal.count(), actualTotal.count());
+        for (int value=-100; value<=0; value++) {
+            assertEquals(expectedTotal.count(value), actualTotal.count(value));
+        }
+        // Ring holds the most recent closed periods
+        final List<RssiLog.HistogramForPeriod> actual = aggregator.histogramForPeriods();
+        assertEquals(3, actual.size());
+        for (int i=0; i<actual.size(); i++) {
+            final RssiLog.HistogramForPeriod e = expected.get(1 + i), a = actual.get(i);
+            assertEquals(e.start, a.start);
+            assertEquals(e.end, a.end);
+            for (int value=-100; value<=0; value++) {
+                assertEquals(e.histogram.count(value), a.histogram.count(value));
+            }
+        }
+    }
+
+    @Test
+    public void aggregatorPerformance() throws Exception {
+        final int samples = 1000000;
+        final TargetIdentifier[] targets = new TargetIdentifier[50];
+        for (int i=0; i<targets.length; i++) {
+            targets[i] = new TargetIdentifier("T" + i);
+        }
+        final RssiLog.PointMeasurement[] pointMeasurements = new RssiLog.PointMeasurement[samples];
+        final long start = 1609459200;
+        for (int i=0; i<samples; i++) {
+            pointMeasurements[i] = new RssiLog.PointMeasurement(new Date(start + i / 10), targets[i % targets.length], (double) -(i % 100), null);
+        }
+        final RssiLog.Aggregator aggregator = new RssiLog.Aggregator(-100, 0, TimeInterval.seconds(5), TimeInterval.hour, 24);
+        long t0 = System.nanoTime();
+        for (final RssiLog.PointMeasurement pointMeasurement : pointMeasurements) {
+            aggregator.add(pointMeasurement);
+        }
+        final long elapsedAdd = System.nanoTime() - t0;
+        t0 = System.nanoTime();
+        long count = 0;
+        for (int i=0; i<1000; i++) {
+            count += aggregator.histogram().count();
+        }
+        final long elapsedHistogram = System.nanoTime() - t0;
+        System.out.println("aggregatorPerformance(samples=" + samples + ",add=" + (elapsedAdd / samples) + "ns/call,histogram=" + (elapsedHistogram / 1000) + "ns/call,count=" + count / 1000 + ")");
+        assertTrue(count > 0);
+    }
+
     // MARK: - Log file content
 
     @Test
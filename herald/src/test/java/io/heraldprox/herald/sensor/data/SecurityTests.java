@@ -4,8 +4,10 @@ import io.heraldprox.herald.sensor.data.security.DiffieHellmanMerkle;
 import io.heraldprox.herald.sensor.data.security.DiffieHellmanParameters;
 import io.heraldprox.herald.sensor.data.security.KeyExchange;
 import io.heraldprox.herald.sensor.data.security.KeyExchangeKeyPair;
+import io.heraldprox.herald.sensor.data.security.KeyExchangePublicKey;
 import io.heraldprox.herald.sensor.data.security.KeyExchangeSharedKey;
 import io.heraldprox.herald.sensor.datatype.Data;
+import io.heraldprox.herald.sensor.datatype.MontgomeryModulus;
 import io.heraldprox.herald.sensor.datatype.UIntBig;
 
 import org.junit.Test;
@@ -22,6 +24,10 @@ import javax.crypto.spec.SecretKeySpec;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class SecurityTests {
 
@@ -53,6 +59,35 @@ public class SecurityTests {
         assertEquals(aliceSharedKey, bobSharedKey);
     }
 
+    @Test
+    public void testGeneratorTable() {
+        final DiffieHellmanParameters parameters = DiffieHellmanParameters.modpGroup1;
+        final MontgomeryModulus.FixedBase table = parameters.generatorTable();
+        assertNotNull(table);
+        assertTrue(table.bytes() > 0);
+        assertTrue(DiffieHellmanParameters.generatorTableBytes() >= table.bytes());
+        // Shared by equivalent parameters
+        assertSame(table, parameters.generatorTable());
+        assertSame(table, new DiffieHellmanParameters(parameters.p, parameters.g).generatorTable());
+        // Modifying p of another instance does not affect the shared table
+        final DiffieHellmanParameters modified = new DiffieHellmanParameters(new UIntBig(parameters.p.magnitude().clone()), parameters.g);
+        assertSame(table, modified.generatorTable());
+        modified.p.magnitude()[0] ^= 2;
+        assertNotSame(table, modified.generatorTable());
+        assertSame(table, parameters.generatorTable());
+        // Public key identical to exponentiation without table
+        final KeyExchangeKeyPair keyPair = new DiffieHellmanMerkle(parameters).keyPair();
+        final UIntBig privateKey = new UIntBig(keyPair.privateKey);
+        assertEquals(new KeyExchangePublicKey(parameters.g.modPow(privateKey, parameters.p).data()), keyPair.publicKey);
+        // Even modulus has no table
+        assertNull(new DiffieHellmanParameters(new UIntBig(10), new UIntBig(3)).generatorTable());
+    }
+
+    @Test
+    public void testKeyExchangePerformance() {
+        new DiffieHellmanMerkle(DiffieHellmanParameters.modpGroup14).performanceTest(2);
+    }
+
 
 
     // RFC-3526
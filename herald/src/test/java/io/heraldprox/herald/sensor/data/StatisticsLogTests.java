@@ -13,6 +13,7 @@ import io.heraldprox.herald.sensor.datatype.Proximity;
 import io.heraldprox.herald.sensor.datatype.ProximityMeasurementUnit;
 import io.heraldprox.herald.sensor.datatype.SensorType;
 import io.heraldprox.herald.sensor.datatype.TargetIdentifier;
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
 
 public class StatisticsLogTests {
 
@@ -49,4 +50,29 @@ public class StatisticsLogTests {
         statisticsLog.sensor(SensorType.BLE, Arrays.asList(new PayloadData("aaaa")), new TargetIdentifier("B"));
         assertTrue(logFile.contentsOf().startsWith("payload,count,mean,sd,min,max\naaaa,3,"));
     }
+
+    @Test
+    public void snapshot() {
+        final TextFile logFile = new TextFileBuffer();
+        final StatisticsLog statisticsLog = new StatisticsLog(logFile, new PayloadData("zzzz"), TimeInterval.minute);
+        assertEquals("payload,count,mean,sd,min,max\n", logFile.contentsOf());
+        statisticsLog.add(new PayloadData("bbbb").shortName(), new Date(0));
+        statisticsLog.add(new PayloadData("bbbb").shortName(), new Date(1));
+        statisticsLog.add(new PayloadData("bbbb").shortName(), new Date(2));
+        statisticsLog.add(new PayloadData("aaaa").shortName(), new Date(0));
+        statisticsLog.add(new PayloadData("aaaa").shortName(), new Date(2));
+        statisticsLog.add(new PayloadData("aaaa").shortName(), new Date(4));
+        // Own payload is excluded
+        statisticsLog.add(new PayloadData("zzzz").shortName(), new Date(0));
+        statisticsLog.add(new PayloadData("zzzz").shortName(), new Date(1));
+        statisticsLog.add(new PayloadData("zzzz").shortName(), new Date(2));
+        // Changes are held in memory until snapshot
+        assertEquals("payload,count,mean,sd,min,max\n", logFile.contentsOf());
+        statisticsLog.snapshot();
+        assertEquals("payload,count,mean,sd,min,max\naaaa,2,2.0,0.0,2.0,2.0\nbbbb,2,1.0,0.0,1.0,1.0\n", logFile.contentsOf());
+        // Only changed rows are updated
+        statisticsLog.add(new PayloadData("bbbb").shortName(), new Date(5));
+        statisticsLog.snapshot();
+        assertEquals("payload,count,mean,sd,min,max\naaaa,2,2.0,0.0,2.0,2.0\nbbbb,3,1.6666666666666665,1.1547005383792515,1.0,3.0\n", logFile.contentsOf());
+    }
 }
@@ -0,0 +1,163 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TextFileChannelTests {
+
+    @Test
+    public void testAppendOverwrite() throws Exception {
+        final File file = new File("TextFileChannelTests.testAppendOverwrite");
+        file.delete();
+        final TextFileChannel channel = new TextFileChannel(file);
+        assertTrue(channel.append("a"));
+        assertTrue(channel.append(Arrays.asList("b", "c")));
+        assertEquals("a\nb\nc\n", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        assertTrue(channel.overwrite("d"));
+        assertEquals("d", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        assertTrue(channel.append("e"));
+        assertEquals("de\n", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        // Reopen after file has been deleted
+        assertTrue(file.delete());
+        assertTrue(channel.append("f"));
+        assertEquals("f\n", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        channel.close();
+        assertTrue(channel.append("g"));
+        assertEquals("f\ng\n", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        channel.close();
+        assertTrue(file.delete());
+    }
+
+    @Test
+    public void testEncoding() throws Exception {
+        final File file = new File("TextFileChannelTests.testEncoding");
+        file.delete();
+        final TextFileChannel channel = new TextFileChannel(file, TextFileChannel.Durability.FORCE);
+        // Lines longer than buffer and multi-byte characters across buffer boundary
+        final StringBuilder stringBuilder = new StringBuilder();
+        for (int i=0; i<10000; i++) {
+            stringBuilder.append(i % 3 == 0 ? "é" : (i % 3 == 1 ? "€" : "x"));
+        }
+        final String line = stringBuilder.toString();
+        assertTrue(channel.append(line));
+        assertTrue(channel.append("’"));
+        assertEquals(line + "\n’\n", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        assertEquals(2, channel.forces());
+        channel.close();
+        assertTrue(file.delete());
+    }
+
+    @Test
+    public void testGroupCommit() throws Exception {
+        final File file = new File("TextFileChannelTests.testGroupCommit");
+        file.delete();
+        final TextFileChannel channel = new TextFileChannel(file);
+        final int threads = 4, count = 5000;
+        final Thread[] writers = new Thread[threads];
+        for (int t=0; t<threads; t++) {
+            final int thread = t;
+            writers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i=0; i<count; i++) {
+                        channel.append(thread + "," + i);
+                    }
+                }
+            });
+        }
+        for (final Thread writer : writers) {
+            writer.start();
+        }
+        for (final Thread writer : writers) {
+            writer.join();
+        }
+        final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(threads * count, lines.size());
+        assertEquals(new HashSet<>(lines).size(), lines.size());
+        assertEquals(threads * count, channel.lines());
+        System.out.println("groupCommit,threads=" + threads + ",lines=" + channel.lines() + ",commits=" + channel.commits());
+        channel.close();
+        assertTrue(file.delete());
+    }
+
+    @Test
+    public void testConcurrentClose() throws Exception {
+        final File file = new File("TextFileChannelTests.testConcurrentClose");
+        file.delete();
+        final TextFileChannel channel = new TextFileChannel(file);
+        final int threads = 4, count = 2000;
+        final Thread[] writers = new Thread[threads];
+        for (int t=0; t<threads; t++) {
+            final int thread = t;
+            writers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i=0; i<count; i++) {
+                        assertTrue(channel.append(thread + "," + i));
+                        if (i % 100 == 0) {
+                            channel.close();
+                        }
+                    }
+                }
+            });
+        }
+        for (final Thread writer : writers) {
+            writer.start();
+        }
+        for (final Thread writer : writers) {
+            writer.join();
+        }
+        channel.close();
+        // Lines pending when close is called are committed before the channel is closed
+        final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(threads * count, lines.size());
+        assertEquals(new HashSet<>(lines).size(), lines.size());
+        assertEquals(threads * count, channel.lines());
+        assertTrue(file.delete());
+    }
+
+    @Test
+    public void testPerformance() throws Exception {
+        final File file = new File("TextFileChannelTests.testPerformance");
+        file.delete();
+        final int count = 20000;
+        final String line = "2021-01-01 00:00:00,read,RSSI:-50.0,payload";
+        // Baseline : open, write and close file per line
+        final long t0 = System.nanoTime();
+        for (int i=0; i<count; i++) {
+            final FileOutputStream fileOutputStream = new FileOutputStream(file, true);
+            fileOutputStream.write((line + "\n").getBytes());
+            fileOutputStream.flush();
+            fileOutputStream.close();
+        }
+        final long t1 = System.nanoTime();
+        assertTrue(file.delete());
+        // Persistent channel
+        final TextFileChannel channel = new TextFileChannel(file);
+        final long t2 = System.nanoTime();
+        for (int i=0; i<count; i++) {
+            channel.append(line);
+        }
+        final long t3 = System.nanoTime();
+        channel.close();
+        final Set<String> lines = new HashSet<>(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+        assertEquals(1, lines.size());
+        System.out.println("writeNow,lines=" + count + ",openWriteClose=" + ((t1 - t0) / 1000000) + "ms,channel=" + ((t3 - t2) / 1000000) + "ms");
+        assertTrue(file.delete());
+    }
+}
@@ -0,0 +1,94 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
+
+import static org.junit.Assert.assertEquals;
+
+public class TextFileSchedulerTests {
+
+    @NonNull
+    private static Runnable counter(@NonNull final AtomicInteger count) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                count.incrementAndGet();
+            }
+        };
+    }
+
+    private static void await(@NonNull final TextFileScheduler scheduler, final int pending) throws Exception {
+        for (int i=0; i<100 && scheduler.pending() > pending; i++) {
+            Thread.sleep(50);
+        }
+        // Allow wake up to complete after taking tasks
+        Thread.sleep(100);
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        final TextFileScheduler scheduler = new TextFileScheduler(new TimeInterval(1));
+        assertEquals(0, scheduler.threadCount());
+        final AtomicInteger count = new AtomicInteger();
+        final Runnable a = counter(count), b = counter(count), c = counter(count), d = counter(count);
+        // Tasks due within coalesce window are run in one wake up
+        scheduler.schedule(a, 200);
+        scheduler.schedule(b, 500);
+        scheduler.schedule(c, 900);
+        // Task due after coalesce window requires another wake up
+        scheduler.schedule(d, 2000);
+        // Rescheduling pending task retains due time
+        scheduler.schedule(a, 5000);
+        assertEquals(4, scheduler.pending());
+        assertEquals(1, scheduler.threadCount());
+        await(scheduler, 1);
+        assertEquals(3, count.get());
+        assertEquals(1, scheduler.wakeUps());
+        await(scheduler, 0);
+        assertEquals(4, count.get());
+        assertEquals(2, scheduler.wakeUps());
+        assertEquals(4, scheduler.flushes());
+        scheduler.shutdown();
+        assertEquals(0, scheduler.threadCount());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        final TextFileScheduler scheduler = new TextFileScheduler(new TimeInterval(0));
+        final AtomicInteger count = new AtomicInteger();
+        final Runnable a = counter(count), b = counter(count);
+        scheduler.schedule(a, 100);
+        scheduler.schedule(b, 100);
+        scheduler.cancel(a);
+        await(scheduler, 0);
+        assertEquals(1, count.get());
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        final TextFileScheduler scheduler = new TextFileScheduler();
+        final AtomicInteger count = new AtomicInteger();
+        scheduler.schedule(counter(count), 60000);
+        scheduler.schedule(counter(count), 60000);
+        // Pending tasks are run on shutdown
+        scheduler.shutdown();
+        assertEquals(2, count.get());
+        assertEquals(0, scheduler.pending());
+        assertEquals(0, scheduler.threadCount());
+        // Scheduler is restarted on demand
+        scheduler.schedule(counter(count), 0);
+        await(scheduler, 0);
+        assertEquals(3, count.get());
+        scheduler.shutdown();
+    }
+}
@@ -7,6 +7,7 @@ import org.junit.Test;
 import java.io.File;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -104,4 +105,88 @@ public class TextFileTests {
         file.delete();
     }
 
+    @Test
+    public void writeDelay() throws Exception {
+        final File file = new File("TextFileTests.writeDelay");
+        file.delete();
+        final TextFile textFile = new TextFile(file, 1);
+        textFile.write("test");
+        assertFalse(file.exists());
+        // Flushed by shared scheduler after write delay
+        for (int i=0; i<50 && !file.exists(); i++) {
+            Thread.sleep(100);
+        }
+        assertEquals("test\n", textFile.contentsOf());
+        assertTrue(TextFileScheduler.shared().threadCount() <= 1);
+        file.delete();
+    }
+
+    @Test
+    public void overflowPolicy() throws Exception {
+        final File file = new File("TextFileTests.overflowPolicy");
+        file.delete();
+        // Buffer may also be flushed by scheduler when half full, thus lines are either written or dropped
+        // Drop newest
+        final TextFile dropNewest = new TextFile(file, 60, 4, TextFileWriteBuffer.OverflowPolicy.DROP_NEWEST);
+        for (int i=0; i<100; i++) {
+            dropNewest.write(Integer.toString(i));
+        }
+        dropNewest.close();
+        List<String> lines = dropNewest.lines();
+        assertEquals(100, lines.size() + dropNewest.droppedLines());
+        assertEquals("0", lines.get(0));
+        file.delete();
+        // Drop oldest
+        final TextFile dropOldest = new TextFile(file, 60, 4, TextFileWriteBuffer.OverflowPolicy.DROP_OLDEST);
+        for (int i=0; i<100; i++) {
+            dropOldest.write(Integer.toString(i));
+        }
+        dropOldest.close();
+        lines = dropOldest.lines();
+        assertEquals(100, lines.size() + dropOldest.droppedLines());
+        assertEquals("99", lines.get(lines.size() - 1));
+        file.delete();
+        // Block
+        final TextFile block = new TextFile(file, 60, 4, TextFileWriteBuffer.OverflowPolicy.BLOCK);
+        for (int i=0; i<100; i++) {
+            block.write(Integer.toString(i));
+        }
+        block.close();
+        assertEquals(0, block.droppedLines());
+        lines = block.lines();
+        assertEquals(100, lines.size());
+        for (int i=0; i<100; i++) {
+            assertEquals(Integer.toString(i), lines.get(i));
+        }
+        file.delete();
+    }
+
+    @Test
+    public void replace() throws Exception {
+        final File file = new File("TextFileTests.replace");
+        file.delete();
+        final TextFile textFile = new TextFile(file);
+        textFile.writeNow("test");
+        textFile.replace("replace\n");
+        assertEquals("replace\n", textFile.contentsOf());
+        assertFalse(new File("TextFileTests.replace.tmp").exists());
+        // Append after replace writes to new file
+        textFile.writeNow("append");
+        assertEquals("replace\nappend\n", textFile.contentsOf());
+        textFile.close();
+        file.delete();
+    }
+
+    @Test
+    public void close() throws Exception {
+        final File file = new File("TextFileTests.close");
+        file.delete();
+        final TextFile textFile = new TextFile(file);
+        textFile.write("test");
+        assertFalse(file.exists());
+        textFile.close();
+        assertEquals("test\n", textFile.contentsOf());
+        file.delete();
+    }
+
 }
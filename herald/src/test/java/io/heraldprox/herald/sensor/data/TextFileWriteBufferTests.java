@@ -0,0 +1,101 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TextFileWriteBufferTests {
+
+    @Test
+    public void testOfferPoll() {
+        final TextFileWriteBuffer buffer = new TextFileWriteBuffer(3);
+        assertEquals(4, buffer.capacity());
+        assertTrue(buffer.isEmpty());
+        assertNull(buffer.poll());
+        // Wrap around ring several times
+        for (int round=0; round<3; round++) {
+            for (int i=0; i<4; i++) {
+                assertTrue(buffer.offer(Integer.toString(i)));
+            }
+            assertFalse(buffer.offer("full"));
+            assertEquals(4, buffer.size());
+            assertEquals(4, buffer.characters());
+            for (int i=0; i<4; i++) {
+                assertEquals(Integer.toString(i), buffer.poll());
+            }
+            assertNull(buffer.poll());
+            assertEquals(0, buffer.characters());
+        }
+        assertTrue(buffer.offer("a"));
+        assertTrue(buffer.offer("b"));
+        final List<String> lines = new ArrayList<>();
+        assertEquals(2, buffer.drainTo(lines));
+        assertEquals("a", lines.get(0));
+        assertEquals("b", lines.get(1));
+        assertTrue(buffer.offer("c"));
+        assertEquals(1, buffer.clear());
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        final TextFileWriteBuffer buffer = new TextFileWriteBuffer(256);
+        final int producers = 4, count = 20000;
+        final Set<String> received = new HashSet<>();
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final List<String> lines = new ArrayList<>();
+                while (!done.get() || !buffer.isEmpty()) {
+                    if (0 == buffer.drainTo(lines)) {
+                        Thread.yield();
+                    }
+                }
+                received.addAll(lines);
+                assertEquals(lines.size(), received.size());
+            }
+        });
+        consumer.start();
+        final Thread[] threads = new Thread[producers];
+        for (int t=0; t<producers; t++) {
+            final int producer = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i=0; i<count; i++) {
+                        final String line = producer + "," + i;
+                        while (!buffer.offer(line)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+        }
+        final long t0 = System.nanoTime();
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        done.set(true);
+        consumer.join();
+        final long t1 = System.nanoTime();
+        assertEquals(producers * count, received.size());
+        System.out.println("writeBuffer,producers=" + producers + ",lines=" + (producers * count) + ",elapsed=" + ((t1 - t0) / 1000000) + "ms");
+    }
+}
@@ -1,9 +1,16 @@
 package io.heraldprox.herald.sensor.data;
 
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNull;
 
 import org.junit.Test;
 
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import io.heraldprox.herald.sensor.datatype.Date;
 
 public class TimestampTests {
@@ -14,4 +21,139 @@ public class TimestampTests {
         final Date date = Timestamp.timestamp(string);
         assertEquals(0, date.secondsSinceUnixEpoch());
     }
+
+    @Test
+    public void format() throws Exception {
+        final SimpleDateFormat milliseconds = simpleDateFormat("yyyy-MM-dd HH:mm:ss.SSSZ");
+        final SimpleDateFormat seconds = simpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        assertEquals("1970-01-01 00:00:00.000+0000", TimestampCodec.formatMilliseconds(0));
+        assertEquals("1969-12-31 23:59:59.999+0000", TimestampCodec.formatMilliseconds(-1));
+        assertEquals("2000-02-29 12:34:56", TimestampCodec.formatSeconds(951827696789L));
+        // Same second on same thread uses cached prefix
+        assertEquals("2000-02-29 12:34:56.001+0000", TimestampCodec.formatMilliseconds(951827696001L));
+        // Outside fast path range
+        assertEquals(seconds.format(new java.util.Date(-12212553600001L)), TimestampCodec.formatSeconds(-12212553600001L));
+        assertEquals(seconds.format(new java.util.Date(253402300800000L)), TimestampCodec.formatSeconds(253402300800000L));
+        // Agrees with SimpleDateFormat across years 1583 to 9999
+        final Random random = new Random(0);
+        final long min = -12212553600000L, max = 253402300799999L;
+        for (int i=0; i<100000; i++) {
+            final long millis = min + (long) (random.nextDouble() * (max - min));
+            assertEquals(milliseconds.format(new java.util.Date(millis)), TimestampCodec.formatMilliseconds(millis));
+            assertEquals(seconds.format(new java.util.Date(millis)), TimestampCodec.appendSeconds(new StringBuilder(), millis).toString());
+        }
+    }
+
+    @Test
+    public void parse() throws Exception {
+        final SimpleDateFormat milliseconds = simpleDateFormat("yyyy-MM-dd HH:mm:ss.SSSZ");
+        assertEquals(0, TimestampCodec.parse("1970-01-01 00:00:00"));
+        assertEquals(123, TimestampCodec.parse("1970-01-01 00:00:00.123"));
+        assertEquals(123, TimestampCodec.parse("1970-01-01 00:00:00.123+0000"));
+        assertEquals(-3600000 + 123, TimestampCodec.parse("1970-01-01 00:00:00.123+0100"));
+        assertEquals(5400000 + 123, TimestampCodec.parse("1970-01-01 00:00:00.123-0130"));
+        assertEquals(milliseconds.parse("2021-03-04 05:06:07.890+0530").getTime(), TimestampCodec.parse("2021-03-04 05:06:07.890+0530"));
+        // Invalid
+        assertEquals(TimestampCodec.INVALID, TimestampCodec.parse(null));
+        assertEquals(TimestampCodec.INVALID, TimestampCodec.parse(""));
+        assertEquals(TimestampCodec.INVALID, TimestampCodec.parse("1970-01-01"));
+        assertEquals(TimestampCodec.INVALID, TimestampCodec.parse("1970-13-01 00:00:00"));
+        assertEquals(TimestampCodec.INVALID, TimestampCodec.parse("1970-01-01T00:00:00"));
+        assertEquals(TimestampCodec.INVALID, TimestampCodec.parse("1970-01-01 00:00:00.12a"));
+        assertEquals(TimestampCodec.INVALID, TimestampCodec.parse("1970-01-01 00:00:00.123Z0000"));
+        assertEquals(TimestampCodec.INVALID, TimestampCodec.parse("1500-01-01 00:00:00"));
+        assertNull(Timestamp.timestamp("invalid"));
+        // Round trip
+        final Random random = new Random(1);
+        final long min = -12212553600000L, max = 253402300799999L;
+        for (int i=0; i<100000; i++) {
+            final long millis = min + (long) (random.nextDouble() * (max - min));
+            assertEquals(millis, TimestampCodec.parse(TimestampCodec.formatMilliseconds(millis)));
+            final long floorSecond = (millis >= 0 || millis % 1000 == 0 ? millis / 1000 : millis / 1000 - 1) * 1000;
+            assertEquals(floorSecond, TimestampCodec.parse(TimestampCodec.formatSeconds(millis)));
+        }
+    }
+
+    @Test
+    public void concurrent() throws Exception {
+        final SimpleDateFormat milliseconds = simpleDateFormat("yyyy-MM-dd HH:mm:ss.SSSZ");
+        final String[] expected = new String[1000];
+        for (int i=0; i<expected.length; i++) {
+            expected[i] = milliseconds.format(new java.util.Date(i * 86399999L));
+        }
+        final AtomicInteger errors = new AtomicInteger(0);
+        final Thread[] threads = new Thread[4];
+        for (int t=0; t<threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int repeat=0; repeat<100; repeat++) {
+                        for (int i=0; i<expected.length; i++) {
+                            if (!expected[i].equals(TimestampCodec.formatMilliseconds(i * 86399999L))) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, errors.get());
+    }
+
+    @Test
+    public void performance() throws Exception {
+        final SimpleDateFormat dateFormatter = simpleDateFormat("yyyy-MM-dd HH:mm:ss.SSSZ");
+        final int samples = 1000000;
+        final long start = 1609459200000L;
+        // Log entries arrive a few milliseconds apart
+        for (int warmup=0; warmup<2; warmup++) {
+            long t0 = System.nanoTime();
+            long checksum = 0;
+            for (int i=0; i<samples; i++) {
+                synchronized (dateFormatter) {
+                    checksum += dateFormatter.format(new java.util.Date(start + i * 7L)).length();
+                }
+            }
+            final long formatSimpleDateFormat = System.nanoTime() - t0;
+            t0 = System.nanoTime();
+            for (int i=0; i<samples; i++) {
+                checksum += TimestampCodec.formatMilliseconds(start + i * 7L).length();
+            }
+            final long formatCodec = System.nanoTime() - t0;
+            final String[] strings = new String[samples / 10];
+            for (int i=0; i<strings.length; i++) {
+                strings[i] = TimestampCodec.formatMilliseconds(start + i * 7001L);
+            }
+            t0 = System.nanoTime();
+            for (int repeat=0; repeat<10; repeat++) {
+                for (final String string : strings) {
+                    synchronized (dateFormatter) {
+                        checksum += dateFormatter.parse(string).getTime();
+                    }
+                }
+            }
+            final long parseSimpleDateFormat = System.nanoTime() - t0;
+            t0 = System.nanoTime();
+            for (int repeat=0; repeat<10; repeat++) {
+                for (final String string : strings) {
+                    checksum += TimestampCodec.parse(string);
+                }
+            }
+            final long parseCodec = System.nanoTime() - t0;
+            if (warmup == 1) {
+                System.out.println("format,SimpleDateFormat=" + (formatSimpleDateFormat / samples) + "ns,TimestampCodec=" + (formatCodec / samples) + "ns");
+                System.out.println("parse,SimpleDateFormat=" + (parseSimpleDateFormat / samples) + "ns,TimestampCodec=" + (parseCodec / samples) + "ns,checksum=" + checksum);
+            }
+        }
+    }
+
+    private static SimpleDateFormat simpleDateFormat(final String pattern) {
+        final SimpleDateFormat dateFormatter = new SimpleDateFormat(pattern, Locale.UK);
+        dateFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return dateFormatter;
+    }
 }
@@ -7,12 +7,21 @@ package io.heraldprox.herald.sensor.data.security;
 import org.junit.Test;
 
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 
 import io.heraldprox.herald.sensor.TestUtil;
 import io.heraldprox.herald.sensor.datatype.Data;
 import io.heraldprox.herald.sensor.datatype.UInt8;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class EncryptionTests {
 
@@ -47,4 +56,89 @@ public class EncryptionTests {
         // Pending iOS implementation
         TestUtil.assertEqualsCrossPlatform("encryption.csv");
     }
+
+    @Test
+    public void testEncryptionByteBuffer() {
+        final AES128 encryption = new AES128();
+        final EncryptionKey encryptionKey = new AES128.Key(new EncryptionKey("0800000017A6DD51E0869A46AB0DEB8D6399B942"));
+        final ByteBuffer encrypted = ByteBuffer.allocate(AES128.encryptedLength(100));
+        final ByteBuffer decrypted = ByteBuffer.allocate(AES128.encryptedLength(100));
+        for (int i=0; i<100; i++) {
+            final Data data = new Data((byte) i, i);
+            encrypted.clear();
+            final int encryptedLength = encryption.encrypt(ByteBuffer.wrap(data.value), encrypted, encryptionKey);
+            assertEquals(AES128.encryptedLength(i), encryptedLength);
+            encrypted.flip();
+            // Interoperable with Data based functions and keys without cached key material
+            final Data encryptedData = new Data(Arrays.copyOf(encrypted.array(), encryptedLength));
+            assertEquals(data, encryption.decrypt(encryptedData, new EncryptionKey("0800000017A6DD51E0869A46AB0DEB8D6399B942")));
+            decrypted.clear();
+            assertEquals(i, encryption.decrypt(encrypted, decrypted, encryptionKey));
+            assertEquals(data, new Data(Arrays.copyOf(decrypted.array(), i)));
+        }
+        // Output buffer too small
+        assertEquals(-1, encryption.encrypt(ByteBuffer.allocate(16), ByteBuffer.allocate(16), encryptionKey));
+        // Failed encryption leaves input and output positions unchanged
+        final ByteBuffer input = ByteBuffer.wrap(new Data((byte) 1, 16).value);
+        final ByteBuffer readOnly = ByteBuffer.allocate(AES128.encryptedLength(16)).asReadOnlyBuffer();
+        assertEquals(-1, encryption.encrypt(input, readOnly, encryptionKey));
+        assertEquals(0, input.position());
+        assertEquals(0, readOnly.position());
+        // Failed decryption leaves input and output positions unchanged
+        final ByteBuffer invalid = ByteBuffer.wrap(new Data((byte) 1, 32).value);
+        final ByteBuffer output = ByteBuffer.allocate(32);
+        assertEquals(-1, encryption.decrypt(invalid, output, encryptionKey));
+        assertEquals(0, invalid.position());
+        assertEquals(0, output.position());
+        // Session keys prepared by encryption are interoperable with plain keys
+        final EncryptionKey sessionKey = encryption.key(new EncryptionKey("0800000017A6DD51E0869A46AB0DEB8D6399B942"));
+        assertTrue(sessionKey instanceof AES128.Key);
+        assertEquals(new Data((byte) 2, 20), encryption.decrypt(encryption.encrypt(new Data((byte) 2, 20), sessionKey), new EncryptionKey("0800000017A6DD51E0869A46AB0DEB8D6399B942")));
+        // Input without encrypted data
+        assertNull(encryption.decrypt(new Data((byte) 1, 16), encryptionKey));
+    }
+
+    @Test
+    public void testEncryptionPerformance() throws Exception {
+        final AES128 encryption = new AES128();
+        final EncryptionKey encryptionKey = new EncryptionKey("0800000017A6DD51E0869A46AB0DEB8D6399B942");
+        final EncryptionKey cachedKey = new AES128.Key(encryptionKey);
+        final Data data = new Data((byte) 1, 128);
+        final int samples = 20000;
+        // Baseline : derive key and create cipher per message
+        final long t0 = System.nanoTime();
+        for (int i=0; i<samples; i++) {
+            final SecretKey key = new SecretKeySpec(new SHA256().hash(encryptionKey).value, "AES");
+            final IvParameterSpec iv = new IvParameterSpec(new byte[16]);
+            final Cipher cipherEncrypt = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            cipherEncrypt.init(Cipher.ENCRYPT_MODE, key, iv);
+            final byte[] encrypted = cipherEncrypt.doFinal(data.value);
+            final Cipher cipherDecrypt = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            cipherDecrypt.init(Cipher.DECRYPT_MODE, new SecretKeySpec(new SHA256().hash(encryptionKey).value, "AES"), iv);
+            cipherDecrypt.doFinal(encrypted);
+        }
+        final long t1 = System.nanoTime();
+        // Cached key material and per-thread cipher
+        for (int i=0; i<samples; i++) {
+            encryption.decrypt(encryption.encrypt(data, cachedKey), cachedKey);
+        }
+        final long t2 = System.nanoTime();
+        // Cached key material, per-thread cipher and caller supplied buffers
+        final ByteBuffer input = ByteBuffer.wrap(data.value);
+        final ByteBuffer encrypted = ByteBuffer.allocate(AES128.encryptedLength(data.value.length));
+        final ByteBuffer decrypted = ByteBuffer.allocate(AES128.encryptedLength(data.value.length));
+        for (int i=0; i<samples; i++) {
+            input.rewind();
+            encrypted.clear();
+            encryption.encrypt(input, encrypted, cachedKey);
+            encrypted.flip();
+            decrypted.clear();
+            encryption.decrypt(encrypted, decrypted, cachedKey);
+        }
+        final long t3 = System.nanoTime();
+        System.out.println("roundTrip,dataCount=128,samples=" + samples
+                + ",baseline=" + (samples * 1000000000L / (t1 - t0)) + "/s"
+                + ",cached=" + (samples * 1000000000L / (t2 - t1)) + "/s"
+                + ",byteBuffer=" + (samples * 1000000000L / (t3 - t2)) + "/s");
+    }
 }
@@ -10,10 +10,15 @@ import java.io.PrintWriter;
 
 import io.heraldprox.herald.sensor.TestUtil;
 import io.heraldprox.herald.sensor.datatype.Data;
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
 import io.heraldprox.herald.sensor.datatype.Tuple;
 import io.heraldprox.herald.sensor.datatype.UInt8;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 public class TransportLayerSecurityTests {
 
@@ -83,4 +88,66 @@ public class TransportLayerSecurityTests {
         // Pending iOS implementation
         TestUtil.assertEqualsCrossPlatform("transportLayerSecurity.csv");
     }
+
+    @Test
+    public void testSessionStore() throws Exception {
+        final KeyExchange keyExchange = new DiffieHellmanMerkle(DiffieHellmanParameters.random128);
+        final TransportLayerSecuritySessionStore store = new TransportLayerSecuritySessionStore(3, TimeInterval.seconds(1));
+        final TransportLayerSecuritySession[] sessions = new TransportLayerSecuritySession[4];
+        for (int i=0; i<sessions.length; i++) {
+            sessions[i] = new TransportLayerSecuritySession(keyExchange, new SHA256(), new AES128());
+        }
+        store.put(sessions[0]);
+        store.put(sessions[1]);
+        store.put(sessions[2]);
+        assertEquals(3, store.size());
+        // Access session 0 to make session 1 least recently used
+        assertSame(sessions[0], store.get(sessions[0].ownId));
+        store.put(sessions[3]);
+        assertEquals(3, store.size());
+        assertEquals(1, store.evictions());
+        assertNull(store.get(sessions[1].ownId));
+        assertSame(sessions[0], store.get(sessions[0].ownId));
+        assertSame(sessions[2], store.get(sessions[2].ownId));
+        assertSame(sessions[3], store.get(sessions[3].ownId));
+        assertEquals(4, store.hits());
+        assertEquals(1, store.misses());
+        // Idle sessions are evicted
+        Thread.sleep(1100);
+        assertNull(store.get(sessions[0].ownId));
+        assertEquals(2, store.misses());
+        assertEquals(2, store.evictions());
+        assertEquals(2, store.evictIdle());
+        assertEquals(0, store.size());
+        assertEquals(4, store.evictions());
+    }
+
+    @Test
+    public void testKeyPairPool() throws Exception {
+        final KeyExchangeKeyPairPool pool = new KeyExchangeKeyPairPool(new DiffieHellmanMerkle(DiffieHellmanParameters.random128), 2);
+        // Pool is filled in background
+        for (int i=0; i<100 && pool.size() < 2; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(2, pool.size());
+        final KeyExchangeKeyPair alice = pool.keyPair();
+        final KeyExchangeKeyPair bob = pool.keyPair();
+        assertEquals(2, pool.hits());
+        assertNotEquals(alice.publicKey, bob.publicKey);
+        assertEquals(pool.sharedKey(alice.privateKey, bob.publicKey), pool.sharedKey(bob.privateKey, alice.publicKey));
+        // Disabled pool generates key pairs on demand
+        final KeyExchangeKeyPairPool disabled = new KeyExchangeKeyPairPool(new DiffieHellmanMerkle(DiffieHellmanParameters.random128), 0);
+        assertNotNull(disabled.keyPair());
+        assertEquals(0, disabled.size());
+        assertEquals(0, disabled.hits());
+        assertEquals(1, disabled.misses());
+        // Transport layer security exposes counters
+        final ConcreteTransportLayerSecurity alicePeer = new ConcreteTransportLayerSecurity(DiffieHellmanParameters.random128);
+        final ConcreteTransportLayerSecurity bobPeer = new ConcreteTransportLayerSecurity(DiffieHellmanParameters.random128);
+        final Data encrypted = alicePeer.writeEncryptedData(bobPeer.readPublicKey(), new Data((byte) 1, 10));
+        assertNotNull(encrypted);
+        assertNotNull(bobPeer.receiveEncryptedData(encrypted));
+        assertEquals(1, bobPeer.sessionStore().hits());
+        assertEquals(1, bobPeer.keyPairPool().hits() + bobPeer.keyPairPool().misses());
+    }
 }
@@ -20,6 +20,7 @@ import io.heraldprox.herald.sensor.datatype.random.RandomSource;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 @SuppressWarnings("SameParameterValue")
@@ -170,8 +171,136 @@ public class RandomSourceTests {
         }
     }
 
+    /**
+     * Statistical self-tests of NonBlockingSecureRandom output in block and byte output modes,
+     * according to the FIPS 140-2 power-up tests (monobit, poker, runs, long runs) on 20,000 bit
+     * samples. Each test may fail by chance, thus 1 in 10 samples is allowed to fail.
+     */
+    @Test
+    public void testNonBlockingSecureRandomStatistics() {
+        for (final boolean blockOutput : new boolean[]{true, false}) {
+            final RandomSource randomSource = new NonBlockingSecureRandom(2048, TimeInterval.seconds(1), blockOutput);
+            final int samples = 10;
+            int failures = 0;
+            for (int i=0; i<samples; i++) {
+                final byte[] sample = new byte[2500];
+                randomSource.nextBytes(sample);
+                final boolean passed = fips140MonobitTest(sample) && fips140PokerTest(sample) && fips140RunsTest(sample);
+                if (!passed) {
+                    failures++;
+                }
+            }
+            System.out.println("testNonBlockingSecureRandomStatistics(blockOutput=" + blockOutput + ",samples=" + samples + ",failures=" + failures + ")");
+            assertTrue(failures <= 1);
+        }
+    }
+
+    @Test
+    public void testNonBlockingSecureRandomBlockOutput() {
+        final RandomSource randomSource = new NonBlockingSecureRandom(2048, TimeInterval.seconds(1), true);
+        // Partial blocks and consecutive calls are different
+        for (final int length : new int[]{1, 6, 31, 32, 33, 64, 2048}) {
+            final byte[] a = new byte[length];
+            final byte[] b = new byte[length];
+            randomSource.nextBytes(a);
+            randomSource.nextBytes(b);
+            assertFalse(length > 6 && Arrays.equals(a, b));
+        }
+        // Blocks within a call are different
+        final byte[] bytes = new byte[2048];
+        randomSource.nextBytes(bytes);
+        for (int i=32; i<bytes.length; i+=32) {
+            assertFalse(Arrays.equals(Arrays.copyOfRange(bytes, 0, 32), Arrays.copyOfRange(bytes, i, i + 32)));
+        }
+    }
+
+    @Test
+    public void testNonBlockingSecureRandomNextBytesPerformance() {
+        // Generation of 2048 byte secret key
+        final int samples = 100;
+        for (final boolean blockOutput : new boolean[]{true, false}) {
+            final RandomSource randomSource = new NonBlockingSecureRandom(2048, TimeInterval.seconds(1), blockOutput);
+            final byte[] bytes = new byte[2048];
+            final long timeStart = System.nanoTime();
+            for (int n=samples; n-->0;) {
+                randomSource.nextBytes(bytes);
+            }
+            final long timeEnd = System.nanoTime();
+            final long bytesPerSecond = (samples * (long) bytes.length * 1000000000L) / Math.max(1, timeEnd - timeStart);
+            System.out.println("nextBytesPerformance(randomSource=NonBlockingSecureRandom,blockOutput=" + blockOutput + ",samples=" + samples + ",bytes=" + bytes.length + ",speed=" + ((timeEnd - timeStart) / samples) + "ns/call,throughput=" + bytesPerSecond + "bytes/s)");
+        }
+    }
+
     // MARK: - Supporting test functions
 
+    /**
+     * FIPS 140-2 monobit test on 20,000 bit sample.
+     * @param sample 2500 bytes
+     * @return True if number of ones is within (9725, 10275).
+     */
+    private static boolean fips140MonobitTest(final byte[] sample) {
+        int ones = 0;
+        for (final byte value : sample) {
+            ones += Integer.bitCount(value & 0xFF);
+        }
+        return ones > 9725 && ones < 10275;
+    }
+
+    /**
+     * FIPS 140-2 poker test on 20,000 bit sample.
+     * @param sample 2500 bytes
+     * @return True if statistic over 5000 4-bit segments is within (2.16, 46.17).
+     */
+    private static boolean fips140PokerTest(final byte[] sample) {
+        final long[] frequency = new long[16];
+        for (final byte value : sample) {
+            frequency[(value >> 4) & 0x0F]++;
+            frequency[value & 0x0F]++;
+        }
+        double sum = 0;
+        for (final long f : frequency) {
+            sum += f * f;
+        }
+        final double x = (16d / 5000d) * sum - 5000d;
+        return x > 2.16 && x < 46.17;
+    }
+
+    /**
+     * FIPS 140-2 runs and long runs test on 20,000 bit sample.
+     * @param sample 2500 bytes
+     * @return True if runs of 0s and 1s of length 1 to 6+ are within the required intervals, and no run is 26 or longer.
+     */
+    private static boolean fips140RunsTest(final byte[] sample) {
+        final int[] min = new int[]{2315, 1114, 527, 240, 103, 103};
+        final int[] max = new int[]{2685, 1386, 723, 384, 209, 209};
+        final int[][] runs = new int[2][6];
+        int lastBit = -1;
+        int runLength = 0;
+        for (int i=0; i<=sample.length * 8; i++) {
+            final int bit = (i < sample.length * 8 ? (sample[i / 8] >> (7 - (i % 8))) & 1 : -1);
+            if (bit == lastBit) {
+                runLength++;
+                continue;
+            }
+            if (runLength >= 26) {
+                return false;
+            }
+            if (lastBit >= 0) {
+                runs[lastBit][Math.min(runLength, 6) - 1]++;
+            }
+            lastBit = bit;
+            runLength = 1;
+        }
+        for (int bit=0; bit<=1; bit++) {
+            for (int i=0; i<6; i++) {
+                if (runs[bit][i] < min[i] || runs[bit][i] > max[i]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     /**
      * Compute histogram of first N bytes from a random source to test if the sequence is
      * likely to be uniformly distributed.
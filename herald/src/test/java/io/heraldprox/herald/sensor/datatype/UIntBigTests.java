@@ -17,6 +17,8 @@ import io.heraldprox.herald.sensor.datatype.random.RandomSource;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class UIntBigTests {
@@ -186,6 +188,126 @@ public class UIntBigTests {
         }
     }
 
+    @Test
+    public void testModPowMontgomery() {
+        final Random random = new Random(0);
+        for (int bitLength : new int[]{17, 31, 32, 33, 64, 100, 256, 512, 1024}) {
+            for (int i=0; i<20; i++) {
+                final BigInteger a = new BigInteger(bitLength + 8, random);
+                final BigInteger b = new BigInteger(bitLength, random);
+                final BigInteger c = new BigInteger(bitLength, random).setBit(0).setBit(1);
+                final UIntBig actual = uintBig(a).modPow(uintBig(b), uintBig(c));
+                assertEquals(a.modPow(b, c), bigInteger(actual));
+                // Identical to square-and-multiply, including magnitude length
+                assertEquals(uintBig(a).modPowSquareAndMultiply(uintBig(b), uintBig(c)), actual);
+            }
+        }
+        // Edge cases
+        final UIntBig c = uintBig(new BigInteger("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF", 16));
+        assertEquals(new UIntBig(1), new UIntBig(7).modPow(new UIntBig(0), c));
+        assertEquals(new UIntBig(0), new UIntBig(0).modPow(new UIntBig(5), c));
+        assertEquals(new UIntBig(0), c.modPow(new UIntBig(5), c));
+    }
+
+    @Test
+    public void testModPowFixedBase() {
+        final Random random = new Random(0);
+        final BigInteger p = new BigInteger(512, random).setBit(511).setBit(0);
+        final MontgomeryModulus modulus = MontgomeryModulus.getInstance(uintBig(p));
+        assertTrue(null != modulus);
+        assertTrue(null == MontgomeryModulus.getInstance(new UIntBig(10)));
+        assertTrue(null == MontgomeryModulus.getInstance(new UIntBig(1)));
+        final MontgomeryModulus.FixedBase fixedBase = modulus.fixedBase(new UIntBig(2), 510);
+        assertTrue(fixedBase.bytes() > 0);
+        for (int i=0; i<50; i++) {
+            final BigInteger e = new BigInteger(510, random);
+            assertEquals(BigInteger.valueOf(2).modPow(e, p), bigInteger(fixedBase.modPow(uintBig(e))));
+        }
+        // Exponent exceeding table
+        final BigInteger e = new BigInteger(600, random).setBit(599);
+        assertEquals(BigInteger.valueOf(2).modPow(e, p), bigInteger(fixedBase.modPow(uintBig(e))));
+        assertEquals(new UIntBig(1), fixedBase.modPow(new UIntBig(0)));
+    }
+
+    @Test
+    public void testMontgomeryModulusCache() {
+        final Random random = new Random(0);
+        final BigInteger p = new BigInteger(512, random).setBit(511).setBit(0);
+        final UIntBig modulus = uintBig(p);
+        // Same modulus value shares one instance
+        final MontgomeryModulus cached = MontgomeryModulus.getInstance(modulus);
+        assertSame(cached, MontgomeryModulus.getInstance(uintBig(p)));
+        // Modifying the caller's instance does not affect the cached instance
+        modulus.magnitude()[0] ^= 2;
+        assertNotSame(cached, MontgomeryModulus.getInstance(modulus));
+        assertEquals(uintBig(p), cached.modulus());
+        assertSame(cached, MontgomeryModulus.getInstance(uintBig(p)));
+        // Modifying the returned modulus does not affect the cached instance
+        cached.modulus().magnitude()[0] ^= 2;
+        assertEquals(uintBig(p), cached.modulus());
+        assertSame(cached, MontgomeryModulus.getInstance(uintBig(p)));
+        // Modifying the caller's base does not affect the fixed base
+        final UIntBig base = new UIntBig(2);
+        final MontgomeryModulus.FixedBase fixedBase = cached.fixedBase(base, 64);
+        base.magnitude()[0] = 3;
+        assertEquals(new UIntBig(2), fixedBase.base());
+    }
+
+    @Test
+    public void testModPowMontgomeryPerformance() {
+        // RFC3526 MODP Group 14 : 2048-bits
+        final UIntBig p = new UIntBig(
+                "FFFFFFFFFFFFFFFFC90FDAA22168C234C4C6628B80DC1CD1" +
+                "29024E088A67CC74020BBEA63B139B22514A08798E3404DD" +
+                "EF9519B3CD3A431B302B0A6DF25F14374FE1356D6D51C245" +
+                "E485B576625E7EC6F44C42E9A637ED6B0BFF5CB6F406B7ED" +
+                "EE386BFB5A899FA5AE9F24117C4B1FE649286651ECE45B3D" +
+                "C2007CB8A163BF0598DA48361C55D39A69163FA8FD24CF5F" +
+                "83655D23DCA3AD961C62F356208552BB9ED529077096966D" +
+                "670C354E4ABC9804F1746C08CA18217C32905E462E36CE3B" +
+                "E39E772C180E86039B2783A2EC07A28FB5C55DF06F4C52C9" +
+                "DE2BCBF6955817183995497CEA956AE515D2261898FA0510" +
+                "15728E5A8AACAA68FFFFFFFFFFFFFFFF");
+        final UIntBig g = new UIntBig(2);
+        final Random random = new Random(0);
+        final int samples = 4;
+        final UIntBig[] exponents = new UIntBig[samples];
+        for (int i=0; i<samples; i++) {
+            exponents[i] = uintBig(new BigInteger(2046, random));
+        }
+        final MontgomeryModulus modulus = MontgomeryModulus.getInstance(p);
+        assertTrue(null != modulus);
+        final MontgomeryModulus.FixedBase fixedBase = modulus.fixedBase(g, 2046);
+        final UIntBig reference = g.modPowSquareAndMultiply(exponents[0], p);
+        final long t0 = System.nanoTime();
+        for (int i=0; i<samples; i++) {
+            g.modPowSquareAndMultiply(exponents[i], p);
+        }
+        final long t1 = System.nanoTime();
+        for (int i=0; i<samples; i++) {
+            g.modPow(exponents[i], p);
+        }
+        final long t2 = System.nanoTime();
+        for (int i=0; i<samples; i++) {
+            fixedBase.modPow(exponents[i]);
+        }
+        final long t3 = System.nanoTime();
+        assertEquals(reference, g.modPow(exponents[0], p));
+        assertEquals(reference, fixedBase.modPow(exponents[0]));
+        System.err.println("modPow,bitLength=2048,squareAndMultiply=" + ((t1 - t0) / samples / 1000) + "us/call,montgomery=" + ((t2 - t1) / samples / 1000) + "us/call,fixedBase=" + ((t3 - t2) / samples / 1000) + "us/call,tableBytes=" + fixedBase.bytes());
+    }
+
+    @NonNull
+    private static UIntBig uintBig(@NonNull final BigInteger value) {
+        return new UIntBig(UIntBig.trimZeroMSBs(new UIntBig(value.toString(16)).magnitude()));
+    }
+
+    @NonNull
+    private static BigInteger bigInteger(@NonNull final UIntBig value) {
+        final String hex = value.hexEncodedString();
+        return (hex.isEmpty() ? BigInteger.ZERO : new BigInteger(hex, 16));
+    }
+
     @SuppressWarnings("ConstantConditions")
     @Test
     public void testModPowPerformance() {
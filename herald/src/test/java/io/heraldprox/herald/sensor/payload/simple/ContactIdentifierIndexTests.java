@@ -0,0 +1,142 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.payload.simple;
+
+import androidx.annotation.NonNull;
+
+import io.heraldprox.herald.sensor.datatype.Encounter;
+import io.heraldprox.herald.sensor.datatype.PayloadData;
+import io.heraldprox.herald.sensor.datatype.PayloadTimestamp;
+import io.heraldprox.herald.sensor.datatype.Proximity;
+import io.heraldprox.herald.sensor.datatype.ProximityMeasurementUnit;
+import io.heraldprox.herald.sensor.datatype.UInt16;
+import io.heraldprox.herald.sensor.datatype.UInt8;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+@SuppressWarnings("ConstantConditions")
+public class ContactIdentifierIndexTests {
+
+    @Test
+    public void testExpand() {
+        final List<MatchingKey> matchingKeys = new ArrayList<>();
+        for (int i=0; i<40; i++) {
+            matchingKeys.add(K.matchingKey(K.matchingKeySeed(new SecretKey((byte) i, 2048), i)));
+        }
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        final ContactIdentifierIndex index = ContactIdentifierIndex.expand(matchingKeys, pool);
+        pool.shutdown();
+        assertNotNull(index);
+        assertEquals(40, index.matchingKeys());
+        assertEquals(40 * 241, index.size());
+        // Index contains all contact identifiers derived by K
+        for (int i=0; i<matchingKeys.size(); i++) {
+            final MatchingKey matchingKey = matchingKeys.get(i);
+            for (int period=0; period<=240; period++) {
+                final ContactIdentifier contactIdentifier = K.contactIdentifier(K.contactKey(K.contactKeySeed(matchingKey, period)));
+                final int entry = index.get(contactIdentifier);
+                assertEquals(i, ContactIdentifierIndex.matchingKey(entry));
+                assertEquals(period, ContactIdentifierIndex.period(entry));
+            }
+        }
+        // Unknown contact identifiers are not found
+        assertEquals(-1, index.get(new ContactIdentifier((byte) 0, 16)));
+        assertEquals(-1, index.get(new ContactIdentifier((byte) 0, 15)));
+    }
+
+    @Test
+    public void testExpandDuplicates() {
+        final MatchingKey matchingKey = K.matchingKey(K.matchingKeySeed(new SecretKey((byte) 0, 2048), 0));
+        final List<MatchingKey> matchingKeys = new ArrayList<>();
+        matchingKeys.add(new MatchingKey((byte) 1, 32));
+        matchingKeys.add(matchingKey);
+        matchingKeys.add(new MatchingKey((byte) 1, 32));
+        matchingKeys.add(new MatchingKey(matchingKey.value.clone()));
+        // Duplicate matching keys are expanded once, reporting the first occurrence
+        final ContactIdentifierIndex index = ContactIdentifierIndex.expand(matchingKeys);
+        assertNotNull(index);
+        assertEquals(2, index.matchingKeys());
+        assertEquals(2 * 241, index.size());
+        final int entry = index.get(K.contactIdentifier(K.contactKey(K.contactKeySeed(matchingKey, 7))));
+        assertEquals(1, ContactIdentifierIndex.matchingKey(entry));
+        assertEquals(7, ContactIdentifierIndex.period(entry));
+    }
+
+    @Test
+    public void testExpandTooManyKeys() {
+        final List<MatchingKey> matchingKeys = new ArrayList<>();
+        for (int i=0; i<=14 * 512; i++) {
+            matchingKeys.add(new MatchingKey(new byte[]{(byte) i, (byte) (i >> 8)}));
+        }
+        assertNull(ContactIdentifierIndex.expand(matchingKeys));
+    }
+
+    @Test
+    public void testExpandEmpty() {
+        final ContactIdentifierIndex index = ContactIdentifierIndex.expand(new ArrayList<MatchingKey>());
+        assertNotNull(index);
+        assertEquals(0, index.size());
+        assertEquals(-1, index.get(new ContactIdentifier((byte) 0, 16)));
+    }
+
+    @Test
+    public void testMatch() {
+        final SecretKey secretKey = new SecretKey((byte) 7, 2048);
+        final ConcreteSimplePayloadDataSupplier supplier = new ConcreteSimplePayloadDataSupplier(new UInt8(0), new UInt16(0), new UInt16(0), secretKey);
+        final Date day = K.date("2020-09-25T00:00:00+0000");
+        // Encounters with payloads from supplier and an unknown payload
+        final List<Encounter> encounters = new ArrayList<>();
+        final Proximity proximity = new Proximity(ProximityMeasurementUnit.RSSI, -50d);
+        for (int period=0; period<240; period+=10) {
+            final Date time = new Date(day.getTime() + period * 360000L);
+            encounters.add(new Encounter(proximity, supplier.payload(new PayloadTimestamp(time), null), time));
+        }
+        encounters.add(new Encounter(proximity, new PayloadData((byte) 1, ConcreteSimplePayloadDataSupplier.payloadLength), day));
+        // Matching keys published for three days
+        final List<MatchingKey> matchingKeys = new ArrayList<>();
+        matchingKeys.add(new MatchingKey((byte) 0, 32));
+        matchingKeys.add(supplier.matchingKey(day));
+        matchingKeys.add(new MatchingKey((byte) 1, 32));
+        final List<ContactIdentifierIndex.Match> matches = ContactIdentifierIndex.expand(matchingKeys).match(encounters);
+        assertEquals(24, matches.size());
+        for (int i=0; i<matches.size(); i++) {
+            final ContactIdentifierIndex.Match match = matches.get(i);
+            assertEquals(1, match.matchingKey);
+            assertEquals(i * 10, match.period);
+        }
+    }
+
+    @Test
+    public void testExpandPerformance() {
+        final List<MatchingKey> matchingKeys = new ArrayList<>();
+        for (int i=0; i<1000; i++) {
+            matchingKeys.add(new MatchingKey(new PayloadData((byte) i, 32)));
+        }
+        final long t0 = System.currentTimeMillis();
+        final ContactIdentifierIndex index = ContactIdentifierIndex.expand(matchingKeys);
+        final long t1 = System.currentTimeMillis();
+        final long t2 = System.currentTimeMillis();
+        for (int i=0; i<1000; i++) {
+            K.forEachContactIdentifier(matchingKeys.get(i), new K.ForEachContactIdentifierAction() {
+                @Override
+                public void consume(@NonNull ContactIdentifier contactIdentifier, int period) {
+                    // Ignored
+                }
+            });
+        }
+        final long t3 = System.currentTimeMillis();
+        assertNotNull(index);
+        System.out.println("expand,matchingKeys=1000,parallel=" + (t1 - t0) + "ms,serial=" + (t3 - t2) + "ms");
+    }
+}
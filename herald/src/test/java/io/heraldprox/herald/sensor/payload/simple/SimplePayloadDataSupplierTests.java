@@ -7,6 +7,7 @@ package io.heraldprox.herald.sensor.payload.simple;
 import androidx.annotation.NonNull;
 
 import io.heraldprox.herald.sensor.TestUtil;
+import io.heraldprox.herald.sensor.datatype.Data;
 import io.heraldprox.herald.sensor.datatype.Float16;
 import io.heraldprox.herald.sensor.datatype.PayloadTimestamp;
 import io.heraldprox.herald.sensor.datatype.TimeInterval;
@@ -16,12 +17,17 @@ import io.heraldprox.herald.sensor.datatype.UInt8;
 import org.junit.Test;
 
 import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 @SuppressWarnings("ConstantConditions")
 public class SimplePayloadDataSupplierTests {
@@ -163,6 +169,64 @@ public class SimplePayloadDataSupplierTests {
         }
     }
 
+    @Test
+    public void testHashChain() {
+        final Data head = new Data((byte) 0, 32);
+        // Reference values derived by walking backwards from head
+        final Data[] expected = new Data[241];
+        expected[240] = head;
+        for (int i=240; i-->0;) {
+            expected[i] = F.hash(F.truncate(expected[i + 1]));
+        }
+        // Checkpointed lookup for any stride matches reference values
+        for (final int stride : new int[]{1, 7, 16, 240, 1000}) {
+            final HashChain hashChain = new HashChain(head, 240, stride);
+            for (int i=0; i<=240; i++) {
+                assertEquals(expected[i], hashChain.get(i));
+            }
+            assertNull(hashChain.get(-1));
+            assertNull(hashChain.get(241));
+        }
+        // Cursor walks forward through all values
+        final HashChain hashChain = new HashChain(head, 240);
+        assertEquals(16, hashChain.stride());
+        final HashChain.Cursor cursor = hashChain.cursor(0);
+        assertNotNull(cursor);
+        for (int i=0; i<=240; i++) {
+            assertEquals(i, cursor.index());
+            assertEquals(expected[i], cursor.value());
+            assertEquals(i < 240, cursor.next());
+        }
+        // Cursor seek in any direction
+        assertTrue(cursor.seek(17));
+        assertEquals(expected[17], cursor.value());
+        assertTrue(cursor.seek(3));
+        assertEquals(expected[3], cursor.value());
+        assertFalse(cursor.seek(241));
+        assertEquals(3, cursor.index());
+        assertNull(hashChain.cursor(241));
+    }
+
+    @Test
+    public void testMatchingKeySeedChain() {
+        final SecretKey secretKey = new SecretKey((byte) 2, 2048);
+        // Reference matching key seeds derived by walking backwards from day 2000
+        MatchingKeySeed expected = new MatchingKeySeed(F.hash(secretKey));
+        for (int day=2000; day>=0; day--) {
+            if (day % 97 == 0 || day >= 1990) {
+                assertEquals(expected, K.matchingKeySeed(secretKey, day));
+            }
+            expected = new MatchingKeySeed(F.hash(F.truncate(expected)));
+        }
+        // Chain is cached for secret key and guarded against modification
+        assertSame(K.matchingKeySeedChain(secretKey), K.matchingKeySeedChain(new SecretKey((byte) 2, 2048)));
+        final SecretKey modified = new SecretKey((byte) 2, 2048);
+        final MatchingKeySeed beforeModification = K.matchingKeySeed(modified, 0);
+        modified.value[0] = 3;
+        assertNotEquals(beforeModification, K.matchingKeySeed(modified, 0));
+        assertEquals(beforeModification, K.matchingKeySeed(secretKey, 0));
+    }
+
     @Test
     public void testContactIdentifier() {
         // Generate same matching keys (km1, km2) and a different matching key (km3)
@@ -188,6 +252,9 @@ public class SimplePayloadDataSupplierTests {
         assertEquals(Ic1.value.length, 16);
         assertEquals(Ic2.value.length, 16);
         assertEquals(Ic3.value.length, 16);
+
+        // Contact key shorter than contact identifier, e.g. where SHA-256 failed
+        assertNull(K.contactIdentifier(new ContactKey(new Data())));
     }
 
     @Test
@@ -238,6 +305,52 @@ public class SimplePayloadDataSupplierTests {
         final long t1 = System.currentTimeMillis();
     }
 
+    @Test
+    public void testContactIdentifiers() {
+        final MatchingKey km1 = K.matchingKey(K.matchingKeySeed(new SecretKey((byte) 0, 2048), 0));
+        final byte[] contactIdentifiers = new byte[241 * 16];
+        K.contactIdentifiers(km1, contactIdentifiers, 0, new byte[96]);
+        for (int period=0; period<=240; period++) {
+            final ContactIdentifier expected = K.contactIdentifier(K.contactKey(K.contactKeySeed(km1, period)));
+            assertEquals(expected, new ContactIdentifier(new Data(contactIdentifiers).subdata(period * 16, 16)));
+        }
+    }
+
+    @Test
+    public void testContactIdentifiersPerformance() throws NoSuchAlgorithmException {
+        final MatchingKey km1 = new MatchingKey((byte) 0, 32);
+        final int days = 200;
+        // Data based derivation, allocating a new digest and data for every hash, truncate and xor
+        final long t0 = System.nanoTime();
+        for (int i=0; i<days; i++) {
+            Data contactKeySeed = sha256(km1);
+            for (int period=240; period>=0; period--) {
+                if (period < 240) {
+                    contactKeySeed = sha256(F.truncate(contactKeySeed));
+                }
+                final Data contactKey = sha256(F.xor(contactKeySeed, sha256(F.truncate(contactKeySeed))));
+                assertNotNull(F.truncate(contactKey, 16));
+            }
+        }
+        final long t1 = System.nanoTime();
+        // Allocation free derivation into reusable buffers
+        final byte[] contactIdentifiers = new byte[241 * 16];
+        final byte[] scratch = new byte[96];
+        for (int i=0; i<days; i++) {
+            K.contactIdentifiers(km1, contactIdentifiers, 0, scratch);
+        }
+        final long t2 = System.nanoTime();
+        System.out.println("contactIdentifiers,days=" + days + ",data=" + ((t1 - t0) / 1000000) + "ms,buffer=" + ((t2 - t1) / 1000000) + "ms");
+    }
+
+    /**
+     * SHA-256 as originally implemented by F.hash, creating a new digest for every call.
+     */
+    @NonNull
+    private static Data sha256(@NonNull final Data data) throws NoSuchAlgorithmException {
+        return new Data(MessageDigest.getInstance("SHA-256").digest(data.value));
+    }
+
     @Test
     public void testCrossPlatformFloat16() {
         System.out.println("value,float16");